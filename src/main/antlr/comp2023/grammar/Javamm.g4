@@ -78,7 +78,7 @@ statement
     | 'do' statement 'while' '(' expression ')' ';' #DoWhile
     | 'while' '(' expression ')' statement #While
     | 'for' '(' varType? var=ID ('=' expression)? ';' expression ';' expression')' statement #ForCycle
-    | 'switch' '(' expression ')' '{' ('case' expression ':' statement* ('break' ';')?)* 'default' ':' statement* ('break' ';')? '}' #Switch
+    | 'switch' '(' expression ')' '{' switchCase* 'default' ':' statement* ('break' ';')? '}' #Switch
     | '{' statement* '}' #NestedStatements
     | varType var=ID ('=' expression)? ';' #Declaration
     | var=ID '=' expression ';' #Assignment
@@ -87,6 +87,10 @@ statement
     | expression ';' #ExprStmt
     ;
 
+switchCase //Sem 'break' a execução continua no caso seguinte
+    : 'case' expression ':' statement* (exit='break' ';')?
+    ;
+
 expression
     : '(' expression ')' #Scope
     | expression '.length'+ #Length
@@ -0,0 +1,265 @@
+package pt.up.fe.comp2023;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2023.cache.BuildCache;
+import pt.up.fe.comp2023.jasmin.ClassFileResult;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Compiles several Java-- files in the same JVM, running the pipeline of each file on a bounded worker pool.
+ * Every task creates its own {@link Pipeline}, since the stages keep mutable state.
+ */
+public class BatchCompiler {
+
+    private final Map<String, String> config;
+    private final int numThreads;
+    private final BuildCache cache;
+
+    public BatchCompiler(Map<String, String> config, int numThreads) {
+        this.config = config;
+        this.numThreads = Math.max(1, numThreads);
+        this.cache = BuildCache.fromConfig(config);
+    }
+
+    /**
+     * @return The build cache shared by every task, or null if caching is disabled
+     */
+    public BuildCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Expands the given paths into the list of .jmm files to compile. Directories are searched recursively.
+     * @param paths Files or directories
+     * @return Sorted list of input files
+     */
+    public static List<File> collectInputs(List<String> paths) {
+        List<File> files = new ArrayList<>();
+
+        for (String path : paths) {
+            File file = new File(path);
+            if (file.isDirectory()) {
+                files.addAll(SpecsIo.getFilesRecursive(file, "jmm"));
+            } else if (file.isFile()) {
+                files.add(file);
+            } else {
+                throw new RuntimeException("Expected a path to an existing file or folder, got '" + file + "'.");
+            }
+        }
+
+        files.sort(Comparator.comparing(File::getPath));
+        return files;
+    }
+
+    /**
+     * Compiles every file concurrently
+     * @param files Input files
+     * @return One result per file, in the same order as the input
+     */
+    public List<FileResult> compile(List<File> files) {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(this.numThreads, Math.max(1, files.size())));
+
+        try {
+            List<Callable<FileResult>> tasks = new ArrayList<>();
+            for (File file : files) {
+                tasks.add(() -> compileFile(file, this.config, this.cache));
+            }
+
+            List<FileResult> results = new ArrayList<>();
+            List<Future<FileResult>> futures = executor.invokeAll(tasks);
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    results.add(FileResult.failed(files.get(i), Stage.OTHER, e.getCause()));
+                }
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Batch compilation was interrupted", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Runs the {@link Pipeline} for a single file, which stops at the first stage that reports errors
+     * @param file Input file
+     * @param config Base configuration, "inputFile" is set to the given file
+     * @return Result of the compilation
+     */
+    public static FileResult compileFile(File file, Map<String, String> config) {
+        return compileFile(file, config, null);
+    }
+
+    /**
+     * Same as {@link #compileFile(File, Map)}, but skips every stage whose result is already in the given cache and
+     * stores the results of the stages that were run.
+     * @param cache Build cache, or null to run every stage
+     */
+    public static FileResult compileFile(File file, Map<String, String> config, BuildCache cache) {
+        Map<String, String> fileConfig = new HashMap<>(config);
+        fileConfig.put("inputFile", file.getPath());
+
+        String code;
+        try {
+            code = SpecsIo.read(file);
+        } catch (Exception e) {
+            return FileResult.failed(file, Stage.OTHER, e);
+        }
+
+        Pipeline pipeline = Pipeline.createDefault(fileConfig);
+        pipeline.setCache(cache);
+        Pipeline.PipelineResult result = pipeline.run(code, fileConfig);
+
+        JasminResult jasminResult = result.getJasminResult();
+        if (jasminResult instanceof ClassFileResult classFileResult) {
+            return new FileResult(file, result.getReports(), jasminResult.getClassName(), null,
+                    classFileResult.getClassFile(), result.getMetrics());
+        }
+        return new FileResult(file, result.getReports(),
+                jasminResult != null ? jasminResult.getClassName() : null,
+                jasminResult != null ? jasminResult.getJasminCode() : null,
+                null, result.getMetrics());
+    }
+
+    /**
+     * Writes the generated file of every successful compilation
+     * @param outputDir Folder of the generated files, or null to write each one next to its input
+     * @return The files written
+     */
+    public static List<File> writeOutputs(List<FileResult> results, File outputDir) {
+        List<File> outputFiles = new ArrayList<>();
+        for (FileResult result : results) {
+            if (result.isSuccess()) {
+                outputFiles.add(result.writeOutput(outputDir));
+            }
+        }
+        return outputFiles;
+    }
+
+    /**
+     * Prints the reports of every file followed by a summary
+     * @param results Results of a batch compilation
+     * @return Number of files that failed to compile
+     */
+    public static int printSummary(List<FileResult> results) {
+        int failed = 0;
+
+        for (FileResult result : results) {
+            if (result.isSuccess()) {
+                System.out.println("[OK]     " + result.getFile());
+            } else {
+                System.out.println("[FAILED] " + result.getFile());
+                failed++;
+            }
+            for (Report report : result.getReports()) {
+                System.out.println("\t" + report);
+            }
+        }
+
+        System.out.println("\nCompiled " + results.size() + " file(s): " + (results.size() - failed) + " succeeded, " + failed + " failed.");
+        return failed;
+    }
+
+    public static class FileResult {
+
+        private final File file;
+        private final List<Report> reports;
+        private final String className;
+        private final String jasminCode;
+
+        private final byte[] classFile;
+        private final List<Pipeline.StepMetrics> metrics;
+
+        public FileResult(File file, List<Report> reports, String className, String jasminCode) {
+            this(file, reports, className, jasminCode, null, Collections.emptyList());
+        }
+
+        public FileResult(File file, List<Report> reports, String className, String jasminCode, byte[] classFile,
+                          List<Pipeline.StepMetrics> metrics) {
+            this.file = file;
+            this.reports = reports;
+            this.className = className;
+            this.jasminCode = jasminCode;
+            this.classFile = classFile;
+            this.metrics = metrics;
+        }
+
+        static FileResult failed(File file, Stage stage, Throwable cause) {
+            Exception e = cause instanceof Exception ? (Exception) cause : new RuntimeException(cause);
+            Report report = Report.newError(stage, -1, -1, "Exception during compilation: " + e.getMessage(), e);
+            return new FileResult(file, Collections.singletonList(report), null, null);
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public List<Report> getReports() {
+            return reports;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        /**
+         * @return The Jasmin code, or null if the class file was written directly
+         */
+        public String getJasminCode() {
+            return jasminCode;
+        }
+
+        /**
+         * @return The class file, or null if Jasmin code was generated instead
+         */
+        public byte[] getClassFile() {
+            return classFile;
+        }
+
+        /**
+         * @return Wall time and allocations of each stage that was run for this file
+         */
+        public List<Pipeline.StepMetrics> getMetrics() {
+            return metrics;
+        }
+
+        /**
+         * Writes the generated file, a ".class" file with the "classfile" backend and a ".j" file otherwise
+         * @param outputDir Folder of the generated file, or null to write it next to the input
+         * @return The file written
+         */
+        public File writeOutput(File outputDir) {
+            File dir = outputDir != null ? outputDir : file.getAbsoluteFile().getParentFile();
+            if (classFile == null) {
+                File outputFile = new File(dir, className + ".j");
+                SpecsIo.write(outputFile, jasminCode);
+                return outputFile;
+            }
+
+            File outputFile = new File(dir, className + ".class");
+            try {
+                SpecsIo.mkdir(dir);
+                Files.write(outputFile.toPath(), classFile);
+            } catch (IOException e) {
+                SpecsLogs.warn("Could not write class file " + outputFile + ": " + e.getMessage());
+            }
+            return outputFile;
+        }
+
+        public boolean isSuccess() {
+            return (jasminCode != null || classFile != null) && !Pipeline.hasErrors(reports);
+        }
+    }
+}
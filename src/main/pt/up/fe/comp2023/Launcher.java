@@ -1,20 +1,17 @@
 package pt.up.fe.comp2023;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import pt.up.fe.comp.TestUtils;
-import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
-import pt.up.fe.comp.jmm.jasmin.JasminResult;
-import pt.up.fe.comp.jmm.ollir.OllirResult;
-import pt.up.fe.comp.jmm.parser.JmmParserResult;
-import pt.up.fe.comp2023.analysis.Analysis;
-import pt.up.fe.comp2023.jasmin.JasminGenerator;
-import pt.up.fe.comp2023.ollir.Ollir;
-import pt.up.fe.comp2023.symbol.table.Table;
-import pt.up.fe.comp2023.symbol.table.TableVisitor;
+import pt.up.fe.comp2023.cache.BuildCache;
+import pt.up.fe.comp2023.daemon.CompileDaemon;
+import pt.up.fe.comp2023.daemon.DaemonClient;
+import pt.up.fe.comp2023.jasmin.ClassFileResult;
 import pt.up.fe.specs.util.SpecsIo;
 import pt.up.fe.specs.util.SpecsLogs;
 import pt.up.fe.specs.util.SpecsSystem;
@@ -28,6 +25,24 @@ public class Launcher {
         // Parse arguments as a map with predefined options
         var config = parseArgs(args);
 
+        // Keep a warm compiler alive and serve requests from clients
+        if (config.containsKey("daemon")) {
+            runDaemon(config);
+            return;
+        }
+
+        // Forward the compilation to a running daemon
+        if (config.containsKey("client")) {
+            runClient(config);
+            return;
+        }
+
+        // Several files or a folder, compile all of them in this JVM
+        if (config.containsKey("inputFiles")) {
+            runBatch(config);
+            return;
+        }
+
         // Get input file
         File inputFile = new File(config.get("inputFile"));
         // Check if file exists
@@ -39,65 +54,173 @@ public class Launcher {
         // Read contents of input file
         String code = SpecsIo.read(inputFile);
 
-        // Instantiate JmmParser
-        SimpleParser parser = new SimpleParser();
+        // Run every stage once, stopping at the first one with errors, or skipping the ones the cache already ran
+        Pipeline pipeline = Pipeline.createDefault(config);
+        BuildCache cache = BuildCache.fromConfig(config);
+        pipeline.setCache(cache);
+        Pipeline.PipelineResult result = pipeline.run(code, config);
+        if (cache != null) {
+            cache.writeMetrics();
+        }
 
-        // Parse stage
-        JmmParserResult parserResult = parser.parse(code, config);
+        boolean debug = Boolean.parseBoolean(config.get("debug"));
+        if (debug) {
+            if (result.getParserResult() != null) {
+                System.out.println(result.getParserResult().getRootNode().toTree());
+            }
+            if (result.getSemanticsResult() != null) {
+                System.out.println(result.getSemanticsResult().getSymbolTable().print());
+            }
+        }
 
-        // Remove after testing
+        // OLLIR built directly is only printed when debugging
+        if (result.getOllirCode() != null && (debug || !"direct".equals(config.get("ollir")))) {
+            System.out.println("ollirResult: " + result.getOllirCode());
+        }
+        if (result.getJasminResult() instanceof ClassFileResult classFileResult) {
+            File classFile = classFileResult.compile(new File(config.getOrDefault("outputDir", ".")));
+            System.out.println("Wrote " + classFile.getPath());
+        } else if (result.getJasminResult() != null) {
+            System.out.println("jasminResult:\n" + result.getJasminResult().getJasminCode());
+        }
 
-        Table table = new Table();
-        TableVisitor visitor = new TableVisitor(table);
-        visitor.visit(parserResult.getRootNode(), "");
-        System.out.println("Called semanticAnalysis");
-        // ------------------------
+        System.out.println("\nStage timings:");
+        result.getMetrics().forEach(metrics -> System.out.println("\t" + metrics));
 
+        if (result.getFailedStep() != null) {
+            System.out.println("\nCompilation failed at " + result.getFailedStep() + ":");
+            result.getReports().forEach(report -> System.out.println("\t" + report));
+            System.exit(1);
+        }
+    }
 
-        // Check if there are parsing errors
-        TestUtils.noErrors(parserResult.getReports());
+    private static void runBatch(Map<String, String> config) {
+        List<String> paths = Arrays.asList(config.get("inputFiles").split(File.pathSeparator));
+        List<File> inputFiles = BatchCompiler.collectInputs(paths);
+        int threads = Integer.parseInt(config.get("threads"));
 
-        //Prints the tree nodes
-        System.out.println(parserResult.getRootNode().toTree());
+        BatchCompiler compiler = new BatchCompiler(config, threads);
+        List<BatchCompiler.FileResult> results = compiler.compile(inputFiles);
 
-        // ... add remaining stages
-        Analysis analysis = new Analysis();
+        if (compiler.getCache() != null) {
+            compiler.getCache().writeMetrics();
+        }
 
-        System.out.println("\n\nPrinting Symbol Table\n");
+        File outputDir = config.containsKey("outputDir") ? new File(config.get("outputDir")) : null;
+        BatchCompiler.writeOutputs(results, outputDir).forEach(file -> System.out.println("Wrote " + file.getPath()));
 
-        JmmSemanticsResult result = new Analysis().semanticAnalysis(parserResult);
-        analysis.semanticAnalysis(parserResult);
+        int failed = BatchCompiler.printSummary(results);
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
 
-        //JmmSemanticsResult result = new JmmSemanticsResult(parserResult.getRootNode(), table, parserResult.getReports(), parserResult.getConfig());
+    private static void runDaemon(Map<String, String> config) {
+        int port = Integer.parseInt(config.get("port"));
+        int threads = Integer.parseInt(config.get("threads"));
 
-        if (result.getReports().size() > 0) {
-            System.out.println("Semantic Errors were detected. Aborting execution...");
-        } else {
-            OllirResult ollirResult = new Ollir().toOllir(result);
+        CompileDaemon daemon = new CompileDaemon(config, port, threads);
+        try {
+            daemon.start();
+        } catch (IOException e) {
+            throw new RuntimeException("Could not start compile daemon on port " + port, e);
+        }
+        daemon.serve();
+    }
 
-            System.out.println("ollirResult: " + ollirResult.getOllirCode());
+    private static void runClient(Map<String, String> config) {
+        List<String> paths = Arrays.asList(config.get("inputFiles").split(File.pathSeparator));
+        File outputDir = config.containsKey("outputDir") ? new File(config.get("outputDir")) : null;
+        DaemonClient client = new DaemonClient(Integer.parseInt(config.get("port")));
 
-            JasminResult jasminResult = new JasminGenerator().toJasmin(ollirResult);
-            System.out.println("jasminResult:\n" + jasminResult.getJasminCode());
+        List<String> response;
+        try {
+            response = client.compile(BatchCompiler.collectInputs(paths), outputDir);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not reach compile daemon, is './jmm --daemon' running?", e);
+        }
+
+        response.forEach(System.out::println);
+        if (DaemonClient.getNumFailed(response) != 0) {
+            System.exit(1);
         }
     }
 
     private static Map<String, String> parseArgs(String[] args) {
         SpecsLogs.info("Executing with args: " + Arrays.toString(args));
 
-        // Check if there is at least one argument
-        if (args.length != 1) {
-            throw new RuntimeException("Expected a single argument, a path to an existing input file.");
+        // Separate options from input paths
+        List<String> inputs = new ArrayList<>();
+        Map<String, String> config = new HashMap<>();
+        String threads = String.valueOf(Runtime.getRuntime().availableProcessors());
+        String port = String.valueOf(CompileDaemon.DEFAULT_PORT);
+        for (String arg : args) {
+            if (arg.startsWith("--threads=")) {
+                threads = checkAtLeast("--threads", arg.substring("--threads=".length()), 1);
+            } else if (arg.startsWith("--port=")) {
+                port = checkAtLeast("--port", arg.substring("--port=".length()), 1);
+            } else if (arg.startsWith("--out=")) {
+                config.put("outputDir", arg.substring("--out=".length()));
+            } else if (arg.equals("--cache")) {
+                config.put("cacheDir", BuildCache.DEFAULT_DIR);
+            } else if (arg.startsWith("--cache=")) {
+                config.put("cacheDir", arg.substring("--cache=".length()));
+            } else if (arg.equals("--daemon")) {
+                config.put("daemon", "true");
+            } else if (arg.equals("--client")) {
+                config.put("client", "true");
+            } else if (arg.startsWith("--backend=")) {
+                config.put("backend", arg.substring("--backend=".length()));
+            } else if (arg.startsWith("--ollir=")) {
+                config.put("ollir", arg.substring("--ollir=".length()));
+            } else if (arg.startsWith("--max-errors=")) {
+                config.put("maxErrors", checkAtLeast("--max-errors", arg.substring("--max-errors=".length()), 1));
+            } else if (arg.equals("-o")) {
+                config.put("optimize", "true");
+            } else if (arg.startsWith("--inline=")) {
+                config.put("inlineBudget", checkAtLeast("--inline", arg.substring("--inline=".length()), 0));
+            } else if (arg.startsWith("-r=")) {
+                config.put("registerAllocation", checkAtLeast("-r", arg.substring("-r=".length()), -1));
+            } else if (arg.equals("--debug")) {
+                config.put("debug", "true");
+            } else {
+                inputs.add(arg);
+            }
+        }
+
+        // Check if there is at least one input, the daemon receives them from its clients
+        if (inputs.isEmpty() && !config.containsKey("daemon")) {
+            throw new RuntimeException("Expected at least one argument, a path to an existing input file or folder.");
         }
 
         // Create config
-        Map<String, String> config = new HashMap<>();
-        config.put("inputFile", args[0]);
-        config.put("optimize", "false");
-        config.put("registerAllocation", "-1");
-        config.put("debug", "false");
+        config.put("port", port);
+        if (config.containsKey("daemon")) {
+            config.put("threads", threads);
+        } else if (inputs.size() == 1 && !new File(inputs.get(0)).isDirectory() && !config.containsKey("client")) {
+            config.put("inputFile", inputs.get(0));
+        } else {
+            config.put("inputFiles", String.join(File.pathSeparator, inputs));
+            config.put("threads", threads);
+        }
+        config.putIfAbsent("optimize", "false");
+        config.putIfAbsent("registerAllocation", "-1");
+        config.putIfAbsent("backend", "jasmin");
+        config.putIfAbsent("ollir", "text");
+        config.putIfAbsent("debug", "false");
 
         return config;
     }
+
+    private static String checkAtLeast(String option, String value, int min) {
+        try {
+            if (Integer.parseInt(value) >= min) {
+                return value;
+            }
+        } catch (NumberFormatException ignored) {
+        }
+        throw new RuntimeException("Expected an integer of at least " + min + " for " + option + ", got '" + value
+                + "'.");
+    }
 }
 
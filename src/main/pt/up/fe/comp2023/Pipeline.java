@@ -0,0 +1,340 @@
+package pt.up.fe.comp2023;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp.jmm.ast.JmmSerializer;
+import pt.up.fe.comp.jmm.jasmin.JasminBackend;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.JmmOptimization;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParser;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.cache.BuildCache;
+import pt.up.fe.comp2023.jasmin.ClassFileGenerator;
+import pt.up.fe.comp2023.jasmin.ClassFileResult;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.comp2023.ollir.Ollir;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Runs the compilation stages in order, each one exactly once, passing the result of a stage to the next one and
+ * stopping at the first stage that reports an error.
+ * <p>
+ * The stages keep mutable state, so a pipeline must not be shared between threads.
+ */
+public class Pipeline {
+
+    public enum Step {
+        PARSE(Stage.SYNTATIC),
+        ANALYSIS(Stage.SEMANTIC),
+        AST_OPTIMIZATION(Stage.OPTIMIZATION),
+        OLLIR(Stage.LLIR),
+        OLLIR_OPTIMIZATION(Stage.OPTIMIZATION),
+        JASMIN(Stage.GENERATION);
+
+        private final Stage stage;
+
+        Step(Stage stage) {
+            this.stage = stage;
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+    }
+
+    // Serializes the AST stored in the cache, read back with JmmNodeImpl.fromJson
+    private static final Gson AST_GSON = new GsonBuilder().registerTypeAdapter(JmmNode.class, new JmmSerializer()).create();
+
+    private final JmmParser parser;
+    private final JmmAnalysis analysis;
+    private final JmmOptimization optimization;
+    private final JasminBackend backend;
+    private BuildCache cache;
+
+    public Pipeline(JmmParser parser, JmmAnalysis analysis, JmmOptimization optimization, JasminBackend backend) {
+        this.parser = parser;
+        this.analysis = analysis;
+        this.optimization = optimization;
+        this.backend = backend;
+    }
+
+    /**
+     * @return A pipeline with the stages of this project
+     */
+    public static Pipeline createDefault() {
+        return new Pipeline(new SimpleParser(), new Analysis(), new Ollir(), new JasminGenerator());
+    }
+
+    /**
+     * Same as {@link #createDefault()}, but writes class files directly when the "backend" config is "classfile"
+     */
+    public static Pipeline createDefault(Map<String, String> config) {
+        JasminBackend backend = "classfile".equals(config.get("backend")) ? new ClassFileGenerator() : new JasminGenerator();
+        return new Pipeline(new SimpleParser(), new Analysis(), new Ollir(), backend);
+    }
+
+    /**
+     * Creates a pipeline with the stage classes named in a properties file, with the same keys used by the tests
+     * (ParserClass, AnalysisClass, OptimizationClass and BackendClass)
+     * @param filename Path to the properties file, usually "config.properties"
+     */
+    public static Pipeline fromConfigFile(String filename) {
+        Properties properties = TestUtils.loadProperties(filename);
+
+        return new Pipeline(
+                instantiate(properties, "ParserClass", JmmParser.class),
+                instantiate(properties, "AnalysisClass", JmmAnalysis.class),
+                instantiate(properties, "OptimizationClass", JmmOptimization.class),
+                instantiate(properties, "BackendClass", JasminBackend.class));
+    }
+
+    private static <T> T instantiate(Properties properties, String property, Class<T> stageClass) {
+        String className = properties.getProperty(property, "").trim();
+        if (className.isEmpty()) {
+            throw new RuntimeException("Property '" + property + "' is empty, expected the name of a " + stageClass.getSimpleName());
+        }
+
+        try {
+            return stageClass.cast(Class.forName(className).getConstructor().newInstance());
+        } catch (Exception e) {
+            throw new RuntimeException("Could not instantiate " + stageClass.getSimpleName() + " from class '" + className + "'", e);
+        }
+    }
+
+    /**
+     * Sets a cache used to skip the stages whose results were stored by a previous run
+     */
+    public void setCache(BuildCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Compiles the given code
+     * @param code Java-- source code
+     * @param config Compilation config
+     * @return Results of every stage that was run
+     */
+    public PipelineResult run(String code, Map<String, String> config) {
+        PipelineResult result = new PipelineResult();
+        String key = cache != null ? cache.key(code, config) : null;
+
+        // Results stored by a previous run
+        if (cache != null) {
+            Optional<String> jasminCode = cache.get(key, BuildCache.Kind.JASMIN);
+            if (jasminCode.isPresent()) {
+                List<Report> reports = cache.getReports(key, BuildCache.Kind.JASMIN);
+                result.jasminResult = new JasminResult(getClassName(jasminCode.get()), jasminCode.get(), reports, config);
+                result.reports = result.jasminResult.getReports();
+                result.cachedOllirCode = cache.peek(key, BuildCache.Kind.OLLIR).orElse(null);
+                return result;
+            }
+
+            Optional<String> ollirCode = cache.get(key, BuildCache.Kind.OLLIR);
+            if (ollirCode.isPresent()) {
+                Supplier<OllirResult> ollir = () -> {
+                    OllirResult ollirResult = new OllirResult(ollirCode.get(), config);
+                    ollirResult.getReports().addAll(cache.getReports(key, BuildCache.Kind.OLLIR));
+                    return ollirResult;
+                };
+                if (!runStep(result, Step.OLLIR, ollir, r -> r.ollirResult = null)) return result;
+                runBackend(result, key);
+                return result;
+            }
+        }
+
+        // Parse
+        Optional<String> ast = cache != null ? cache.get(key, BuildCache.Kind.AST) : Optional.empty();
+        Supplier<JmmParserResult> parse = ast.isPresent()
+                ? () -> new JmmParserResult(JmmNodeImpl.fromJson(ast.get()), cache.getReports(key, BuildCache.Kind.AST), config)
+                : () -> parser.parse(code, config);
+        if (!runStep(result, Step.PARSE, parse, r -> r.parserResult = null)) return result;
+        if (cache != null && ast.isEmpty()) {
+            cache.put(key, BuildCache.Kind.AST, AST_GSON.toJson(result.parserResult.getRootNode(), JmmNode.class), result.reports);
+        }
+
+        // Semantic analysis
+        if (!runStep(result, Step.ANALYSIS, () -> analysis.semanticAnalysis(result.parserResult), r -> r.semanticsResult = null)) return result;
+
+        // AST optimizations and OLLIR generation
+        if (!runStep(result, Step.AST_OPTIMIZATION, () -> optimization.optimize(result.semanticsResult), r -> r.semanticsResult = null)) return result;
+        if (!runStep(result, Step.OLLIR, () -> optimization.toOllir(result.semanticsResult), r -> r.ollirResult = null)) return result;
+        if (cache != null) {
+            cache.put(key, BuildCache.Kind.OLLIR, result.ollirResult.getOllirCode(), result.reports);
+        }
+
+        runBackend(result, key);
+        return result;
+    }
+
+    private void runBackend(PipelineResult result, String key) {
+        if (!runStep(result, Step.OLLIR_OPTIMIZATION, () -> optimization.optimize(result.ollirResult), r -> r.ollirResult = null)) return;
+        if (!runStep(result, Step.JASMIN, () -> backend.toJasmin(result.ollirResult), r -> r.jasminResult = null)) return;
+
+        // Class files are not cached, their Jasmin code is only generated on request
+        if (cache != null && !(result.jasminResult instanceof ClassFileResult)) {
+            cache.put(key, BuildCache.Kind.JASMIN, result.jasminResult.getJasminCode(), result.reports);
+        }
+    }
+
+    /**
+     * Runs a single step, storing its result and how long it took
+     * @return true if the step did not report errors
+     */
+    private <T> boolean runStep(PipelineResult result, Step step, Supplier<T> stage, ResultSetter clear) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long startAllocated = getAllocatedBytes(threads);
+        long start = System.nanoTime();
+
+        T stageResult;
+        try {
+            stageResult = stage.get();
+        } catch (Exception e) {
+            stageResult = null;
+            result.reports = new ArrayList<>(result.reports);
+            result.reports.add(Report.newError(step.getStage(), -1, -1, "Exception during " + step + ": " + e.getMessage(), e));
+        }
+
+        long elapsed = System.nanoTime() - start;
+        long allocated = startAllocated < 0 ? -1 : getAllocatedBytes(threads) - startAllocated;
+        result.metrics.add(new StepMetrics(step, elapsed, allocated));
+
+        if (stageResult instanceof JmmParserResult parserResult) {
+            result.parserResult = parserResult;
+            result.reports = parserResult.getReports();
+        } else if (stageResult instanceof JmmSemanticsResult semanticsResult) {
+            result.semanticsResult = semanticsResult;
+            result.reports = semanticsResult.getReports();
+        } else if (stageResult instanceof OllirResult ollirResult) {
+            result.ollirResult = ollirResult;
+            result.reports = ollirResult.getReports();
+        } else if (stageResult instanceof JasminResult jasminResult) {
+            result.jasminResult = jasminResult;
+            result.reports = jasminResult.getReports();
+        } else if (result.failedStep == null && !hasErrors(result.reports)) {
+            // The stage returned nothing without reporting why
+            result.reports = new ArrayList<>(result.reports);
+            result.reports.add(new Report(ReportType.ERROR, step.getStage(), -1, step + " did not produce a result"));
+        }
+
+        if (hasErrors(result.reports)) {
+            result.failedStep = step;
+            clear.clear(result);
+            return false;
+        }
+        return true;
+    }
+
+    private static long getAllocatedBytes(ThreadMXBean threads) {
+        if (threads instanceof com.sun.management.ThreadMXBean sunThreads && sunThreads.isThreadAllocatedMemorySupported()) {
+            return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+
+    static boolean hasErrors(List<Report> reports) {
+        return reports.stream().anyMatch(report -> report.getType() == ReportType.ERROR);
+    }
+
+    /**
+     * @return Name of the class declared in the ".class" directive of the given Jasmin code
+     */
+    private static String getClassName(String jasminCode) {
+        for (String line : jasminCode.split("\n")) {
+            if (line.startsWith(".class ")) {
+                String[] tokens = line.trim().split("\\s+");
+                return tokens[tokens.length - 1];
+            }
+        }
+        return "DummyClass";
+    }
+
+    private interface ResultSetter {
+        void clear(PipelineResult result);
+    }
+
+    /**
+     * Wall time and bytes allocated by the current thread while running a step
+     */
+    public record StepMetrics(Step step, long nanos, long allocatedBytes) {
+
+        @Override
+        public String toString() {
+            String allocated = allocatedBytes < 0 ? "n/a" : (allocatedBytes / 1024) + " KiB";
+            return String.format("%-18s %9.3f ms %12s", step, nanos / 1e6, allocated);
+        }
+    }
+
+    public static class PipelineResult {
+
+        private JmmParserResult parserResult;
+        private JmmSemanticsResult semanticsResult;
+        private OllirResult ollirResult;
+        private String cachedOllirCode;
+        private JasminResult jasminResult;
+        private List<Report> reports = new ArrayList<>();
+        private Step failedStep;
+        private final List<StepMetrics> metrics = new ArrayList<>();
+
+        public JmmParserResult getParserResult() {
+            return parserResult;
+        }
+
+        public JmmSemanticsResult getSemanticsResult() {
+            return semanticsResult;
+        }
+
+        public OllirResult getOllirResult() {
+            return ollirResult;
+        }
+
+        /**
+         * @return The OLLIR code, also when only the Jasmin code was run from the cache, or null if there is none
+         */
+        public String getOllirCode() {
+            return ollirResult != null ? ollirResult.getOllirCode() : cachedOllirCode;
+        }
+
+        public JasminResult getJasminResult() {
+            return jasminResult;
+        }
+
+        /**
+         * @return Reports of the last step that was run, which include the reports of the previous steps
+         */
+        public List<Report> getReports() {
+            return reports;
+        }
+
+        /**
+         * @return The step that reported an error, or null if every step succeeded
+         */
+        public Step getFailedStep() {
+            return failedStep;
+        }
+
+        public boolean isSuccess() {
+            return failedStep == null && jasminResult != null;
+        }
+
+        /**
+         * @return Metrics of every step that was run, in order. Steps skipped thanks to the cache are not listed.
+         */
+        public List<StepMetrics> getMetrics() {
+            return metrics;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package pt.up.fe.comp2023.analysis;
 import pt.up.fe.comp.jmm.analysis.JmmAnalysis;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.parser.JmmParserResult;
 import pt.up.fe.comp.jmm.report.Report;
@@ -16,17 +17,13 @@ public class Analysis implements JmmAnalysis {
 
     Table table;
     //Recalculated for Every Method:
-    List<Symbol> vars; //Relevant Vars for the current method
+    Scope classScope; //Fields of the class
+    Scope scope; //Variables visible in the code being analyzed
     Boolean isMethodStatic, isMethodPrivate;
     String methodName, returnType;
 
     private boolean isField(String name){
-        for(Symbol field : table.getFields()){
-            if(field.getName() == name){
-                return true;
-            }
-        }
-        return false;
+        return scope.isField(name);
     }
 
     /**
@@ -47,15 +44,6 @@ public class Analysis implements JmmAnalysis {
         return res;
     }
 
-    /**
-     * Updates List of Relevant Vars for the method currently being Analyzed
-     */
-    private void updateRelevantVars() {
-        vars = table.getLocalVariables(methodName);
-        vars.addAll(table.getParameters(methodName));
-        vars.addAll(table.getFields());
-    }
-
     /**
      * Creates a new object Report
      * @param node Node where the error was detected
@@ -67,16 +55,6 @@ public class Analysis implements JmmAnalysis {
         return new Report(ReportType.ERROR, Stage.SEMANTIC, startLine, startColumn, message);
     }
 
-    /**
-     * Erases Duplicates in a List of Reports
-     * @param reports List with duplicates
-     * @return List without duplicates
-     */
-    private List<Report> eraseDuplicateReports(List<Report> reports) {
-        Set<Report> set = new HashSet<>(reports);
-        return new ArrayList<>(set);
-    }
-
     /**
      * Checks if a given class is imported in the file
      * @param className Class we desire to check
@@ -99,13 +77,8 @@ public class Analysis implements JmmAnalysis {
      * @return true if is an array or false if it is not an array or is not declared
      */
     private Boolean isVarArray(String varName) {
-        for (Symbol var : vars) {
-            if (Objects.equals(var.getName(), varName)) {
-                if (var.getType().isArray())
-                    return true;
-            }
-        }
-        return false;
+        Symbol var = scope.lookup(varName);
+        return var != null && var.getType().isArray();
     }
 
     /**
@@ -114,15 +87,13 @@ public class Analysis implements JmmAnalysis {
      * @return null if not declared, String with the name of the type if otherwise
      */
     private String getVarType(String varName) {
-        for (Symbol var : vars) {
-            if (Objects.equals(var.getName(), varName)) {
-                if (var.getType().isArray() && !Objects.equals(var.getType().getName(), "String"))
-                    return var.getType().getName() + "[]";
-                else
-                    return var.getType().getName();
-            }
-        }
-        return null;
+        Symbol var = scope.lookup(varName);
+        if (var == null)
+            return null;
+        else if (var.getType().isArray() && !Objects.equals(var.getType().getName(), "String"))
+            return var.getType().getName() + "[]";
+        else
+            return var.getType().getName();
     }
 
     /**
@@ -190,28 +161,27 @@ public class Analysis implements JmmAnalysis {
 
     /**
      * Checks for errors inside a Node of kind BinaryOp
-     * @param reports List of reports registered so far in the analysis
+     * @param diagnostics Sink of the reports of the analysis
      * @param node BinaryOp node to be checked
-     * @return Updated list of reports with possible new errors detected inside this node
      */
-    private List<Report> visitBinaryOp(List<Report> reports, JmmNode node) {
+    private void visitBinaryOp(Diagnostics diagnostics, JmmNode node) {
         String operator = node.get("op");
         JmmNode first = node.getChildren().get(0), second = node.getChildren().get(1);
         String firstType, secondType;
         switch (first.getKind()) {
             case "Identifier" -> {
                 firstType = getVarType(first.get("value"));
-                reports.addAll(visitIdentifier(reports, first, firstType));
+                visitIdentifier(diagnostics, first, firstType);
             }
             case "Boolean" -> firstType = "boolean";
             case "Integer" -> firstType = "int";
             case "BinaryOp" -> {
                 firstType = getTypeOfBinaryOp(first);
-                reports.addAll(visitBinaryOp(reports, first));
+                visitBinaryOp(diagnostics, first);
             }
             case "ArrayAccess" ->{
                 firstType = getArrayAccessReturn(first);
-                reports.addAll(visitArrayAccess(reports,first));
+                visitArrayAccess(diagnostics, first);
             }
             default -> {
                 firstType = "invalid_type";
@@ -220,17 +190,17 @@ public class Analysis implements JmmAnalysis {
         switch (second.getKind()) {
             case "Identifier" -> {
                 secondType = getVarType(second.get("value"));
-                reports.addAll(visitIdentifier(reports, second, secondType));
+                visitIdentifier(diagnostics, second, secondType);
             }
             case "Boolean" -> secondType = "boolean";
             case "Integer" -> secondType = "int";
             case "BinaryOp" -> {
                 secondType = getTypeOfBinaryOp(second);
-                reports.addAll(visitBinaryOp(reports, second));
+                visitBinaryOp(diagnostics, second);
             }
             case "ArrayAccess" ->{
                 secondType = getArrayAccessReturn(second);
-                reports.addAll(visitArrayAccess(reports,second));
+                visitArrayAccess(diagnostics, second);
             }
             default -> {
                 secondType = "invalid_type";
@@ -253,7 +223,7 @@ public class Analysis implements JmmAnalysis {
                 //If Type of one of the operands is invalid, the problem is already reported
                 if (!Objects.equals(firstType, "invalid_type") && !Objects.equals(secondType, "invalid_type")) {
                     if (!Objects.equals(firstType, "int") || !Objects.equals(secondType, "int")) {
-                        reports.add(createReport(node, "Cannot use '" + operator + "' between '" + firstType + "' and '" + secondType + "'."));
+                        diagnostics.add(createReport(node, "Cannot use '" + operator + "' between '" + firstType + "' and '" + secondType + "'."));
                     }
                 }
                 break;
@@ -261,7 +231,7 @@ public class Analysis implements JmmAnalysis {
             case "&&":
             case "||":
                 if (!Objects.equals(firstType, "boolean") || !Objects.equals(secondType, "boolean")) {
-                    reports.add(createReport(node, "Cannot use '" + operator + "' between '" + firstType + "' and '" + secondType + "'. Both should be 'boolean'."));
+                    diagnostics.add(createReport(node, "Cannot use '" + operator + "' between '" + firstType + "' and '" + secondType + "'. Both should be 'boolean'."));
                 }
                 break;
                 //Bitwise Operators (Can only be used between ints)
@@ -269,46 +239,43 @@ public class Analysis implements JmmAnalysis {
             case "|":
             case "^":
                 if (!Objects.equals(firstType, "int") || !Objects.equals(secondType, "int")) {
-                    reports.add(createReport(node, "Cannot use '" + operator + "' between '" + firstType + "' and '" + secondType + "'. Both should be 'int'."));
+                    diagnostics.add(createReport(node, "Cannot use '" + operator + "' between '" + firstType + "' and '" + secondType + "'. Both should be 'int'."));
                 }
                 break;
             default:
                 break;
         }
-        return reports;
     }
 
     /**
      * Checks a JmmNode of Kind Return for errors
-     * @param reports List of Reports regstered so far in the analysis
+     * @param diagnostics Sink of the reports of the analysis
      * @param root Return Node to be checked
-     * @return Updated List of Reports with possible new errors detected inside this node
      */
-    private List<Report> visitReturn(List<Report> reports, JmmNode root) {
+    private void visitReturn(Diagnostics diagnostics, JmmNode root) {
         JmmNode child = root.getChildren().get(0);
-        updateRelevantVars();
         switch (child.getKind()) {
             case "Integer":
                 if (!Objects.equals(returnType, "int")) {
-                    reports.add(createReport(child, "Method " + methodName + " should return " + returnType + " but is returning 'int'."));
+                    diagnostics.add(createReport(child, "Method " + methodName + " should return " + returnType + " but is returning 'int'."));
                 }
                 break;
             case "Boolean":
                 if (!Objects.equals(returnType, "boolean")) {
-                    reports.add(createReport(child, "Method " + methodName + " should return " + returnType + " but is returning 'boolean'."));
+                    diagnostics.add(createReport(child, "Method " + methodName + " should return " + returnType + " but is returning 'boolean'."));
                 }
                 break;
             case "Identifier":
                 String varName = child.get("value");
                 String varType = getVarType(varName);
-                reports.addAll(visitIdentifier(reports, child, varType));
+                visitIdentifier(diagnostics, child, varType);
                 break;
             case "BinaryOp":
                 String operationType = getTypeOfBinaryOp(child);
                 if (Objects.equals(operationType, "invalid_type")) {
-                    reports.addAll(visitBinaryOp(reports, child));
+                    visitBinaryOp(diagnostics, child);
                 } else if (!Objects.equals(operationType, returnType)) {
-                    reports.add(createReport(child, "Method " + methodName + " should return '" + returnType + "' but is returning '" + operationType + "'."));
+                    diagnostics.add(createReport(child, "Method " + methodName + " should return '" + returnType + "' but is returning '" + operationType + "'."));
                 }
                 break;
             case "MethodCalls":
@@ -319,25 +286,24 @@ public class Analysis implements JmmAnalysis {
                     if(table.getMethods().contains(calledMethodName)){ //method is declared
                         String methodReturnType = table.getReturnType(calledMethodName).getName();
                         if (!Objects.equals(methodReturnType, returnType)){
-                            reports.add(createReport(child, "Return type of " + methodName + " is '" + returnType + "' but " + calledMethodName + " returns '" + methodReturnType + "'."));
+                            diagnostics.add(createReport(child, "Return type of " + methodName + " is '" + returnType + "' but " + calledMethodName + " returns '" + methodReturnType + "'."));
                         }
                     }
                 }
-                reports.addAll(visitMethodCalls(reports, child));
+                visitMethodCalls(diagnostics, child);
                 break;
             case "ArrayAccess":
-                reports.addAll(visitArrayAccess(reports, child));
+                visitArrayAccess(diagnostics, child);
                 break;
             case "Self":
                 if(isMethodStatic){
-                    reports.add(createReport(child,"'this' cannot be used in a static method."));
+                    diagnostics.add(createReport(child,"'this' cannot be used in a static method."));
                 }
                 else if(!Objects.equals(returnType, table.getClassName()) && !Objects.equals(returnType, table.getSuper())){
-                    reports.add(createReport(child,"Returning '" + table.getClassName() + "' when expecting to return '" + returnType + "'."));
+                    diagnostics.add(createReport(child,"Returning '" + table.getClassName() + "' when expecting to return '" + returnType + "'."));
                 }
                 break;
         }
-        return reports;
     }
 
     /**
@@ -363,11 +329,10 @@ public class Analysis implements JmmAnalysis {
 
     /**
      * Visits a MethodCalls node and checks it for errors
-     * @param reports List of Reports of previously detected errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param root Node MethodCalls to check
-     * @return Updated List of Reports
      */
-    private List<Report> visitMethodCalls(List<Report> reports, JmmNode root) {
+    private void visitMethodCalls(Diagnostics diagnostics, JmmNode root) {
         JmmNode child = root.getJmmChild(0);
         String childKind = child.getKind();
         String calledMethodName = root.getJmmChild(1).get("methodName");
@@ -379,35 +344,35 @@ public class Analysis implements JmmAnalysis {
                 List<String> imports = table.getImports();
                 if (getVarType(calledOver) == null){
                     if (!isContainedInImports(calledOver, imports) && !Objects.equals(calledOver, className)) {
-                        reports.add(createReport(root, calledOver + " doesn't exist. Maybe you forgot to import a class or define a variable?"));
+                        diagnostics.add(createReport(root, calledOver + " doesn't exist. Maybe you forgot to import a class or define a variable?"));
                     }
                 }
                 if (Objects.equals(getVarType(calledOver), className) && !table.getMethods().contains(calledMethodName) && Objects.equals(table.getSuper(), "")) {
-                    reports.add(createReport(root, "Method " + calledMethodName + " is not declared."));
+                    diagnostics.add(createReport(root, "Method " + calledMethodName + " is not declared."));
                 }
                 break;
             case "Self":
                 if(isMethodStatic){
-                    reports.add(createReport(child,"'this' cannot be used in a static method."));
+                    diagnostics.add(createReport(child,"'this' cannot be used in a static method."));
                 }
                 else if(!table.getMethods().contains(calledMethodName) && Objects.equals(table.getSuper(),"")){
-                    reports.add(createReport(child,"Method " + calledMethodName + " is not declared."));
+                    diagnostics.add(createReport(child,"Method " + calledMethodName + " is not declared."));
                 }
                 break;
         }
         if (Objects.equals(getVarType(calledOver), table.getClassName()) && !table.getMethods().contains(calledMethodName) && Objects.equals(table.getSuper(), "")){
-            reports.add(createReport(child,"Method " + calledMethodName + " is not declared."));
+            diagnostics.add(createReport(child,"Method " + calledMethodName + " is not declared."));
         }
         else if(Objects.equals(getVarType(calledOver), table.getClassName()) && table.getMethods().contains(calledMethodName)) {
             List<Symbol> expectedParameters = table.getParameters(calledMethodName);
             List<String> receivedTypes = getTypeOfArgs(root.getJmmChild(1));
             if (expectedParameters == null){
                 if (receivedTypes.size() > 0) {
-                    reports.add(createReport(root, calledMethodName + " doesn't take any arguments but received" + receivedTypes.size() + "."));
+                    diagnostics.add(createReport(root, calledMethodName + " doesn't take any arguments but received" + receivedTypes.size() + "."));
                 }
             }
             else if (expectedParameters.size() != receivedTypes.size()) {
-                reports.add(createReport(root, calledMethodName + " expected " + expectedParameters.size() + " arguments but received " + receivedTypes.size() + "."));
+                diagnostics.add(createReport(root, calledMethodName + " expected " + expectedParameters.size() + " arguments but received " + receivedTypes.size() + "."));
             } else {
                 List<String> expectedTypes = new ArrayList<>();
                 for (Symbol arg : expectedParameters) {
@@ -418,13 +383,12 @@ public class Analysis implements JmmAnalysis {
                     String argName = expectedParameters.get(i).getName();
                     String expectedType = expectedParameters.get(i).getType().getName();
                     if (!Objects.equals(expectedType, receivedTypes.get(i))) {
-                        reports.add(createReport(root, "Argument " + argName + " of " + calledMethodName + " expected a " + expectedType + " but received " + receivedTypes.get(i)));
+                        diagnostics.add(createReport(root, "Argument " + argName + " of " + calledMethodName + " expected a " + expectedType + " but received " + receivedTypes.get(i)));
                     }
                     i++;
                 }
             }
         }
-        return reports;
     }
 
     /**
@@ -434,23 +398,17 @@ public class Analysis implements JmmAnalysis {
      */
     private String getArrayAccessReturn(JmmNode root) {
         JmmNode arrayChild = root.getJmmChild(0);
-        for (Symbol var : vars) {
-            if (Objects.equals(var.getName(), arrayChild.get("value"))) {
-                return var.getType().getName();
-            }
-        }
-        return null;
+        Symbol var = scope.lookup(arrayChild.get("value"));
+        return var == null ? null : var.getType().getName();
     }
 
     /**
      * Visits Assignment Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param root Assignement Node
-     * @return Updated List of Reports
      */
-    private List<Report> visitAssignment(List<Report> reports, JmmNode root) {
+    private void visitAssignment(Diagnostics diagnostics, JmmNode root) {
         JmmNode child = root.getChildren().get(0);
-        updateRelevantVars();
         String varType = getVarType(root.get("var"));
         String kind = child.getKind();
         switch (child.getKind()) {
@@ -461,11 +419,11 @@ public class Analysis implements JmmAnalysis {
                 if (child.getChildren().size() == 2) assignType += "[]";
                 if (varType == null) {
                     String message = "Variable " + root.get("var") + " does not exist.";
-                    reports.add(createReport(root, message));
+                    diagnostics.add(createReport(root, message));
                 } else if (!Objects.equals(varType, assignType)) {
                     if((!varType.equals(table.getClassName()) && !Objects.equals(assignType, table.getSuper())) && (!Objects.equals(assignType, table.getClassName()) && !varType.equals(table.getSuper()))) {
                         String message = "Assignment between a '" + varType + "' and a '" + assignType + "'.";
-                        reports.add(createReport(root, message));
+                        diagnostics.add(createReport(root, message));
                     }
                 }
                 break;
@@ -473,34 +431,34 @@ public class Analysis implements JmmAnalysis {
                 String arrayReturnType = getArrayAccessReturn(child);
                 String arrayType = getVarType(child.getJmmChild(0).get("value"));
                 if (!Objects.equals(arrayReturnType, varType)) {
-                    reports.add(createReport(child, "Assigning variable of type '" + varType + "' to element of array of type '" + arrayType + "'."));
+                    diagnostics.add(createReport(child, "Assigning variable of type '" + varType + "' to element of array of type '" + arrayType + "'."));
                 }
-                reports.addAll(visitArrayAccess(reports, child));
+                visitArrayAccess(diagnostics, child);
             case "Integer":
                 assignType = "int";
                 if (!Objects.equals(varType, assignType)) {
                     String message = "Assignment between a '" + varType + "' and a '" + assignType + "'.";
-                    reports.add(createReport(root, message));
+                    diagnostics.add(createReport(root, message));
                 }
                 break;
             case "Boolean":
                 assignType = "boolean";
                 if (!Objects.equals(varType, assignType)) {
                     String message = "Assignment between a '" + varType + "' and a '" + assignType + "'.";
-                    reports.add(createReport(root, message));
+                    diagnostics.add(createReport(root, message));
                 }
                 break;
             case "Identifier":
                 String varName = root.get("var");
                 String assignedVarType = getVarType(varName);
-                reports.addAll(visitIdentifier(reports, child, assignedVarType));
+                visitIdentifier(diagnostics, child, assignedVarType);
                 break;
             case "BinaryOp":
                 String operationType = getTypeOfBinaryOp(child);
                 if (Objects.equals(operationType, "invalid_type")) {
-                    reports.addAll(visitBinaryOp(reports, child));
+                    visitBinaryOp(diagnostics, child);
                 } else if (!Objects.equals(operationType, varType)) {
-                    reports.add(createReport(child, "Assignment between a '" + varType + "' and a '" + operationType + "'."));
+                    diagnostics.add(createReport(child, "Assignment between a '" + varType + "' and a '" + operationType + "'."));
                 }
                 break;
             case "MethodCalls":
@@ -509,37 +467,35 @@ public class Analysis implements JmmAnalysis {
                     String declaredRet = getMethodCallType(child); //retorno da declaração do método
                     String expectedRet = getVarType(root.get("var")); //retorno esperado do método
                     if(!Objects.equals(declaredRet, expectedRet) && declaredRet != null){
-                        reports.add(createReport(root,"Assignment between a '" + declaredRet + "' and '" + expectedRet + "'."));
+                        diagnostics.add(createReport(root,"Assignment between a '" + declaredRet + "' and '" + expectedRet + "'."));
                     }
                 }
-                reports.addAll(visitMethodCalls(reports, child));
+                visitMethodCalls(diagnostics, child);
                 break;
             case "Self":
                 if(isMethodStatic){
-                    reports.add(createReport(child,"'this' cannot be used in a static method."));
+                    diagnostics.add(createReport(child,"'this' cannot be used in a static method."));
                 }
                 else if(!Objects.equals(varType, table.getClassName()) && !Objects.equals(varType, table.getSuper())){
-                    reports.add(createReport(child,"Assigning '" + table.getClassName() + "' to '" + varType + "'."));
+                    diagnostics.add(createReport(child,"Assigning '" + table.getClassName() + "' to '" + varType + "'."));
                 }
                 break;
             default:
                 break;
         }
-        return reports;
     }
     /**
      * Visits Identifier Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param root Identifier Node
      * @param varType Type the variable is being assigned to
-     * @return Updated List of Reports
      */
-    private List<Report> visitIdentifier(List<Report> reports, JmmNode root, String varType) {
+    private void visitIdentifier(Diagnostics diagnostics, JmmNode root, String varType) {
         String idType = getVarType(root.get("value"));
         if (idType == null) { //Checks if variable was previously declared
-            reports.add(createReport(root, "Variable " + root.get("value") + " is not declared."));
+            diagnostics.add(createReport(root, "Variable " + root.get("value") + " is not declared."));
         } else if (isMethodStatic && isField(root.get("value"))){
-            reports.add(createReport(root, "Cannot use fields in a static method."));
+            diagnostics.add(createReport(root, "Cannot use fields in a static method."));
         }
         else {
             switch (root.getJmmParent().getKind()) {
@@ -548,26 +504,23 @@ public class Analysis implements JmmAnalysis {
                         if (!(Objects.equals(varType, table.getClassName()) && idType.equals(table.getSuper())) &&
                                 !(Objects.equals(idType, table.getClassName()) && varType.equals(table.getSuper())) &&
                                 (!isContainedInImports(idType,table.getImports()) || !isContainedInImports(varType,table.getImports())))
-                            reports.add(createReport(root, "Assignment between a '" + varType + "' and a '" + idType + "'."));
+                            diagnostics.add(createReport(root, "Assignment between a '" + varType + "' and a '" + idType + "'."));
                     }
                     break;
                 default:
                     break;
             }
         }
-        return reports;
     }
 
     /**
      * Visits Declaration Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param root Declaration Node
-     * @return Updated List of Reports
      */
-    private List<Report> visitDeclaration(List<Report> reports, JmmNode root){
+    private void visitDeclaration(Diagnostics diagnostics, JmmNode root){
         String varName = root.get("var");
         String leftType = root.getJmmChild(0).get("type");
-        updateRelevantVars();
         if (root.getChildren().size() == 2){
             String rightType;
             JmmNode assignNode = root.getJmmChild(1);
@@ -581,102 +534,149 @@ public class Analysis implements JmmAnalysis {
                 case "Identifier":
                     rightType = getVarType(assignNode.get("value"));
                     if (rightType == null) rightType = "invalid_type";
-                    reports.addAll(visitIdentifier(reports,assignNode,rightType));
+                    visitIdentifier(diagnostics, assignNode,rightType);
                     break;
                 case "BinaryOp":
                     rightType = getTypeOfBinaryOp(assignNode);
-                    reports.addAll(visitBinaryOp(reports,assignNode));
+                    visitBinaryOp(diagnostics, assignNode);
                     break;
             }
         }
-        return reports;
+        //Variables declared in nested blocks are not in the symbol table, so they are added to the block's scope
+        boolean isArray = Objects.equals(root.getJmmChild(0).getKind(), "ArrayType");
+        scope.define(new Symbol(new Type(leftType, isArray), varName));
     }
     /**
      * Visits MethodBody Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param node MethodBody Node
-     * @return Updated List of Reports
      */
-    private List<Report> visitMethodBody(List<Report> reports, JmmNode node){
-        updateRelevantVars();
+    private void visitMethodBody(Diagnostics diagnostics, JmmNode node){
+        scope = scope.enterBlock();
         for(JmmNode child : node.getChildren()){
+            if (diagnostics.isFull()) break;
             switch(child.getKind()) {
                 case "Assignment":
-                    reports.addAll(visitAssignment(reports, child));
+                    visitAssignment(diagnostics, child);
                     break;
                 case "Declaration":
-                    reports.addAll(visitDeclaration(reports,child));
+                    visitDeclaration(diagnostics, child);
                     break;
                 case "MethodCalls":
-                    visitMethodCalls(reports,child);
+                    visitMethodCalls(diagnostics, child);
                     break;
                 case "Return":
-                    reports.addAll(visitReturn(reports, child));
+                    visitReturn(diagnostics, child);
                     break;
                 case "IfElse":
-                    reports.addAll(visitIfElse(reports,child));
+                    visitIfElse(diagnostics, child);
                     break;
                 case "ExprStmt":
-                    reports.addAll(visitExprStmt(reports,child));
+                    visitExprStmt(diagnostics, child);
                     break;
                 case "While":
-                    reports.addAll(visitWhile(reports,child));
+                    visitWhile(diagnostics, child);
+                    break;
+                case "Switch":
+                    visitSwitch(diagnostics, child);
                     break;
                 default:
                     break;
             }
         }
-        return reports;
+        scope = scope.exit();
     }
     /**
      * Visits While Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param root While Node
-     * @return Updated List of Reports
      */
-    private Collection<? extends Report> visitWhile(List<Report> reports, JmmNode root) {
+    private void visitWhile(Diagnostics diagnostics, JmmNode root) {
         JmmNode condition = root.getJmmChild(0);
-        updateRelevantVars();
         switch(condition.getKind()){
             case "Identifier":
                 String varName = condition.get("value");
                 String varType = getVarType(varName);
                 if(!Objects.equals(varType, "boolean"))
-                    reports.add(createReport(condition,"Condition should be 'boolean'."));
+                    diagnostics.add(createReport(condition,"Condition should be 'boolean'."));
 
         }
-        reports.addAll(visitMethodBody(reports,root.getJmmChild(1)));
-        return reports;
+        visitMethodBody(diagnostics, root.getJmmChild(1));
+    }
+    /**
+     * Visits Switch Node and checks for errors
+     * @param diagnostics Sink of the reports of the analysis
+     * @param root Switch Node
+     */
+    private void visitSwitch(Diagnostics diagnostics, JmmNode root) {
+        JmmNode selector = root.getJmmChild(0);
+        String selectorType = switch (selector.getKind()) {
+            case "Integer" -> "int";
+            case "Boolean" -> "boolean";
+            case "Identifier" -> getVarType(selector.get("value"));
+            case "BinaryOp" -> getTypeOfBinaryOp(selector);
+            default -> null;
+        };
+        if (selectorType != null && !Objects.equals(selectorType, "int") && !Objects.equals(selectorType, "invalid_type"))
+            diagnostics.add(createReport(selector, "Expected an 'int' inside Switch but received a '" + selectorType + "'."));
+
+        Set<Integer> values = new HashSet<>();
+        for (JmmNode child : root.getChildren()) {
+            if (!Objects.equals(child.getKind(), "SwitchCase")) continue;
+            Integer value = getCaseValue(child.getJmmChild(0));
+            if (value == null)
+                diagnostics.add(createReport(child.getJmmChild(0), "Case labels must be 'int' constants."));
+            else if (!values.add(value))
+                diagnostics.add(createReport(child.getJmmChild(0), "Duplicate case label '" + value + "'."));
+            visitMethodBody(diagnostics, child);
+        }
+        // The statements of the default case
+        visitMethodBody(diagnostics, root);
+    }
+    /**
+     * Returns the value of the label of a case
+     * @param label Integer node, possibly negated
+     * @return null if the label is not an integer constant
+     */
+    private Integer getCaseValue(JmmNode label) {
+        try {
+            if (Objects.equals(label.getKind(), "Integer"))
+                return Integer.parseInt(label.get("value"));
+            if (Objects.equals(label.getKind(), "UnaryPreOp") && Objects.equals(label.get("op"), "-")
+                    && Objects.equals(label.getJmmChild(0).getKind(), "Integer"))
+                return -Integer.parseInt(label.getJmmChild(0).get("value"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        return null;
     }
     /**
      * Visits ArrayAccess Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param root ArrayAccess Node
-     * @return Updated List of Reports
      */
-    private List<Report> visitArrayAccess(List<Report> reports, JmmNode root){
-        updateRelevantVars();
+    private void visitArrayAccess(Diagnostics diagnostics, JmmNode root){
         JmmNode varChild = root.getChildren().get(0);
         JmmNode indexChild = root.getChildren().get(1);
         String varName = varChild.get("value");
         if (getVarType(varName) == null){
-            reports.add(createReport(varChild,"Variable " + varName + " was not declared."));
+            diagnostics.add(createReport(varChild,"Variable " + varName + " was not declared."));
         }
         else if (!isVarArray(varName)){
-            reports.add(createReport(varChild,"Array Access over variable " + varName + " which is not an array."));
+            diagnostics.add(createReport(varChild,"Array Access over variable " + varName + " which is not an array."));
         }
         switch(indexChild.getKind()){
             case "Boolean":
-                reports.add(createReport(indexChild,"Array Access Index should be of type 'int'."));
+                diagnostics.add(createReport(indexChild,"Array Access Index should be of type 'int'."));
                 break;
             case "MethodCalls":
-                reports.addAll(visitMethodCalls(reports,indexChild));
+                visitMethodCalls(diagnostics, indexChild);
                 String calledOver = indexChild.getJmmChild(0).get("value");
                 String calledOverType = getVarType(calledOver);
                 String calledMethod = indexChild.getJmmChild(1).get("methodName");
                 String methodReturn = table.getReturnType(calledMethod).getName();
                 if (!Objects.equals(methodReturn, "int") && Objects.equals(calledOverType, table.getClassName()) && Objects.equals(table.getSuper(), ""));
-                    reports.add(createReport(indexChild,"Array Access Index should be of type 'int'."));
+                    diagnostics.add(createReport(indexChild,"Array Access Index should be of type 'int'."));
                 break;
             case "Integer":
                 break;
@@ -684,56 +684,51 @@ public class Analysis implements JmmAnalysis {
                 String accessVarName = indexChild.get("value");
                 String accessVarType = getVarType(accessVarName);
                 if (!Objects.equals(accessVarType, "int")){
-                    reports.add(createReport(indexChild,"Array Access Index should be of type 'int'."));
+                    diagnostics.add(createReport(indexChild,"Array Access Index should be of type 'int'."));
                 }
                 else {
-                    reports.addAll(visitIdentifier(reports, indexChild, getVarType(accessVarName)));
+                    visitIdentifier(diagnostics, indexChild, getVarType(accessVarName));
                 }
         }
-        return reports;
     }
     /**
      * Visits ExprStmt Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param root ExprStmt Node
-     * @return Updated List of Reports
      */
-    private List<Report> visitExprStmt(List<Report> reports, JmmNode root){
-        updateRelevantVars();
+    private void visitExprStmt(Diagnostics diagnostics, JmmNode root){
         JmmNode child = root.getChildren().get(0);
         switch(child.getKind()){
             case "BinaryOp":
-                reports.addAll(visitBinaryOp(reports,child));
+                visitBinaryOp(diagnostics, child);
                 break;
             case "ArrayAccess":
-                reports.addAll(visitArrayAccess(reports,child));
+                visitArrayAccess(diagnostics, child);
                 break;
             case "MethodCalls":
-                reports.addAll(visitMethodCalls(reports,child));
+                visitMethodCalls(diagnostics, child);
         }
-        return reports;
     }
     /**
      * Visits Method Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param root Method Node
-     * @return Updated List of Reports
      */
-    private List<Report> visitMethod(List<Report> reports, JmmNode root){
+    private void visitMethod(Diagnostics diagnostics, JmmNode root){
         Queue<JmmNode> queue = new LinkedList<>();
         queue.addAll(root.getChildren());
         methodName = root.get("name");
-        updateRelevantVars();
+        scope = classScope.forMethod(table, methodName);
         isMethodPrivate = Boolean.FALSE;
         isMethodStatic = Boolean.FALSE;
-        while (queue.size() > 0){
+        while (queue.size() > 0 && !diagnostics.isFull()){
                 JmmNode node = queue.remove();
                 String kind = node.getKind();
                 switch(kind){
                     case "Argument":
                         break;
                     case "MethodBody":
-                        reports.addAll(visitMethodBody(reports,node));
+                        visitMethodBody(diagnostics, node);
                         break;
                     case "Modifier":
                         switch(node.get("value")){
@@ -751,23 +746,21 @@ public class Analysis implements JmmAnalysis {
                         returnType = node.get("type");
                         break;
                     case "ExprStmt":
-                        reports.addAll(visitExprStmt(reports,node));
+                        visitExprStmt(diagnostics, node);
                         break;
                     case "IfElse":
-                        reports.addAll(visitIfElse(reports,node));
+                        visitIfElse(diagnostics, node);
                     default:
                         break;
                     }
         }
-        return reports;
     }
     /**
      * Visits IfElse Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param node IfElse Node
-     * @return Updated List of Reports
      */
-    private List<Report> visitIfElse(List<Report> reports, JmmNode node) {
+    private void visitIfElse(Diagnostics diagnostics, JmmNode node) {
         JmmNode condition = node.getJmmChild(0), ifNode = node.getJmmChild(1), elseNode = null;
         if(node.getChildren().size() == 3) elseNode = node.getJmmChild(2);
         String conditionType;
@@ -777,33 +770,31 @@ public class Analysis implements JmmAnalysis {
             case "BinaryOp":
                 conditionType = getTypeOfBinaryOp(condition);
                 if (!Objects.equals(conditionType, "boolean") && conditionType != "invalid_type")
-                    reports.add(createReport(condition,"Expected a 'boolean' inside If condition but received a '" + conditionType + "'."));
+                    diagnostics.add(createReport(condition,"Expected a 'boolean' inside If condition but received a '" + conditionType + "'."));
                 else if (conditionType == "invalid_type")
-                    reports.addAll(visitBinaryOp(reports,condition));
+                    visitBinaryOp(diagnostics, condition);
                 break;
             case "Identifier":
                 conditionType = getVarType(node.getJmmChild(0).get("value"));
                 if (!Objects.equals(conditionType, "boolean") && conditionType != "invalid_type")
-                    reports.add(createReport(condition,"Expected a 'boolean' inside If condition but received a '" + conditionType + "'."));
+                    diagnostics.add(createReport(condition,"Expected a 'boolean' inside If condition but received a '" + conditionType + "'."));
                 break;
             default:
-                reports.add(createReport(condition,"Expected a 'boolean' inside If Condition."));
+                diagnostics.add(createReport(condition,"Expected a 'boolean' inside If Condition."));
                 break;
         }
-        reports.addAll(visitMethodBody(reports,ifNode));
-        if (node.getChildren().size() == 3) reports.addAll(visitMethodBody(reports,elseNode));
-        return reports;
+        visitMethodBody(diagnostics, ifNode);
+        if (node.getChildren().size() == 3) visitMethodBody(diagnostics, elseNode);
     }
     /**
      * Visits Program Node and checks for errors
-     * @param reports List of Reports of previosuly found errors
+     * @param diagnostics Sink of the reports of the analysis
      * @param node Program Node
-     * @return Updated List of Reports
      */
-    private List<Report> visitProgram(List<Report> reports, JmmNode node){
+    private void visitProgram(Diagnostics diagnostics, JmmNode node){
         Queue<JmmNode> queue = new LinkedList<>();
         queue.add(node);
-        while (queue.size() > 0){
+        while (queue.size() > 0 && !diagnostics.isFull()){
             node = queue.remove();
             //Se for um dos abaixo, explorar os nós abaixo deles
             switch(node.getKind()){
@@ -814,7 +805,7 @@ public class Analysis implements JmmAnalysis {
                     queue.addAll(node.getChildren());
                     break;
                 case "ClassMethod":
-                    reports.addAll(visitMethod(reports, node));
+                    visitMethod(diagnostics, node);
                     break;
                 case "ImportPackage":
                     break;
@@ -824,7 +815,6 @@ public class Analysis implements JmmAnalysis {
             }
             //Se for um dos abaixo, ignorar
         }
-        return reports;
     }
 
     /**
@@ -838,11 +828,13 @@ public class Analysis implements JmmAnalysis {
 
         TableVisitor visitor = new TableVisitor(table);
         visitor.visit(parserResult.getRootNode(),"");
+        classScope = Scope.forClass(table);
 
         //New Code Below:
         JmmNode root = parserResult.getRootNode();
-        List<Report> reports = new ArrayList<Report>();
-        reports = eraseDuplicateReports(visitProgram(reports,root));
+        Diagnostics diagnostics = Diagnostics.fromConfig(parserResult.getConfig());
+        visitProgram(diagnostics, root);
+        List<Report> reports = diagnostics.getReports();
         JmmSemanticsResult res = new JmmSemanticsResult(parserResult, visitor.getTable(), reports);
         System.out.println("DETECTED ERRORS:");
         for(Report r : reports){
@@ -0,0 +1,71 @@
+package pt.up.fe.comp2023.analysis;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+
+import java.util.*;
+
+/**
+ * Collects the reports of the semantic analysis. It is shared by all the visitors, so each report is stored once.
+ * <p>
+ * Reports with the same type, position and message are only kept once. After the maximum number of errors is reached,
+ * new reports are ignored and {@link #isFull()} tells the visitors to stop.
+ */
+public class Diagnostics {
+
+    private final Map<String, Report> reports = new LinkedHashMap<>();
+    private final int maxErrors;
+    private int errors;
+
+    /**
+     * @param maxErrors Number of errors after which the analysis stops, or 0 or a negative value for no limit, since
+     *                  a limit of 0 would drop every error and let ill-typed code through
+     */
+    public Diagnostics(int maxErrors) {
+        this.maxErrors = maxErrors < 1 ? Integer.MAX_VALUE : maxErrors;
+    }
+
+    public Diagnostics() {
+        this(-1);
+    }
+
+    /**
+     * Creates the sink with the limit given by the "maxErrors" option of the config, if there is one
+     */
+    public static Diagnostics fromConfig(Map<String, String> config) {
+        String maxErrors = config == null ? null : config.get("maxErrors");
+        return maxErrors == null ? new Diagnostics() : new Diagnostics(Integer.parseInt(maxErrors));
+    }
+
+    /**
+     * Adds a report, unless an equal one was already added or the error limit was reached
+     * @return true if the report was added
+     */
+    public boolean add(Report report) {
+        if (this.isFull()) return false;
+
+        String key = report.getType() + ":" + report.getLine() + ":" + report.getColumn() + ":" + report.getMessage();
+        if (reports.putIfAbsent(key, report) != null) return false;
+
+        if (report.getType() == ReportType.ERROR) errors++;
+        return true;
+    }
+
+    /**
+     * @return true if the error limit was reached, so the analysis can stop
+     */
+    public boolean isFull() {
+        return errors >= maxErrors;
+    }
+
+    public int size() {
+        return reports.size();
+    }
+
+    /**
+     * @return The reports, in the order they were added
+     */
+    public List<Report> getReports() {
+        return new ArrayList<>(reports.values());
+    }
+}
@@ -0,0 +1,88 @@
+package pt.up.fe.comp2023.analysis;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Variables visible at a point of the code, as a chain of scopes: block, method and class fields. Each scope keeps its
+ * symbols in a hash map, and a name is looked up from the innermost scope outwards, so inner declarations hide outer
+ * ones.
+ */
+public class Scope {
+
+    private final Scope parent;
+    private final Map<String, Symbol> symbols = new HashMap<>();
+
+    private Scope(Scope parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * Creates the outermost scope, with the fields of the class
+     */
+    public static Scope forClass(SymbolTable table) {
+        Scope scope = new Scope(null);
+        scope.defineAll(table.getFields());
+        return scope;
+    }
+
+    /**
+     * Creates the scope of a method, with its parameters and the local variables declared in its body
+     */
+    public Scope forMethod(SymbolTable table, String methodName) {
+        Scope scope = new Scope(this);
+        scope.defineAll(table.getParameters(methodName));
+        scope.defineAll(table.getLocalVariables(methodName));
+        return scope;
+    }
+
+    /**
+     * Creates the scope of a block nested in this one
+     */
+    public Scope enterBlock() {
+        return new Scope(this);
+    }
+
+    /**
+     * @return The enclosing scope
+     */
+    public Scope exit() {
+        return parent;
+    }
+
+    public void define(Symbol symbol) {
+        symbols.put(symbol.getName(), symbol);
+    }
+
+    private void defineAll(List<Symbol> symbols) {
+        if (symbols == null) return;
+        for (Symbol symbol : symbols) {
+            this.define(symbol);
+        }
+    }
+
+    /**
+     * @return The symbol with the given name in the innermost scope that declares it, or null if it is not declared
+     */
+    public Symbol lookup(String name) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Symbol symbol = scope.symbols.get(name);
+            if (symbol != null) return symbol;
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the name refers to a field, i.e. it is not hidden by a parameter or a local variable
+     */
+    public boolean isField(String name) {
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            if (scope.symbols.containsKey(name)) return scope.parent == null;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,411 @@
+package pt.up.fe.comp2023.cache;
+
+import com.google.gson.*;
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * On-disk cache of the intermediate results of the compiler.
+ * <p>
+ * Entries are keyed by a hash of the source code, of the config keys that change the generated code and of the
+ * compiler itself, so that a new build of the compiler never reuses the code of an older one. Each entry is a folder
+ * holding the serialized AST, the OLLIR code and the Jasmin code, each with the reports of the stage that produced it,
+ * so that every stage whose input did not change can be skipped. Entries are evicted when older than the maximum age or
+ * when the cache grows past its maximum size, least recently used first.
+ */
+public class BuildCache {
+
+    public static final String DEFAULT_DIR = ".jmm-cache";
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    public static final long DEFAULT_MAX_AGE_SECONDS = 7L * 24 * 60 * 60;
+
+    /**
+     * Config keys that are part of the cache key
+     */
+    private static final List<String> KEY_CONFIGS = List.of("optimize", "inlineBudget", "registerAllocation", "backend",
+            "ollir", "maxErrors", "disabledPasses");
+
+    /**
+     * Classes whose code, along with the rest of the jar or folder they are loaded from, is part of the cache key
+     */
+    private static final List<Class<?>> COMPILER_CLASSES = List.of(BuildCache.class, JmmNode.class, ClassUnit.class);
+
+    /**
+     * Time between two scans of the cache folder for entries older than the maximum age
+     */
+    private static final long AGE_CHECK_MILLIS = 10L * 60 * 1000;
+
+    private static String compilerHash;
+
+    public enum Kind {
+        AST("ast.json"),
+        OLLIR("code.ollir"),
+        JASMIN("code.j");
+
+        private final String fileName;
+
+        Kind(String fileName) {
+            this.fileName = fileName;
+        }
+
+        private String getReportsFileName() {
+            return fileName + ".reports.json";
+        }
+    }
+
+    private final Path dir;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final Map<Kind, AtomicLong> hits = new EnumMap<>(Kind.class);
+    private final Map<Kind, AtomicLong> misses = new EnumMap<>(Kind.class);
+    private final AtomicLong evictions = new AtomicLong();
+    /**
+     * Size of the cache folder as of the last scan plus the bytes written since, or -1 before the first scan
+     */
+    private final AtomicLong size = new AtomicLong(-1);
+    private volatile long lastAgeCheck;
+
+    public BuildCache(File dir, long maxBytes, long maxAgeSeconds) {
+        this.dir = dir.toPath();
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeSeconds * 1000;
+
+        for (Kind kind : Kind.values()) {
+            hits.put(kind, new AtomicLong());
+            misses.put(kind, new AtomicLong());
+        }
+    }
+
+    /**
+     * Creates the cache described by the "cacheDir", "cacheMaxBytes" and "cacheMaxAge" (in seconds) config keys
+     * @return The cache, or null if "cacheDir" is not set
+     */
+    public static BuildCache fromConfig(Map<String, String> config) {
+        if (!config.containsKey("cacheDir")) return null;
+
+        long maxBytes = Long.parseLong(config.getOrDefault("cacheMaxBytes", String.valueOf(DEFAULT_MAX_BYTES)));
+        long maxAge = Long.parseLong(config.getOrDefault("cacheMaxAge", String.valueOf(DEFAULT_MAX_AGE_SECONDS)));
+        return new BuildCache(new File(config.get("cacheDir")), maxBytes, maxAge);
+    }
+
+    /**
+     * Computes the key of a compilation
+     * @param code Source code
+     * @param config Compilation config, only the keys that affect the generated code are used
+     * @return Hexadecimal SHA-256 hash
+     */
+    public String key(String code, Map<String, String> config) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(getCompilerHash().getBytes(StandardCharsets.UTF_8));
+            digest.update(code.getBytes(StandardCharsets.UTF_8));
+            for (String configKey : KEY_CONFIGS) {
+                digest.update(("\0" + configKey + "=" + config.get(configKey)).getBytes(StandardCharsets.UTF_8));
+            }
+            return toHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Hashes the jars or class folders the compiler is loaded from, once per run
+     * @return Hexadecimal SHA-256 hash that changes whenever the compiler is rebuilt
+     */
+    public static synchronized String getCompilerHash() {
+        if (compilerHash != null) return compilerHash;
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            Set<Path> locations = new LinkedHashSet<>();
+            for (Class<?> compilerClass : COMPILER_CLASSES) {
+                CodeSource source = compilerClass.getProtectionDomain().getCodeSource();
+                if (source != null && source.getLocation() != null) {
+                    locations.add(Paths.get(source.getLocation().toURI()));
+                }
+            }
+
+            for (Path location : locations) {
+                if (Files.isDirectory(location)) {
+                    try (Stream<Path> files = Files.walk(location)) {
+                        for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+                            digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+                            digest.update(Files.readAllBytes(file));
+                        }
+                    }
+                } else {
+                    digest.update(Files.readAllBytes(location));
+                }
+            }
+            compilerHash = toHex(digest.digest());
+        } catch (Exception e) {
+            // Without the code of the compiler, fall back to a key that is never reused by another run
+            SpecsLogs.warn("Could not hash the compiler classes, the cache will not be reused: " + e.getMessage());
+            compilerHash = UUID.randomUUID().toString();
+        }
+        return compilerHash;
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (byte b : bytes) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * @return The cached contents, counting a hit or a miss for the given kind
+     */
+    public Optional<String> get(String key, Kind kind) {
+        Path entry = dir.resolve(key);
+        Path file = entry.resolve(kind.fileName);
+
+        try {
+            String contents = Files.readString(file, StandardCharsets.UTF_8);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            hits.get(kind).incrementAndGet();
+            return Optional.of(contents);
+        } catch (IOException e) {
+            misses.get(kind).incrementAndGet();
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return The cached contents, without counting a hit or a miss
+     */
+    public Optional<String> peek(String key, Kind kind) {
+        try {
+            return Optional.of(Files.readString(dir.resolve(key).resolve(kind.fileName), StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * @return The reports stored along with the contents of the given kind, empty if there are none
+     */
+    public List<Report> getReports(String key, Kind kind) {
+        Path file = dir.resolve(key).resolve(kind.getReportsFileName());
+        List<Report> reports = new ArrayList<>();
+
+        try {
+            for (JsonElement element : JsonParser.parseString(Files.readString(file, StandardCharsets.UTF_8)).getAsJsonArray()) {
+                JsonObject report = element.getAsJsonObject();
+                reports.add(new Report(ReportType.valueOf(report.get("type").getAsString()),
+                        Stage.valueOf(report.get("stage").getAsString()), report.get("line").getAsInt(),
+                        report.get("column").getAsInt(), report.get("message").getAsString()));
+            }
+        } catch (IOException | RuntimeException e) {
+            // Entry without reports
+        }
+        return reports;
+    }
+
+    /**
+     * Same as {@link #put(String, Kind, String, List)}, without reports
+     */
+    public void put(String key, Kind kind, String contents) {
+        put(key, kind, contents, List.of());
+    }
+
+    /**
+     * Stores the contents of the given kind with the reports of the stage that produced them, and evicts old entries if
+     * needed. The exceptions of the reports are not stored.
+     */
+    public void put(String key, Kind kind, String contents, List<Report> reports) {
+        Path entry = dir.resolve(key);
+        JsonArray jsonReports = new JsonArray();
+        for (Report report : reports) {
+            JsonObject jsonReport = new JsonObject();
+            jsonReport.addProperty("type", report.getType().name());
+            jsonReport.addProperty("stage", report.getStage().name());
+            jsonReport.addProperty("line", report.getLine());
+            jsonReport.addProperty("column", report.getColumn());
+            jsonReport.addProperty("message", report.getMessage());
+            jsonReports.add(jsonReport);
+        }
+
+        try {
+            Files.createDirectories(entry);
+            // The reports go first, so a reader that finds the contents also finds their reports
+            long written = write(entry, kind.getReportsFileName(), jsonReports.toString())
+                    + write(entry, kind.fileName, contents);
+            Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+            size.getAndUpdate(total -> total < 0 ? total : total + written);
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not write cache entry " + key + ": " + e.getMessage());
+            return;
+        }
+
+        // Only scan the folder when it may have grown too large or when old entries may have to be removed
+        long total = size.get();
+        if (total < 0 || total > maxBytes || System.currentTimeMillis() - lastAgeCheck > AGE_CHECK_MILLIS) {
+            evict();
+        }
+    }
+
+    /**
+     * Replaces a file of an entry
+     * @return Number of bytes added to the entry
+     */
+    private static long write(Path entry, String fileName, String contents) throws IOException {
+        Path file = entry.resolve(fileName);
+        long previousSize = Files.exists(file) ? Files.size(file) : 0;
+
+        // Write to a temporary file first, so concurrent readers never see a partial file
+        Path tmp = Files.createTempFile(entry, fileName, ".tmp");
+        Files.writeString(tmp, contents, StandardCharsets.UTF_8);
+        long newSize = Files.size(tmp);
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return newSize - previousSize;
+    }
+
+    /**
+     * Removes entries older than the maximum age, then the least recently used entries until the cache fits in its
+     * maximum size
+     */
+    public synchronized void evict() {
+        List<Path> entries = listEntries();
+        long now = System.currentTimeMillis();
+        lastAgeCheck = now;
+        Map<Path, Long> lastUsed = new HashMap<>();
+        Map<Path, Long> sizes = new HashMap<>();
+        long total = 0;
+
+        for (Path entry : entries) {
+            long used = lastModified(entry);
+            if (now - used > maxAgeMillis) {
+                delete(entry);
+                continue;
+            }
+            long size = sizeOf(entry);
+            lastUsed.put(entry, used);
+            sizes.put(entry, size);
+            total += size;
+        }
+
+        List<Path> byAge = new ArrayList<>(lastUsed.keySet());
+        byAge.sort(Comparator.comparing(lastUsed::get));
+        for (Path entry : byAge) {
+            if (total <= maxBytes) break;
+            total -= sizes.get(entry);
+            delete(entry);
+        }
+        size.set(total);
+    }
+
+    public long getHits(Kind kind) {
+        return hits.get(kind).get();
+    }
+
+    public long getMisses(Kind kind) {
+        return misses.get(kind).get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    /**
+     * @return Total size in bytes of the cached files
+     */
+    public long getSize() {
+        return listEntries().stream().mapToLong(this::sizeOf).sum();
+    }
+
+    /**
+     * @return The counters of the cache in the Prometheus text format
+     */
+    public String getMetrics() {
+        StringBuilder metrics = new StringBuilder();
+
+        metrics.append("# TYPE jmm_cache_hits_total counter\n");
+        for (Kind kind : Kind.values()) {
+            metrics.append("jmm_cache_hits_total{stage=\"").append(kind.name().toLowerCase()).append("\"} ").append(getHits(kind)).append("\n");
+        }
+        metrics.append("# TYPE jmm_cache_misses_total counter\n");
+        for (Kind kind : Kind.values()) {
+            metrics.append("jmm_cache_misses_total{stage=\"").append(kind.name().toLowerCase()).append("\"} ").append(getMisses(kind)).append("\n");
+        }
+        metrics.append("# TYPE jmm_cache_evictions_total counter\n");
+        metrics.append("jmm_cache_evictions_total ").append(getEvictions()).append("\n");
+        metrics.append("# TYPE jmm_cache_size_bytes gauge\n");
+        metrics.append("jmm_cache_size_bytes ").append(getSize()).append("\n");
+
+        return metrics.toString();
+    }
+
+    /**
+     * Writes {@link #getMetrics()} to "metrics.prom" inside the cache folder, where a textfile collector can scrape it
+     */
+    public void writeMetrics() {
+        try {
+            Files.createDirectories(dir);
+            Files.writeString(dir.resolve("metrics.prom"), getMetrics(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not write cache metrics: " + e.getMessage());
+        }
+    }
+
+    private List<Path> listEntries() {
+        List<Path> entries = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return entries;
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, Files::isDirectory)) {
+            stream.forEach(entries::add);
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not list cache entries: " + e.getMessage());
+        }
+        return entries;
+    }
+
+    private long lastModified(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private long sizeOf(Path entry) {
+        long size = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(entry)) {
+            for (Path file : stream) {
+                size += Files.size(file);
+            }
+        } catch (IOException e) {
+            // Entry removed concurrently
+        }
+        return size;
+    }
+
+    private void delete(Path entry) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(entry)) {
+            for (Path file : stream) {
+                Files.deleteIfExists(file);
+            }
+            Files.deleteIfExists(entry);
+            evictions.incrementAndGet();
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not evict cache entry " + entry + ": " + e.getMessage());
+        }
+    }
+}
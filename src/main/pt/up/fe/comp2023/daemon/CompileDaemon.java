@@ -0,0 +1,234 @@
+package pt.up.fe.comp2023.daemon;
+
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2023.BatchCompiler;
+import pt.up.fe.specs.util.SpecsIo;
+import pt.up.fe.specs.util.SpecsLogs;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a warmed up compiler alive and serves compile requests on a localhost port.
+ * <p>
+ * Requests are made of text lines: an optional "OUT dir" line, one "FILE path" line per input and a final "END".
+ * The daemon answers with one "RESULT" line per file (followed by its "REPORT" lines) and a final "DONE failed".
+ * The generated file is a ".class" file with the "classfile" backend and a ".j" file otherwise.
+ * A single "PING", "STATS" or "SHUTDOWN" line can also be sent, "STATS" answers with the build cache metrics in the
+ * Prometheus text format.
+ * <p>
+ * Every request starts with a "TOKEN secret" line, where the secret is generated when the daemon starts and written to
+ * a file that only its owner can read (see {@link #getTokenFile(int)}), so other local users cannot use the daemon.
+ */
+public class CompileDaemon {
+
+    public static final int DEFAULT_PORT = 7313;
+
+    private static final String WARM_UP_CODE = """
+            class WarmUp {
+                int value;
+                public int sum(int a, int b) {
+                    int c;
+                    c = a + b;
+                    return c;
+                }
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    private final Map<String, String> config;
+    private final int port;
+    private final BatchCompiler compiler;
+    private final ExecutorService connections;
+    private ServerSocket serverSocket;
+    private byte[] token;
+    private volatile boolean running;
+
+    public CompileDaemon(Map<String, String> config, int port, int numThreads) {
+        this.config = config;
+        this.port = port;
+        this.compiler = new BatchCompiler(config, numThreads);
+        this.connections = Executors.newFixedThreadPool(Math.max(1, numThreads));
+    }
+
+    public int getPort() {
+        return serverSocket != null ? serverSocket.getLocalPort() : port;
+    }
+
+    /**
+     * @return File with the token of the daemon listening on the given port
+     */
+    public static File getTokenFile(int port) {
+        return new File(System.getProperty("user.home"), ".jmm-daemon" + File.separator + port + ".token");
+    }
+
+    /**
+     * Binds the server socket to the loopback interface, writes the token of the clients and runs every stage once so
+     * that the parser and OLLIR/Jasmin classes are loaded before the first request arrives.
+     */
+    public void start() throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        writeToken();
+        running = true;
+        warmUp();
+        SpecsLogs.info("Compile daemon listening on localhost:" + getPort());
+    }
+
+    /**
+     * Accepts connections until a SHUTDOWN request is received or {@link #stop()} is called
+     */
+    public void serve() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.submit(() -> handle(socket));
+            } catch (SocketException e) {
+                // Socket closed by stop()
+                break;
+            } catch (IOException e) {
+                SpecsLogs.warn("Could not accept connection: " + e.getMessage());
+            }
+        }
+        connections.shutdownNow();
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            if (serverSocket != null) {
+                serverSocket.close();
+                Files.deleteIfExists(getTokenFile(getPort()).toPath());
+            }
+        } catch (IOException e) {
+            SpecsLogs.warn("Could not close daemon socket: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes a new random token to the token file, created with owner-only permissions where the file system supports
+     * them
+     */
+    private void writeToken() throws IOException {
+        byte[] secret = new byte[32];
+        new SecureRandom().nextBytes(secret);
+        token = HexFormat.of().formatHex(secret).getBytes(StandardCharsets.UTF_8);
+
+        Path file = getTokenFile(getPort()).toPath();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!Files.isDirectory(file.getParent())) {
+            if (posix) {
+                Files.createDirectories(file.getParent(),
+                        PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+            } else {
+                Files.createDirectories(file.getParent());
+            }
+        }
+        Files.deleteIfExists(file);
+        if (posix) {
+            Files.createFile(file, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+        } else {
+            Files.createFile(file);
+        }
+        Files.write(file, token);
+    }
+
+    private boolean isAuthorized(String line) {
+        return line != null && line.startsWith("TOKEN ")
+                && MessageDigest.isEqual(token, line.substring(6).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void warmUp() {
+        File source = new File(SpecsIo.getTempFolder("jmm-daemon"), "WarmUp.jmm");
+        SpecsIo.write(source, WARM_UP_CODE);
+        BatchCompiler.compileFile(source, config);
+    }
+
+    private void handle(Socket socket) {
+        try (socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+            if (!isAuthorized(in.readLine())) {
+                out.println("ERROR Unauthorized");
+                out.flush();
+                return;
+            }
+
+            File outputDir = null;
+            List<File> files = new ArrayList<>();
+            String line;
+
+            while ((line = in.readLine()) != null) {
+                if (line.equals("PING")) {
+                    out.println("PONG");
+                    out.flush();
+                    return;
+                } else if (line.equals("STATS")) {
+                    if (compiler.getCache() != null) out.print(compiler.getCache().getMetrics());
+                    out.flush();
+                    return;
+                } else if (line.equals("SHUTDOWN")) {
+                    out.println("BYE");
+                    out.flush();
+                    stop();
+                    return;
+                } else if (line.startsWith("OUT ")) {
+                    outputDir = new File(line.substring(4));
+                } else if (line.startsWith("FILE ")) {
+                    files.add(new File(line.substring(5)));
+                } else if (line.equals("END")) {
+                    break;
+                } else {
+                    out.println("ERROR Unknown request '" + line + "'");
+                    out.flush();
+                    return;
+                }
+            }
+
+            respond(out, compiler.compile(files), outputDir);
+            if (compiler.getCache() != null) {
+                compiler.getCache().writeMetrics();
+            }
+        } catch (IOException e) {
+            SpecsLogs.warn("Error while handling compile request: " + e.getMessage());
+        }
+    }
+
+    private void respond(PrintWriter out, List<BatchCompiler.FileResult> results, File outputDir) {
+        int failed = 0;
+
+        for (BatchCompiler.FileResult result : results) {
+            if (result.isSuccess()) {
+                File outputFile = result.writeOutput(outputDir);
+                out.println("RESULT OK " + result.getFile().getPath() + " " + outputFile.getAbsolutePath());
+            } else {
+                out.println("RESULT FAILED " + result.getFile().getPath());
+                failed++;
+            }
+
+            for (Report report : result.getReports()) {
+                out.println("REPORT " + report.toString().replace('\r', ' ').replace('\n', ' '));
+            }
+        }
+
+        out.println("DONE " + failed);
+        out.flush();
+    }
+}
@@ -0,0 +1,102 @@
+package pt.up.fe.comp2023.daemon;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thin client that forwards compile requests to a running {@link CompileDaemon}
+ */
+public class DaemonClient {
+
+    private final int port;
+
+    public DaemonClient(int port) {
+        this.port = port;
+    }
+
+    /**
+     * Asks the daemon to compile the given files
+     * @param files Input files, sent as absolute paths
+     * @param outputDir Folder where the daemon writes the Jasmin files, or null to write next to each input
+     * @return Lines of the answer, the last one being "DONE failed"
+     */
+    public List<String> compile(List<File> files, File outputDir) throws IOException {
+        List<String> request = new ArrayList<>();
+        if (outputDir != null) {
+            request.add("OUT " + outputDir.getAbsolutePath());
+        }
+        for (File file : files) {
+            request.add("FILE " + file.getAbsolutePath());
+        }
+        request.add("END");
+
+        return send(request);
+    }
+
+    public boolean ping() {
+        try {
+            return send(List.of("PING")).contains("PONG");
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return Build cache metrics of the daemon, empty if it runs without cache
+     */
+    public List<String> stats() throws IOException {
+        return send(List.of("STATS"));
+    }
+
+    public void shutdown() throws IOException {
+        send(List.of("SHUTDOWN"));
+    }
+
+    /**
+     * @param response Lines returned by {@link #compile(List, File)}
+     * @return Number of files that failed to compile, or -1 if the answer is incomplete
+     */
+    public static int getNumFailed(List<String> response) {
+        if (response.isEmpty() || !response.get(response.size() - 1).startsWith("DONE ")) {
+            return -1;
+        }
+        return Integer.parseInt(response.get(response.size() - 1).substring(5));
+    }
+
+    /**
+     * @return Token written by the daemon when it started, which must start every request
+     */
+    private String readToken() throws IOException {
+        File tokenFile = CompileDaemon.getTokenFile(port);
+        if (!tokenFile.isFile()) {
+            throw new IOException("No daemon token in " + tokenFile + ", is a daemon running on port " + port + "?");
+        }
+        return Files.readString(tokenFile.toPath(), StandardCharsets.UTF_8).trim();
+    }
+
+    private List<String> send(List<String> request) throws IOException {
+        String token = readToken();
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port);
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+
+            out.println("TOKEN " + token);
+            for (String line : request) {
+                out.println(line);
+            }
+            out.flush();
+
+            List<String> response = new ArrayList<>();
+            String line;
+            while ((line = in.readLine()) != null) {
+                response.add(line);
+            }
+            return response;
+        }
+    }
+}
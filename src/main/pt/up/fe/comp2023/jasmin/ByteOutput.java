@@ -0,0 +1,66 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Big-endian byte sink backed by a {@link ByteBuffer} that grows as needed
+ */
+class ByteOutput {
+
+    private ByteBuffer buffer;
+
+    ByteOutput(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(Math.max(16, initialCapacity));
+    }
+
+    private void ensureCapacity(int extra) {
+        if (buffer.remaining() >= extra) return;
+
+        int capacity = Math.max(buffer.capacity() * 2, buffer.position() + extra);
+        ByteBuffer grown = ByteBuffer.allocate(capacity);
+        buffer.flip();
+        grown.put(buffer);
+        buffer = grown;
+    }
+
+    void u1(int value) {
+        ensureCapacity(1);
+        buffer.put((byte) value);
+    }
+
+    void u2(int value) {
+        ensureCapacity(2);
+        buffer.putShort((short) value);
+    }
+
+    void u4(int value) {
+        ensureCapacity(4);
+        buffer.putInt(value);
+    }
+
+    void bytes(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        buffer.put(bytes);
+    }
+
+    void bytes(ByteOutput other) {
+        ensureCapacity(other.size());
+        buffer.put(other.buffer.array(), 0, other.size());
+    }
+
+    /**
+     * Overwrites two bytes that were already written
+     */
+    void u2At(int position, int value) {
+        buffer.putShort(position, (short) value);
+    }
+
+    int size() {
+        return buffer.position();
+    }
+
+    byte[] toByteArray() {
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+}
@@ -0,0 +1,626 @@
+package pt.up.fe.comp2023.jasmin;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.jasmin.JasminBackend;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.util.*;
+
+import static pt.up.fe.comp2023.jasmin.CodeBuilder.*;
+
+/**
+ * Backend that walks the same OLLIR structures as {@link JasminGenerator}, but writes the class file directly instead
+ * of generating Jasmin code that would have to be assembled afterwards.
+ * <p>
+ * Class files use version 49, so that no StackMapTable is needed.
+ */
+public class ClassFileGenerator implements JasminBackend {
+    private static final int MAGIC = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 49;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_PRIVATE = 0x0002;
+    private static final int ACC_PROTECTED = 0x0004;
+    private static final int ACC_STATIC = 0x0008;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private ClassUnit classUnit;
+    private ConstantPool pool;
+    private Map<String, String> imports;
+    private HashMap<String, Descriptor> vars;
+    private CodeBuilder code;
+    private int numLabels;
+
+    @Override
+    public JasminResult toJasmin(OllirResult ollirResult) {
+        this.classUnit = ollirResult.getOllirClass();
+
+        try {
+            this.classUnit.checkMethodLabels();
+            this.classUnit.buildVarTables();
+        } catch (OllirErrorException e) {
+            return JasminResult.newError(this.classUnit.getClassName(),
+                    new Report(ReportType.ERROR, Stage.GENERATION, -1, "Invalid OLLIR labels: " + e.getMessage()));
+        }
+
+        this.pool = new ConstantPool();
+        this.imports = new HashMap<>();
+        for (String imported : this.classUnit.getImports()) {
+            this.imports.put(imported.substring(imported.lastIndexOf('.') + 1), imported.replace('.', '/'));
+        }
+
+        // Everything after the constant pool, which is only complete at the end
+        ByteOutput body = new ByteOutput(1024);
+        String superClass = this.getSuperClass();
+
+        body.u2(this.classUnit.getClassAccessModifier() == AccessModifiers.PUBLIC ? ACC_PUBLIC | ACC_SUPER : ACC_SUPER);
+        body.u2(this.pool.classRef(this.classUnit.getClassName()));
+        body.u2(this.pool.classRef(superClass));
+        body.u2(0);
+
+        // Fields
+        body.u2(this.classUnit.getFields().size());
+        for (Field field : this.classUnit.getFields()) {
+            this.writeField(body, field);
+        }
+
+        // Methods
+        body.u2(this.classUnit.getMethods().size());
+        for (Method method : this.classUnit.getMethods()) {
+            this.vars = method.getVarTable();
+            this.code = new CodeBuilder();
+            this.numLabels = 0;
+
+            if (method.isConstructMethod()) {
+                this.dealWithConstructorMethod(body, superClass);
+            } else {
+                this.dealWithMethod(body, method);
+            }
+        }
+
+        // Class attributes
+        body.u2(0);
+
+        ByteOutput classFile = new ByteOutput(body.size() + 1024);
+        classFile.u4(MAGIC);
+        classFile.u2(0);
+        classFile.u2(MAJOR_VERSION);
+        this.pool.writeTo(classFile);
+        classFile.bytes(body);
+
+        return new ClassFileResult(ollirResult, classFile.toByteArray(), new ArrayList<>());
+    }
+
+    private String getSuperClass() {
+        String superClass = this.classUnit.getSuperClass();
+        return superClass != null ? this.getInternalName(superClass) : "java/lang/Object";
+    }
+
+    private String getInternalName(String className) {
+        return this.imports.getOrDefault(className, className);
+    }
+
+    private void writeField(ByteOutput body, Field field) {
+        int flags = this.getAccessFlags(field.getFieldAccessModifier());
+        if (field.isStaticField()) flags |= ACC_STATIC;
+        if (field.isFinalField()) flags |= ACC_FINAL;
+
+        body.u2(flags);
+        body.u2(this.pool.utf8(field.getFieldName()));
+        body.u2(this.pool.utf8(this.getDescriptor(field.getFieldType())));
+
+        if (field.isInitialized() && field.isStaticField()) {
+            body.u2(1);
+            body.u2(this.pool.utf8("ConstantValue"));
+            body.u4(2);
+            body.u2(this.pool.integer(field.getInitialValue()));
+        } else {
+            body.u2(0);
+        }
+    }
+
+    private int getAccessFlags(AccessModifiers modifier) {
+        return switch (modifier) {
+            case PUBLIC -> ACC_PUBLIC;
+            case PRIVATE -> ACC_PRIVATE;
+            case PROTECTED -> ACC_PROTECTED;
+            default -> 0;
+        };
+    }
+
+    private void dealWithConstructorMethod(ByteOutput body, String superClass) {
+        this.code.op(ALOAD_0, 1);
+        this.code.opU2(INVOKESPECIAL, this.pool.methodRef(superClass, "<init>", "()V"), -1);
+        this.code.op(RETURN, 0);
+
+        this.writeMethod(body, ACC_PUBLIC, "<init>", "()V", 1);
+    }
+
+    private void dealWithMethod(ByteOutput body, Method method) {
+        int flags = this.getAccessFlags(method.getMethodAccessModifier());
+        if (method.isStaticMethod()) flags |= ACC_STATIC;
+        if (method.isFinalMethod()) flags |= ACC_FINAL;
+
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Element param : method.getParams()) {
+            descriptor.append(this.getDescriptor(param.getType()));
+        }
+        descriptor.append(")").append(this.getDescriptor(method.getReturnType()));
+
+        List<Instruction> instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            for (String label : method.getLabels(instruction)) {
+                this.code.label(label);
+            }
+
+            // "new" followed by its constructor call is emitted as new, dup, invokespecial, store
+            if (i + 1 < instructions.size() && method.getLabels(instructions.get(i + 1)).isEmpty()
+                    && this.dealWithNewAndInit(instruction, instructions.get(i + 1))) {
+                i++;
+                continue;
+            }
+
+            this.dealWithInstruction(instruction);
+        }
+
+        int locals = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
+        for (Descriptor var : this.vars.values()) {
+            locals = Math.max(locals, var.getVirtualReg() + 1);
+        }
+
+        this.writeMethod(body, flags, method.getMethodName(), descriptor.toString(), locals);
+    }
+
+    private void writeMethod(ByteOutput body, int flags, String name, String descriptor, int maxLocals) {
+        ByteOutput bytecode = this.code.resolve();
+
+        body.u2(flags);
+        body.u2(this.pool.utf8(name));
+        body.u2(this.pool.utf8(descriptor));
+        body.u2(1);
+
+        // Code attribute
+        body.u2(this.pool.utf8("Code"));
+        body.u4(12 + bytecode.size());
+        body.u2(this.code.getMaxStack());
+        body.u2(maxLocals);
+        body.u4(bytecode.size());
+        body.bytes(bytecode);
+        body.u2(0);
+        body.u2(0);
+    }
+
+    private void dealWithInstruction(Instruction instruction) {
+        switch (instruction.getInstType()) {
+            case ASSIGN -> this.dealWithAssign((AssignInstruction) instruction);
+            case CALL -> this.dealWithCall((CallInstruction) instruction, false);
+            case GOTO -> this.code.jump(GOTO, ((GotoInstruction) instruction).getLabel(), 0);
+            case BRANCH -> this.dealWithBranch((CondBranchInstruction) instruction);
+            case RETURN -> this.dealWithReturn((ReturnInstruction) instruction);
+            case PUTFIELD -> this.dealWithPutField((PutFieldInstruction) instruction);
+            default -> {
+                // Expression used as a statement
+                this.pushValue(instruction);
+                this.code.op(POP, -1);
+            }
+        }
+    }
+
+    /**
+     * Pushes the value computed by an instruction used as the right-hand side of an assignment
+     */
+    private void pushValue(Instruction instruction) {
+        switch (instruction.getInstType()) {
+            case NOPER -> this.load(((SingleOpInstruction) instruction).getSingleOperand());
+            case BINARYOPER -> this.dealWithBinaryOp((BinaryOpInstruction) instruction);
+            case UNARYOPER -> this.dealWithUnaryOp((UnaryOpInstruction) instruction);
+            case CALL -> this.dealWithCall((CallInstruction) instruction, true);
+            case GETFIELD -> this.dealWithGetField((GetFieldInstruction) instruction);
+            default -> throw new IllegalStateException("Instruction " + instruction.getInstType() + " does not produce a value");
+        }
+    }
+
+    private boolean dealWithNewAndInit(Instruction instruction, Instruction next) {
+        if (!(instruction instanceof AssignInstruction assign) || !(assign.getRhs() instanceof CallInstruction newCall)
+                || newCall.getInvocationType() != CallType.NEW || newCall.getFirstArg().getType().getTypeOfElement() == ElementType.ARRAYREF
+                || assign.getDest() instanceof ArrayOperand) {
+            return false;
+        }
+        if (!(next instanceof CallInstruction init) || init.getInvocationType() != CallType.invokespecial
+                || !(init.getFirstArg() instanceof Operand receiver)
+                || !receiver.getName().equals(((Operand) assign.getDest()).getName())) {
+            return false;
+        }
+
+        String className = this.getOwner(newCall.getFirstArg());
+        this.code.opU2(NEW, this.pool.classRef(className), 1);
+        this.code.op(DUP, 1);
+        this.invoke(init, INVOKESPECIAL, className);
+        this.store(assign.getDest());
+        return true;
+    }
+
+    private void dealWithAssign(AssignInstruction assignInstruction) {
+        Operand dest = (Operand) assignInstruction.getDest();
+
+        if (dest instanceof ArrayOperand arrayOperand) {
+            this.code.local(ALOAD, ALOAD_0, this.getRegister(dest.getName()), 1);
+            for (Element index : arrayOperand.getIndexOperands()) {
+                this.load(index);
+            }
+            this.pushValue(assignInstruction.getRhs());
+            this.code.op(this.isIntLike(dest.getType()) ? IASTORE : AASTORE, -3);
+            return;
+        }
+
+        if (this.dealWithIinc(dest, assignInstruction.getRhs())) return;
+
+        this.pushValue(assignInstruction.getRhs());
+        this.store(dest);
+    }
+
+    private void store(Element dest) {
+        int register = this.getRegister(((Operand) dest).getName());
+        if (this.isIntLike(dest.getType())) {
+            this.code.local(ISTORE, ISTORE_0, register, -1);
+        } else {
+            this.code.local(ASTORE, ASTORE_0, register, -1);
+        }
+    }
+
+    /**
+     * Replaces "a = a + c" and "a = a - c" with an iinc, when c is a constant
+     * @return true if the assignment was handled
+     */
+    private boolean dealWithIinc(Operand dest, Instruction rhs) {
+        if (!(rhs instanceof BinaryOpInstruction binaryOp) || dest.getType().getTypeOfElement() != ElementType.INT32) {
+            return false;
+        }
+
+        OperationType opType = binaryOp.getOperation().getOpType();
+        Element left = binaryOp.getLeftOperand();
+        Element right = binaryOp.getRightOperand();
+        if (opType != OperationType.ADD && opType != OperationType.SUB) return false;
+
+        Element variable;
+        int value;
+        if (right.isLiteral() && !left.isLiteral()) {
+            variable = left;
+            value = Integer.parseInt(((LiteralElement) right).getLiteral());
+        } else if (left.isLiteral() && !right.isLiteral() && opType == OperationType.ADD) {
+            variable = right;
+            value = Integer.parseInt(((LiteralElement) left).getLiteral());
+        } else {
+            return false;
+        }
+
+        if (variable instanceof ArrayOperand || !((Operand) variable).getName().equals(dest.getName())) return false;
+        if (opType == OperationType.SUB) value = -value;
+
+        return value == 0 || this.code.iinc(this.getRegister(dest.getName()), value);
+    }
+
+    private void dealWithCall(CallInstruction callInstruction, boolean keepResult) {
+        Element first = callInstruction.getFirstArg();
+
+        switch (callInstruction.getInvocationType()) {
+            case invokestatic -> this.invoke(callInstruction, INVOKESTATIC, this.getOwner(first));
+            case invokevirtual -> {
+                this.load(first);
+                this.invoke(callInstruction, INVOKEVIRTUAL, this.getOwner(first));
+            }
+            case invokeinterface -> {
+                this.load(first);
+                this.invoke(callInstruction, INVOKEINTERFACE, this.getOwner(first));
+            }
+            case invokespecial -> {
+                this.load(first);
+                String owner = first.getType().getTypeOfElement() == ElementType.THIS ? this.getSuperClass() : this.getOwner(first);
+                this.invoke(callInstruction, INVOKESPECIAL, owner);
+            }
+            case NEW -> {
+                if (first.getType().getTypeOfElement() == ElementType.ARRAYREF) {
+                    this.load(callInstruction.getListOfOperands().get(0));
+                    this.code.opU1(NEWARRAY, T_INT, 0);
+                } else {
+                    this.code.opU2(NEW, this.pool.classRef(this.getOwner(first)), 1);
+                }
+            }
+            case arraylength -> {
+                this.load(first);
+                this.code.op(ARRAYLENGTH, 0);
+            }
+            case ldc -> this.load(first);
+        }
+
+        boolean hasResult = callInstruction.getReturnType().getTypeOfElement() != ElementType.VOID;
+        if (!keepResult && hasResult) {
+            this.code.op(POP, -1);
+        }
+    }
+
+    /**
+     * Loads the arguments of a call and emits the invoke instruction. The receiver must already be on the stack.
+     */
+    private void invoke(CallInstruction callInstruction, int opcode, String owner) {
+        String name = ((LiteralElement) callInstruction.getSecondArg()).getLiteral().replace("\"", "");
+        List<Element> args = Objects.requireNonNullElse(callInstruction.getListOfOperands(), Collections.emptyList());
+
+        StringBuilder descriptor = new StringBuilder("(");
+        for (Element arg : args) {
+            this.load(arg);
+            descriptor.append(this.getDescriptor(arg.getType()));
+        }
+        descriptor.append(")").append(this.getDescriptor(callInstruction.getReturnType()));
+
+        int receiver = opcode == INVOKESTATIC ? 0 : 1;
+        int result = callInstruction.getReturnType().getTypeOfElement() == ElementType.VOID ? 0 : 1;
+        int stackDelta = result - args.size() - receiver;
+
+        if (opcode == INVOKEINTERFACE) {
+            this.code.invokeInterface(this.pool.interfaceMethodRef(owner, name, descriptor.toString()), args.size() + 1, stackDelta);
+        } else {
+            this.code.opU2(opcode, this.pool.methodRef(owner, name, descriptor.toString()), stackDelta);
+        }
+    }
+
+    private void dealWithBranch(CondBranchInstruction branchInstruction) {
+        Instruction condition = branchInstruction.getCondition();
+        String label = branchInstruction.getLabel();
+
+        if (condition instanceof BinaryOpInstruction binaryOp) {
+            Element left = binaryOp.getLeftOperand();
+            Element right = binaryOp.getRightOperand();
+            OperationType opType = binaryOp.getOperation().getOpType();
+
+            if (this.getCompareOpcode(opType) != -1) {
+                this.compareAndJump(opType, left, right, label);
+                return;
+            }
+            if (opType == OperationType.ANDB) {
+                String skip = this.newLabel();
+                this.load(left);
+                this.code.jump(IFEQ, skip, -1);
+                this.load(right);
+                this.code.jump(IFNE, label, -1);
+                this.code.label(skip);
+                return;
+            }
+            if (opType == OperationType.ORB) {
+                this.load(left);
+                this.code.jump(IFNE, label, -1);
+                this.load(right);
+                this.code.jump(IFNE, label, -1);
+                return;
+            }
+        }
+
+        if (condition instanceof UnaryOpInstruction unaryOp && unaryOp.getOperation().getOpType() == OperationType.NOTB) {
+            this.load(unaryOp.getOperand());
+            this.code.jump(IFEQ, label, -1);
+            return;
+        }
+
+        this.pushValue(condition);
+        this.code.jump(IFNE, label, -1);
+    }
+
+    /**
+     * Jumps to the label if the comparison holds, comparing against zero when the right operand is the literal 0
+     */
+    private void compareAndJump(OperationType opType, Element left, Element right, String label) {
+        int opcode = this.getCompareOpcode(opType);
+
+        this.load(left);
+        if (right.isLiteral() && ((LiteralElement) right).getLiteral().equals("0")) {
+            // if_icmp<cond> and if<cond> are in the same order
+            this.code.jump(opcode - (IF_ICMPEQ - IFEQ), label, -1);
+        } else {
+            this.load(right);
+            this.code.jump(opcode, label, -2);
+        }
+    }
+
+    private int getCompareOpcode(OperationType opType) {
+        return switch (opType) {
+            case LTH -> IF_ICMPLT;
+            case GTH -> IF_ICMPGT;
+            case LTE -> IF_ICMPLE;
+            case GTE -> IF_ICMPGE;
+            case EQ -> IF_ICMPEQ;
+            case NEQ -> IF_ICMPNE;
+            default -> -1;
+        };
+    }
+
+    private void dealWithReturn(ReturnInstruction returnInstruction) {
+        if (!returnInstruction.hasReturnValue()) {
+            this.code.op(RETURN, 0);
+            return;
+        }
+
+        Element operand = returnInstruction.getOperand();
+        this.load(operand);
+        this.code.op(this.isIntLike(operand.getType()) ? IRETURN : ARETURN, -1);
+    }
+
+    private void dealWithPutField(PutFieldInstruction putFieldInstruction) {
+        Element object = putFieldInstruction.getFirstOperand();
+        Operand field = (Operand) putFieldInstruction.getSecondOperand();
+
+        this.load(object);
+        this.load(putFieldInstruction.getThirdOperand());
+        this.code.opU2(PUTFIELD, this.pool.fieldRef(this.getOwner(object), field.getName(), this.getDescriptor(field.getType())), -2);
+    }
+
+    private void dealWithGetField(GetFieldInstruction getFieldInstruction) {
+        Element object = getFieldInstruction.getFirstOperand();
+        Operand field = (Operand) getFieldInstruction.getSecondOperand();
+
+        this.load(object);
+        this.code.opU2(GETFIELD, this.pool.fieldRef(this.getOwner(object), field.getName(), this.getDescriptor(field.getType())), 0);
+    }
+
+    private void dealWithUnaryOp(UnaryOpInstruction opInstruction) {
+        Element operand = opInstruction.getOperand();
+
+        if (operand.isLiteral()) {
+            this.code.pushInt(this.isTrue((LiteralElement) operand) ? 0 : 1, this.pool);
+        } else {
+            this.load(operand);
+            this.code.op(ICONST_0 + 1, 1);
+            this.code.op(IXOR, -1);
+        }
+    }
+
+    private void dealWithBinaryOp(BinaryOpInstruction opInstruction) {
+        Element left = opInstruction.getLeftOperand();
+        Element right = opInstruction.getRightOperand();
+        OperationType opType = opInstruction.getOperation().getOpType();
+
+        int compareOpcode = this.getCompareOpcode(opType);
+        if (compareOpcode != -1) {
+            String trueLabel = this.newLabel();
+            String endLabel = this.newLabel();
+
+            this.compareAndJump(opType, left, right, trueLabel);
+            this.code.op(ICONST_0, 1);
+            this.code.jump(GOTO, endLabel, 0);
+            this.code.label(trueLabel);
+            this.code.op(ICONST_0 + 1, 1);
+            this.code.label(endLabel);
+            return;
+        }
+
+        if (left.isLiteral() && right.isLiteral() && this.dealWithConstantArithmetic(opType, left, right)) {
+            return;
+        }
+
+        int opcode = switch (opType) {
+            case ADD -> IADD;
+            case SUB -> ISUB;
+            case MUL -> IMUL;
+            case DIV -> IDIV;
+            case AND, ANDB -> IAND;
+            case OR, ORB -> IOR;
+            case XOR -> IXOR;
+            default -> throw new IllegalStateException("Unsupported binary operation " + opType);
+        };
+
+        this.load(left);
+        this.load(right);
+        this.code.op(opcode, -1);
+    }
+
+    /**
+     * Folds an arithmetic operation between two integer literals
+     * @return false if the operation could not be folded
+     */
+    private boolean dealWithConstantArithmetic(OperationType opType, Element left, Element right) {
+        if (left.getType().getTypeOfElement() != ElementType.INT32 || right.getType().getTypeOfElement() != ElementType.INT32) {
+            return false;
+        }
+
+        int n1 = Integer.parseInt(((LiteralElement) left).getLiteral());
+        int n2 = Integer.parseInt(((LiteralElement) right).getLiteral());
+        int result;
+        switch (opType) {
+            case ADD -> result = n1 + n2;
+            case SUB -> result = n1 - n2;
+            case MUL -> result = n1 * n2;
+            case DIV -> {
+                if (n2 == 0) return false;
+                result = n1 / n2;
+            }
+            default -> {
+                return false;
+            }
+        }
+
+        this.code.pushInt(result, this.pool);
+        return true;
+    }
+
+    private void load(Element element) {
+        if (element instanceof LiteralElement literal) {
+            switch (literal.getType().getTypeOfElement()) {
+                case INT32 -> this.code.pushInt(Integer.parseInt(literal.getLiteral()), this.pool);
+                case BOOLEAN -> this.code.pushInt(this.isTrue(literal) ? 1 : 0, this.pool);
+                case STRING -> this.code.ldc(this.pool.string(literal.getLiteral().replace("\"", "")));
+                default -> throw new IllegalStateException("Unsupported literal " + literal.getLiteral());
+            }
+            return;
+        }
+
+        Operand operand = (Operand) element;
+
+        if (operand instanceof ArrayOperand arrayOperand) {
+            this.code.local(ALOAD, ALOAD_0, this.getRegister(operand.getName()), 1);
+            for (Element index : arrayOperand.getIndexOperands()) {
+                this.load(index);
+            }
+            this.code.op(this.isIntLike(operand.getType()) ? IALOAD : AALOAD, -1);
+            return;
+        }
+
+        switch (operand.getType().getTypeOfElement()) {
+            case INT32, BOOLEAN -> this.code.local(ILOAD, ILOAD_0, this.getRegister(operand.getName()), 1);
+            case OBJECTREF, ARRAYREF, STRING -> this.code.local(ALOAD, ALOAD_0, this.getRegister(operand.getName()), 1);
+            case THIS -> this.code.op(ALOAD_0, 1);
+            default -> {
+                // Class names used as the target of static calls are not loaded
+            }
+        }
+    }
+
+    private int getRegister(String name) {
+        Descriptor descriptor = this.vars.get(name);
+        if (descriptor == null) {
+            throw new IllegalStateException("Variable '" + name + "' is not in the variable table");
+        }
+        return descriptor.getVirtualReg();
+    }
+
+    private boolean isTrue(LiteralElement literal) {
+        String value = literal.getLiteral();
+        return !value.equals("0") && !value.equals("false");
+    }
+
+    private boolean isIntLike(Type type) {
+        return type.getTypeOfElement() == ElementType.INT32 || type.getTypeOfElement() == ElementType.BOOLEAN;
+    }
+
+    private String newLabel() {
+        return "$label" + this.numLabels++;
+    }
+
+    /**
+     * @return Internal name of the class that owns the method or field accessed through the given element
+     */
+    private String getOwner(Element element) {
+        Type type = element.getType();
+        return switch (type.getTypeOfElement()) {
+            case THIS -> this.classUnit.getClassName();
+            case OBJECTREF -> this.getInternalName(((ClassType) type).getName());
+            default -> this.getInternalName(((Operand) element).getName());
+        };
+    }
+
+    private String getDescriptor(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> "I";
+            case BOOLEAN -> "Z";
+            case ARRAYREF -> "[" + this.getDescriptor(((ArrayType) type).getElementType());
+            case OBJECTREF, CLASS -> "L" + this.getInternalName(((ClassType) type).getName()) + ";";
+            case THIS -> "L" + this.classUnit.getClassName() + ";";
+            case STRING -> "Ljava/lang/String;";
+            case VOID -> "V";
+        };
+    }
+}
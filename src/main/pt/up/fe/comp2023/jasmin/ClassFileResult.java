@@ -0,0 +1,57 @@
+package pt.up.fe.comp2023.jasmin;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+/**
+ * Result of {@link ClassFileGenerator}. {@link #compile(File)} writes the class file directly instead of assembling
+ * Jasmin code, and the Jasmin code is only generated, with {@link JasminGenerator}, if it is requested.
+ */
+public class ClassFileResult extends JasminResult {
+
+    private final byte[] classFile;
+    private final OllirResult ollirResult;
+    private String jasminCode;
+
+    public ClassFileResult(OllirResult ollirResult, byte[] classFile, List<Report> reports) {
+        super(ollirResult, null, reports);
+        this.classFile = classFile;
+        this.ollirResult = ollirResult;
+    }
+
+    public byte[] getClassFile() {
+        return classFile;
+    }
+
+    /**
+     * @return Jasmin code of the same class, generated on the first call. Meant for debugging only.
+     */
+    @Override
+    public synchronized String getJasminCode() {
+        if (jasminCode == null) {
+            JasminResult textResult = new JasminGenerator().toJasmin(ollirResult);
+            jasminCode = textResult != null ? textResult.getJasminCode() : "";
+        }
+        return jasminCode;
+    }
+
+    @Override
+    public File compile(File outputDir) {
+        File classFile = new File(outputDir, getClassName() + ".class");
+        SpecsIo.mkdir(outputDir);
+
+        try {
+            Files.write(classFile.toPath(), this.classFile);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not write class file " + classFile, e);
+        }
+        return classFile;
+    }
+}
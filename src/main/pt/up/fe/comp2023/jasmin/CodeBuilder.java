@@ -0,0 +1,221 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Assembles the bytecode of a single method, resolving labels and keeping track of the maximum operand stack depth
+ */
+class CodeBuilder {
+
+    static final int ICONST_0 = 0x03;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC = 0x12;
+    static final int LDC_W = 0x13;
+    static final int ILOAD = 0x15;
+    static final int ALOAD = 0x19;
+    static final int ILOAD_0 = 0x1a;
+    static final int ALOAD_0 = 0x2a;
+    static final int IALOAD = 0x2e;
+    static final int AALOAD = 0x32;
+    static final int ISTORE = 0x36;
+    static final int ASTORE = 0x3a;
+    static final int ISTORE_0 = 0x3b;
+    static final int ASTORE_0 = 0x4b;
+    static final int IASTORE = 0x4f;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int DUP = 0x59;
+    static final int IADD = 0x60;
+    static final int ISUB = 0x64;
+    static final int IMUL = 0x68;
+    static final int IDIV = 0x6c;
+    static final int IAND = 0x7e;
+    static final int IOR = 0x80;
+    static final int IXOR = 0x82;
+    static final int IINC = 0x84;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int IF_ICMPEQ = 0x9f;
+    static final int IF_ICMPNE = 0xa0;
+    static final int IF_ICMPLT = 0xa1;
+    static final int IF_ICMPGE = 0xa2;
+    static final int IF_ICMPGT = 0xa3;
+    static final int IF_ICMPLE = 0xa4;
+    static final int GOTO = 0xa7;
+    static final int IRETURN = 0xac;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETFIELD = 0xb4;
+    static final int PUTFIELD = 0xb5;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int NEWARRAY = 0xbc;
+    static final int ARRAYLENGTH = 0xbe;
+    static final int WIDE = 0xc4;
+
+    static final int T_INT = 10;
+
+    private record Fixup(int opcodePosition, int offsetPosition, String label) {
+    }
+
+    private final ByteOutput code = new ByteOutput(256);
+    private final Map<String, Integer> labelPositions = new HashMap<>();
+    private final Map<String, Integer> labelDepths = new HashMap<>();
+    private final List<Fixup> fixups = new ArrayList<>();
+    private int depth;
+    private int maxDepth;
+    private boolean reachable = true;
+
+    /**
+     * Emits an instruction without operands
+     * @param stackDelta Change in the operand stack depth caused by the instruction
+     */
+    void op(int opcode, int stackDelta) {
+        code.u1(opcode);
+        adjust(stackDelta);
+        if (opcode == GOTO || (opcode >= IRETURN && opcode <= RETURN)) {
+            reachable = false;
+        }
+    }
+
+    void opU1(int opcode, int operand, int stackDelta) {
+        code.u1(opcode);
+        code.u1(operand);
+        adjust(stackDelta);
+    }
+
+    void opU2(int opcode, int operand, int stackDelta) {
+        code.u1(opcode);
+        code.u2(operand);
+        adjust(stackDelta);
+    }
+
+    void invokeInterface(int methodRef, int argSlots, int stackDelta) {
+        code.u1(INVOKEINTERFACE);
+        code.u2(methodRef);
+        code.u1(argSlots);
+        code.u1(0);
+        adjust(stackDelta);
+    }
+
+    void pushInt(int value, ConstantPool pool) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value, 1);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            opU1(BIPUSH, value, 1);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            opU2(SIPUSH, value, 1);
+        } else {
+            ldc(pool.integer(value));
+        }
+    }
+
+    void ldc(int constant) {
+        if (constant <= 0xff) opU1(LDC, constant, 1);
+        else opU2(LDC_W, constant, 1);
+    }
+
+    /**
+     * Emits a load or store, using the short form for registers 0 to 3
+     * @param opcode ILOAD, ALOAD, ISTORE or ASTORE
+     * @param shortOpcode The matching "_0" opcode
+     */
+    void local(int opcode, int shortOpcode, int register, int stackDelta) {
+        if (register <= 3) {
+            op(shortOpcode + register, stackDelta);
+        } else if (register <= 0xff) {
+            opU1(opcode, register, stackDelta);
+        } else {
+            code.u1(WIDE);
+            opU2(opcode, register, stackDelta);
+        }
+    }
+
+    /**
+     * Emits an iinc, using the wide form when the register or the constant do not fit in a byte
+     * @return false if the constant does not fit in a wide iinc either
+     */
+    boolean iinc(int register, int value) {
+        if (register <= 0xff && value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            code.u1(IINC);
+            code.u1(register);
+            code.u1(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            code.u1(WIDE);
+            code.u1(IINC);
+            code.u2(register);
+            code.u2(value);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Emits a branch to the given label, which may be placed later
+     */
+    void jump(int opcode, String label, int stackDelta) {
+        int position = code.size();
+        code.u1(opcode);
+        fixups.add(new Fixup(position, code.size(), label));
+        code.u2(0);
+        adjust(stackDelta);
+        labelDepths.putIfAbsent(label, depth);
+        if (opcode == GOTO) {
+            reachable = false;
+        }
+    }
+
+    /**
+     * Places a label at the current position
+     */
+    void label(String label) {
+        labelPositions.put(label, code.size());
+
+        // After a goto or return the stack depth is the one seen by the branches to this label
+        if (!reachable) {
+            depth = labelDepths.getOrDefault(label, 0);
+        }
+        labelDepths.putIfAbsent(label, depth);
+        reachable = true;
+    }
+
+    private void adjust(int stackDelta) {
+        depth += stackDelta;
+        maxDepth = Math.max(maxDepth, depth);
+    }
+
+    int getMaxStack() {
+        return maxDepth;
+    }
+
+    /**
+     * @return The bytecode, with every branch offset resolved
+     */
+    ByteOutput resolve() {
+        for (Fixup fixup : fixups) {
+            Integer target = labelPositions.get(fixup.label());
+            if (target == null) {
+                throw new IllegalStateException("Undefined label '" + fixup.label() + "'");
+            }
+
+            int offset = target - fixup.opcodePosition();
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("Branch to '" + fixup.label() + "' is too far");
+            }
+            code.u2At(fixup.offsetPosition(), offset);
+        }
+        return code;
+    }
+}
@@ -0,0 +1,115 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Constant pool of a class file. Every entry is added once and referenced by its index afterwards.
+ */
+class ConstantPool {
+
+    private static final int UTF8 = 1;
+    private static final int INTEGER = 3;
+    private static final int CLASS = 7;
+    private static final int STRING = 8;
+    private static final int FIELD_REF = 9;
+    private static final int METHOD_REF = 10;
+    private static final int INTERFACE_METHOD_REF = 11;
+    private static final int NAME_AND_TYPE = 12;
+
+    private final ByteOutput entries = new ByteOutput(512);
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private int count = 1;
+
+    int utf8(String value) {
+        Integer index = indexes.get("U" + value);
+        if (index != null) return index;
+
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        entries.u1(UTF8);
+        entries.u2(bytes.length);
+        entries.bytes(bytes);
+        return register("U" + value);
+    }
+
+    int integer(int value) {
+        Integer index = indexes.get("I" + value);
+        if (index != null) return index;
+
+        entries.u1(INTEGER);
+        entries.u4(value);
+        return register("I" + value);
+    }
+
+    int classRef(String internalName) {
+        Integer index = indexes.get("C" + internalName);
+        if (index != null) return index;
+
+        int name = utf8(internalName);
+        entries.u1(CLASS);
+        entries.u2(name);
+        return register("C" + internalName);
+    }
+
+    int string(String value) {
+        Integer index = indexes.get("S" + value);
+        if (index != null) return index;
+
+        int utf8 = utf8(value);
+        entries.u1(STRING);
+        entries.u2(utf8);
+        return register("S" + value);
+    }
+
+    int fieldRef(String owner, String name, String descriptor) {
+        return memberRef(FIELD_REF, owner, name, descriptor);
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(METHOD_REF, owner, name, descriptor);
+    }
+
+    int interfaceMethodRef(String owner, String name, String descriptor) {
+        return memberRef(INTERFACE_METHOD_REF, owner, name, descriptor);
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + ":" + descriptor;
+        Integer index = indexes.get(key);
+        if (index != null) return index;
+
+        int ownerIndex = classRef(owner);
+        int nameAndType = nameAndType(name, descriptor);
+        entries.u1(tag);
+        entries.u2(ownerIndex);
+        entries.u2(nameAndType);
+        return register(key);
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        String key = "N" + name + ":" + descriptor;
+        Integer index = indexes.get(key);
+        if (index != null) return index;
+
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        entries.u1(NAME_AND_TYPE);
+        entries.u2(nameIndex);
+        entries.u2(descriptorIndex);
+        return register(key);
+    }
+
+    private int register(String key) {
+        indexes.put(key, count);
+        return count++;
+    }
+
+    /**
+     * Writes the constant pool count followed by the entries
+     */
+    void writeTo(ByteOutput out) {
+        out.u2(count);
+        out.bytes(entries);
+    }
+}
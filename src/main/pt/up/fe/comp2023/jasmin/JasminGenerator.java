@@ -5,19 +5,23 @@ import pt.up.fe.comp.jmm.jasmin.JasminBackend;
 import pt.up.fe.comp.jmm.jasmin.JasminResult;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
 import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2023.optimization.Operands;
 
 import java.util.*;
 
 public class JasminGenerator implements JasminBackend {
+    // Shortest chain of comparisons with constants that is turned into a switch
+    private static final int MIN_SWITCH_CASES = 3;
+
     private final static String labelPrefix = "line";
     private StringBuilder jasminCode;
     private ClassUnit classUnit;
     private HashMap<String, Descriptor> vars;
-    private List<String> labels;
+    private Map<String, Label> labels;
+    private List<JasminInstruction> code;
     private Stack<Instruction> contextStack;
-    private int stackLimit;
-    private int currentStack;
-    private int numLines;
+    private int numLabels;
+    private List<JasminPass> passes;
 
     @Override
     public JasminResult toJasmin(OllirResult ollirResult) {
@@ -34,11 +38,15 @@ public class JasminGenerator implements JasminBackend {
         List<Report> reports = ollirResult.getReports();
         this.jasminCode = new StringBuilder();
         this.vars = new HashMap<>();
-        this.labels = new ArrayList<>();
+        this.labels = new HashMap<>();
         this.contextStack = new Stack<>();
-        this.stackLimit = 0;
-        this.currentStack = 0;
-        this.numLines = 0;
+        this.numLabels = 0;
+
+        // Passes run on the code of each method, in order
+        this.passes = new ArrayList<>();
+        if (ollirResult.getConfig() != null && "true".equals(ollirResult.getConfig().get("optimize"))) {
+            this.passes.add(new PeepholeOptimizer());
+        }
 
         // Add class declaration
         this.addLine(getClassDeclaration());
@@ -111,9 +119,11 @@ public class JasminGenerator implements JasminBackend {
 
     private void dealWithConstructorMethod(){
         this.addLine(".method public <init>()V");
-        this.addLine("\taload_0");
-        this.addLine("\tinvokespecial " + Objects.requireNonNullElse(this.classUnit.getSuperClass(), "java/lang/Object") + ".<init>()V");
-        this.addLine("\t return");
+        this.code = new ArrayList<>();
+        this.emit(Opcode.ALOAD, 0);
+        this.emit(Opcode.INVOKESPECIAL, Objects.requireNonNullElse(this.classUnit.getSuperClass(), "java/lang/Object") + ".<init>()V");
+        this.emit(Opcode.RETURN);
+        JasminWriter.write(this.code, this.jasminCode);
         this.addLine(".end method");
     }
 
@@ -122,30 +132,51 @@ public class JasminGenerator implements JasminBackend {
         this.addLine(getMethodHeader(method));
 
         // Add method body
-        StringBuilder methodBody = new StringBuilder();
-        StringBuilder sub = this.setStringBuilder(methodBody);
-
-        this.stackLimit = 0;
-        for(Instruction instruction : method.getInstructions()){
-            this.currentStack = 0;
-            this.labels = method.getLabels(instruction);
-
-            for (String label : this.labels) {
-                this.addLine(label + ":");
+        this.code = new ArrayList<>();
+        this.labels = new HashMap<>();
+
+        List<Instruction> instructions = method.getInstructions();
+        Map<String, Integer> reads = this.countReads(method);
+        for(int i = 0; i < instructions.size(); i++){
+            Instruction instruction = instructions.get(i);
+            for (String label : method.getLabels(instruction)) {
+                this.code.add(JasminInstruction.label(this.getLabel(label)));
             }
 
-            this.dealWithInstruction(instruction, "\t");
-            this.updateStack(0);
+            int chain = this.dealWithSwitch(method, instructions, i);
+            if (chain > 0) {
+                i += chain - 1;
+                continue;
+            }
+            if (i + 1 < instructions.size() && this.fuseCondition(method, instruction, instructions.get(i + 1), reads)) {
+                i++;
+                continue;
+            }
+            this.dealWithInstruction(instruction);
         }
 
-        this.setStringBuilder(sub);
+        for (JasminPass pass : this.passes) {
+            pass.apply(this.code);
+        }
 
-        this.addLine("\t.limit stack " + this.stackLimit);
-        this.addLine("\t.limit locals " + (this.vars.size() + (method.getVarTable().containsKey("this") || method.isStaticMethod() ? 0 : 1)));
-        this.jasminCode.append(methodBody);
+        // Simulates the stack effect of the emitted code along every path through the method
+        this.addLine("\t.limit stack " + StackAnalyzer.getMaxStack(this.code));
+        this.addLine("\t.limit locals " + this.getLocalsLimit(method));
+        JasminWriter.write(this.code, this.jasminCode);
         this.addLine(".end method");
     }
 
+    /**
+     * Number of registers used by the method, which can share registers after register allocation
+     */
+    private int getLocalsLimit(Method method){
+        int locals = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
+        for (Descriptor var : this.vars.values()) {
+            locals = Math.max(locals, var.getVirtualReg() + 1);
+        }
+        return locals;
+    }
+
     private StringBuilder getMethodHeader(Method method){
         StringBuilder s = new StringBuilder();
 
@@ -168,98 +199,101 @@ public class JasminGenerator implements JasminBackend {
         return s;
     }
 
-    private void dealWithInstruction(Instruction instruction, String tabs) {
+    private void dealWithInstruction(Instruction instruction) {
 
         switch (instruction.getInstType()) {
-            case ASSIGN -> dealWithAssign((AssignInstruction) instruction, tabs);
-            case CALL -> dealWithCall((CallInstruction) instruction, tabs);
-            case GOTO -> dealWithGoto((GotoInstruction) instruction, tabs);
-            case BRANCH -> dealWithBranch((CondBranchInstruction) instruction, tabs);
-            case RETURN -> dealWithReturn((ReturnInstruction) instruction, tabs);
-            case PUTFIELD -> dealWithPutField((PutFieldInstruction) instruction, tabs);
-            case GETFIELD -> dealWithGetField((GetFieldInstruction) instruction, tabs);
-            case UNARYOPER -> dealWithUnaryOp((UnaryOpInstruction) instruction, tabs);
-            case BINARYOPER -> dealWithBinaryOp((BinaryOpInstruction) instruction, tabs);
-            case NOPER -> dealWithNoOp((SingleOpInstruction) instruction, tabs);
+            case ASSIGN -> dealWithAssign((AssignInstruction) instruction);
+            case CALL -> dealWithCall((CallInstruction) instruction);
+            case GOTO -> dealWithGoto((GotoInstruction) instruction);
+            case BRANCH -> dealWithBranch((CondBranchInstruction) instruction);
+            case RETURN -> dealWithReturn((ReturnInstruction) instruction);
+            case PUTFIELD -> dealWithPutField((PutFieldInstruction) instruction);
+            case GETFIELD -> dealWithGetField((GetFieldInstruction) instruction);
+            case UNARYOPER -> dealWithUnaryOp((UnaryOpInstruction) instruction);
+            case BINARYOPER -> dealWithBinaryOp((BinaryOpInstruction) instruction);
+            case NOPER -> dealWithNoOp((SingleOpInstruction) instruction);
         }
     }
 
-    private void dealWithAssign(AssignInstruction assignInstruction, String tabs) {
+    private void dealWithAssign(AssignInstruction assignInstruction) {
         Element dest = assignInstruction.getDest();
         String destName = ((Operand) dest).getName();
         Descriptor descriptor = this.vars.get(destName);
 
         if(dest.getClass().equals(ArrayOperand.class)){
-            this.addLine(tabs + this.getLoadInstr("a", descriptor.getVirtualReg()));
-            this.currentStack++;
+            this.emit(Opcode.ALOAD, descriptor.getVirtualReg());
 
             for(Element element : ((ArrayOperand) dest).getIndexOperands()){
-                this.loadCallArg(element, tabs);
+                this.loadCallArg(element);
             }
         }
         else{
-            if(checkAssignIINC(destName, descriptor.getVirtualReg(), assignInstruction.getRhs(), tabs)) return;
+            if(checkAssignIINC(destName, descriptor.getVirtualReg(), assignInstruction.getRhs())) return;
         }
 
         this.contextStack.push(assignInstruction);
-        this.dealWithInstruction(assignInstruction.getRhs(), tabs);
+        this.dealWithInstruction(assignInstruction.getRhs());
         this.contextStack.pop();
 
         switch (dest.getType().getTypeOfElement()){
             case INT32, BOOLEAN -> {
-                if(dest.getClass().equals(ArrayOperand.class)) this.addLine(tabs + "iastore");
-                else this.addLine(tabs + this.getStoreInstr("i", descriptor.getVirtualReg()));
+                if(dest.getClass().equals(ArrayOperand.class)) this.emit(Opcode.IASTORE);
+                else this.emit(Opcode.ISTORE, descriptor.getVirtualReg());
             }
             default -> {
-                if(dest.getClass().equals(ArrayOperand.class)) this.addLine(tabs + "aastore");
-                else this.addLine(tabs + this.getStoreInstr("a", descriptor.getVirtualReg()));
+                if(dest.getClass().equals(ArrayOperand.class)) this.emit(Opcode.AASTORE);
+                else this.emit(Opcode.ASTORE, descriptor.getVirtualReg());
             }
         }
     }
 
-    private void dealWithCall(CallInstruction callInstruction, String tabs) {
-        StringBuilder s = new StringBuilder(tabs);
+    private void dealWithCall(CallInstruction callInstruction) {
+        StringBuilder s = new StringBuilder();
+        Opcode opcode;
 
         switch (callInstruction.getInvocationType()) {
             case invokevirtual -> {
-                s.append("invokevirtual ");
-                this.loadCallArg(callInstruction.getFirstArg(), tabs);
+                opcode = Opcode.INVOKEVIRTUAL;
+                this.loadCallArg(callInstruction.getFirstArg());
                 s.append(this.callArg(callInstruction.getFirstArg()));
             }
             case invokeinterface -> {
-                s.append("invokeinterface ");
-                this.loadCallArg(callInstruction.getFirstArg(), tabs);
+                opcode = Opcode.INVOKEINTERFACE;
+                this.loadCallArg(callInstruction.getFirstArg());
                 s.append(this.callArg(callInstruction.getFirstArg()));
             }
             case invokespecial -> {
-                s.append("invokespecial ");
+                opcode = Opcode.INVOKESPECIAL;
                 s.append(this.callArg(callInstruction.getFirstArg()));
             }
             case invokestatic -> {
-                s.append("invokestatic ");
-                this.loadCallArg(callInstruction.getFirstArg(), tabs);
+                opcode = Opcode.INVOKESTATIC;
+                this.loadCallArg(callInstruction.getFirstArg());
                 s.append(this.callArg(callInstruction.getFirstArg()));
             }
             case NEW -> {
                 if(this.callArg(callInstruction.getFirstArg()).equals("array")){
-                    this.loadCallArg(callInstruction.getListOfOperands().get(0), tabs);
-                    this.addLine(tabs + "newarray int");
-                    this.updateStack(1);
-                    this.currentStack++;
+                    this.loadCallArg(callInstruction.getListOfOperands().get(0));
+                    this.emit(Opcode.NEWARRAY, "int");
                     return;
                 }
                 else{
-                    s.append("new ");
+                    opcode = Opcode.NEW;
                     s.append(this.callArg(callInstruction.getFirstArg()));
-                    this.currentStack++;
                 }
             }
             case arraylength -> {
-                this.loadCallArg(callInstruction.getFirstArg(), tabs);
-                this.addLine(tabs + "arraylength");
+                this.loadCallArg(callInstruction.getFirstArg());
+                this.emit(Opcode.ARRAYLENGTH);
+                return;
+            }
+            case ldc -> {
+                this.loadCallArg(callInstruction.getFirstArg());
+                return;
+            }
+            default -> {
                 return;
             }
-            case ldc -> this.loadCallArg(callInstruction.getFirstArg(), tabs);
         }
 
         if(callInstruction.getNumOperands() > 1){
@@ -270,7 +304,7 @@ public class JasminGenerator implements JasminBackend {
             this.contextStack.push(callInstruction);
             s.append("(");
             for(Element element : callInstruction.getListOfOperands()){
-                this.loadCallArg(element, tabs);
+                this.loadCallArg(element);
                 s.append(this.getType(element.getType()));
             }
             s.append(")");
@@ -279,99 +313,225 @@ public class JasminGenerator implements JasminBackend {
 
         String ret = getType(callInstruction.getReturnType());
         s.append(ret);
-        this.addLine(s);
+        this.emit(opcode, s.toString());
 
         if (this.contextStack.empty() && !ret.isEmpty() && !ret.equals("V")) {
-            this.addLine(tabs + "pop");
-            this.updateStack(1);
+            this.emit(Opcode.POP);
         }
 
         if (callInstruction.getInvocationType() == CallType.NEW) {
-            this.addLine(tabs + "dup");
-            this.currentStack++;
+            this.emit(Opcode.DUP);
         }
     }
 
-    private void dealWithGoto(GotoInstruction gotoInstruction, String tabs) {
-        this.addLine(tabs + "goto " + gotoInstruction.getLabel());
+    private void dealWithGoto(GotoInstruction gotoInstruction) {
+        this.emit(Opcode.GOTO, this.getLabel(gotoInstruction.getLabel()));
     }
 
-    private void dealWithBranch(CondBranchInstruction branchInstruction, String tabs) {
-        if(branchInstruction.getCondition() instanceof BinaryOpInstruction opInstruction){
+    private void dealWithBranch(CondBranchInstruction branchInstruction) {
+        this.branch(branchInstruction.getCondition(), this.getLabel(branchInstruction.getLabel()), true);
+    }
+
+    /**
+     * Jumps to the label if the condition evaluates to the given value, and falls through otherwise
+     */
+    private void branch(Instruction condition, Label label, boolean when) {
+        if(condition instanceof BinaryOpInstruction opInstruction){
             Element leftElement = opInstruction.getLeftOperand();
             Element rightElement = opInstruction.getRightOperand();
-            String label = branchInstruction.getLabel();
-
-            switch (opInstruction.getOperation().getOpType()){
-                case ANDB -> {
-                    this.loadCallArg(leftElement, tabs);
-                    this.addLine(tabs + "ifeq"  + label);
-                    this.updateStack(1);
-                    this.loadCallArg(rightElement, tabs);
-                    this.addLine(tabs + "ifeq " + label);
-                    this.updateStack(1);
-                    this.currentStack++;
-                }
-                case ORB -> {
-                    this.loadCallArg(leftElement, tabs);
-                    this.addLine(tabs + "ifneq " + label);
-                    this.updateStack(1);
-                    this.loadCallArg(rightElement, tabs);
-                    this.addLine(tabs + "ifneq " + label);
-                    this.updateStack(1);
-                    this.currentStack++;
+            OperationType opType = opInstruction.getOperation().getOpType();
+
+            if (opType == OperationType.ANDB || opType == OperationType.ORB) {
+                // "a && b" jumps when true only if both are true, and jumps when false if either is false
+                boolean and = opType == OperationType.ANDB;
+                if (and != when) {
+                    this.branch(leftElement, label, when);
+                    this.branch(rightElement, label, when);
+                } else {
+                    Label skip = this.newLabel();
+                    this.branch(leftElement, skip, !when);
+                    this.branch(rightElement, label, when);
+                    this.code.add(JasminInstruction.label(skip));
                 }
-                case LTH -> this.dealWithIntCmpBranch(leftElement, rightElement, "if_icmplt", "iflt", label, tabs);
-                case GTH -> this.dealWithIntCmpBranch(leftElement, rightElement, "if_icmpgt", "ifgt", label, tabs);
-                case LTE -> this.dealWithIntCmpBranch(leftElement, rightElement, "if_icmple", "ifle", label, tabs);
-                case GTE -> this.dealWithIntCmpBranch(leftElement, rightElement, "if_icmpge", "ifge", label, tabs);
-                case EQ -> this.dealWithIntCmpBranch(leftElement, rightElement, "if_icmpeq", "ifeq", label, tabs);
-                case NEQ -> this.dealWithIntCmpBranch(leftElement, rightElement, "if_icmpne", "ifne", label, tabs);
+                return;
             }
+
+            Opcode compare = this.getCompareOpcode(opType);
+            if (compare != null) {
+                this.dealWithIntCmpBranch(leftElement, rightElement, when ? compare : compare.negate(), label);
+                return;
+            }
+        }
+        else if(condition instanceof UnaryOpInstruction opInstruction
+                && opInstruction.getOperation().getOpType() == OperationType.NOTB){
+            this.branch(opInstruction.getOperand(), label, !when);
+            return;
         }
-        else if(branchInstruction.getCondition() instanceof SingleOpInstruction opInstruction){
-            this.loadCallArg(opInstruction.getSingleOperand(), tabs);
-            this.addLine(tabs + "ifne " + branchInstruction.getLabel());
-            this.updateStack(1);
-            this.currentStack++;
+
+        // Any other condition is computed and tested, keeping the value a call returns
+        this.contextStack.push(condition);
+        this.dealWithInstruction(condition);
+        this.contextStack.pop();
+        this.emit(when ? Opcode.IFNE : Opcode.IFEQ, label);
+    }
+
+    private void branch(Element value, Label label, boolean when) {
+        this.loadCallArg(value);
+        this.emit(when ? Opcode.IFNE : Opcode.IFEQ, label);
+    }
+
+    /**
+     * Branches on the value of an assignment directly, without storing it, when the next instruction is a branch that
+     * is the only one to read it and is not reached from anywhere else, as in {@code t = a < b; if (t) goto L;}
+     * @return Whether both instructions were generated
+     */
+    private boolean fuseCondition(Method method, Instruction instruction, Instruction next, Map<String, Integer> reads) {
+        Operand dest = Operands.getDef(instruction);
+        if (dest == null || !(next instanceof CondBranchInstruction branchInstruction)) return false;
+        if (dest.getType().getTypeOfElement() != ElementType.BOOLEAN || reads.getOrDefault(dest.getName(), 0) != 1
+                || !method.getLabels(next).isEmpty()) return false;
+
+        // Branches on the variable, or on it being false
+        boolean when;
+        Instruction condition = branchInstruction.getCondition();
+        if (condition instanceof SingleOpInstruction single && this.isVariable(single.getSingleOperand(), dest)) {
+            when = true;
+        } else if (condition instanceof UnaryOpInstruction unary && unary.getOperation().getOpType() == OperationType.NOTB
+                && this.isVariable(unary.getOperand(), dest)) {
+            when = false;
+        } else if (condition instanceof BinaryOpInstruction binary && binary.getOperation().getOpType() == OperationType.EQ
+                && this.isVariable(binary.getLeftOperand(), dest) && binary.getRightOperand().isLiteral()
+                && this.callArg(binary.getRightOperand()).equals("0")) {
+            when = false;
+        } else {
+            return false;
+        }
+
+        this.branch(((AssignInstruction) instruction).getRhs(), this.getLabel(branchInstruction.getLabel()), when);
+        return true;
+    }
+
+    /**
+     * Dispatches with a tableswitch or a lookupswitch on a chain of branches that compare the same variable with
+     * different constants, like the ones switch statements are lowered to, followed by a jump to the default target or
+     * by the code that runs when no value matches. The tableswitch is used when its table, with the values that are
+     * not in the chain going to the default target, costs no more than the pairs of the lookupswitch and the search
+     * through them, weighed as javac does.
+     * @return Number of instructions of the chain, 0 if there is no chain of at least MIN_SWITCH_CASES branches there
+     */
+    private int dealWithSwitch(Method method, List<Instruction> instructions, int start) {
+        Operand selector = null;
+        TreeMap<Integer, Label> targets = new TreeMap<>();
+        int end = start;
+        for (; end < instructions.size(); end++) {
+            Instruction instruction = instructions.get(end);
+            // Nothing may jump into the middle of the chain
+            if (end > start && !method.getLabels(instruction).isEmpty()) break;
+            if (!(instruction instanceof CondBranchInstruction branchInstruction)
+                    || !(branchInstruction.getCondition() instanceof BinaryOpInstruction condition)
+                    || condition.getOperation().getOpType() != OperationType.EQ) break;
+
+            Element left = condition.getLeftOperand();
+            Element right = condition.getRightOperand();
+            if (!(left instanceof Operand operand) || left instanceof ArrayOperand
+                    || left.getType().getTypeOfElement() != ElementType.INT32 || !right.isLiteral()
+                    || (selector != null && !operand.getName().equals(selector.getName()))) break;
+
+            // A repeated value is never matched again, the chain stops before it
+            int value = Integer.parseInt(this.callArg(right));
+            if (targets.containsKey(value)) break;
+            selector = operand;
+            targets.put(value, this.getLabel(branchInstruction.getLabel()));
+        }
+        if (targets.size() < MIN_SWITCH_CASES) return 0;
+
+        Label defaultLabel;
+        boolean jumps = end < instructions.size() && instructions.get(end) instanceof GotoInstruction
+                && method.getLabels(instructions.get(end)).isEmpty();
+        if (jumps) {
+            defaultLabel = this.getLabel(((GotoInstruction) instructions.get(end)).getLabel());
+            end++;
+        } else {
+            defaultLabel = this.newLabel();
+        }
+
+        this.loadCallArg(selector);
+        int low = targets.firstKey();
+        int high = targets.lastKey();
+        // Size in words plus three times the number of comparisons
+        long tableCost = 4 + ((long) high - low + 1) + 3 * 3;
+        long lookupCost = 3 + 2L * targets.size() + 3L * targets.size();
+        List<Object> operands = new ArrayList<>();
+        if (tableCost <= lookupCost) {
+            operands.add(low);
+            operands.add(high);
+            for (long value = low; value <= high; value++) operands.add(targets.getOrDefault((int) value, defaultLabel));
+            operands.add(defaultLabel);
+            this.emit(Opcode.TABLESWITCH, operands.toArray());
+        } else {
+            targets.forEach((value, label) -> {
+                operands.add(value);
+                operands.add(label);
+            });
+            operands.add(defaultLabel);
+            this.emit(Opcode.LOOKUPSWITCH, operands.toArray());
+        }
+        if (!jumps) this.code.add(JasminInstruction.label(defaultLabel));
+
+        return end - start;
+    }
+
+    private boolean isVariable(Element element, Operand variable) {
+        return element instanceof Operand operand && !(operand instanceof ArrayOperand)
+                && operand.getName().equals(variable.getName());
+    }
+
+    /**
+     * @return Number of instructions of the method that read each variable
+     */
+    private Map<String, Integer> countReads(Method method) {
+        Map<String, Integer> reads = new HashMap<>();
+        for (Instruction instruction : method.getInstructions()) {
+            for (Operand operand : Operands.getUses(instruction)) {
+                reads.merge(operand.getName(), 1, Integer::sum);
+            }
         }
+        return reads;
     }
 
-    private void dealWithReturn(ReturnInstruction returnInstruction, String tabs) {
+    private void dealWithReturn(ReturnInstruction returnInstruction) {
         if (!returnInstruction.hasReturnValue()) {
-            this.addLine(tabs + "return");
+            this.emit(Opcode.RETURN);
         }
         else{
-            this.loadCallArg(returnInstruction.getOperand(), tabs);
-            String retType;
+            this.loadCallArg(returnInstruction.getOperand());
             switch (returnInstruction.getOperand().getType().getTypeOfElement()){
-                case INT32, BOOLEAN -> retType = "i";
-                case VOID -> retType = "";
-                default -> retType = "a";
+                case INT32, BOOLEAN -> this.emit(Opcode.IRETURN);
+                case VOID -> this.emit(Opcode.RETURN);
+                default -> this.emit(Opcode.ARETURN);
             }
-            this.addLine(tabs + retType + "return");
         }
     }
 
-    private void dealWithPutField(PutFieldInstruction putFieldInstruction, String tabs) {
+    private void dealWithPutField(PutFieldInstruction putFieldInstruction) {
         Element e1 = putFieldInstruction.getFirstOperand();
         Element e2 = putFieldInstruction.getSecondOperand();
         Element e3 = putFieldInstruction.getThirdOperand();
 
-        this.loadCallArg(e1, tabs);
-        this.loadCallArg(e3, tabs);
-        this.addLine(tabs + "putfield " + this.callArg(e1) + "." + this.callArg(e2) + " " + this.getType(e2.getType()));
+        this.loadCallArg(e1);
+        this.loadCallArg(e3);
+        this.emit(Opcode.PUTFIELD, this.callArg(e1) + "." + this.callArg(e2), this.getType(e2.getType()));
     }
 
-    private void dealWithGetField(GetFieldInstruction getFieldInstruction, String tabs) {
+    private void dealWithGetField(GetFieldInstruction getFieldInstruction) {
         Element e1 = getFieldInstruction.getFirstOperand();
         Element e2 = getFieldInstruction.getSecondOperand();
 
-        this.loadCallArg(e1, tabs);
-        this.addLine(tabs + "getfield " + this.callArg(e1) + "." + this.callArg(e2) + " " + this.getType(e2.getType()));
+        this.loadCallArg(e1);
+        this.emit(Opcode.GETFIELD, this.callArg(e1) + "." + this.callArg(e2), this.getType(e2.getType()));
     }
 
-    private void dealWithUnaryOp(UnaryOpInstruction opInstruction, String tabs) {
+    private void dealWithUnaryOp(UnaryOpInstruction opInstruction) {
         this.contextStack.push(opInstruction);
 
         Element element = opInstruction.getOperand();
@@ -380,155 +540,202 @@ public class JasminGenerator implements JasminBackend {
         if(operation.getOpType() == OperationType.NOTB){
             if(element.isLiteral()){
                 int literal = Integer.parseInt(this.callArg(element));
-                this.addLine(tabs + this.boolLiteralPush(literal));
+                this.code.add(this.boolLiteralPush(literal));
             }
             else{
-                this.loadCallArg(element, tabs);
-                String elseLabel = labelPrefix + (this.numLines + 4);
-                String endLabel = labelPrefix + (this.numLines + 5);
-                this.addLine(tabs + "ifne " + elseLabel);
-                this.addLine(tabs + "iconst_1");
-                this.addLine(tabs + "goto " + endLabel);
-                this.addLine(elseLabel + ":");
-                this.addLine(tabs + "iconst_0");
-                this.addLine(endLabel + ":");
+                // !a = a ^ 1
+                this.loadCallArg(element);
+                this.emit(Opcode.ICONST_1);
+                this.emit(Opcode.IXOR);
             }
-            this.currentStack++;
         }
         this.contextStack.pop();
     }
 
-    private void dealWithBinaryOp(BinaryOpInstruction opInstruction, String tabs) {
+    private void dealWithBinaryOp(BinaryOpInstruction opInstruction) {
         this.contextStack.push(opInstruction);
 
         Element leftElement = opInstruction.getLeftOperand();
         Element rightElement = opInstruction.getRightOperand();
 
         switch (opInstruction.getOperation().getOpType()){
-            case ADD -> this.dealWithIntArithmetic(leftElement, rightElement, "iadd", tabs);
-            case SUB -> this.dealWithIntArithmetic(leftElement, rightElement, "isub", tabs);
-            case MUL -> this.dealWithIntArithmetic(leftElement, rightElement, "imul", tabs);
-            case DIV -> this.dealWithIntArithmetic(leftElement, rightElement, "idiv", tabs);
-            case LTH -> this.dealWithBooleanArithmetic(leftElement, rightElement, "if_cmplt", tabs);
-            case GTH -> this.dealWithBooleanArithmetic(leftElement, rightElement, "if_cmpgt", tabs);
-            case LTE -> this.dealWithBooleanArithmetic(leftElement, rightElement, "if_cmple", tabs);
-            case GTE -> this.dealWithBooleanArithmetic(leftElement, rightElement, "if_cmpge", tabs);
-            case EQ -> this.dealWithBooleanArithmetic(leftElement, rightElement, "if_cmpeq", tabs);
-            case NEQ -> this.dealWithBooleanArithmetic(leftElement, rightElement, "if_cmpne", tabs);
-            case ANDB -> this.dealWithAndArithmetic(leftElement, rightElement, tabs);
+            case ADD -> this.dealWithIntArithmetic(leftElement, rightElement, Opcode.IADD);
+            case SUB -> this.dealWithIntArithmetic(leftElement, rightElement, Opcode.ISUB);
+            case MUL -> this.dealWithIntArithmetic(leftElement, rightElement, Opcode.IMUL);
+            case DIV -> this.dealWithIntArithmetic(leftElement, rightElement, Opcode.IDIV);
+            case LTH, GTH, LTE, GTE, EQ, NEQ -> this.dealWithBooleanArithmetic(opInstruction);
+            case AND -> this.dealWithIntArithmetic(leftElement, rightElement, Opcode.IAND);
+            case OR -> this.dealWithIntArithmetic(leftElement, rightElement, Opcode.IOR);
+            case XOR -> this.dealWithIntArithmetic(leftElement, rightElement, Opcode.IXOR);
+            case ANDB, ORB -> this.dealWithLogicalArithmetic(opInstruction);
         }
 
         this.contextStack.pop();
     }
 
-    private void dealWithNoOp(SingleOpInstruction opInstruction, String tabs) {
-        this.loadCallArg(opInstruction.getSingleOperand(), tabs);
+    private void dealWithNoOp(SingleOpInstruction opInstruction) {
+        this.loadCallArg(opInstruction.getSingleOperand());
     }
 
-    private void dealWithIntCmpBranch(Element e1, Element e2, String op, String opZero, String label, String tabs){
+    /**
+     * Jumps to the label if the comparison holds, comparing against zero when the right operand is the literal 0
+     */
+    private void dealWithIntCmpBranch(Element e1, Element e2, Opcode op, Label label){
         boolean zeroAtRight = e2.isLiteral() && this.callArg(e2).equals("0");
 
-        this.loadCallArg(e1, tabs);
+        this.loadCallArg(e1);
         if(zeroAtRight){
-            this.addLine(tabs + opZero + " " + label);
-            this.updateStack(1);
+            this.emit(this.getZeroCompareOpcode(op), label);
         }
         else{
-            this.loadCallArg(e2, tabs);
-            this.addLine(tabs + op + " " + label);
-            this.updateStack(2);
-        }
-        this.currentStack++;
-    }
-
-    private void dealWithIntArithmetic(Element e1, Element e2, String op, String tabs){
-        if(e1.isLiteral() && e2.isLiteral()){
+            this.loadCallArg(e2);
+            this.emit(op, label);
+        }
+    }
+
+    private Opcode getCompareOpcode(OperationType opType) {
+        return switch (opType) {
+            case LTH -> Opcode.IF_ICMPLT;
+            case GTH -> Opcode.IF_ICMPGT;
+            case LTE -> Opcode.IF_ICMPLE;
+            case GTE -> Opcode.IF_ICMPGE;
+            case EQ -> Opcode.IF_ICMPEQ;
+            case NEQ -> Opcode.IF_ICMPNE;
+            default -> null;
+        };
+    }
+
+    private Opcode getZeroCompareOpcode(Opcode compare) {
+        return switch (compare) {
+            case IF_ICMPLT -> Opcode.IFLT;
+            case IF_ICMPGT -> Opcode.IFGT;
+            case IF_ICMPLE -> Opcode.IFLE;
+            case IF_ICMPGE -> Opcode.IFGE;
+            case IF_ICMPEQ -> Opcode.IFEQ;
+            case IF_ICMPNE -> Opcode.IFNE;
+            default -> throw new IllegalArgumentException("Not a comparison: " + compare);
+        };
+    }
+
+    private void dealWithIntArithmetic(Element e1, Element e2, Opcode op){
+        // A division by zero is not folded, it throws when (and if) it runs
+        boolean divisionByZero = op == Opcode.IDIV && e2.isLiteral() && this.callArg(e2).equals("0");
+        if(e1.isLiteral() && e2.isLiteral() && !divisionByZero){
             String lhs = this.callArg(e1);
             String rhs = this.callArg(e2);
             int n1 = Integer.parseInt(lhs);
             int n2 = Integer.parseInt(rhs);
             int result;
             switch (op){
-                case "iadd" -> result = n1 + n2;
-                case "isub" -> result = n1 - n2;
-                case "imul" -> result = n1 * n2;
-                case "idiv" -> result = n1 / n2;
-                default -> {
-                    return;
-                }
+                case IADD -> result = n1 + n2;
+                case ISUB -> result = n1 - n2;
+                case IMUL -> result = n1 * n2;
+                case IDIV -> result = n1 / n2;
+                case IAND -> result = n1 & n2;
+                case IOR -> result = n1 | n2;
+                case IXOR -> result = n1 ^ n2;
+                default -> throw new IllegalArgumentException("Not an integer operation: " + op);
             }
 
-            this.addLine(tabs + this.intLiteralPush(result));
+            this.code.add(JasminInstruction.push(result));
         }
         else {
-            this.loadCallArg(e1, tabs);
-            this.loadCallArg(e2, tabs);
-            this.addLine(tabs + op);
-            this.updateStack(2);
-        }
-        this.currentStack++;
-    }
-
-    private void dealWithBooleanArithmetic(Element e1, Element e2, String op, String tabs){
-        this.loadCallArg(e1, tabs);
-        this.loadCallArg(e2, tabs);
-
-        String elseLabel = labelPrefix + (this.numLines + 4);
-        String endLabel = labelPrefix + (this.numLines + 5);
-        this.addLine(tabs + op + " " + elseLabel);
-        this.addLine(tabs + "iconst_1");
-        this.addLine(tabs + "goto " + endLabel);
-        this.addLine(elseLabel + ":");
-        this.addLine(tabs + "iconst_0");
-        this.addLine(endLabel + ":");
-        this.updateStack(2);
-        this.currentStack++;
-    }
-
-    private void dealWithAndArithmetic(Element e1, Element e2, String tabs){
-        String elseLabel = labelPrefix + (this.numLines + 7);
-        String endLabel = labelPrefix + (this.numLines + 8);
-
-        this.loadCallArg(e1, tabs);
-        this.addLine(tabs + "ifeq " + elseLabel);
-        this.updateStack(1);
-        this.loadCallArg(e2, tabs);
-        this.addLine(tabs + "ifeq " + elseLabel);
-        this.updateStack(1);
-
-        this.addLine(tabs + "iconst_1");
-        this.addLine(tabs + "goto " + endLabel);
-        this.addLine(elseLabel + ":");
-        this.addLine(tabs + "iconst_0");
-        this.addLine(endLabel + ":");
-        this.currentStack++;
-    }
-
-    private String getLoadInstr(String pre, int vReg){
-        if(vReg >= 0 && vReg <= 3) return pre + "load_" + vReg;
-        else return pre + "load " + vReg;
-    }
-
-    private void loadCallArg(Element element, String tabs){
-        String str = this.loadCallArg(element);
+            this.loadCallArg(e1);
+            this.loadCallArg(e2);
+            this.emit(op);
+        }
+    }
+
+    /**
+     * Computes a comparison as 0 or 1. The comparisons of booleans for equality and of integers with 0 for their sign
+     * use bitwise operations, the others a branch.
+     */
+    private void dealWithBooleanArithmetic(BinaryOpInstruction opInstruction){
+        Element e1 = opInstruction.getLeftOperand();
+        Element e2 = opInstruction.getRightOperand();
+        OperationType opType = opInstruction.getOperation().getOpType();
+        boolean booleans = e1.getType().getTypeOfElement() == ElementType.BOOLEAN
+                && e2.getType().getTypeOfElement() == ElementType.BOOLEAN;
+        boolean zeroAtRight = e2.isLiteral() && this.callArg(e2).equals("0");
 
-        if (str != null) {
-            this.addLine(tabs + str);
+        if (booleans && (opType == OperationType.EQ || opType == OperationType.NEQ)) {
+            // a != b = a ^ b, a == b = a ^ b ^ 1
+            this.loadCallArg(e1);
+            this.loadCallArg(e2);
+            this.emit(Opcode.IXOR);
+            if (opType == OperationType.EQ) this.negateBoolean();
+            return;
+        }
+        if (!booleans && zeroAtRight && (opType == OperationType.LTH || opType == OperationType.GTE)) {
+            // The sign bit of a is a < 0
+            this.loadCallArg(e1);
+            this.emit(Opcode.BIPUSH, 31);
+            this.emit(Opcode.IUSHR);
+            if (opType == OperationType.GTE) this.negateBoolean();
+            return;
+        }
+
+        Label trueLabel = this.newLabel();
+        Label endLabel = this.newLabel();
+        this.branch(opInstruction, trueLabel, true);
+        this.emit(Opcode.ICONST_0);
+        this.emit(Opcode.GOTO, endLabel);
+        this.code.add(JasminInstruction.label(trueLabel));
+        this.emit(Opcode.ICONST_1);
+        this.code.add(JasminInstruction.label(endLabel));
+    }
+
+    /**
+     * Computes a && or a || with iand or ior, as loading operands has no side effects. Array elements may be out of
+     * bounds, so the right one is only loaded if the left one does not decide the result.
+     */
+    private void dealWithLogicalArithmetic(BinaryOpInstruction opInstruction){
+        Element e1 = opInstruction.getLeftOperand();
+        Element e2 = opInstruction.getRightOperand();
+        boolean and = opInstruction.getOperation().getOpType() == OperationType.ANDB;
+
+        if (!(e2 instanceof ArrayOperand)) {
+            this.loadCallArg(e1);
+            this.loadCallArg(e2);
+            this.emit(and ? Opcode.IAND : Opcode.IOR);
+            return;
+        }
+
+        Label decidedLabel = this.newLabel();
+        Label endLabel = this.newLabel();
+        this.branch(e1, decidedLabel, !and);
+        this.loadCallArg(e2);
+        this.emit(Opcode.GOTO, endLabel);
+        this.code.add(JasminInstruction.label(decidedLabel));
+        this.emit(and ? Opcode.ICONST_0 : Opcode.ICONST_1);
+        this.code.add(JasminInstruction.label(endLabel));
+    }
+
+    private void negateBoolean() {
+        this.emit(Opcode.ICONST_1);
+        this.emit(Opcode.IXOR);
+    }
+
+    private void loadCallArg(Element element){
+        JasminInstruction load = this.loadCallArgInstr(element);
+
+        if (load != null) {
+            this.code.add(load);
 
             if (element.getClass().equals(ArrayOperand.class)) {
                 for (Element e : ((ArrayOperand) element).getIndexOperands())
-                    this.loadCallArg(e, tabs);
+                    this.loadCallArg(e);
 
                 switch (element.getType().getTypeOfElement()) {
-                    case INT32, BOOLEAN -> this.addLine(tabs + "iaload");
-                    default -> addLine(tabs + "aaload");
+                    case INT32, BOOLEAN -> this.emit(Opcode.IALOAD);
+                    default -> this.emit(Opcode.AALOAD);
                 }
             }
         }
     }
 
-    private String loadCallArg(Element element){
-        String ret;
+    private JasminInstruction loadCallArgInstr(Element element){
+        JasminInstruction ret;
 
         if (element.isLiteral()) {
             ret = this.loadCallArgLiteral((LiteralElement) element);
@@ -536,58 +743,48 @@ public class JasminGenerator implements JasminBackend {
             ret = this.loadCallArgOperand((Operand) element);
         }
 
-        if (ret != null)
-            this.currentStack++;
-
         return ret;
     }
 
-    private String loadCallArgLiteral(LiteralElement literalElement) {
+    private JasminInstruction loadCallArgLiteral(LiteralElement literalElement) {
         String literal = literalElement.getLiteral();
-        String result;
+        JasminInstruction result;
 
         switch (literalElement.getType().getTypeOfElement()) {
-            case INT32 -> result = this.intLiteralPush(Integer.parseInt(literal));
+            case INT32 -> result = JasminInstruction.push(Integer.parseInt(literal));
             case BOOLEAN ->{
                 if (literal.equals("1"))
-                    result = "iconst_1";
+                    result = JasminInstruction.of(Opcode.ICONST_1);
                 else
-                    result = "iconst_0";
+                    result = JasminInstruction.of(Opcode.ICONST_0);
             }
-            case OBJECTREF -> result = this.getLoadInstr("a", this.vars.get(literal).getVirtualReg());
-            case STRING -> result = "ldc " + literal;
+            case OBJECTREF -> result = JasminInstruction.of(Opcode.ALOAD, this.vars.get(literal).getVirtualReg());
+            case STRING -> result = JasminInstruction.of(Opcode.LDC, literal);
             default -> {return null;}
         }
 
         return result;
     }
 
-    private String loadCallArgOperand(Operand op) {
+    private JasminInstruction loadCallArgOperand(Operand op) {
         String name = op.getName();
-        String result;
+        JasminInstruction result;
 
         switch (op.getType().getTypeOfElement()) {
             case INT32, BOOLEAN ->{
-                String pre = "i";
-                if (op.getClass().equals(ArrayOperand.class)) pre = "a";
-                result = this.getLoadInstr(pre, this.vars.get(name).getVirtualReg());
+                Opcode load = Opcode.ILOAD;
+                if (op.getClass().equals(ArrayOperand.class)) load = Opcode.ALOAD;
+                result = JasminInstruction.of(load, this.vars.get(name).getVirtualReg());
             }
-            case OBJECTREF, ARRAYREF, STRING -> result = this.getLoadInstr("a", this.vars.get(name).getVirtualReg());
-            case THIS -> result = "aload_0";
+            case OBJECTREF, ARRAYREF, STRING -> result = JasminInstruction.of(Opcode.ALOAD, this.vars.get(name).getVirtualReg());
+            case THIS -> result = JasminInstruction.of(Opcode.ALOAD, 0);
             default -> {return null;}
         }
 
         return result;
     }
 
-    private String getStoreInstr(String pre, int vReg) {
-        if (vReg >= 0 && vReg <= 3)
-            return pre + "store_" + vReg;
-        else
-            return pre + "store " + vReg;
-    }
-
-    private boolean checkAssignIINC(String destName, int reg, Instruction instr, String tabs) {
+    private boolean checkAssignIINC(String destName, int reg, Instruction instr) {
         if (instr.getInstType() != InstructionType.BINARYOPER)
             return false;
 
@@ -627,11 +824,11 @@ public class JasminGenerator implements JasminBackend {
         if (val == 0)
             return true;
 
-        String res = this.iinc(reg, val);
-        if (res == null)
+        // Jasmin writes the wide form when the increment does not fit in a byte
+        if (val < Short.MIN_VALUE || val > Short.MAX_VALUE)
             return false;
 
-        this.addLine(tabs + res);
+        this.emit(Opcode.IINC, reg, val);
         return true;
     }
 
@@ -649,16 +846,6 @@ public class JasminGenerator implements JasminBackend {
         }
     }
 
-    private String iinc(int reg, int i) {
-        if (i >= -128 && i <= 127) {
-            return "iinc " + reg + " " + i;
-        } else if (i >= -32768 && i <= 32767) {
-            return "iinc_w " + reg + " " + i;
-        } else {
-            return null;
-        }
-    }
-
     private String getType(Type type) {
         String s = "";
         switch (type.getTypeOfElement()) {
@@ -680,56 +867,38 @@ public class JasminGenerator implements JasminBackend {
         return s;
     }
 
-    private String intLiteralPush(int i) {
-        if (i == -1) {
-            return "iconst_m1";
-        } else if (i >= 0 && i <= 5) {
-            return "iconst_" + i;
-        } else if (i >= -128 && i <= 127) {
-            return "bipush " + i;
-        } else if (i >= -32768 && i <= 32767) {
-            return "sipush " + i;
-        } else {
-            return "ldc " + i;
-        }
-    }
-
-    private String boolLiteralPush(boolean b) {
+    private JasminInstruction boolLiteralPush(boolean b) {
         if (b)
-            return "iconst_1";
+            return JasminInstruction.of(Opcode.ICONST_1);
         else
-            return "iconst_0";
+            return JasminInstruction.of(Opcode.ICONST_0);
     }
 
-    private String boolLiteralPush(int i) {
+    private JasminInstruction boolLiteralPush(int i) {
         return this.boolLiteralPush(i == 0);
     }
 
+    private Label getLabel(String name) {
+        return this.labels.computeIfAbsent(name, Label::new);
+    }
+
+    private Label newLabel() {
+        return new Label(labelPrefix + this.numLabels++);
+    }
+
+    private void emit(Opcode opcode, Object... operands) {
+        this.code.add(JasminInstruction.of(opcode, operands));
+    }
+
     private void addLine(String code){
         this.jasminCode.append(code).append("\n");
-        this.numLines++;
     }
 
     private void addLine(StringBuilder code){
         this.jasminCode.append(code).append("\n");
-        this.numLines++;
     }
 
     private void addEmptyLine(){
         this.jasminCode.append("\n");
-        this.numLines++;
-    }
-
-    private void updateStack(int n){
-        if(this.currentStack > this.stackLimit){
-            this.stackLimit = this.currentStack;
-        }
-        this.currentStack += n;
-    }
-
-    private StringBuilder setStringBuilder(StringBuilder s){
-        StringBuilder prev = this.jasminCode;
-        this.jasminCode = s;
-        return prev;
     }
 }
@@ -0,0 +1,86 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.List;
+
+/**
+ * Instruction of the code of a method, or the position of a label, with the {@link Opcode#LABEL} opcode. The operands
+ * are registers and constants as integers, the labels an instruction jumps to, and the names of classes, fields and
+ * methods as strings, like {@code Class.method(I)V}, in the order they are written in Jasmin.
+ */
+record JasminInstruction(Opcode opcode, List<Object> operands) {
+
+    static JasminInstruction of(Opcode opcode, Object... operands) {
+        return new JasminInstruction(opcode, List.of(operands));
+    }
+
+    static JasminInstruction label(Label label) {
+        return of(Opcode.LABEL, label);
+    }
+
+    /**
+     * @return The shortest instruction that pushes the constant
+     */
+    static JasminInstruction push(int value) {
+        if (value >= -1 && value <= 5) return of(Opcode.values()[Opcode.ICONST_0.ordinal() + value]);
+        if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) return of(Opcode.BIPUSH, value);
+        if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) return of(Opcode.SIPUSH, value);
+        return of(Opcode.LDC, value);
+    }
+
+    boolean isLabel() {
+        return this.opcode == Opcode.LABEL;
+    }
+
+    /**
+     * @return The label of a label position or a jump, null if it has none
+     */
+    Label getLabel() {
+        return this.operands.isEmpty() || !(this.operands.get(0) instanceof Label label) ? null : label;
+    }
+
+    /**
+     * @return Register of a load, store or iinc
+     */
+    int getRegister() {
+        return (Integer) this.operands.get(0);
+    }
+
+    /**
+     * @return Labels the instruction may jump to
+     */
+    List<Label> getTargets() {
+        if (this.isLabel()) return List.of();
+        return this.operands.stream().filter(Label.class::isInstance).map(Label.class::cast).toList();
+    }
+
+    /**
+     * @return Number of values the instruction pushes minus the number it pops
+     */
+    int getStackDelta() {
+        if (!this.opcode.isCall()) return this.opcode.getStackDelta();
+
+        // Method reference, like Class.method(I[ILjava/lang/String;)V
+        String reference = (String) this.operands.get(0);
+        int open = reference.indexOf('(');
+        int close = reference.indexOf(')', open);
+        String params = reference.substring(open + 1, close);
+
+        int popped = this.opcode == Opcode.INVOKESTATIC ? 0 : 1;
+        for (int i = 0; i < params.length(); i++) {
+            char c = params.charAt(i);
+            boolean array = c == '[';
+            while (i < params.length() - 1 && params.charAt(i) == '[') i++;
+            if (params.charAt(i) == 'L') i = Math.max(i, params.indexOf(';', i));
+            popped += !array && (c == 'J' || c == 'D') ? 2 : 1;
+        }
+
+        String result = reference.substring(close + 1).strip();
+        int pushed = result.isEmpty() || result.startsWith("V") ? 0 : result.startsWith("J") || result.startsWith("D") ? 2 : 1;
+        return pushed - popped;
+    }
+
+    @Override
+    public String toString() {
+        return JasminWriter.write(this);
+    }
+}
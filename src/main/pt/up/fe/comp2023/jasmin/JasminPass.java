@@ -0,0 +1,15 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.List;
+
+/**
+ * Transformation of the code of a method, run by {@link JasminGenerator} before the stack limit is computed and the
+ * code is written
+ */
+interface JasminPass {
+
+    /**
+     * @return Number of changes to the code
+     */
+    int apply(List<JasminInstruction> code);
+}
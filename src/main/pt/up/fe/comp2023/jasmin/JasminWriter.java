@@ -0,0 +1,54 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.List;
+
+/**
+ * Writes the code of a method as Jasmin text, one instruction or label per line. Loads and stores of the first four
+ * registers use their one byte forms, like {@code iload_1}, and the targets of switches go on the lines after them.
+ */
+class JasminWriter {
+
+    private JasminWriter() {
+    }
+
+    static void write(List<JasminInstruction> code, StringBuilder out) {
+        for (JasminInstruction instruction : code) {
+            out.append(write(instruction)).append("\n");
+        }
+    }
+
+    static String write(JasminInstruction instruction) {
+        Opcode opcode = instruction.opcode();
+        if (opcode == Opcode.LABEL) return instruction.getLabel().getName() + ":";
+
+        StringBuilder line = new StringBuilder("\t").append(opcode.getMnemonic());
+        switch (opcode) {
+            case ILOAD, ALOAD, ISTORE, ASTORE -> {
+                int register = instruction.getRegister();
+                return line.append(register <= 3 ? "_" : " ").append(register).toString();
+            }
+            case TABLESWITCH -> {
+                // Lowest and highest values, the target of each value between them and the default one
+                List<Object> operands = instruction.operands();
+                line.append(" ").append(operands.get(0)).append(" ").append(operands.get(1));
+                for (Object target : operands.subList(2, operands.size() - 1)) {
+                    line.append("\n\t\t").append(target);
+                }
+                return line.append("\n\t\tdefault : ").append(operands.get(operands.size() - 1)).toString();
+            }
+            case LOOKUPSWITCH -> {
+                // Each value followed by its target, in increasing order, and the default target
+                List<Object> operands = instruction.operands();
+                for (int i = 0; i + 1 < operands.size(); i += 2) {
+                    line.append("\n\t\t").append(operands.get(i)).append(" : ").append(operands.get(i + 1));
+                }
+                return line.append("\n\t\tdefault : ").append(operands.get(operands.size() - 1)).toString();
+            }
+        }
+
+        for (Object operand : instruction.operands()) {
+            line.append(" ").append(operand);
+        }
+        return line.toString();
+    }
+}
@@ -0,0 +1,22 @@
+package pt.up.fe.comp2023.jasmin;
+
+/**
+ * Position in the code of a method that instructions jump to. Labels are compared by identity, the name is only used
+ * when the code is written.
+ */
+final class Label {
+    private final String name;
+
+    Label(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    @Override
+    public String toString() {
+        return this.name;
+    }
+}
@@ -0,0 +1,159 @@
+package pt.up.fe.comp2023.jasmin;
+
+/**
+ * JVM instructions generated by the Jasmin backend, with the number of values each one pushes minus the number it pops.
+ * The calls take and return a number of values that depends on their descriptor, see
+ * {@link JasminInstruction#getStackDelta()}.
+ */
+enum Opcode {
+    // Not an instruction, marks the position of a label in the code of a method
+    LABEL(0),
+
+    NOP(0),
+    ACONST_NULL(1),
+    ICONST_M1(1),
+    ICONST_0(1),
+    ICONST_1(1),
+    ICONST_2(1),
+    ICONST_3(1),
+    ICONST_4(1),
+    ICONST_5(1),
+    BIPUSH(1),
+    SIPUSH(1),
+    LDC(1),
+
+    ILOAD(1),
+    ALOAD(1),
+    IALOAD(-1),
+    AALOAD(-1),
+    ISTORE(-1),
+    ASTORE(-1),
+    IASTORE(-3),
+    AASTORE(-3),
+
+    POP(-1),
+    POP2(-2),
+    DUP(1),
+    SWAP(0),
+
+    IADD(-1),
+    ISUB(-1),
+    IMUL(-1),
+    IDIV(-1),
+    IREM(-1),
+    INEG(0),
+    ISHL(-1),
+    ISHR(-1),
+    IUSHR(-1),
+    IAND(-1),
+    IOR(-1),
+    IXOR(-1),
+    IINC(0),
+
+    IFEQ(-1),
+    IFNE(-1),
+    IFLT(-1),
+    IFGE(-1),
+    IFGT(-1),
+    IFLE(-1),
+    IF_ICMPEQ(-2),
+    IF_ICMPNE(-2),
+    IF_ICMPLT(-2),
+    IF_ICMPGE(-2),
+    IF_ICMPGT(-2),
+    IF_ICMPLE(-2),
+    IF_ACMPEQ(-2),
+    IF_ACMPNE(-2),
+    IFNULL(-1),
+    IFNONNULL(-1),
+    GOTO(0),
+    TABLESWITCH(-1),
+    LOOKUPSWITCH(-1),
+
+    IRETURN(-1),
+    ARETURN(-1),
+    RETURN(0),
+    ATHROW(-1),
+
+    GETSTATIC(1),
+    PUTSTATIC(-1),
+    GETFIELD(0),
+    PUTFIELD(-2),
+    INVOKEVIRTUAL(0),
+    INVOKESPECIAL(0),
+    INVOKESTATIC(0),
+    INVOKEINTERFACE(0),
+
+    NEW(1),
+    NEWARRAY(0),
+    ANEWARRAY(0),
+    ARRAYLENGTH(0),
+    CHECKCAST(0),
+    INSTANCEOF(0);
+
+    private final int stackDelta;
+
+    Opcode(int stackDelta) {
+        this.stackDelta = stackDelta;
+    }
+
+    /**
+     * @return Number of values the instruction pushes minus the number it pops, 0 for the calls
+     */
+    int getStackDelta() {
+        return this.stackDelta;
+    }
+
+    String getMnemonic() {
+        return this.name().toLowerCase();
+    }
+
+    boolean isCall() {
+        return switch (this) {
+            case INVOKEVIRTUAL, INVOKESPECIAL, INVOKESTATIC, INVOKEINTERFACE -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return Whether the instruction jumps to a label depending on the values it pops
+     */
+    boolean isConditionalBranch() {
+        return this.negate() != null;
+    }
+
+    /**
+     * @return Whether the next instruction is never run after this one
+     */
+    boolean isTerminator() {
+        return switch (this) {
+            case GOTO, TABLESWITCH, LOOKUPSWITCH, IRETURN, ARETURN, RETURN, ATHROW -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return Conditional branch that jumps exactly when this one does not, null if this is not a conditional branch
+     */
+    Opcode negate() {
+        return switch (this) {
+            case IFEQ -> IFNE;
+            case IFNE -> IFEQ;
+            case IFLT -> IFGE;
+            case IFGE -> IFLT;
+            case IFGT -> IFLE;
+            case IFLE -> IFGT;
+            case IF_ICMPEQ -> IF_ICMPNE;
+            case IF_ICMPNE -> IF_ICMPEQ;
+            case IF_ICMPLT -> IF_ICMPGE;
+            case IF_ICMPGE -> IF_ICMPLT;
+            case IF_ICMPGT -> IF_ICMPLE;
+            case IF_ICMPLE -> IF_ICMPGT;
+            case IF_ACMPEQ -> IF_ACMPNE;
+            case IF_ACMPNE -> IF_ACMPEQ;
+            case IFNULL -> IFNONNULL;
+            case IFNONNULL -> IFNULL;
+            default -> null;
+        };
+    }
+}
@@ -0,0 +1,261 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.*;
+
+/**
+ * Rewrites short sequences of the code of a method into cheaper ones, like a store to a register that is only read by
+ * the next instruction, a jump to the next instruction or a conditional jump over a goto. Each rule looks at the
+ * instructions from a position on, and the rules are applied until none of them changes the code, as a rewrite can
+ * make another one possible.
+ */
+class PeepholeOptimizer implements JasminPass {
+
+    private interface Rule {
+        /**
+         * @return Whether the code was changed
+         */
+        boolean apply(List<JasminInstruction> code, int position);
+    }
+
+    // Instructions that only push a value, so they can be removed with a pop after them
+    private static final Set<Opcode> PURE_PUSHES = EnumSet.of(Opcode.ACONST_NULL, Opcode.ICONST_M1, Opcode.ICONST_0,
+            Opcode.ICONST_1, Opcode.ICONST_2, Opcode.ICONST_3, Opcode.ICONST_4, Opcode.ICONST_5, Opcode.BIPUSH,
+            Opcode.SIPUSH, Opcode.LDC, Opcode.ILOAD, Opcode.ALOAD, Opcode.DUP);
+
+    private static final Set<Opcode> COMMUTATIVE = EnumSet.of(Opcode.IADD, Opcode.IMUL, Opcode.IAND, Opcode.IOR,
+            Opcode.IXOR);
+
+    private final List<Rule> rules = List.of(
+            PeepholeOptimizer::removeStoreLoad,
+            PeepholeOptimizer::removeCommutedStoreLoad,
+            PeepholeOptimizer::removeSelfCopy,
+            PeepholeOptimizer::removePushPop,
+            PeepholeOptimizer::foldConstantBranch,
+            PeepholeOptimizer::negateBranchOverGoto,
+            PeepholeOptimizer::removeJumpToNext,
+            PeepholeOptimizer::threadJump,
+            PeepholeOptimizer::removeUnreachable,
+            PeepholeOptimizer::removeUnusedLabel);
+
+    /**
+     * Applies the rules to the code until it no longer changes
+     * @return Number of rewrites
+     */
+    @Override
+    public int apply(List<JasminInstruction> code) {
+        int rewrites = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < code.size(); i++) {
+                for (Rule rule : this.rules) {
+                    if (rule.apply(code, i)) {
+                        changed = true;
+                        rewrites++;
+                    }
+                    if (i >= code.size()) break;
+                }
+            }
+        }
+        return rewrites;
+    }
+
+    /**
+     * {@code istore n; iload n} is removed when that load is the only one of the register, the value stays on the stack
+     */
+    private static boolean removeStoreLoad(List<JasminInstruction> code, int position) {
+        if (position + 1 >= code.size()) return false;
+        JasminInstruction store = code.get(position);
+        JasminInstruction load = code.get(position + 1);
+        if (!isStoreLoad(store, load) || countUses(code, store.getRegister()) != 1) return false;
+
+        code.subList(position, position + 2).clear();
+        return true;
+    }
+
+    /**
+     * {@code istore n; iload m; iload n; iadd} becomes {@code iload m; iadd} when that load is the only one of the
+     * register, as the operands of iadd, imul, iand, ior and ixor can be swapped
+     */
+    private static boolean removeCommutedStoreLoad(List<JasminInstruction> code, int position) {
+        if (position + 3 >= code.size()) return false;
+        JasminInstruction store = code.get(position);
+        JasminInstruction other = code.get(position + 1);
+        JasminInstruction load = code.get(position + 2);
+        if (store.opcode() != Opcode.ISTORE || other.opcode() != Opcode.ILOAD || !isStoreLoad(store, load)
+                || !COMMUTATIVE.contains(code.get(position + 3).opcode())) {
+            return false;
+        }
+        if (other.getRegister() == store.getRegister() || countUses(code, store.getRegister()) != 1) return false;
+
+        code.remove(position + 2);
+        code.remove(position);
+        return true;
+    }
+
+    /**
+     * {@code iload n; istore n} leaves the register as it was
+     */
+    private static boolean removeSelfCopy(List<JasminInstruction> code, int position) {
+        if (position + 1 >= code.size()) return false;
+        JasminInstruction load = code.get(position);
+        JasminInstruction store = code.get(position + 1);
+        boolean sameType = load.opcode() == Opcode.ILOAD && store.opcode() == Opcode.ISTORE
+                || load.opcode() == Opcode.ALOAD && store.opcode() == Opcode.ASTORE;
+        if (!sameType || load.getRegister() != store.getRegister()) return false;
+
+        code.subList(position, position + 2).clear();
+        return true;
+    }
+
+    private static boolean removePushPop(List<JasminInstruction> code, int position) {
+        if (position + 1 >= code.size() || code.get(position + 1).opcode() != Opcode.POP
+                || !PURE_PUSHES.contains(code.get(position).opcode())) return false;
+
+        code.subList(position, position + 2).clear();
+        return true;
+    }
+
+    /**
+     * {@code iconst_0; ifeq L} always jumps and {@code iconst_0; ifne L} never does, the same with 1
+     */
+    private static boolean foldConstantBranch(List<JasminInstruction> code, int position) {
+        if (position + 1 >= code.size()) return false;
+        Opcode constant = code.get(position).opcode();
+        JasminInstruction branch = code.get(position + 1);
+        if (!(constant == Opcode.ICONST_0 || constant == Opcode.ICONST_1)
+                || !(branch.opcode() == Opcode.IFEQ || branch.opcode() == Opcode.IFNE)) return false;
+
+        boolean jumps = (constant == Opcode.ICONST_0) == (branch.opcode() == Opcode.IFEQ);
+        code.subList(position, position + 2).clear();
+        if (jumps) code.add(position, JasminInstruction.of(Opcode.GOTO, branch.getLabel()));
+        return true;
+    }
+
+    /**
+     * {@code ifX L1; goto L2; L1:} becomes {@code if!X L2; L1:}
+     */
+    private static boolean negateBranchOverGoto(List<JasminInstruction> code, int position) {
+        if (position + 2 >= code.size()) return false;
+        JasminInstruction branch = code.get(position);
+        JasminInstruction jump = code.get(position + 1);
+        if (!branch.opcode().isConditionalBranch() || jump.opcode() != Opcode.GOTO
+                || !getLabelsAt(code, position + 2).contains(branch.getLabel())) return false;
+
+        code.set(position, JasminInstruction.of(branch.opcode().negate(), jump.getLabel()));
+        code.remove(position + 1);
+        return true;
+    }
+
+    private static boolean removeJumpToNext(List<JasminInstruction> code, int position) {
+        JasminInstruction jump = code.get(position);
+        if (jump.opcode() != Opcode.GOTO || !getLabelsAt(code, position + 1).contains(jump.getLabel())) return false;
+
+        code.remove(position);
+        return true;
+    }
+
+    /**
+     * A jump to a goto or a return goes straight to the target of the goto, or returns
+     */
+    private static boolean threadJump(List<JasminInstruction> code, int position) {
+        JasminInstruction jump = code.get(position);
+        boolean unconditional = jump.opcode() == Opcode.GOTO;
+        if (!unconditional && !jump.opcode().isConditionalBranch()) return false;
+
+        JasminInstruction destination = getTarget(code, jump.getLabel());
+        if (destination == null) return false;
+
+        if (destination.opcode() == Opcode.GOTO) {
+            // Gotos that jump to each other are left as they are
+            Label target = destination.getLabel();
+            Set<Label> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+            visited.add(jump.getLabel());
+            while (visited.add(target)) {
+                JasminInstruction next = getTarget(code, target);
+                if (next == null || next.opcode() != Opcode.GOTO) break;
+                target = next.getLabel();
+            }
+            JasminInstruction last = getTarget(code, target);
+            if (last != null && last.opcode() == Opcode.GOTO) return false;
+
+            code.set(position, JasminInstruction.of(jump.opcode(), target));
+            return true;
+        }
+        if (unconditional && destination.opcode() == Opcode.RETURN) {
+            code.set(position, destination);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The instructions after a goto, a return or a throw are only run if a label before them is jumped to
+     */
+    private static boolean removeUnreachable(List<JasminInstruction> code, int position) {
+        if (position + 1 >= code.size() || !code.get(position).opcode().isTerminator()) return false;
+
+        int end = position + 1;
+        while (end < code.size() && !code.get(end).isLabel()) end++;
+        if (end == position + 1) return false;
+
+        code.subList(position + 1, end).clear();
+        return true;
+    }
+
+    private static boolean removeUnusedLabel(List<JasminInstruction> code, int position) {
+        JasminInstruction label = code.get(position);
+        if (!label.isLabel()) return false;
+        for (JasminInstruction instruction : code) {
+            if (instruction.getTargets().contains(label.getLabel())) return false;
+        }
+
+        code.remove(position);
+        return true;
+    }
+
+    /**
+     * @return Whether the first instruction stores to the register the second one loads, with the same type
+     */
+    private static boolean isStoreLoad(JasminInstruction store, JasminInstruction load) {
+        boolean sameType = store.opcode() == Opcode.ISTORE && load.opcode() == Opcode.ILOAD
+                || store.opcode() == Opcode.ASTORE && load.opcode() == Opcode.ALOAD;
+        return sameType && store.getRegister() == load.getRegister();
+    }
+
+    /**
+     * @return Number of loads and increments of the register
+     */
+    private static int countUses(List<JasminInstruction> code, int register) {
+        int uses = 0;
+        for (JasminInstruction instruction : code) {
+            switch (instruction.opcode()) {
+                case ILOAD, ALOAD, IINC -> {
+                    if (instruction.getRegister() == register) uses++;
+                }
+            }
+        }
+        return uses;
+    }
+
+    /**
+     * @return Labels of the instruction at the given position, which come right before it
+     */
+    private static Set<Label> getLabelsAt(List<JasminInstruction> code, int position) {
+        Set<Label> labels = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = position; i < code.size() && code.get(i).isLabel(); i++) {
+            labels.add(code.get(i).getLabel());
+        }
+        return labels;
+    }
+
+    /**
+     * @return First instruction after the label, null if there is none
+     */
+    private static JasminInstruction getTarget(List<JasminInstruction> code, Label label) {
+        int i = 0;
+        while (i < code.size() && !(code.get(i).isLabel() && code.get(i).getLabel() == label)) i++;
+        while (i < code.size() && code.get(i).isLabel()) i++;
+        return i < code.size() ? code.get(i) : null;
+    }
+}
@@ -0,0 +1,56 @@
+package pt.up.fe.comp2023.jasmin;
+
+import java.util.*;
+
+/**
+ * Computes the maximum operand stack depth of the code of a method, by following every path through its instructions
+ * from the start and applying the stack effect of each one. The depth at an instruction is the one of the first path
+ * that reaches it, which every other path agrees with in code the JVM accepts.
+ */
+class StackAnalyzer {
+
+    private StackAnalyzer() {
+    }
+
+    static int getMaxStack(List<JasminInstruction> code) {
+        List<JasminInstruction> instructions = new ArrayList<>();
+        Map<Label, Integer> labels = new HashMap<>();
+        for (JasminInstruction instruction : code) {
+            if (instruction.isLabel()) labels.put(instruction.getLabel(), instructions.size());
+            else instructions.add(instruction);
+        }
+        if (instructions.isEmpty()) return 0;
+
+        int[] depths = new int[instructions.size()];
+        Arrays.fill(depths, -1);
+        depths[0] = 0;
+        Deque<Integer> pending = new ArrayDeque<>();
+        pending.push(0);
+        int maxDepth = 0;
+        while (!pending.isEmpty()) {
+            int i = pending.pop();
+            JasminInstruction instruction = instructions.get(i);
+            int depth = depths[i] + instruction.getStackDelta();
+            if (depth < 0) throw new IllegalStateException("Stack underflow at '" + instruction + "'");
+            maxDepth = Math.max(maxDepth, depth);
+
+            for (int successor : getSuccessors(instruction, i, labels)) {
+                if (successor < instructions.size() && depths[successor] < 0) {
+                    depths[successor] = depth;
+                    pending.push(successor);
+                }
+            }
+        }
+        return maxDepth;
+    }
+
+    private static List<Integer> getSuccessors(JasminInstruction instruction, int position, Map<Label, Integer> labels) {
+        List<Integer> successors = new ArrayList<>();
+        if (!instruction.opcode().isTerminator()) successors.add(position + 1);
+        for (Label target : instruction.getTargets()) {
+            Integer successor = labels.get(target);
+            if (successor != null) successors.add(successor);
+        }
+        return successors;
+    }
+}
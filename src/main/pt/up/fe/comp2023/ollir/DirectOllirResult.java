@@ -0,0 +1,73 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.ClassUnit;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.report.Report;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Result of building the OLLIR class directly from the AST. The OLLIR code is only printed, with
+ * {@link OllirPrinter}, if it is requested.
+ * <p>
+ * Every public method of {@link OllirResult} is overridden, see the constructor.
+ */
+public class DirectOllirResult extends OllirResult {
+
+    private static final String EMPTY_CLASS = "Empty {\n}\n";
+
+    private final ClassUnit ollirClass;
+    private final SymbolTable symbolTable;
+    private final List<Report> reports;
+    private final Map<String, String> config;
+    private String ollirCode;
+
+    /**
+     * The only constructor of {@link OllirResult} that takes a {@link ClassUnit} is private, and the public ones parse
+     * the OLLIR code they are given. Printing and parsing the class would undo the point of building it directly, so
+     * the superclass parses a small empty class instead and none of its state is ever read: every public method is
+     * overridden to return the direct class, which OllirBuilderTest checks for every method of the superclass.
+     */
+    public DirectOllirResult(JmmSemanticsResult semanticsResult, ClassUnit ollirClass) {
+        super(EMPTY_CLASS, semanticsResult.getConfig());
+        this.ollirClass = ollirClass;
+        this.symbolTable = semanticsResult.getSymbolTable();
+        this.reports = new ArrayList<>(semanticsResult.getReports());
+        this.config = semanticsResult.getConfig();
+    }
+
+    /**
+     * @return OLLIR code of the class, printed on the first call. Meant for debugging and for the build cache.
+     */
+    @Override
+    public synchronized String getOllirCode() {
+        if (ollirCode == null) {
+            ollirCode = OllirPrinter.print(ollirClass);
+        }
+        return ollirCode;
+    }
+
+    @Override
+    public ClassUnit getOllirClass() {
+        return ollirClass;
+    }
+
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbolTable;
+    }
+
+    @Override
+    public List<Report> getReports() {
+        return reports;
+    }
+
+    @Override
+    public Map<String, String> getConfig() {
+        return config;
+    }
+}
@@ -1,18 +1,52 @@
 package pt.up.fe.comp2023.ollir;
 
+import org.specs.comp.ollir.ClassUnit;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
 import pt.up.fe.comp.jmm.ast.JmmNode;
 import pt.up.fe.comp.jmm.ollir.JmmOptimization;
 import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.optimization.ConstantPropagation;
+import pt.up.fe.comp2023.optimization.CopyPropagation;
+import pt.up.fe.comp2023.optimization.DeadStoreElimination;
+import pt.up.fe.comp2023.optimization.Inliner;
+import pt.up.fe.comp2023.optimization.LoopInvariantCodeMotion;
+import pt.up.fe.comp2023.optimization.RegisterAllocator;
+import pt.up.fe.comp2023.optimization.TailRecursionElimination;
+import pt.up.fe.comp2023.optimization.ValueNumbering;
+
+import java.util.Arrays;
+import java.util.Map;
 
 public class Ollir implements JmmOptimization {
 
+    /**
+     * Passes of the -o option that can be turned off with the "disabledPasses" option, a comma-separated list of their
+     * names, so a benchmark can compare the pipeline with and without one of them
+     */
+    public enum Pass {
+        LOOP_ROTATION, TAIL_RECURSION, INLINING, VALUE_NUMBERING, CODE_MOTION, COPY_PROPAGATION, DEAD_STORES;
+
+        public boolean isEnabled(Map<String, String> config) {
+            String disabled = config == null ? null : config.get("disabledPasses");
+            return disabled == null
+                    || Arrays.stream(disabled.split(",")).map(String::trim).noneMatch(this.name()::equals);
+        }
+    }
+
     public OllirResult toOllir(JmmSemanticsResult var1){
 
         JmmNode rootNode = var1.getRootNode();
+
+        // Build the OLLIR classes directly, without generating and parsing OLLIR code
+        if ("direct".equals(var1.getConfig().get("ollir"))) {
+            boolean rotateLoops = "true".equals(var1.getConfig().get("optimize"))
+                    && Pass.LOOP_ROTATION.isEnabled(var1.getConfig());
+            return new DirectOllirResult(var1, new OllirBuilder(var1.getSymbolTable(), rotateLoops).build(rootNode));
+        }
+
         String config = "";
 
-        OllirVisitor ollirVisitor = new OllirVisitor(config, var1.getSymbolTable());
+        OllirVisitor ollirVisitor = new OllirVisitor(new OllirWriter(), var1.getSymbolTable());
 
         System.out.println("Generating OLLIR:");
 
@@ -25,4 +59,42 @@ public class Ollir implements JmmOptimization {
         return new OllirResult(var1, ollirVisitor.getOllirCode(), var1.getReports());
     }
 
+    @Override
+    public JmmSemanticsResult optimize(JmmSemanticsResult semanticsResult) {
+
+        // Constant propagation and folding on the AST, with the -o option
+        if (semanticsResult.getConfig() != null && "true".equals(semanticsResult.getConfig().get("optimize"))) {
+            new ConstantPropagation().optimize(semanticsResult.getRootNode());
+        }
+
+        return semanticsResult;
+    }
+
+    @Override
+    public OllirResult optimize(OllirResult ollirResult) {
+
+        Map<String, String> config = ollirResult.getConfig();
+
+        // Tail recursion elimination, inlining, value numbering, loop-invariant code motion, copy propagation and dead
+        // store elimination, with the -o option, before the registers are allocated
+        if (config != null && "true".equals(config.get("optimize"))) {
+            ClassUnit classUnit = ollirResult.getOllirClass();
+            if (Pass.TAIL_RECURSION.isEnabled(config)) new TailRecursionElimination().optimize(classUnit);
+            int budget = Integer.parseInt(config.getOrDefault("inlineBudget", String.valueOf(Inliner.DEFAULT_BUDGET)));
+            if (budget > 0 && Pass.INLINING.isEnabled(config)) new Inliner(budget).optimize(classUnit);
+            if (Pass.VALUE_NUMBERING.isEnabled(config)) new ValueNumbering().optimize(classUnit);
+            if (Pass.CODE_MOTION.isEnabled(config)) new LoopInvariantCodeMotion().optimize(classUnit);
+            if (Pass.COPY_PROPAGATION.isEnabled(config)) new CopyPropagation().optimize(classUnit);
+            if (Pass.DEAD_STORES.isEnabled(config)) new DeadStoreElimination().optimize(classUnit);
+        }
+
+        // Register allocation, with at most n registers per method (0 for as few as possible, -1 to skip it)
+        int registers = Integer.parseInt(config == null ? "-1" : config.getOrDefault("registerAllocation", "-1"));
+        if (registers >= 0) {
+            ollirResult.getReports().addAll(new RegisterAllocator(registers).allocate(ollirResult.getOllirClass()));
+        }
+
+        return ollirResult;
+    }
+
 }
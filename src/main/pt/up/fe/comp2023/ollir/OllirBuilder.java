@@ -0,0 +1,949 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+
+import java.util.*;
+
+/**
+ * Builds the OLLIR object model of a class ({@link ClassUnit}, {@link Method} and the instructions) directly from the
+ * AST, instead of generating OLLIR code and parsing it back.
+ * <p>
+ * Expressions are lowered to three-address instructions: the operands of an instruction are literals or variables, and
+ * intermediate values are stored in temporary variables. Conditions are lowered to conditional jumps, so {@code &&} and
+ * {@code ||} only evaluate their right operand when needed.
+ */
+public class OllirBuilder {
+
+    private final SymbolTable symbolTable;
+    private final boolean rotateLoops;
+    private final ClassUnit classUnit = new ClassUnit();
+    private final Map<String, Type> fields = new HashMap<>();
+    private String className;
+
+    // State of the method being built
+    private Method method;
+    private Type returnType;
+    private final Map<String, Variable> variables = new HashMap<>();
+    private final Set<String> usedNames = new HashSet<>();
+    private final List<String> pendingLabels = new ArrayList<>();
+    private final Set<String> jumpTargets = new HashSet<>();
+    private Instruction lastInstruction;
+    private int tempIndex;
+    private int labelIndex;
+
+    /**
+     * A local variable or parameter of the method being built
+     * @param paramId Index of the parameter, or -1 for local variables
+     */
+    private record Variable(Type type, int paramId) {
+    }
+
+    public OllirBuilder(SymbolTable symbolTable) {
+        this(symbolTable, false);
+    }
+
+    /**
+     * @param rotateLoops Whether while and for loops test their condition at the bottom, see {@link #buildLoop}
+     */
+    public OllirBuilder(SymbolTable symbolTable, boolean rotateLoops) {
+        this.symbolTable = symbolTable;
+        this.rotateLoops = rotateLoops;
+    }
+
+    /**
+     * @param root Root node of the AST
+     * @return The class declared in the AST
+     */
+    public ClassUnit build(JmmNode root) {
+        classUnit.setClassAccessModifier(AccessModifiers.DEFAULT);
+
+        for (JmmNode child : root.getChildren()) {
+            switch (child.getKind()) {
+                case "ImportPackage" -> classUnit.addImport(this.getPackageName(child.getJmmChild(0)));
+                case "ClassDeclaration" -> this.buildClassDeclaration(child);
+                case "ClassBody" -> this.buildClassBody(child);
+                default -> {
+                    // Statements outside of a class are not compiled
+                }
+            }
+        }
+        return classUnit;
+    }
+
+    private String getPackageName(JmmNode node) {
+        String name = node.get("value");
+        return node.getNumChildren() > 0 ? this.getPackageName(node.getJmmChild(0)) + "." + name : name;
+    }
+
+    private void buildClassDeclaration(JmmNode node) {
+        for (JmmNode child : node.getChildren()) {
+            if (child.getKind().equals("ClassName")) {
+                className = child.get("value");
+                classUnit.setClassName(className);
+                for (JmmNode modifier : child.getChildren()) {
+                    if (modifier.get("value").equals("public")) classUnit.setClassAccessModifier(AccessModifiers.PUBLIC);
+                }
+            } else if (child.getKind().equals("SuperclassName")) {
+                classUnit.setSuperClass(child.get("value"));
+            }
+        }
+    }
+
+    private void buildClassBody(JmmNode node) {
+        for (JmmNode child : node.getChildren()) {
+            if (child.getKind().equals("ClassField") && child.getJmmChild(0).getKind().equals("Declaration")) {
+                JmmNode declaration = child.getJmmChild(0);
+                Field field = new Field();
+                field.setFieldName(declaration.get("var"));
+                field.setFieldType(this.toType(declaration.getJmmChild(0)));
+                field.setFieldAccessModifier(AccessModifiers.PRIVATE);
+                classUnit.addField(field);
+                fields.put(field.getFieldName(), field.getFieldType());
+            }
+        }
+
+        this.buildConstructor();
+
+        for (JmmNode child : node.getChildren()) {
+            if (child.getKind().equals("ClassMethod")) this.buildMethod(child);
+        }
+    }
+
+    private void buildConstructor() {
+        Method constructor = new Method(classUnit);
+        constructor.setMethodName(className);
+        constructor.setConstructMethod();
+        constructor.setMethodAccessModifier(AccessModifiers.PUBLIC);
+        constructor.setReturnType(new Type(ElementType.VOID));
+        constructor.addInstr(new CallInstruction(CallType.invokespecial, this.thisOperand(), this.methodName("<init>"),
+                new ArrayList<>(), new Type(ElementType.VOID)));
+        classUnit.addMethod(constructor);
+    }
+
+    private void buildMethod(JmmNode node) {
+        method = new Method(classUnit);
+        method.setMethodName(node.get("name"));
+        method.setMethodAccessModifier(AccessModifiers.DEFAULT);
+        variables.clear();
+        usedNames.clear();
+        pendingLabels.clear();
+        jumpTargets.clear();
+        lastInstruction = null;
+        tempIndex = 0;
+
+        List<JmmNode> arguments = new ArrayList<>();
+        JmmNode body = null;
+        for (JmmNode child : node.getChildren()) {
+            switch (child.getKind()) {
+                case "Modifier" -> this.addModifier(child.get("value"));
+                case "Type", "ArrayType" -> returnType = this.toType(child);
+                case "Argument" -> arguments.add(child);
+                case "MethodBody" -> body = child;
+                default -> throw new RuntimeException("Unexpected node in method " + node.get("name") + ": " + child.getKind());
+            }
+        }
+        method.setReturnType(returnType);
+
+        int paramId = method.isStaticMethod() ? 0 : 1;
+        for (JmmNode argument : arguments) {
+            Type type = this.toType(argument.getJmmChild(0));
+            Operand param = new Operand(argument.get("var"), type);
+            param.setParamId(paramId);
+            method.addParam(param);
+            variables.put(param.getName(), new Variable(type, paramId++));
+        }
+
+        if (body != null) {
+            this.collectNames(body);
+            for (JmmNode statement : body.getChildren()) this.buildStatement(statement);
+        }
+        this.finishMethod();
+        classUnit.addMethod(method);
+    }
+
+    private void addModifier(String modifier) {
+        switch (modifier) {
+            case "public" -> method.setMethodAccessModifier(AccessModifiers.PUBLIC);
+            case "private" -> method.setMethodAccessModifier(AccessModifiers.PRIVATE);
+            case "static" -> method.setStaticMethod();
+            case "final" -> method.setFinalMethod();
+            default -> throw new RuntimeException("Unknown modifier: " + modifier);
+        }
+    }
+
+    /**
+     * Adds the return of void methods, and drops the labels at the end of the method that are never jumped to
+     */
+    private void finishMethod() {
+        pendingLabels.retainAll(jumpTargets);
+        if (lastInstruction instanceof ReturnInstruction && pendingLabels.isEmpty()) return;
+
+        if (returnType.getTypeOfElement() == ElementType.VOID) {
+            this.emitReturn(null);
+        } else {
+            throw new RuntimeException("Method " + method.getMethodName() + " does not return a value in every path");
+        }
+    }
+
+    /**
+     * Names of the variables used in the method, so that temporary variables do not collide with them
+     */
+    private void collectNames(JmmNode node) {
+        node.getAttributes().stream()
+                .filter(attribute -> attribute.equals("var") || attribute.equals("value"))
+                .forEach(attribute -> usedNames.add(node.get(attribute)));
+        node.getChildren().forEach(this::collectNames);
+    }
+
+    // Statements
+
+    private void buildStatement(JmmNode node) {
+        switch (node.getKind()) {
+            case "NestedStatements" -> node.getChildren().forEach(this::buildStatement);
+            case "Declaration" -> {
+                variables.put(node.get("var"), new Variable(this.toType(node.getJmmChild(0)), -1));
+                if (node.getNumChildren() > 1) this.assign(node.get("var"), node.getJmmChild(1));
+            }
+            case "Assignment" -> this.assign(node.get("var"), node.getJmmChild(0));
+            case "ArrayAssignment" -> this.arrayAssign(node);
+            case "IfElse" -> this.buildIfElse(node);
+            case "While" -> this.buildLoop(node.getJmmChild(0), node.getJmmChild(1), null, true);
+            case "DoWhile" -> this.buildLoop(node.getJmmChild(1), node.getJmmChild(0), null, false);
+            case "ForCycle" -> this.buildFor(node);
+            case "Switch" -> this.buildSwitch(node);
+            case "Return" -> this.emitReturn(this.value(node.getJmmChild(0), returnType));
+            case "ExprStmt" -> this.buildExpressionStatement(node.getJmmChild(0));
+            default -> throw new RuntimeException(node.getKind() + " statements are not supported by the OLLIR builder");
+        }
+    }
+
+    private void assign(String name, JmmNode expression) {
+        Variable variable = variables.get(name);
+        if (variable == null) {
+            Type type = this.getFieldType(name);
+            this.emit(this.putField(name, type, this.value(expression, type)));
+            return;
+        }
+
+        Operand dest = this.variable(name, variable);
+        if (expression.getKind().equals("NewObject") && !this.isArrayCreation(expression)) {
+            // Keep "new" and the constructor call together, so that backends can pair them
+            this.emit(new AssignInstruction(dest, variable.type(), this.newObject(expression)));
+            this.emitConstructorCall(this.variable(name, variable));
+            return;
+        }
+        this.emit(new AssignInstruction(dest, variable.type(), this.rvalue(expression, variable.type())));
+    }
+
+    private void arrayAssign(JmmNode node) {
+        Operand array = this.arrayVariable(node.get("var"));
+        Type elementType = ((ArrayType) array.getType()).getElementType();
+        Operand index = this.toVariable(this.value(node.getJmmChild(0), new Type(ElementType.INT32)));
+        Element value = this.value(node.getJmmChild(1), elementType);
+        this.emit(new AssignInstruction(new ArrayOperand(array.getName(), elementType, List.<Element>of(index)), elementType,
+                new SingleOpInstruction(value)));
+    }
+
+    private void buildIfElse(JmmNode node) {
+        int branches = node.getNumChildren() / 2;
+        boolean hasElse = node.getNumChildren() % 2 == 1;
+        String end = this.newLabel("EndIf");
+
+        for (int i = 0; i < branches; i++) {
+            String next = this.newLabel("Else");
+            this.branchIfFalse(node.getJmmChild(2 * i), next);
+            this.buildStatement(node.getJmmChild(2 * i + 1));
+            if (i < branches - 1 || hasElse) this.jumpIfReachable(end);
+            this.placeLabel(next);
+        }
+        if (hasElse) this.buildStatement(node.getJmmChild(node.getNumChildren() - 1));
+        this.placeLabel(end);
+    }
+
+    /**
+     * Lowers the while, do-while and for loops. A loop tested at the bottom jumps back to its body while the condition
+     * holds, so each iteration takes a single conditional branch. A while or for loop is guarded by the negated
+     * condition before it when its loops are rotated, and otherwise tests the condition at the top and jumps back to
+     * it at the end of the body.
+     * @param guarded Whether the condition is tested before the first iteration
+     * @param update Expression evaluated after each iteration, or null
+     */
+    private void buildLoop(JmmNode condition, JmmNode body, JmmNode update, boolean guarded) {
+        String loop = this.newLabel(guarded ? "Loop" : "DoBody");
+        String end = guarded ? this.newLabel("EndLoop") : null;
+
+        if (guarded && !rotateLoops) {
+            this.placeLabel(loop);
+            this.branchIfFalse(condition, end);
+            this.buildStatement(body);
+            if (update != null) this.buildExpressionStatement(update);
+            this.jumpIfReachable(loop);
+            this.placeLabel(end);
+            return;
+        }
+
+        if (guarded) this.branchIfFalse(condition, end);
+        this.placeLabel(loop);
+        this.buildStatement(body);
+        if (update != null) this.buildExpressionStatement(update);
+        // A body that always returns never gets to the test
+        if (this.isReachable()) this.branchIfTrue(condition, loop);
+        if (guarded) this.placeLabel(end);
+    }
+
+    private void buildFor(JmmNode node) {
+        List<JmmNode> children = node.getChildren();
+        String name = node.get("var");
+        int next = 0;
+
+        if (children.get(0).getKind().equals("Type") || children.get(0).getKind().equals("ArrayType")) {
+            variables.put(name, new Variable(this.toType(children.get(next++)), -1));
+        }
+        if (children.size() - next == 4) this.assign(name, children.get(next++));
+
+        this.buildLoop(children.get(next), children.get(next + 2), children.get(next + 1), true);
+    }
+
+    /**
+     * Lowers a switch to a chain of branches that compare the selector, in a variable, with the value of each case,
+     * followed by a jump to the default case. The Jasmin backend turns such chains into a tableswitch or a
+     * lookupswitch. A case without a break falls through to the statements of the next one.
+     */
+    private void buildSwitch(JmmNode node) {
+        Type intType = new Type(ElementType.INT32);
+        Operand selector = this.toVariable(this.value(node.getJmmChild(0), intType));
+        List<JmmNode> cases = node.getChildren().stream().filter(child -> child.getKind().equals("SwitchCase")).toList();
+        String end = this.newLabel("EndSwitch");
+        String defaultCase = this.newLabel("Default");
+
+        List<String> labels = new ArrayList<>();
+        for (JmmNode switchCase : cases) {
+            String label = this.newLabel("Case");
+            labels.add(label);
+            LiteralElement value = new LiteralElement(String.valueOf(this.getCaseValue(switchCase.getJmmChild(0))), intType);
+            this.emitBranch(new BinaryOpInstruction(this.copy(selector), new Operation(OperationType.EQ,
+                    new Type(ElementType.BOOLEAN)), value), label);
+        }
+        this.jump(defaultCase);
+
+        for (int i = 0; i < cases.size(); i++) {
+            JmmNode switchCase = cases.get(i);
+            this.placeLabel(labels.get(i));
+            switchCase.getChildren().subList(1, switchCase.getNumChildren()).forEach(this::buildStatement);
+            if (switchCase.hasAttribute("exit")) this.jumpIfReachable(end);
+        }
+        this.placeLabel(defaultCase);
+        node.getChildren().stream().skip(1).filter(child -> !child.getKind().equals("SwitchCase"))
+                .forEach(this::buildStatement);
+        this.placeLabel(end);
+    }
+
+    private int getCaseValue(JmmNode label) {
+        if (label.getKind().equals("UnaryPreOp")) return -this.getCaseValue(label.getJmmChild(0));
+        return Integer.parseInt(label.get("value"));
+    }
+
+    private void buildExpressionStatement(JmmNode expression) {
+        switch (expression.getKind()) {
+            case "Scope" -> this.buildExpressionStatement(expression.getJmmChild(0));
+            case "MethodCalls" -> this.emit(this.call(expression, new Type(ElementType.VOID)));
+            case "UnaryPostOp", "UnaryPreOp" -> {
+                if (this.isIncrement(expression)) this.increment(expression.getJmmChild(0), expression.get("op"));
+                else this.value(expression, null);
+            }
+            case "BinaryOp" -> {
+                if (this.isCompoundAssignment(expression)) this.compoundAssign(expression);
+                else this.value(expression, null);
+            }
+            default -> this.value(expression, null);
+        }
+    }
+
+    // Conditions
+
+    private void branchIfTrue(JmmNode condition, String label) {
+        this.branch(condition, label, true);
+    }
+
+    private void branchIfFalse(JmmNode condition, String label) {
+        this.branch(condition, label, false);
+    }
+
+    /**
+     * Jumps to the label if the condition evaluates to the given value, and falls through otherwise
+     */
+    private void branch(JmmNode condition, String label, boolean when) {
+        switch (condition.getKind()) {
+            case "Scope" -> {
+                this.branch(condition.getJmmChild(0), label, when);
+                return;
+            }
+            case "Boolean" -> {
+                if (condition.get("value").equals("true") == when) this.jump(label);
+                return;
+            }
+            case "UnaryPreOp" -> {
+                if (condition.get("op").equals("!")) {
+                    this.branch(condition.getJmmChild(0), label, !when);
+                    return;
+                }
+            }
+            case "BinaryOp" -> {
+                String op = condition.get("op");
+                if (op.equals("&&") || op.equals("||")) {
+                    // "a && b" jumps when true only if both are true, and jumps when false if either is false
+                    boolean and = op.equals("&&");
+                    if (and != when) {
+                        this.branch(condition.getJmmChild(0), label, when);
+                        this.branch(condition.getJmmChild(1), label, when);
+                    } else {
+                        String skip = this.newLabel(and ? "AndFalse" : "OrTrue");
+                        this.branch(condition.getJmmChild(0), skip, !when);
+                        this.branch(condition.getJmmChild(1), label, when);
+                        this.placeLabel(skip);
+                    }
+                    return;
+                }
+
+                OperationType comparison = this.getComparison(op);
+                if (comparison != null) {
+                    Element left = this.value(condition.getJmmChild(0), null);
+                    Element right = this.value(condition.getJmmChild(1), null);
+                    this.emitBranch(new BinaryOpInstruction(left, new Operation(when ? comparison : this.negate(comparison),
+                            new Type(ElementType.BOOLEAN)), right), label);
+                    return;
+                }
+            }
+            default -> {
+            }
+        }
+
+        Element value = this.value(condition, new Type(ElementType.BOOLEAN));
+        if (when) {
+            this.emitBranch(new SingleOpInstruction(value), label);
+        } else {
+            this.emitBranch(new BinaryOpInstruction(value, new Operation(OperationType.EQ, new Type(ElementType.BOOLEAN)),
+                    new LiteralElement("0", new Type(ElementType.BOOLEAN))), label);
+        }
+    }
+
+    private OperationType getComparison(String op) {
+        return switch (op) {
+            case "<" -> OperationType.LTH;
+            case "<=" -> OperationType.LTE;
+            case ">" -> OperationType.GTH;
+            case ">=" -> OperationType.GTE;
+            case "==" -> OperationType.EQ;
+            case "!=" -> OperationType.NEQ;
+            default -> null;
+        };
+    }
+
+    private OperationType negate(OperationType comparison) {
+        return switch (comparison) {
+            case LTH -> OperationType.GTE;
+            case GTE -> OperationType.LTH;
+            case GTH -> OperationType.LTE;
+            case LTE -> OperationType.GTH;
+            case EQ -> OperationType.NEQ;
+            case NEQ -> OperationType.EQ;
+            default -> throw new RuntimeException("Not a comparison: " + comparison);
+        };
+    }
+
+    // Expressions
+
+    /**
+     * Lowers an expression to a single instruction, emitting the instructions that compute its operands
+     * @param expected Type the value is assigned to, used for the calls whose return type is not known
+     */
+    private Instruction rvalue(JmmNode expression, Type expected) {
+        switch (expression.getKind()) {
+            case "Scope":
+                return this.rvalue(expression.getJmmChild(0), expected);
+            case "Identifier": {
+                String name = expression.get("value");
+                if (!variables.containsKey(name) && fields.containsKey(name)) {
+                    return new GetFieldInstruction(this.thisOperand(), new Operand(name, fields.get(name)), fields.get(name));
+                }
+                break;
+            }
+            case "Length":
+                return new CallInstruction(CallType.arraylength, this.value(expression.getJmmChild(0), null),
+                        new Type(ElementType.INT32));
+            case "ArrayAccess": {
+                if (expression.getNumChildren() != 2) {
+                    throw new RuntimeException("Only arrays with one dimension are supported by the OLLIR builder");
+                }
+                Operand array = this.toVariable(this.value(expression.getJmmChild(0), null));
+                Operand index = this.toVariable(this.value(expression.getJmmChild(1), new Type(ElementType.INT32)));
+                Type elementType = ((ArrayType) array.getType()).getElementType();
+                return new SingleOpInstruction(new ArrayOperand(array.getName(), elementType, List.<Element>of(index)));
+            }
+            case "UnaryPreOp": {
+                String op = expression.get("op");
+                if (op.equals("!")) {
+                    return new UnaryOpInstruction(new Operation(OperationType.NOTB, new Type(ElementType.BOOLEAN)),
+                            this.value(expression.getJmmChild(0), new Type(ElementType.BOOLEAN)));
+                }
+                if (op.equals("-")) {
+                    return new BinaryOpInstruction(new LiteralElement("0", new Type(ElementType.INT32)),
+                            new Operation(OperationType.SUB, new Type(ElementType.INT32)),
+                            this.value(expression.getJmmChild(0), new Type(ElementType.INT32)));
+                }
+                if (op.equals("+")) return this.rvalue(expression.getJmmChild(0), expected);
+                break;
+            }
+            case "BinaryOp":
+                return this.binaryOp(expression);
+            case "NewObject":
+                if (this.isArrayCreation(expression)) {
+                    Type type = this.toArrayType(expression.getJmmChild(0).get("type"));
+                    ArrayList<Element> size = new ArrayList<>(List.of(this.value(expression.getJmmChild(1), new Type(ElementType.INT32))));
+                    return new CallInstruction(CallType.NEW, new Operand("array", type), size, type);
+                }
+                break;
+            case "MethodCalls":
+                return this.call(expression, expected != null ? expected : new Type(ElementType.INT32));
+            default:
+                break;
+        }
+        return new SingleOpInstruction(this.value(expression, expected));
+    }
+
+    /**
+     * Lowers an expression to a literal or a variable, emitting the instructions that compute it
+     */
+    private Element value(JmmNode expression, Type expected) {
+        switch (expression.getKind()) {
+            case "Scope":
+                return this.value(expression.getJmmChild(0), expected);
+            case "Integer":
+                return new LiteralElement(expression.get("value"), new Type(ElementType.INT32));
+            case "Char":
+                return new LiteralElement(String.valueOf((int) expression.get("value").charAt(0)), new Type(ElementType.INT32));
+            case "Boolean":
+                return new LiteralElement(expression.get("value").equals("true") ? "1" : "0", new Type(ElementType.BOOLEAN));
+            case "Self":
+                return this.thisOperand();
+            case "String": {
+                Type type = new Type(ElementType.STRING);
+                return this.toTemp(new CallInstruction(CallType.ldc,
+                        new LiteralElement("\"" + expression.get("value") + "\"", type), type), type);
+            }
+            case "Identifier": {
+                String name = expression.get("value");
+                Variable variable = variables.get(name);
+                if (variable != null) return this.variable(name, variable);
+                if (!fields.containsKey(name)) {
+                    // Class used as the target of a static call
+                    return new Operand(name, new ClassType(ElementType.CLASS, className));
+                }
+                break;
+            }
+            case "NewObject":
+                if (!this.isArrayCreation(expression)) {
+                    Operand temp = this.toTemp(this.newObject(expression), this.toType(expression.getJmmChild(0)));
+                    this.emitConstructorCall(temp);
+                    return temp;
+                }
+                break;
+            case "BinaryOp":
+                if (this.isCompoundAssignment(expression)) return this.compoundAssign(expression);
+                break;
+            case "UnaryPostOp":
+            case "UnaryPreOp":
+                if (this.isIncrement(expression)) {
+                    boolean post = expression.getKind().equals("UnaryPostOp");
+                    Element old = post ? this.toTemp(new SingleOpInstruction(this.value(expression.getJmmChild(0), null)),
+                            new Type(ElementType.INT32)) : null;
+                    Element updated = this.increment(expression.getJmmChild(0), expression.get("op"));
+                    return post ? old : updated;
+                }
+                break;
+            default:
+                break;
+        }
+
+        Instruction instruction = this.rvalue(expression, expected);
+        if (instruction instanceof SingleOpInstruction single && !(single.getSingleOperand() instanceof ArrayOperand)) {
+            return single.getSingleOperand();
+        }
+        return this.toTemp(instruction, this.getType(instruction));
+    }
+
+    private Instruction binaryOp(JmmNode expression) {
+        String op = expression.get("op");
+        JmmNode left = expression.getJmmChild(0);
+        JmmNode right = expression.getJmmChild(1);
+        Type integer = new Type(ElementType.INT32);
+        Type bool = new Type(ElementType.BOOLEAN);
+
+        OperationType comparison = this.getComparison(op);
+        if (comparison != null) {
+            return new BinaryOpInstruction(this.value(left, null), new Operation(comparison, bool), this.value(right, null));
+        }
+
+        switch (op) {
+            case "+", "-", "*", "/" -> {
+                return new BinaryOpInstruction(this.value(left, integer), new Operation(this.getArithmetic(op), integer),
+                        this.value(right, integer));
+            }
+            case "%" -> {
+                // a % b = a - a / b * b
+                Element dividend = this.value(left, integer);
+                Element divisor = this.value(right, integer);
+                Element quotient = this.toTemp(new BinaryOpInstruction(dividend, new Operation(OperationType.DIV, integer), divisor), integer);
+                Element product = this.toTemp(new BinaryOpInstruction(quotient, new Operation(OperationType.MUL, integer), divisor), integer);
+                return new BinaryOpInstruction(dividend, new Operation(OperationType.SUB, integer), product);
+            }
+            case "&", "|", "^" -> {
+                OperationType type = op.equals("&") ? OperationType.AND : op.equals("|") ? OperationType.OR : OperationType.XOR;
+                Element leftValue = this.value(left, null);
+                return new BinaryOpInstruction(leftValue, new Operation(type, leftValue.getType()), this.value(right, null));
+            }
+            case "&&", "||" -> {
+                // Without side effects in the right operand there is nothing to short-circuit
+                if (this.isSimple(right)) {
+                    return new BinaryOpInstruction(this.value(left, bool),
+                            new Operation(op.equals("&&") ? OperationType.ANDB : OperationType.ORB, bool), this.value(right, bool));
+                }
+                Operand result = this.newTemp(bool);
+                String isFalse = this.newLabel("False");
+                String end = this.newLabel("EndBool");
+                this.branchIfFalse(expression, isFalse);
+                this.emit(new AssignInstruction(result, bool, new SingleOpInstruction(new LiteralElement("1", bool))));
+                this.jump(end);
+                this.placeLabel(isFalse);
+                this.emit(new AssignInstruction(this.copy(result), bool, new SingleOpInstruction(new LiteralElement("0", bool))));
+                this.placeLabel(end);
+                return new SingleOpInstruction(this.copy(result));
+            }
+            default -> throw new RuntimeException("Operator " + op + " is not supported by the OLLIR builder");
+        }
+    }
+
+    private OperationType getArithmetic(String op) {
+        return switch (op) {
+            case "+", "+=", "++" -> OperationType.ADD;
+            case "-", "-=", "--" -> OperationType.SUB;
+            case "*", "*=" -> OperationType.MUL;
+            case "/", "/=" -> OperationType.DIV;
+            default -> throw new RuntimeException("Operator " + op + " is not supported by the OLLIR builder");
+        };
+    }
+
+    private boolean isSimple(JmmNode expression) {
+        return switch (expression.getKind()) {
+            case "Integer", "Boolean", "Char", "Self" -> true;
+            case "Identifier" -> variables.containsKey(expression.get("value"));
+            case "Scope" -> this.isSimple(expression.getJmmChild(0));
+            case "UnaryPreOp" -> expression.get("op").equals("!") && this.isSimple(expression.getJmmChild(0));
+            default -> false;
+        };
+    }
+
+    private boolean isCompoundAssignment(JmmNode expression) {
+        return expression.get("op").length() == 2 && expression.get("op").endsWith("=")
+                && this.getComparison(expression.get("op")) == null;
+    }
+
+    private boolean isIncrement(JmmNode expression) {
+        return expression.get("op").equals("++") || expression.get("op").equals("--");
+    }
+
+    /**
+     * Lowers "a += b" and similar operators
+     * @return The new value of the target
+     */
+    private Element compoundAssign(JmmNode expression) {
+        String op = expression.get("op");
+        if (op.equals("%=")) throw new RuntimeException("Operator %= is not supported by the OLLIR builder");
+        return this.update(expression.getJmmChild(0), this.getArithmetic(op), expression.getJmmChild(1), null);
+    }
+
+    /**
+     * Lowers "a++", "++a", "a--" and "--a"
+     * @return The new value of the target
+     */
+    private Element increment(JmmNode target, String op) {
+        return this.update(target, this.getArithmetic(op), null, new LiteralElement("1", new Type(ElementType.INT32)));
+    }
+
+    /**
+     * Stores "target op operand" in the target, where the operand is either an expression or a literal
+     */
+    private Element update(JmmNode target, OperationType operation, JmmNode operandExpression, Element operand) {
+        Type integer = new Type(ElementType.INT32);
+        while (target.getKind().equals("Scope")) target = target.getJmmChild(0);
+
+        if (target.getKind().equals("Identifier") && variables.containsKey(target.get("value"))) {
+            String name = target.get("value");
+            Element right = operand != null ? operand : this.value(operandExpression, integer);
+            Variable variable = variables.get(name);
+            this.emit(new AssignInstruction(this.variable(name, variable), integer,
+                    new BinaryOpInstruction(this.variable(name, variable), new Operation(operation, integer), right)));
+            return this.variable(name, variable);
+        }
+
+        if (target.getKind().equals("Identifier")) {
+            String name = target.get("value");
+            Type type = this.getFieldType(name);
+            Element current = this.value(target, integer);
+            Element right = operand != null ? operand : this.value(operandExpression, integer);
+            Operand result = this.toTemp(new BinaryOpInstruction(current, new Operation(operation, integer), right), integer);
+            this.emit(this.putField(name, type, result));
+            return this.copy(result);
+        }
+
+        if (target.getKind().equals("ArrayAccess") && target.getNumChildren() == 2) {
+            Operand array = this.toVariable(this.value(target.getJmmChild(0), null));
+            Operand index = this.toVariable(this.value(target.getJmmChild(1), integer));
+            Operand current = this.toTemp(new SingleOpInstruction(new ArrayOperand(array.getName(), integer, List.<Element>of(index))), integer);
+            Element right = operand != null ? operand : this.value(operandExpression, integer);
+            Operand result = this.toTemp(new BinaryOpInstruction(current, new Operation(operation, integer), right), integer);
+            this.emit(new AssignInstruction(new ArrayOperand(array.getName(), integer, List.<Element>of(index)), integer,
+                    new SingleOpInstruction(result)));
+            return this.copy(result);
+        }
+
+        throw new RuntimeException("Cannot assign to " + target.getKind());
+    }
+
+    private boolean isArrayCreation(JmmNode newObject) {
+        return newObject.getNumChildren() > 1;
+    }
+
+    private Instruction newObject(JmmNode expression) {
+        Type type = this.toType(expression.getJmmChild(0));
+        if (!(type instanceof ClassType classType)) {
+            throw new RuntimeException("Cannot create an object of type " + expression.getJmmChild(0).get("type"));
+        }
+        return new CallInstruction(CallType.NEW, new Operand(classType.getName(), type), new ArrayList<>(), type);
+    }
+
+    private void emitConstructorCall(Operand object) {
+        this.emit(new CallInstruction(CallType.invokespecial, object, this.methodName("<init>"), new ArrayList<>(),
+                new Type(ElementType.VOID)));
+    }
+
+    /**
+     * Lowers a chain of method calls. The calls before the last one are stored in temporary variables.
+     * @param expected Return type of the last call, used if it is not a method of this class
+     * @return The last call
+     */
+    private CallInstruction call(JmmNode expression, Type expected) {
+        JmmNode targetNode = expression.getJmmChild(0);
+        Element target = this.value(targetNode, null);
+        CallInstruction call = null;
+
+        for (int i = 1; i < expression.getNumChildren(); i++) {
+            if (call != null) target = this.toTemp(call, call.getReturnType());
+
+            JmmNode methodCall = expression.getJmmChild(i);
+            String name = methodCall.get("methodName");
+            boolean isStatic = target.getType().getTypeOfElement() == ElementType.CLASS;
+            boolean isLast = i == expression.getNumChildren() - 1;
+
+            List<Type> paramTypes = null;
+            Type returnType = null;
+            if (this.isThisClass(target) && symbolTable.getMethods().contains(name)) {
+                paramTypes = symbolTable.getParameters(name).stream().map(Symbol::getType).map(this::toType).toList();
+                returnType = this.toType(symbolTable.getReturnType(name));
+            } else if (isLast) {
+                returnType = expected;
+            } else {
+                throw new RuntimeException("Cannot infer the type returned by method " + name);
+            }
+
+            ArrayList<Element> args = new ArrayList<>();
+            for (int j = 0; j < methodCall.getNumChildren(); j++) {
+                Type paramType = paramTypes != null && j < paramTypes.size() ? paramTypes.get(j) : null;
+                args.add(this.value(methodCall.getJmmChild(j).getJmmChild(0), paramType));
+            }
+
+            call = new CallInstruction(isStatic ? CallType.invokestatic : CallType.invokevirtual, target,
+                    this.methodName(name), args, returnType);
+        }
+        return call;
+    }
+
+    private boolean isThisClass(Element target) {
+        if (target.getType().getTypeOfElement() == ElementType.THIS) return true;
+        if (target instanceof Operand operand && target.getType().getTypeOfElement() == ElementType.CLASS) {
+            return operand.getName().equals(className);
+        }
+        return target.getType() instanceof ClassType classType && classType.getName().equals(className);
+    }
+
+    // Emission
+
+    private void emit(Instruction instruction) {
+        method.addInstr(instruction);
+        for (String label : pendingLabels) method.addLabel(label, instruction);
+        pendingLabels.clear();
+        lastInstruction = instruction;
+    }
+
+    private void emitReturn(Element value) {
+        ReturnInstruction instruction = value != null ? new ReturnInstruction(value) : new ReturnInstruction();
+        instruction.setReturnType(returnType);
+        this.emit(instruction);
+    }
+
+    private void emitBranch(OpInstruction condition, String label) {
+        this.emitBranch(new OpCondInstruction(condition), label);
+    }
+
+    private void emitBranch(SingleOpInstruction condition, String label) {
+        this.emitBranch(new SingleOpCondInstruction(condition), label);
+    }
+
+    private void emitBranch(CondBranchInstruction branch, String label) {
+        branch.setLabel(label);
+        jumpTargets.add(label);
+        this.emit(branch);
+    }
+
+    private void jump(String label) {
+        jumpTargets.add(label);
+        this.emit(new GotoInstruction(label));
+    }
+
+    /**
+     * Jumps to the label, unless the last instruction already left the current block
+     */
+    private void jumpIfReachable(String label) {
+        if (this.isReachable()) this.jump(label);
+    }
+
+    /**
+     * @return false if the last instruction left the current block, and no label was placed after it
+     */
+    private boolean isReachable() {
+        return !pendingLabels.isEmpty()
+                || !(lastInstruction instanceof ReturnInstruction || lastInstruction instanceof GotoInstruction);
+    }
+
+    private void placeLabel(String label) {
+        pendingLabels.add(label);
+    }
+
+    private String newLabel(String prefix) {
+        return prefix + "_" + labelIndex++;
+    }
+
+    private Operand newTemp(Type type) {
+        String name;
+        do {
+            name = "tmp" + tempIndex++;
+        } while (usedNames.contains(name));
+        return new Operand(name, type);
+    }
+
+    private Operand toTemp(Instruction instruction, Type type) {
+        Operand temp = this.newTemp(type);
+        this.emit(new AssignInstruction(temp, type, instruction));
+        return this.copy(temp);
+    }
+
+    /**
+     * @return The element itself if it is a variable, or a temporary variable with its value otherwise. Array indexes
+     * and the targets of array accesses must be variables.
+     */
+    private Operand toVariable(Element element) {
+        if (element instanceof Operand operand && !(element instanceof ArrayOperand)
+                && operand.getType().getTypeOfElement() != ElementType.THIS) {
+            return operand;
+        }
+        return this.toTemp(new SingleOpInstruction(element), element.getType());
+    }
+
+    private Operand copy(Operand operand) {
+        Operand copy = new Operand(operand.getName(), operand.getType());
+        copy.setParamId(operand.getParamId());
+        return copy;
+    }
+
+    private Operand variable(String name, Variable variable) {
+        Operand operand = new Operand(name, variable.type());
+        if (variable.paramId() >= 0) operand.setParamId(variable.paramId());
+        return operand;
+    }
+
+    private Operand arrayVariable(String name) {
+        Variable variable = variables.get(name);
+        if (variable != null) return this.variable(name, variable);
+
+        Type type = this.getFieldType(name);
+        return this.toTemp(new GetFieldInstruction(this.thisOperand(), new Operand(name, type), type), type);
+    }
+
+    private Type getFieldType(String name) {
+        Type type = fields.get(name);
+        if (type == null) throw new RuntimeException("Unknown variable: " + name);
+        return type;
+    }
+
+    private PutFieldInstruction putField(String name, Type type, Element value) {
+        return new PutFieldInstruction(this.thisOperand(), new Operand(name, type), value, new Type(ElementType.VOID));
+    }
+
+    private Operand thisOperand() {
+        return new Operand("this", new ClassType(ElementType.THIS, className));
+    }
+
+    private LiteralElement methodName(String name) {
+        return new LiteralElement("\"" + name + "\"", new Type(ElementType.STRING));
+    }
+
+    // Types
+
+    private Type getType(Instruction instruction) {
+        if (instruction instanceof CallInstruction call) return call.getReturnType();
+        if (instruction instanceof GetFieldInstruction getField) return getField.getFieldType();
+        if (instruction instanceof SingleOpInstruction single) return single.getSingleOperand().getType();
+        if (instruction instanceof OpInstruction op) return op.getOperation().getTypeInfo();
+        throw new RuntimeException("Instruction does not produce a value: " + instruction.getInstType());
+    }
+
+    private Type toType(JmmNode varType) {
+        String name = varType.get("type");
+        return varType.getKind().equals("ArrayType") ? this.toArrayType(name) : this.toType(name);
+    }
+
+    private Type toType(pt.up.fe.comp.jmm.analysis.table.Type type) {
+        return type.isArray() ? this.toArrayType(type.getName()) : this.toType(type.getName());
+    }
+
+    private Type toType(String name) {
+        return switch (name) {
+            case "int" -> new Type(ElementType.INT32);
+            case "boolean" -> new Type(ElementType.BOOLEAN);
+            case "void" -> new Type(ElementType.VOID);
+            case "String" -> new Type(ElementType.STRING);
+            default -> new ClassType(ElementType.OBJECTREF, name);
+        };
+    }
+
+    private ArrayType toArrayType(String elementName) {
+        ArrayType type = new ArrayType();
+        type.setNumDimensions(1);
+        switch (elementName) {
+            case "int" -> type.setTypeOfElements(ElementType.INT32);
+            case "boolean" -> type.setTypeOfElements(ElementType.BOOLEAN);
+            case "String" -> {
+                type.setTypeOfElements(ElementType.STRING);
+                type.setElementClass("String");
+            }
+            default -> {
+                type.setTypeOfElements(ElementType.OBJECTREF);
+                type.setElementClass(elementName);
+            }
+        }
+        return type;
+    }
+}
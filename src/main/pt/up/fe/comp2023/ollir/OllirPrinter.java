@@ -0,0 +1,192 @@
+package pt.up.fe.comp2023.ollir;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Prints a {@link ClassUnit} as OLLIR code, which can be parsed back. Used to show the classes built by
+ * {@link OllirBuilder} and to store them in the build cache.
+ */
+public class OllirPrinter {
+
+    private final StringBuilder code = new StringBuilder();
+
+    public static String print(ClassUnit classUnit) {
+        OllirPrinter printer = new OllirPrinter();
+        printer.printClass(classUnit);
+        return printer.code.toString();
+    }
+
+    private void printClass(ClassUnit classUnit) {
+        for (String imported : classUnit.getImports()) {
+            code.append("import ").append(imported).append(";\n");
+        }
+
+        code.append(this.accessModifier(classUnit.getClassAccessModifier())).append(classUnit.getClassName());
+        if (classUnit.getSuperClass() != null) code.append(" extends ").append(classUnit.getSuperClass());
+        code.append(" {\n");
+
+        for (Field field : classUnit.getFields()) {
+            code.append("\n    .field ").append(this.accessModifier(field.getFieldAccessModifier()))
+                    .append(field.getFieldName()).append(this.type(field.getFieldType())).append(";");
+        }
+        if (!classUnit.getFields().isEmpty()) code.append("\n");
+
+        for (Method method : classUnit.getMethods()) {
+            code.append("\n");
+            this.printMethod(method);
+        }
+        code.append("\n}\n");
+    }
+
+    private void printMethod(Method method) {
+        code.append(method.isConstructMethod() ? "    .construct " : "    .method ")
+                .append(this.accessModifier(method.getMethodAccessModifier()));
+        if (method.isStaticMethod()) code.append("static ");
+        if (method.isFinalMethod()) code.append("final ");
+
+        String params = method.getParams().stream()
+                .map(param -> ((Operand) param).getName() + this.type(param.getType()))
+                .collect(Collectors.joining(", "));
+        code.append(method.getMethodName()).append("(").append(params).append(")")
+                .append(this.type(method.getReturnType())).append(" {\n");
+
+        Map<Instruction, List<String>> labels = new IdentityHashMap<>();
+        method.getLabels().forEach((label, instruction) -> labels.computeIfAbsent(instruction, i -> new ArrayList<>()).add(label));
+
+        for (Instruction instruction : method.getInstructions()) {
+            for (String label : labels.getOrDefault(instruction, List.of())) {
+                code.append("    ").append(label).append(":\n");
+            }
+            code.append("        ").append(this.instruction(instruction)).append(";\n");
+        }
+        code.append("    }\n");
+    }
+
+    private String instruction(Instruction instruction) {
+        return switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                AssignInstruction assign = (AssignInstruction) instruction;
+                yield this.element(assign.getDest()) + " :=" + this.type(assign.getTypeOfAssign()) + " "
+                        + this.instruction(assign.getRhs());
+            }
+            case CALL -> this.call((CallInstruction) instruction);
+            case GOTO -> "goto " + ((GotoInstruction) instruction).getLabel();
+            case BRANCH -> {
+                CondBranchInstruction branch = (CondBranchInstruction) instruction;
+                yield "if (" + this.instruction(branch.getCondition()) + ") goto " + branch.getLabel();
+            }
+            case RETURN -> {
+                ReturnInstruction ret = (ReturnInstruction) instruction;
+                yield "ret" + this.type(ret.getReturnType()) + (ret.hasReturnValue() ? " " + this.element(ret.getOperand()) : "");
+            }
+            case PUTFIELD -> {
+                PutFieldInstruction putField = (PutFieldInstruction) instruction;
+                yield "putfield(" + this.element(putField.getFirstOperand()) + ", " + this.element(putField.getSecondOperand())
+                        + ", " + this.element(putField.getThirdOperand()) + ").V";
+            }
+            case GETFIELD -> {
+                GetFieldInstruction getField = (GetFieldInstruction) instruction;
+                yield "getfield(" + this.element(getField.getFirstOperand()) + ", " + this.element(getField.getSecondOperand())
+                        + ")" + this.type(getField.getFieldType());
+            }
+            case UNARYOPER -> {
+                UnaryOpInstruction unary = (UnaryOpInstruction) instruction;
+                yield this.operation(unary.getOperation()) + " " + this.element(unary.getOperand());
+            }
+            case BINARYOPER -> {
+                BinaryOpInstruction binary = (BinaryOpInstruction) instruction;
+                yield this.element(binary.getLeftOperand()) + " " + this.operation(binary.getOperation()) + " "
+                        + this.element(binary.getRightOperand());
+            }
+            case NOPER -> this.element(((SingleOpInstruction) instruction).getSingleOperand());
+        };
+    }
+
+    private String call(CallInstruction call) {
+        List<String> args = new ArrayList<>();
+        String returnType = this.type(call.getReturnType());
+
+        switch (call.getInvocationType()) {
+            case NEW -> {
+                if (call.getReturnType() instanceof ClassType classType) {
+                    return "new(" + classType.getName() + ")" + returnType;
+                }
+                args.add("array");
+                call.getListOfOperands().forEach(arg -> args.add(this.element(arg)));
+                return "new(" + String.join(", ", args) + ")" + returnType;
+            }
+            case arraylength -> {
+                return "arraylength(" + this.element(call.getFirstArg()) + ")" + returnType;
+            }
+            case ldc -> {
+                return "ldc(" + ((LiteralElement) call.getFirstArg()).getLiteral() + ")" + returnType;
+            }
+            default -> {
+                args.add(this.element(call.getFirstArg()));
+                args.add(((LiteralElement) call.getSecondArg()).getLiteral());
+                if (call.getListOfOperands() != null) call.getListOfOperands().forEach(arg -> args.add(this.element(arg)));
+                return call.getInvocationType() + "(" + String.join(", ", args) + ")" + returnType;
+            }
+        }
+    }
+
+    private String element(Element element) {
+        if (element instanceof LiteralElement literal) {
+            return literal.getLiteral() + this.type(literal.getType());
+        }
+
+        Operand operand = (Operand) element;
+        ElementType type = operand.getType().getTypeOfElement();
+        if (type == ElementType.THIS || type == ElementType.CLASS) return operand.getName();
+
+        if (operand instanceof ArrayOperand array) {
+            String indexes = array.getIndexOperands().stream().map(index -> "[" + this.element(index) + "]")
+                    .collect(Collectors.joining());
+            return array.getName() + indexes + this.type(array.getType());
+        }
+        return operand.getName() + this.type(operand.getType());
+    }
+
+    private String operation(Operation operation) {
+        String symbol = switch (operation.getOpType()) {
+            case ADD -> "+";
+            case SUB -> "-";
+            case MUL -> "*";
+            case DIV -> "/";
+            case SHR -> ">>";
+            case SHL -> "<<";
+            case SHRR -> ">>>";
+            case XOR -> "^";
+            case AND -> "&";
+            case OR -> "|";
+            case LTH -> "<";
+            case GTH -> ">";
+            case EQ -> "==";
+            case NEQ -> "!=";
+            case LTE -> "<=";
+            case GTE -> ">=";
+            case ANDB -> "&&";
+            case ORB -> "||";
+            case NOTB, NOT -> "!";
+        };
+        return symbol + this.type(operation.getTypeInfo());
+    }
+
+    private String type(Type type) {
+        return switch (type.getTypeOfElement()) {
+            case INT32 -> ".i32";
+            case BOOLEAN -> ".bool";
+            case STRING -> ".String";
+            case VOID -> ".V";
+            case ARRAYREF -> ".array" + this.type(((ArrayType) type).getElementType());
+            case OBJECTREF, CLASS, THIS -> "." + ((ClassType) type).getName();
+        };
+    }
+
+    private String accessModifier(AccessModifiers modifier) {
+        return modifier == AccessModifiers.DEFAULT ? "" : modifier.name().toLowerCase() + " ";
+    }
+}
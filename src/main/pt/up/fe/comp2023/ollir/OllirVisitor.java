@@ -4,18 +4,28 @@ import pt.up.fe.comp.jmm.analysis.table.SymbolTable;
 import pt.up.fe.comp.jmm.analysis.table.Type;
 import pt.up.fe.comp.jmm.ast.AJmmVisitor;
 import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2023.symbol.table.ResolvedSymbol;
+import pt.up.fe.comp2023.symbol.table.Table;
 
 import java.util.*;
 
 public class OllirVisitor extends AJmmVisitor<String, String> {
 
-    String ollirCode;
+    OllirWriter ollir;
 
     SymbolTable symbolTable;
 
-    public OllirVisitor(String ollirCode, SymbolTable symbolTable) {
-        this.ollirCode = ollirCode;
+    Table table; //Same symbols as symbolTable, used for the lookups by name
+
+    public OllirVisitor(OllirWriter ollir, SymbolTable symbolTable) {
+        this.ollir = ollir;
         this.symbolTable = symbolTable;
+        this.table = Table.of(symbolTable);
+    }
+
+    public OllirVisitor(String ollirCode, SymbolTable symbolTable) {
+        this(new OllirWriter(), symbolTable);
+        ollir.append(ollirCode);
     }
     int importIndex = 0;
     int localIndex = 0;
@@ -28,8 +38,15 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
     int ifIndex = 0;
 
+    int switchIndex = 0;
+
+    int loopIndex = 0;
+
+    /**
+     * @return The generated code, if it was not streamed to a writer
+     */
     public String getOllirCode() {
-        return ollirCode;
+        return ollir.toString();
     }
 
     @Override
@@ -46,7 +63,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
         addVisit("BinaryOp", this::dealWithBinaryOp);
         addVisit("MethodCalls", this::dealWithMethodInvocation);
         addVisit("Scope", this::dealWithScope);
-        addVisit("While", this::dealWithWhile);
+        addVisit("While", this::dealWithLoop);
+        addVisit("DoWhile", this::dealWithLoop);
         addVisit("IfElse", this::dealWithIfElse);
         addVisit("ExprStmt", this::dealWithExprStmt);
         addVisit("Return", this::dealWithReturn);
@@ -73,32 +91,23 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
     public String getParamType(String val_param, String method){
 
-        for (Symbol param : symbolTable.getParameters(method)){
-            if (Objects.equals(param.getName(), val_param))
-                return getType(param.getType());
-        }
+        ResolvedSymbol param = table.lookup(method, val_param);
 
-        return "";
+        return param != null && param.isParameter() ? getType(param.getType()) : "";
     }
 
     public String getFieldType(String field){
 
-        for (Symbol f : symbolTable.getFields()){
-            if (Objects.equals(f.getName(), field))
-                return getType(f.getType());
-        }
+        ResolvedSymbol f = table.lookupField(field);
 
-        return "";
+        return f != null ? getType(f.getType()) : "";
     }
 
     public String getLocalType(String local, String method){
 
-        for (Symbol l : symbolTable.getLocalVariables(method)){
-            if (Objects.equals(l.getName(), local))
-                return getType(l.getType());
-        }
+        ResolvedSymbol l = table.lookup(method, local);
 
-        return "";
+        return l != null && l.isLocal() ? getType(l.getType()) : "";
     }
 
     private String findType(JmmNode node, String method){
@@ -122,11 +131,9 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             }
         }
 
-        if (!getParamType(val, method).equals("")){
-            return getParamType(val, method);
-        }
+        ResolvedSymbol var = table.lookup(method, val);
 
-        return  getFieldType(val) + getLocalType(val, method);
+        return var != null ? getType(var.getType()) : "";
     }
 
     String findArray(String method){
@@ -152,15 +159,6 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
         return "";
     }
 
-    private Boolean isParam(String var, String method){
-        for (Symbol s : symbolTable.getParameters(method)){
-            if (s.getName().equals(var))
-                return true;
-        }
-
-        return false;
-    }
-
 
     private String getOptype(String op){
         if (op.equals("+") || op.equals("-") || op.equals("*") || op.equals("/") || op.equals("%")){
@@ -185,13 +183,9 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
     private Symbol getLocalVar(String method, String target){
 
-        for (Symbol local_var : symbolTable.getLocalVariables(method)) {
+        ResolvedSymbol local_var = table.lookup(method, target);
 
-            if (local_var.getName().equals(target)){
-                return local_var;
-            }
-        }
-        return null;
+        return local_var != null ? local_var.symbol() : null;
     }
 
 
@@ -206,13 +200,17 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             s += visit(child, "");
         }
 
-        ollirCode += "}\n";
+        if (jmmNode.getChildren().stream().anyMatch(child -> child.getKind().equals("ClassDeclaration"))) {
+            ollir.dedent();
+        }
+        ollir.append("}\n");
+        ollir.flush();
         return "";
     }
 
     private String dealWithImport(JmmNode jmmNode, String s){
 
-        ollirCode += symbolTable.getImports().get(importIndex);
+        ollir.append(symbolTable.getImports().get(importIndex));
 
         importIndex ++;
         return "";
@@ -224,24 +222,26 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
         String sup = symbolTable.getSuper();
 
         if (Objects.equals(sup, "")){
-            ollirCode += symbolTable.getClassName() + "{\n";
+            ollir.append(symbolTable.getClassName() + "{\n");
         }
         else{
-            ollirCode += symbolTable.getClassName() + " extends " + sup + "{\n";
+            ollir.append(symbolTable.getClassName() + " extends " + sup + "{\n");
         }
 
+        ollir.indent();
+
         for (Symbol field : symbolTable.getFields()){
 
-            ollirCode += "\t.field private " + field.getName();
+            ollir.append(".field private " + field.getName());
 
             String type = getType(field.getType());
 
-            ollirCode += type + ";\n";
+            ollir.append(type + ";\n");
         }
 
-        ollirCode += "\t.construct " + symbolTable.getClassName() + "()" + ".V {\n";
+        ollir.append(".construct " + symbolTable.getClassName() + "()" + ".V {\n").indent();
 
-        ollirCode += "\t\tinvokespecial(this, \"<init>\").V;\n\t}\n";
+        ollir.append("invokespecial(this, \"<init>\").V;\n").dedent().append("}\n");
 
         return "";
     }
@@ -266,11 +266,13 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
         String method = symbolTable.getMethods().get(methodIndex);
 
+        ollir.beginMethod();
+
         if (method.equals("main")){
-            ollirCode += "\t.method public static " + method + "(";
+            ollir.append(".method public static " + method + "(");
         }
         else{
-            ollirCode += "\t.method public " + method + "(";
+            ollir.append(".method public " + method + "(");
         }
 
         List<Symbol> parameters = symbolTable.getParameters(method);
@@ -278,19 +280,19 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
         int param_sz = parameters.size();
 
         if (param_sz == 0){
-            ollirCode += ")";
+            ollir.append(")");
         }
         else {
             for (Symbol param : parameters){
-                ollirCode += param.getName();
+                ollir.append(param.getName());
                 String type = getType(param.getType());
 
                 if (param_sz == 1){
-                    ollirCode += type + ")";
+                    ollir.append(type + ")");
 
                 }
                 else if (param_sz > 1){
-                    ollirCode += type + ", ";
+                    ollir.append(type + ", ");
                 }
 
                 param_sz -= 1;
@@ -300,7 +302,7 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
         String method_type = getType(symbolTable.getReturnType(method));
 
-        ollirCode += method_type+ " {\n";
+        ollir.append(method_type+ " {\n").indent();
 
         for (JmmNode child :jmmNode.getChildren()){
             if (Objects.equals(child.getKind(), "MethodBody")){
@@ -319,22 +321,26 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                     else if (Objects.equals(c.getKind(), "ExprStmt")){
                         dealWithExprStmt(c,method);
                     }
-                    else if (Objects.equals(c.getKind(), "While")){
-                        dealWithWhile(c, method);
+                    else if (isLoop(c)){
+                        dealWithLoop(c, method);
                     }
                     else if (Objects.equals(c.getKind(), "IfElse")){
                         dealWithIfElse(c, method);
                     }
+                    else if (Objects.equals(c.getKind(), "Switch")){
+                        dealWithSwitch(c, method);
+                    }
 
                 }
             }
         }
 
         if (method.equals("main")){
-            ollirCode += "\t\tret" + method_type + ";\n";
+            ollir.append("ret" + method_type + ";\n");
         }
 
-        ollirCode+= "\t}\n";
+        ollir.dedent().append("}\n");
+        ollir.endMethod();
 
         methodIndex++;
 
@@ -370,12 +376,12 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
         JmmNode child = jmmNode.getJmmChild(0);
 
         if (!Objects.equals(child.getKind(), "BinaryOp")){
-            ollirCode += "\t\tret" + getType(ret) + " " + child.get("value") + getType(ret) + ";\n";
+            ollir.append("ret" + getType(ret) + " " + child.get("value") + getType(ret) + ";\n");
             localIndex = 0;
         }
         else {
             dealWithBinaryOp(child, method);
-            ollirCode += "\t\tret" + getType(ret) + " " + "t" + tempIndex + getType(ret) + ";\n";
+            ollir.append("ret" + getType(ret) + " " + "t" + tempIndex + getType(ret) + ";\n");
             tempIndex++;
 
         }
@@ -396,31 +402,35 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
         String param_indicator = "";
 
-        if (isParam(array_var, method))
-            param_indicator = "$" + dollarIndex + ".";
+        ResolvedSymbol array_symbol = table.lookup(method, array_var);
+        if (array_symbol != null && array_symbol.isParameter()){
+            //Parameters are numbered from 1 in instance methods, where 0 is this
+            int param_number = array_symbol.paramIndex() + (method.equals("main") ? 0 : 1);
+            param_indicator = "$" + param_number + ".";
+        }
 
         switch (index.getKind()) {
 
             case "Integer", "Identifier" -> {
 
-                ollirCode += "\t\ttemp_" + tempIndex + ".i32 :=.i32 " + param_indicator + array_var + ".array.i32" + "[" +
-                        index.get("value") + ".i32].i32;\n";
+                ollir.append("temp_" + tempIndex + ".i32 :=.i32 " + param_indicator + array_var + ".array.i32" + "[" +
+                        index.get("value") + ".i32].i32;\n");
 
                 tempIndex++;
             }
             case "MethodCalls" -> {
-                ollirCode += "\t\ttemp_" + tempIndex + ".i32 :=.i32 ";
+                ollir.append("temp_" + tempIndex + ".i32 :=.i32 ");
 
                 dealWithMethodInvocation(index, method);
 
                 previous = tempIndex- 1;
-                ollirCode += "\t\ttemp_" + tempIndex + ".i32 :=.i32 temp_" + previous + ".i32;\n";
+                ollir.append("temp_" + tempIndex + ".i32 :=.i32 temp_" + previous + ".i32;\n");
 
                 tempIndex++;
 
                 previous = tempIndex - 1;
-                ollirCode += "\t\ttemp_" + tempIndex + ".i32 :=.i32 " + array_var + "[temp_" + previous
-                        + ".i32].i32;\n";
+                ollir.append("temp_" + tempIndex + ".i32 :=.i32 " + array_var + "[temp_" + previous
+                        + ".i32].i32;\n");
 
             }
             case "BinaryOp" ->{
@@ -428,19 +438,19 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                 dealWithBinaryOp(index, method);
 
                 previous = tempIndex- 1;
-                ollirCode += "\t\ttemp_" + tempIndex + ".i32 :=.i32 temp_" + previous + ".i32;\n";
+                ollir.append("temp_" + tempIndex + ".i32 :=.i32 temp_" + previous + ".i32;\n");
 
                 tempIndex++;
 
                 previous = tempIndex - 1;
-                ollirCode += "temp_" + tempIndex + ".i32 :=.i32 " + param_indicator + array_var + "[temp_" + previous
-                        + ".i32].i32;\n";
+                ollir.append("temp_" + tempIndex + ".i32 :=.i32 " + param_indicator + array_var + "[temp_" + previous
+                        + ".i32].i32;\n");
             }
             case "ArrayAccess" ->{
                 dealWithArrayAccess(index, method);
 
-                ollirCode += "temp_" + tempIndex + ".i32 :=.i32 " + param_indicator + array_var + "[temp_" + (tempIndex - 1)
-                        + ".i32].i32;\n";
+                ollir.append("temp_" + tempIndex + ".i32 :=.i32 " + param_indicator + array_var + "[temp_" + (tempIndex - 1)
+                        + ".i32].i32;\n");
             }
             default -> {
             }
@@ -458,8 +468,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
         String array_var = jmmNode.get("var");
 
-        ollirCode += "\t\t" + array_var + "[" + index_val  + ".i32].i32 :=.i32 " + assign_val +
-                findType(jmmNode.getJmmChild(1), method) + ";\n";
+        ollir.append("" + array_var + "[" + index_val  + ".i32].i32 :=.i32 " + assign_val +
+                findType(jmmNode.getJmmChild(1), method) + ";\n");
 
         localIndex++;
 
@@ -469,19 +479,20 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
     private String dealWithAssignments(JmmNode jmmNode, String s){
 
-        Symbol local_var = symbolTable.getLocalVariables(s).get(symbolTable.getLocalVariables(s).indexOf(getLocalVar(s, jmmNode.get("var"))));
+        Symbol local_var = Objects.requireNonNull(getLocalVar(s, jmmNode.get("var")));
 
 
         for (JmmNode child : jmmNode.getChildren()){
             String t = getType(local_var.getType());
             if (Objects.equals(child.getKind(), "BinaryOp")){
                 dealWithBinaryOp(child, s);
+                storeResult(local_var.getName() + t);
                 return "";
             }
             else if (Objects.equals(child.getKind(), "ArrayAccess")){
                 dealWithArrayAccess(child, s);
                 tempIndex--;
-                ollirCode += "\t\t" + local_var.getName() + t + " :=" + t+ " temp_" + tempIndex + t + ";\n";
+                ollir.append("" + local_var.getName() + t + " :=" + t+ " temp_" + tempIndex + t + ";\n");
                 tempIndex++;
                 return "";
             }
@@ -491,33 +502,33 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
         type = getType(local_var.getType());
 
-        ollirCode += "\t\t" + local_var.getName();
+        ollir.append("" + local_var.getName());
 
         switch (type) {
             case ".i32" -> {
 
                 if (!Objects.equals(jmmNode.getJmmChild(0).getKind(), "ArrayAccess")){
                     String val = jmmNode.getJmmChild(0).get("value");
-                    ollirCode += type + " :=" + type + " " + val + type + ";\n";
+                    ollir.append(type + " :=" + type + " " + val + type + ";\n");
 
                 }
             }
-            case ".bool" -> ollirCode += type + " :=" + type + " 0.bool;\n";
+            case ".bool" -> ollir.append(type + " :=" + type + " 0.bool;\n");
             case ".array.i32" ->{
 
                 if (jmmNode.getJmmChild(0).getChildren().size() > 1){
                     String length = jmmNode.getJmmChild(0).getJmmChild(1).get("value");
 
-                    ollirCode += type + ":=" + type + " new(array, " + length + ".i32" + ")" + type + ";\n";
+                    ollir.append(type + ":=" + type + " new(array, " + length + ".i32" + ")" + type + ";\n");
                 }
                 else{
-                    ollirCode += type + ":=" + type + "new(" + ")" + type + ";\n";
+                    ollir.append(type + ":=" + type + "new(" + ")" + type + ";\n");
                 }
 
             }
             default -> {
-                ollirCode += type + " :=" + type + " new(" + local_var.getType().getName() + ")" + type + ";\n";
-                ollirCode += "\t\tinvokespecial(" + local_var.getName() + type + ",\"<init>\").V;\n";
+                ollir.append(type + " :=" + type + " new(" + local_var.getType().getName() + ")" + type + ";\n");
+                ollir.append("invokespecial(" + local_var.getName() + type + ",\"<init>\").V;\n");
             }
         }
 
@@ -531,6 +542,19 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
         return "";
     }
 
+    /**
+     * Assigns the variable from the temporary of the last line, unless that line already assigns it
+     * @param target Variable with its type, e.g. "i.i32"
+     */
+    private void storeResult(String target){
+        String last = ollir.lastLine();
+        int assign = last.indexOf(" :=");
+        if (!last.startsWith("temp_") || assign < 0) return;
+
+        String type = target.substring(target.indexOf('.'));
+        ollir.append(target + " :=" + type + " " + last.substring(0, assign) + ";\n");
+    }
+
     private String dealWithMethodInvocation(JmmNode jmmNode, String method){
 
         JmmNode method_aux = jmmNode.getJmmChild(1);
@@ -543,10 +567,9 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
         String object_type = "";
 
-        for (Symbol obj : symbolTable.getLocalVariables(method)){
-            if (obj.getName().equals(object)){
-                object_type = getType(obj.getType());
-            }
+        ResolvedSymbol obj = table.lookup(method, object);
+        if (obj != null){
+            object_type = getType(obj.getType());
         }
 
         String method_sup;
@@ -574,22 +597,16 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
                 String array = findArray(method);
 
-                ollirCode += "\t\t"+ method_arg + ".i32 :=.i32 " + "arraylength("  + array +  ").i32;\n";
+                ollir.append(""+ method_arg + ".i32 :=.i32 " + "arraylength("  + array +  ").i32;\n");
 
 
             }
 
             method_sup = jmmNode.getJmmChild(0).get("value");
 
-            for (Symbol symbol : symbolTable.getLocalVariables(method)){
-                if (Objects.equals(method_arg, symbol.getName())){
-                    arg_type += getType(symbol.getType());
-                }
-            }
-            if (arg_type.equals("")){
-                arg_type += getParamType(method_arg, method);
-                arg_type += getFieldType(method_arg);
-
+            ResolvedSymbol symbol = table.lookup(method, method_arg);
+            if (symbol != null){
+                arg_type += getType(symbol.getType());
             }
 
             if (arg_type.equals("") && (Objects.equals(temp.getJmmChild(0).getKind(), "Integer")
@@ -597,8 +614,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                 arg_type += ".i32";
             }
 
-            ollirCode += "\t\tinvokestatic(" + method_sup + findType(jmmNode.getJmmChild(0), method) + ", "+ "\"" + method_name + "\", " +
-                    method_arg + arg_type + ").V;\n";
+            ollir.append("invokestatic(" + method_sup + findType(jmmNode.getJmmChild(0), method) + ", "+ "\"" + method_name + "\", " +
+                    method_arg + arg_type + ").V;\n");
 
         }
         else if (isInvokeVirtual(method_name)){
@@ -623,7 +640,7 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
                 String array = findArray(method);
 
-                ollirCode += "\t\t"+ method_arg + ".i32 :=.i32 " + "arraylength("  + array +  ").i32;\n";
+                ollir.append(""+ method_arg + ".i32 :=.i32 " + "arraylength("  + array +  ").i32;\n");
 
             }
             if (symbolTable.getParameters(method_name).size() > 0){
@@ -634,13 +651,13 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                 }
 
 
-                ollirCode += "\t\tinvokevirtual("+ object + object_type + ", \"" + method_name + "\", " +
+                ollir.append("invokevirtual("+ object + object_type + ", \"" + method_name + "\", " +
                         method_arg + arg_type + ")" + getType(
-                        symbolTable.getReturnType(method_name)) + ";\n";
+                        symbolTable.getReturnType(method_name)) + ";\n");
             }
             else{
-                ollirCode += "\t\tinvokevirtual(" + object + object_type + ", \"" + method_name + "\"" + ")"+ getType(
-                        symbolTable.getReturnType(method_name)) + ";\n";
+                ollir.append("invokevirtual(" + object + object_type + ", \"" + method_name + "\"" + ")"+ getType(
+                        symbolTable.getReturnType(method_name)) + ";\n");
             }
         }
 
@@ -648,14 +665,28 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
         return "";
     }
 
-    private String dealWithWhile(JmmNode jmmNode, String method){
+    private boolean isLoop(JmmNode jmmNode){
+        return Objects.equals(jmmNode.getKind(), "While") || Objects.equals(jmmNode.getKind(), "DoWhile");
+    }
+
+    /**
+     * Lowers while and do-while loops with the test at the bottom of the body, so each iteration takes a single
+     * conditional branch. A while loop is guarded by the reversed condition before its first iteration.
+     */
+    private String dealWithLoop(JmmNode jmmNode, String method){
+
+        boolean guarded = Objects.equals(jmmNode.getKind(), "While");
+        JmmNode bin_op = jmmNode.getJmmChild(guarded ? 0 : 1);
+        JmmNode body = jmmNode.getJmmChild(guarded ? 1 : 0);
 
-        JmmNode bin_op = jmmNode.getJmmChild(0);
+        // Labels must be unique in the method, loops may be nested or follow each other
+        String body_label = "BODY_" + loopIndex;
+        String end_label = "END_LOOP_" + loopIndex;
+        loopIndex++;
 
         String temp_op = bin_op.get("op");
         String op;
 
-        Type op1_type = new Type("", false), op2_type = new Type("", false);
         if (temp_op.equals("<") || temp_op.equals(">") || temp_op.equals("<=") || temp_op.equals(">=")){
             op = getReverse(temp_op);
         }
@@ -663,50 +694,118 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             op = temp_op;
         }
 
-        for (Symbol var : symbolTable.getLocalVariables(method)){
-            if (var.getName().equals(bin_op.getJmmChild(0).get("value"))){
-                op1_type = var.getType();
+        // The operands may be literals after constant propagation
+        String op1_type = findType(bin_op.getJmmChild(0), method);
+        String op2_type = findType(bin_op.getJmmChild(1), method);
+
+        if (guarded){
+            ollir.append("if (" + bin_op.getJmmChild(0).get("value") + op1_type + " " + op + getOptype(op)
+                    + " " + bin_op.getJmmChild(1).get("value") + op2_type + ") goto " + end_label + ";\n");
+        }
+        ollir.append(body_label + ":\n");
+
+        List<JmmNode> statements = Objects.equals(body.getKind(), "NestedStatements") ? body.getChildren() : List.of(body);
+        for (JmmNode c : statements){
+
+            if (Objects.equals(c.getKind(), "Assignment")){
+                dealWithAssignments(c, method);
             }
-            if (var.getName().equals(bin_op.getJmmChild(1).get("value"))){
-                op2_type = var.getType();
+            else if (Objects.equals(c.getKind(), "ArrayAssignment")){
+                dealWithArrayAssignments(c, method);
+            }
+            else if (Objects.equals(c.getKind(), "Return")){
+                dealWithReturn(c, method);
+            } else if (Objects.equals(c.getKind(), "BinaryOp")) {
+                dealWithBinaryOp(c, method);
+            } else if (Objects.equals(c.getKind(), "ExprStmt")) {
+                dealWithExprStmt(c, method);
+            } else if (Objects.equals(c.getKind(), "MethodCalls")) {
+                dealWithMethodInvocation(c, method);
+            } else if (isLoop(c)) {
+                dealWithLoop(c, method);
             }
         }
 
-        ollirCode += "\t\tif (" + bin_op.getJmmChild(0).get("value") + getType(op1_type) + " " + op + getOptype(op)
-                + " " + bin_op.getJmmChild(1).get("value") + getType(op2_type) + ") goto ENDLOOP_1;\n";
-        ollirCode += "\t\tBODY_0:\n";
-
-        if (Objects.equals(jmmNode.getJmmChild(1).getKind(), "NestedStatements")){
-            for (JmmNode c : jmmNode.getJmmChild(1).getChildren()){
+        ollir.append("if (" + bin_op.getJmmChild(0).get("value") + op1_type + " " + temp_op +
+                getOptype(op) + " " + bin_op.getJmmChild(1).get("value") + op2_type
+                + ") goto " + body_label + ";\n");
 
-                if (Objects.equals(c.getKind(), "Assignment")){
-                    dealWithAssignments(c, method);
-                }
-                else if (Objects.equals(c.getKind(), "ArrayAssignment")){
-                    dealWithArrayAssignments(c, method);
-                }
-                else if (Objects.equals(c.getKind(), "Return")){
-                    dealWithReturn(c, method);
-                } else if (Objects.equals(c.getKind(), "BinaryOp")) {
-                    dealWithBinaryOp(c, method);
-                } else if (Objects.equals(c.getKind(), "ExprStmt")) {
-                    dealWithExprStmt(c, method);
-                } else if (Objects.equals(c.getKind(), "MethodCalls")) {
-                    dealWithMethodInvocation(c, method);
-                }
-            }
+        if (guarded){
+            ollir.append(end_label + ":\n");
         }
 
-        ollirCode += "\t\tif (" + bin_op.getJmmChild(0).get("value") + getType(op1_type) + " " + temp_op +
-                getOptype(op) + " " + bin_op.getJmmChild(1).get("value") + getType(op2_type)
-                + ") goto BODY_0;\n";
+        return "";
+    }
+
+    /**
+     * Lowers a switch to a chain of branches that compare the selector with the value of each case, followed by a jump
+     * to the default case, which the Jasmin backend turns into a tableswitch or a lookupswitch. A case without a break
+     * falls through to the statements of the next one.
+     */
+    private String dealWithSwitch(JmmNode jmmNode, String method){
+
+        JmmNode selector = jmmNode.getJmmChild(0);
+        String selector_value = selector.get("value") + findType(selector, method);
+
+        // Labels must be unique in the method, switches may be nested or follow each other
+        String case_label = "CASE_" + switchIndex + "_";
+        String default_label = "DEFAULT_" + switchIndex;
+        String end_label = "END_SWITCH_" + switchIndex;
+        switchIndex++;
+
+        List<JmmNode> cases = new ArrayList<>();
+        List<JmmNode> default_statements = new ArrayList<>();
+        for (JmmNode child : jmmNode.getChildren().subList(1, jmmNode.getNumChildren())){
+            if (Objects.equals(child.getKind(), "SwitchCase")) cases.add(child);
+            else default_statements.add(child);
+        }
 
+        for (int i = 0; i < cases.size(); i++){
+            JmmNode label = cases.get(i).getJmmChild(0);
+            String value = Objects.equals(label.getKind(), "UnaryPreOp") ? "-" + label.getJmmChild(0).get("value")
+                    : label.get("value");
+            ollir.append("if (" + selector_value + " ==.bool " + value + ".i32) goto " + case_label + i + ";\n");
+        }
+        ollir.append("goto " + default_label + ";\n");
+
+        for (int i = 0; i < cases.size(); i++){
+            JmmNode switch_case = cases.get(i);
+            ollir.append(case_label + i + ":\n");
+            dealWithSwitchStatements(switch_case.getChildren().subList(1, switch_case.getNumChildren()), method);
+            if (switch_case.hasAttribute("exit")){
+                ollir.append("goto " + end_label + ";\n");
+            }
+        }
 
-        ollirCode += "\t\tEND_LOOP_1:\n";
+        ollir.append(default_label + ":\n");
+        dealWithSwitchStatements(default_statements, method);
+        ollir.append(end_label + ":\n");
 
         return "";
     }
 
+    private void dealWithSwitchStatements(List<JmmNode> statements, String method){
+        for (JmmNode c : statements){
+            if (Objects.equals(c.getKind(), "Assignment")){
+                dealWithAssignments(c, method);
+            } else if (Objects.equals(c.getKind(), "ArrayAssignment")) {
+                dealWithArrayAssignments(c, method);
+            } else if (Objects.equals(c.getKind(), "Return")) {
+                dealWithReturn(c, method);
+            } else if (Objects.equals(c.getKind(), "ExprStmt")) {
+                dealWithExprStmt(c, method);
+            } else if (Objects.equals(c.getKind(), "MethodCalls")) {
+                dealWithMethodInvocation(c, method);
+            } else if (isLoop(c)) {
+                dealWithLoop(c, method);
+            } else if (Objects.equals(c.getKind(), "IfElse")) {
+                dealWithIfElse(c, method);
+            } else if (Objects.equals(c.getKind(), "Switch")) {
+                dealWithSwitch(c, method);
+            }
+        }
+    }
+
     private void binOpInIfElse(JmmNode jmmNode, String method){
         String op = jmmNode.getJmmChild(0).get("op");
 
@@ -720,11 +819,11 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
         String op2_type = findType(op2, method);
 
-        ollirCode += "\t\tif (" + op1.get("value") + op1_type + " " + op + op_type + " ";
+        ollir.append("if (" + op1.get("value") + op1_type + " " + op + op_type + " ");
 
         dollarIndex++;
 
-        ollirCode += op2.get("value") + op2_type + ") goto THEN_" + dollarIndex + ";\n";
+        ollir.append(op2.get("value") + op2_type + ") goto THEN_" + dollarIndex + ";\n");
 
         // Else part
 
@@ -736,8 +835,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                     dealWithAssignments(else_children, method);
                 } else if (Objects.equals(else_children.getKind(), "ArrayAssignment")) {
                     dealWithArrayAssignments(else_children, method);
-                } else if (Objects.equals(else_children.getKind(), "While")) {
-                    dealWithWhile(else_children, method);
+                } else if (isLoop(else_children)) {
+                    dealWithLoop(else_children, method);
                 } else if (Objects.equals(else_children.getKind(), "Return")) {
                     dealWithReturn(else_children, method);
                 } else if (Objects.equals(else_children.getKind(), "MethodCalls")) {
@@ -760,9 +859,9 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
 
 
-        ollirCode += "\t\tgoto ENDIF_" + ifIndex++ + ";\n";
+        ollir.append("goto ENDIF_" + ifIndex++ + ";\n");
 
-        ollirCode +="\t\tTHEN_" + ifIndex + ":\n";
+        ollir.append("THEN_" + ifIndex + ":\n");
 
         // If part
 
@@ -773,8 +872,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                 dealWithAssignments(if_children, method);
             } else if (Objects.equals(if_children.getKind(), "ArrayAssignment")) {
                 dealWithArrayAssignments(if_children, method);
-            }else if (Objects.equals(if_children.getKind(), "While")) {
-                dealWithWhile(if_children, method);
+            }else if (isLoop(if_children)) {
+                dealWithLoop(if_children, method);
             } else if (Objects.equals(if_children.getKind(), "Return")) {
                 dealWithReturn(if_children, method);
             } else if (Objects.equals(if_children.getKind(), "MethodCalls")) {
@@ -786,7 +885,7 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             }
         }
 
-        ollirCode += "\t\tENDIF_" + ifIndex++ + ":\n";
+        ollir.append("ENDIF_" + ifIndex++ + ":\n");
     }
 
     private void identInIfElse(JmmNode jmmNode, String method){
@@ -795,7 +894,7 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
         String val_type = findType(val, method);
 
-        ollirCode += "\t\tif (" + val.get("value") + val_type + ") goto THEN_"+ ifIndex + ";\n";
+        ollir.append("if (" + val.get("value") + val_type + ") goto THEN_"+ ifIndex + ";\n");
 
         // Else part
 
@@ -806,8 +905,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                 dealWithAssignments(else_children, method);
             } else if (Objects.equals(else_children.getKind(), "ArrayAssignment")) {
                 dealWithArrayAssignments(else_children, method);
-            }else if (Objects.equals(else_children.getKind(), "While")) {
-                dealWithWhile(else_children, method);
+            }else if (isLoop(else_children)) {
+                dealWithLoop(else_children, method);
             } else if (Objects.equals(else_children.getKind(), "Return")) {
                 dealWithReturn(else_children, method);
             } else if (Objects.equals(else_children.getKind(), "MethodCalls")) {
@@ -819,9 +918,9 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             }
         }
 
-        ollirCode += "\t\tgoto ENDIF_" + ifIndex++ + ";\n";
+        ollir.append("goto ENDIF_" + ifIndex++ + ";\n");
 
-        ollirCode +="\t\tTHEN_" + ifIndex + ":\n";
+        ollir.append("THEN_" + ifIndex + ":\n");
 
         // If part
 
@@ -832,8 +931,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                 dealWithAssignments(if_children, method);
             } else if (Objects.equals(if_children.getKind(), "ArrayAssignment")) {
                 dealWithArrayAssignments(if_children, method);
-            }else if (Objects.equals(if_children.getKind(), "While")) {
-                dealWithWhile(if_children, method);
+            }else if (isLoop(if_children)) {
+                dealWithLoop(if_children, method);
             } else if (Objects.equals(if_children.getKind(), "Return")) {
                 dealWithReturn(if_children, method);
             } else if (Objects.equals(if_children.getKind(), "MethodCalls")) {
@@ -845,7 +944,7 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             }
         }
 
-        ollirCode += "\t\tENDIF_" + ifIndex++ + ":\n";
+        ollir.append("ENDIF_" + ifIndex++ + ":\n");
 
 
     }
@@ -885,8 +984,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             dealWithScope(child, method);
 
             if (index == jmmNode.getNumChildren() - 1){
-                ollirCode += "\t\ttemp_" + tempIndex + op_type + " :=" + op_type + " temp_" + (tempIndex -1) + op_type + " " +
-                        jmmNode.get("op") + op_type + " ";
+                ollir.append("temp_" + tempIndex + op_type + " :=" + op_type + " temp_" + (tempIndex -1) + op_type + " " +
+                        jmmNode.get("op") + op_type + " ");
             }
 
             return;
@@ -898,7 +997,7 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
 
             String array = findArray(method);
 
-            ollirCode += "\t\t"+ method_arg + ".i32 :=.i32 " + "arraylength("  + array +  ").i32;\n";
+            ollir.append(""+ method_arg + ".i32 :=.i32 " + "arraylength("  + array +  ").i32;\n");
 
             tempIndex++;
 
@@ -914,18 +1013,18 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                 dealWithArrayAccess(child, method);
                 tempIndex--;
                 if (jmmNode.getAncestor("Assignment").isEmpty()){
-                    ollirCode += "\t\ttemp_" + (tempIndex + 1) + op_type+ " :=" + op_type + " " + "temp_" +
-                            tempIndex +  op_type + " " + jmmNode.get("op") + op_type + " ";
+                    ollir.append("temp_" + (tempIndex + 1) + op_type+ " :=" + op_type + " " + "temp_" +
+                            tempIndex +  op_type + " " + jmmNode.get("op") + op_type + " ");
                 }
                 else{
                     String var = jmmNode.getAncestor("Assignment").get().get("var");
 
-                    ollirCode += "\t\t" + var + op_type+ " :=" + op_type + " " + "temp_" +
-                            tempIndex +  op_type + " " + jmmNode.get("op") + op_type + " ";
+                    ollir.append("" + var + op_type+ " :=" + op_type + " " + "temp_" +
+                            tempIndex +  op_type + " " + jmmNode.get("op") + op_type + " ");
                 }
 
                 //tempIndex--;
-                ollirCode += "temp_" + tempIndex++ + op_type + ";\n";
+                ollir.append("temp_" + tempIndex++ + op_type + ";\n");
                 //tempIndex ++;
             }
             return;
@@ -937,16 +1036,16 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             if (Objects.equals(jmmNode.getJmmChild(index + 1).getKind(), "ArrayAccess")){
                 dealWithArrayAccess(jmmNode.getJmmChild(index + 1), method);
                 if (jmmNode.getAncestor("Assignment").isEmpty()){
-                    ollirCode += "\t\ttemp_" + (tempIndex + 1) + op_type+ " :=" + op_type + " " + "temp_" +
-                            tempIndex +  op_type + " " + jmmNode.get("op") + op_type + " ";
+                    ollir.append("temp_" + (tempIndex + 1) + op_type+ " :=" + op_type + " " + "temp_" +
+                            tempIndex +  op_type + " " + jmmNode.get("op") + op_type + " ");
                 }
                 else{
                     String var = jmmNode.getAncestor("Assignment").get().get("var");
 
-                    ollirCode += "\t\t" + var + op_type+ " :=" + op_type + " " +
+                    ollir.append("" + var + op_type+ " :=" + op_type + " " +
                             jmmNode.getJmmChild(index).get("value") + op_type + " " +
                             jmmNode.get("op") + op_type + " " + "temp_" + (tempIndex - 1)
-                    + op_type + ";\n";
+                    + op_type + ";\n");
 
                 }
 
@@ -955,20 +1054,20 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             }
             else if (Objects.equals(jmmNode.getJmmChild(index + 1).getKind(), "Scope")){
                 visit(jmmNode.getJmmChild(index + 1));
-                ollirCode += "\t\ttemp_" + tempIndex + op_type + " :=" + op_type + " ";
+                ollir.append("temp_" + tempIndex + op_type + " :=" + op_type + " ");
 
-                ollirCode += child.get("value") + val_type + " "+ child.getJmmParent().get("op") + val_type + " temp_"
-                        + (tempIndex - 1) +  val_type + ";\n";
+                ollir.append(child.get("value") + val_type + " "+ child.getJmmParent().get("op") + val_type + " temp_"
+                        + (tempIndex - 1) +  val_type + ";\n");
                 return;
             }
-            ollirCode += "\t\ttemp_" + tempIndex + op_type + " :=" + op_type + " ";
+            ollir.append("temp_" + tempIndex + op_type + " :=" + op_type + " ");
 
-            ollirCode += child.get("value") + val_type + " "+ child.getJmmParent().get("op") + op_type + " ";
+            ollir.append(child.get("value") + val_type + " "+ child.getJmmParent().get("op") + op_type + " ");
 
             if (index + 1 == jmmNode.getNumChildren() -1 && Objects.equals(
                     jmmNode.getJmmChild(index + 1).getKind(),"BinaryOp")){
                 tempIndex--;
-                ollirCode += "temp_" + tempIndex + val_type + ";\n";
+                ollir.append("temp_" + tempIndex + val_type + ";\n");
                 tempIndex++;
 
             }
@@ -977,12 +1076,12 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
             if (Objects.equals(jmmNode.getJmmChild(index -1).getKind(), "Length") ||
                 Objects.equals(jmmNode.getJmmChild(index - 1).getKind(), "BinaryOp") ||
                 Objects.equals(jmmNode.getJmmChild(index - 1).getKind(), "Scope")){
-                ollirCode += "\t\ttemp_" + tempIndex + op_type + " :=" + op_type + " ";
+                ollir.append("temp_" + tempIndex + op_type + " :=" + op_type + " ");
 
                 tempIndex--;
-                ollirCode += "temp_" + tempIndex + op_type + " " + child.getJmmParent().get("op") + val_type + " ";
+                ollir.append("temp_" + tempIndex + op_type + " " + child.getJmmParent().get("op") + val_type + " ");
             }
-            ollirCode += child.get("value") + val_type + ";\n";
+            ollir.append(child.get("value") + val_type + ";\n");
             tempIndex++;
         }
 
@@ -1018,8 +1117,8 @@ public class OllirVisitor extends AJmmVisitor<String, String> {
                 dealWithAssignments(child, method);
             } else if (Objects.equals(child.getKind(), "ArrayAssignment")) {
                 dealWithArrayAssignments(child, method);
-            }else if (Objects.equals(child.getKind(), "While")) {
-                dealWithWhile(child, method);
+            }else if (isLoop(child)) {
+                dealWithLoop(child, method);
             } else if (Objects.equals(child.getKind(), "Return")) {
                 dealWithReturn(child, method);
             } else if (Objects.equals(child.getKind(), "MethodCalls")) {
@@ -0,0 +1,150 @@
+package pt.up.fe.comp2023.ollir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Accumulates OLLIR code in linear time, indenting every line to the current level.
+ * <p>
+ * The code of each method goes to its own buffer, which is moved to the output when the method ends. When created with
+ * a {@link Writer} or a channel, the code is streamed to it as each method (or the class header) is finished, so only
+ * the method being generated is kept in memory.
+ */
+public class OllirWriter {
+
+    private static final String INDENTATION = "\t";
+
+    private final StringBuilder output = new StringBuilder();
+    private final Writer sink;
+    private StringBuilder methodBuffer;
+    private int level;
+    private boolean atLineStart = true;
+
+    /**
+     * Keeps the code in memory, see {@link #toString()}
+     */
+    public OllirWriter() {
+        this.sink = null;
+    }
+
+    /**
+     * Streams the code to the given writer
+     */
+    public OllirWriter(Writer sink) {
+        this.sink = sink;
+    }
+
+    /**
+     * Streams the code to the given channel (e.g. a {@link java.nio.channels.FileChannel}), encoded as UTF-8
+     */
+    public OllirWriter(WritableByteChannel channel) {
+        this(Channels.newWriter(channel, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Appends code, indenting each new line with the current level
+     */
+    public OllirWriter append(String code) {
+        StringBuilder buffer = this.buffer();
+        int start = 0;
+        int length = code.length();
+
+        while (start < length) {
+            if (atLineStart && code.charAt(start) != '\n') {
+                buffer.append(INDENTATION.repeat(level));
+                atLineStart = false;
+            }
+
+            int newLine = code.indexOf('\n', start);
+            int end = newLine < 0 ? length : newLine + 1;
+            buffer.append(code, start, end);
+            atLineStart = newLine >= 0;
+            start = end;
+        }
+        return this;
+    }
+
+    /**
+     * Appends code followed by a line break
+     */
+    public OllirWriter line(String code) {
+        return this.append(code).append("\n");
+    }
+
+    public OllirWriter indent() {
+        level++;
+        return this;
+    }
+
+    public OllirWriter dedent() {
+        if (level == 0) throw new IllegalStateException("Indentation level is already 0");
+        level--;
+        return this;
+    }
+
+    /**
+     * Starts the buffer of a method. The code written before it is flushed first.
+     */
+    public void beginMethod() {
+        if (methodBuffer != null) throw new IllegalStateException("A method was already started");
+        this.flush();
+        methodBuffer = new StringBuilder();
+    }
+
+    /**
+     * Moves the code of the current method to the output
+     */
+    public void endMethod() {
+        if (methodBuffer == null) throw new IllegalStateException("No method was started");
+        output.append(methodBuffer);
+        methodBuffer = null;
+        this.flush();
+    }
+
+    /**
+     * Writes the finished code to the sink, if there is one
+     */
+    public void flush() {
+        if (sink == null) return;
+
+        try {
+            sink.append(output);
+            sink.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write OLLIR code", e);
+        }
+        output.setLength(0);
+    }
+
+    /**
+     * @return The last finished line of the code not yet streamed, without its indentation and line break, or an empty
+     * string if there is none. Only that line is scanned.
+     */
+    public String lastLine() {
+        StringBuilder buffer = this.buffer();
+        int end = buffer.length();
+        while (end > 0 && buffer.charAt(end - 1) != '\n') end--;
+        if (end == 0) return "";
+
+        int start = end - 1;
+        while (start > 0 && buffer.charAt(start - 1) != '\n') start--;
+        return buffer.substring(start, end - 1).strip();
+    }
+
+    private StringBuilder buffer() {
+        return methodBuffer != null ? methodBuffer : output;
+    }
+
+    /**
+     * @return The code written so far, including the method being generated. Code already streamed to the sink is
+     * not included.
+     */
+    @Override
+    public String toString() {
+        return methodBuffer != null ? output + methodBuffer.toString() : output.toString();
+    }
+}
@@ -0,0 +1,109 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Copies available at each instruction of a method: a copy {@code x := y} is available if it is on every path to the
+ * instruction and neither x nor y is written after it, so x can be read from y instead. Copies are the assignments of
+ * a variable to another of the same type, numbered from 0 in the order of the code.
+ * <p>
+ * The method must have its CFG and its var table built.
+ */
+public class AvailableCopies extends Dataflow {
+
+    private static final int[] NONE = new int[0];
+
+    private final VariableIndex variables;
+    // Variables of each copy
+    private final List<Integer> destinations = new ArrayList<>();
+    private final List<Integer> sources = new ArrayList<>();
+    private final int[] copyAt;
+    private final int[] defAt;
+    // Copies that read or write each variable, which writing the variable kills
+    private final int[][] byVariable;
+
+    public AvailableCopies(Method method) {
+        super(method, Direction.FORWARD, Meet.INTERSECTION);
+        this.variables = new VariableIndex(method);
+        List<List<Integer>> copies = new ArrayList<>();
+        for (int var = 0; var < variables.size(); var++) {
+            copies.add(new ArrayList<>());
+        }
+
+        Map<String, Descriptor> varTable = method.getVarTable();
+        List<Instruction> instructions = method.getInstructions();
+        copyAt = new int[instructions.size()];
+        defAt = new int[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++) {
+            copyAt[i] = -1;
+            defAt[i] = variables.indexOf(Operands.getDef(instructions.get(i)));
+            if (defAt[i] < 0) continue;
+
+            int source = sourceOf((AssignInstruction) instructions.get(i));
+            if (source < 0 || source == defAt[i]) continue;
+            String destName = variables.getName(defAt[i]);
+            String sourceName = variables.getName(source);
+            if (!varTable.get(destName).getVarType().toString().equals(varTable.get(sourceName).getVarType().toString())) {
+                continue;
+            }
+
+            copyAt[i] = destinations.size();
+            copies.get(defAt[i]).add(destinations.size());
+            copies.get(source).add(destinations.size());
+            destinations.add(defAt[i]);
+            sources.add(source);
+        }
+
+        byVariable = copies.stream().map(list -> list.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+        this.solve();
+    }
+
+    /**
+     * @return Index of the variable the assignment copies, or -1 if it assigns anything else
+     */
+    private int sourceOf(AssignInstruction assign) {
+        if (!(assign.getRhs() instanceof SingleOpInstruction single)) return -1;
+        if (single.getSingleOperand() instanceof ArrayOperand) return -1;
+        return variables.indexOf(single.getSingleOperand());
+    }
+
+    @Override
+    protected int size() {
+        return destinations.size();
+    }
+
+    @Override
+    protected int[] gen(int instruction) {
+        return copyAt[instruction] < 0 ? NONE : new int[]{copyAt[instruction]};
+    }
+
+    @Override
+    protected int[] kill(int instruction) {
+        return defAt[instruction] < 0 ? NONE : byVariable[defAt[instruction]];
+    }
+
+    /**
+     * @return Index of the variable that holds the same value as the given one before the instruction, or -1 if no
+     * copy of it is available there
+     */
+    public int getSource(int instruction, int variable) {
+        BitSet available = this.getIn(instruction);
+        for (int copy : byVariable[variable]) {
+            if (available.get(copy) && destinations.get(copy) == variable) return sources.get(copy);
+        }
+        return -1;
+    }
+
+    /**
+     * @return Copy made by the instruction, or -1 if it is not a copy
+     */
+    public int getCopy(int instruction) {
+        return copyAt[instruction];
+    }
+
+    public VariableIndex getVariableIndex() {
+        return variables;
+    }
+}
@@ -0,0 +1,121 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Splits the instructions of a method into basic blocks, using the CFG built by {@link Method#buildCFG()}. An
+ * instruction starts a block if it is the first one, if it can be reached from somewhere other than the previous
+ * instruction, or if the previous instruction jumps.
+ */
+public class BasicBlocks {
+
+    private final List<Instruction> instructions;
+    private final Map<Node, Integer> positions = new IdentityHashMap<>();
+
+    // Block b has the instructions from starts[b] to starts[b + 1] - 1
+    private final int[] starts;
+    private final int[] blockOf;
+    private final int[][] successors, predecessors;
+    private final boolean[] entries, exits;
+
+    public BasicBlocks(Method method) {
+        this.instructions = method.getInstructions();
+        int size = instructions.size();
+        for (int i = 0; i < size; i++) {
+            positions.put(instructions.get(i), i);
+        }
+
+        List<Integer> blockStarts = new ArrayList<>();
+        blockOf = new int[size];
+        for (int i = 0; i < size; i++) {
+            Instruction instruction = instructions.get(i);
+            boolean leader = i == 0
+                    || instruction.getPredecessors().size() != 1
+                    || !Objects.equals(positions.get(instruction.getPredecessors().get(0)), i - 1)
+                    || instructions.get(i - 1).getSuccessors().size() != 1;
+            if (leader) blockStarts.add(i);
+            blockOf[i] = blockStarts.size() - 1;
+        }
+        blockStarts.add(size);
+        starts = blockStarts.stream().mapToInt(Integer::intValue).toArray();
+
+        int blocks = starts.length - 1;
+        successors = new int[blocks][];
+        predecessors = new int[blocks][];
+        entries = new boolean[blocks];
+        exits = new boolean[blocks];
+        for (int block = 0; block < blocks; block++) {
+            successors[block] = this.toBlocks(instructions.get(this.getLast(block)).getSuccessors(), exits, block);
+            predecessors[block] = this.toBlocks(instructions.get(starts[block]).getPredecessors(), entries, block);
+        }
+        if (blocks > 0) entries[0] = true;
+    }
+
+    /**
+     * @param outside Marks the block if one of the nodes is not an instruction, like the begin and end nodes
+     */
+    private int[] toBlocks(List<Node> nodes, boolean[] outside, int block) {
+        int[] blocks = new int[nodes.size()];
+        int count = 0;
+        for (Node node : nodes) {
+            Integer position = positions.get(node);
+            if (position != null) blocks[count++] = blockOf[position];
+            else outside[block] = true;
+        }
+        return Arrays.copyOf(blocks, count);
+    }
+
+    public int size() {
+        return starts.length - 1;
+    }
+
+    public int getFirst(int block) {
+        return starts[block];
+    }
+
+    public int getLast(int block) {
+        return starts[block + 1] - 1;
+    }
+
+    /**
+     * @return Block of the instruction at the given position
+     */
+    public int getBlock(int instruction) {
+        return blockOf[instruction];
+    }
+
+    /**
+     * @return Position of the instruction in the method, or -1 if the node is not one of its instructions
+     */
+    public int getPosition(Node node) {
+        return positions.getOrDefault(node, -1);
+    }
+
+    public int[] getSuccessors(int block) {
+        return successors[block];
+    }
+
+    public int[] getPredecessors(int block) {
+        return predecessors[block];
+    }
+
+    /**
+     * @return true if the block is reached from the begin node
+     */
+    public boolean isEntry(int block) {
+        return entries[block];
+    }
+
+    /**
+     * @return true if the block leads to the end node, or has no successors
+     */
+    public boolean isExit(int block) {
+        return exits[block] || successors[block].length == 0;
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+}
@@ -0,0 +1,119 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Calls between the methods of a class: an edge goes from a method to each method of the same class it may call, on
+ * this, on another object of the class or statically. Calls to the methods of other classes are not in the graph.
+ * Methods are identified by their name, since Java-- has no overloading.
+ */
+public class CallGraph {
+
+    private final ClassUnit classUnit;
+    private final Map<String, Method> methods = new LinkedHashMap<>();
+    private final Map<String, Set<String>> callees = new HashMap<>();
+
+    public CallGraph(ClassUnit classUnit) {
+        this.classUnit = classUnit;
+        for (Method method : classUnit.getMethods()) {
+            if (!method.isConstructMethod()) methods.put(method.getMethodName(), method);
+        }
+
+        for (Method method : methods.values()) {
+            Set<String> called = new LinkedHashSet<>();
+            for (Instruction instruction : method.getInstructions()) {
+                CallInstruction call = getCall(instruction);
+                String callee = call == null ? null : this.getCallee(call);
+                if (callee != null) called.add(callee);
+            }
+            callees.put(method.getMethodName(), called);
+        }
+    }
+
+    /**
+     * @return The call an instruction makes, on its own or on the right side of an assignment, or null if it makes none
+     */
+    public static CallInstruction getCall(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign) instruction = assign.getRhs();
+        return instruction instanceof CallInstruction call ? call : null;
+    }
+
+    /**
+     * @return Name of the method of the class the call may run, or null if it calls a method of another class
+     */
+    public String getCallee(CallInstruction call) {
+        if (call.getInvocationType() != CallType.invokevirtual && call.getInvocationType() != CallType.invokestatic) {
+            return null;
+        }
+
+        Element target = call.getFirstArg();
+        String className = classUnit.getClassName();
+        boolean ownClass = switch (target.getType().getTypeOfElement()) {
+            case THIS -> true;
+            // The class of a static call, or an object of the class
+            case CLASS -> target instanceof Operand operand && operand.getName().equals(className);
+            case OBJECTREF -> target.getType() instanceof ClassType type && type.getName().equals(className);
+            default -> false;
+        };
+        String name = ((LiteralElement) call.getSecondArg()).getLiteral().replace("\"", "");
+        return ownClass && methods.containsKey(name) ? name : null;
+    }
+
+    public Method getMethod(String name) {
+        return methods.get(name);
+    }
+
+    /**
+     * @return Methods of the class the method may call directly
+     */
+    public Set<String> getCallees(String method) {
+        return callees.getOrDefault(method, Set.of());
+    }
+
+    /**
+     * @return Whether the method may call itself, directly or through other methods of the class
+     */
+    public boolean isRecursive(String method) {
+        Set<String> visited = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(this.getCallees(method));
+        while (!pending.isEmpty()) {
+            String current = pending.pop();
+            if (current.equals(method)) return true;
+            if (visited.add(current)) pending.addAll(this.getCallees(current));
+        }
+        return false;
+    }
+
+    /**
+     * @return Names of the methods, each one after the methods it calls, unless they call each other
+     */
+    public List<String> getBottomUp() {
+        List<String> order = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        for (String root : methods.keySet()) {
+            if (!visited.add(root)) continue;
+
+            // Iterative depth-first search, a method is added once all its callees were
+            Deque<Iterator<String>> stack = new ArrayDeque<>();
+            Deque<String> path = new ArrayDeque<>();
+            stack.push(this.getCallees(root).iterator());
+            path.push(root);
+            while (!stack.isEmpty()) {
+                Iterator<String> next = stack.peek();
+                if (next.hasNext()) {
+                    String callee = next.next();
+                    if (visited.add(callee)) {
+                        stack.push(this.getCallees(callee).iterator());
+                        path.push(callee);
+                    }
+                } else {
+                    stack.pop();
+                    order.add(path.pop());
+                }
+            }
+        }
+        return order;
+    }
+}
@@ -0,0 +1,412 @@
+package pt.up.fe.comp2023.optimization;
+
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+
+import java.util.*;
+
+/**
+ * Replaces the local variables that hold a known integer or boolean constant by that constant, and folds the operations
+ * whose operands are all constants, directly on the AST of each method.
+ * <p>
+ * Statements are visited in order, keeping the constant value of each local variable. Both branches of an if start with
+ * the same values and only the values they agree on are kept after it. The variables assigned anywhere in a loop are
+ * not constant inside or after it, the others keep their values.
+ * <p>
+ * Negative results are not folded, since OLLIR has no negative literals, and neither are divisions by zero. A zero is
+ * not propagated into a divisor either, so that the division is left as it was written and only throws if it runs.
+ */
+public class ConstantPropagation {
+
+    private Set<String> locals;
+    private boolean changed;
+
+    /**
+     * Runs the propagation until the AST does not change
+     * @return true if the AST was changed
+     */
+    public boolean optimize(JmmNode root) {
+        boolean any = false;
+        while (this.propagate(root)) {
+            any = true;
+        }
+        return any;
+    }
+
+    /**
+     * Runs the propagation once over every method
+     * @return true if the AST was changed
+     */
+    public boolean propagate(JmmNode root) {
+        changed = false;
+        this.findMethods(root);
+        return changed;
+    }
+
+    private void findMethods(JmmNode node) {
+        if (!node.getKind().equals("ClassMethod")) {
+            node.getChildren().forEach(this::findMethods);
+            return;
+        }
+
+        locals = new HashSet<>();
+        this.collectLocals(node);
+
+        for (JmmNode child : node.getChildren()) {
+            if (child.getKind().equals("MethodBody")) this.statements(child, new HashMap<>());
+        }
+    }
+
+    private void collectLocals(JmmNode node) {
+        switch (node.getKind()) {
+            case "Argument", "Declaration" -> locals.add(node.get("var"));
+            case "ForCycle" -> {
+                if (this.declaresVariable(node)) locals.add(node.get("var"));
+            }
+            default -> {
+            }
+        }
+        node.getChildren().forEach(this::collectLocals);
+    }
+
+    private boolean declaresVariable(JmmNode forCycle) {
+        String kind = forCycle.getJmmChild(0).getKind();
+        return kind.equals("Type") || kind.equals("ArrayType");
+    }
+
+    // Statements
+
+    private void statements(JmmNode block, Map<String, JmmNode> constants) {
+        // Copied, since folding may replace the children
+        for (JmmNode statement : new ArrayList<>(block.getChildren())) {
+            this.statement(statement, constants);
+        }
+    }
+
+    private void statement(JmmNode node, Map<String, JmmNode> constants) {
+        switch (node.getKind()) {
+            case "NestedStatements", "MethodBody" -> this.statements(node, constants);
+            case "Declaration" -> {
+                if (node.getNumChildren() > 1) this.assign(node.get("var"), this.expression(node.getJmmChild(1), constants), constants);
+                else constants.remove(node.get("var"));
+            }
+            case "Assignment" -> this.assign(node.get("var"), this.expression(node.getJmmChild(0), constants), constants);
+            case "ArrayAssignment", "Return", "ExprStmt" -> this.expressions(node, constants);
+            case "IfElse" -> this.ifElse(node, constants);
+            case "While" -> {
+                // The body may not run, so what it assigns is not known after the loop
+                this.killAssigned(node, constants);
+                this.expression(node.getJmmChild(0), constants);
+                this.statement(node.getJmmChild(1), new HashMap<>(constants));
+            }
+            case "DoWhile" -> {
+                this.killAssigned(node, constants);
+                this.expressions(node, constants);
+            }
+            case "ForCycle" -> this.forCycle(node, constants);
+            case "Switch" -> this.switchStatement(node, constants);
+            default -> {
+                // Other statements: only the variables they do not assign keep their values
+                this.killAssigned(node, constants);
+                this.expressions(node, constants);
+            }
+        }
+    }
+
+    private void assign(String name, JmmNode value, Map<String, JmmNode> constants) {
+        if (!locals.contains(name)) return;
+
+        if (isConstant(value)) constants.put(name, value);
+        else constants.remove(name);
+    }
+
+    /**
+     * Visits the children of a statement, whether they are statements or expressions
+     */
+    private void expressions(JmmNode node, Map<String, JmmNode> constants) {
+        for (JmmNode child : new ArrayList<>(node.getChildren())) {
+            if (isStatement(child)) this.statement(child, constants);
+            else if (!child.getKind().equals("Type") && !child.getKind().equals("ArrayType")) this.expression(child, constants);
+        }
+    }
+
+    private void ifElse(JmmNode node, Map<String, JmmNode> constants) {
+        List<JmmNode> children = new ArrayList<>(node.getChildren());
+        boolean hasElse = children.size() % 2 == 1;
+        List<Map<String, JmmNode>> exits = new ArrayList<>();
+
+        // Each condition is evaluated after the previous ones were false
+        for (int i = 0; i + 1 < children.size(); i += 2) {
+            this.expression(children.get(i), constants);
+            Map<String, JmmNode> branch = new HashMap<>(constants);
+            this.statement(children.get(i + 1), branch);
+            exits.add(branch);
+        }
+        if (hasElse) {
+            Map<String, JmmNode> branch = new HashMap<>(constants);
+            this.statement(children.get(children.size() - 1), branch);
+            exits.add(branch);
+        } else {
+            exits.add(new HashMap<>(constants));
+        }
+
+        constants.clear();
+        constants.putAll(exits.get(0));
+        for (Map<String, JmmNode> exit : exits.subList(1, exits.size())) {
+            constants.entrySet().removeIf(entry -> !sameConstant(entry.getValue(), exit.get(entry.getKey())));
+        }
+    }
+
+    private void switchStatement(JmmNode node, Map<String, JmmNode> constants) {
+        List<JmmNode> children = new ArrayList<>(node.getChildren());
+        this.expression(children.get(0), constants);
+
+        // A case is entered from the selector or from the end of the previous one, so only the variables that no case
+        // assigns are known at its start and after the switch
+        this.killAssigned(node, constants);
+        Map<String, JmmNode> defaultCase = new HashMap<>(constants);
+        for (JmmNode child : children.subList(1, children.size())) {
+            if (!child.getKind().equals("SwitchCase")) {
+                this.statement(child, defaultCase);
+                continue;
+            }
+            List<JmmNode> statements = new ArrayList<>(child.getChildren());
+            Map<String, JmmNode> branch = new HashMap<>(constants);
+            for (JmmNode statement : statements.subList(1, statements.size())) {
+                this.statement(statement, branch);
+            }
+        }
+    }
+
+    private void forCycle(JmmNode node, Map<String, JmmNode> constants) {
+        List<JmmNode> children = new ArrayList<>(node.getChildren());
+        int next = this.declaresVariable(node) ? 1 : 0;
+        String name = node.get("var");
+
+        // The initializer runs once, before the loop
+        if (children.size() - next == 4) {
+            this.assign(name, this.expression(children.get(next++), constants), constants);
+        } else if (next == 1) {
+            constants.remove(name);
+        }
+
+        for (JmmNode child : children.subList(next, children.size())) {
+            this.killAssigned(child, constants);
+        }
+
+        // Condition, update and body, where the update runs after the body
+        this.expression(children.get(next), constants);
+        Map<String, JmmNode> body = new HashMap<>(constants);
+        this.statement(children.get(next + 2), body);
+        this.expression(children.get(next + 1), body);
+    }
+
+    /**
+     * Forgets the values of the variables assigned anywhere in the node
+     */
+    private void killAssigned(JmmNode node, Map<String, JmmNode> constants) {
+        switch (node.getKind()) {
+            case "Declaration", "Assignment", "ForCycle" -> constants.remove(node.get("var"));
+            case "UnaryPreOp", "UnaryPostOp" -> {
+                if (isIncrement(node)) this.killTarget(node.getJmmChild(0), constants);
+            }
+            case "BinaryOp" -> {
+                if (isCompoundAssignment(node)) this.killTarget(node.getJmmChild(0), constants);
+            }
+            default -> {
+            }
+        }
+        node.getChildren().forEach(child -> this.killAssigned(child, constants));
+    }
+
+    private void killTarget(JmmNode target, Map<String, JmmNode> constants) {
+        if (target.getKind().equals("Identifier")) constants.remove(target.get("value"));
+    }
+
+    // Expressions
+
+    /**
+     * Replaces the known variables in the expression and folds it, in evaluation order
+     * @return The node that replaced the expression, or the expression itself
+     */
+    private JmmNode expression(JmmNode node, Map<String, JmmNode> constants) {
+        switch (node.getKind()) {
+            case "Identifier" -> {
+                JmmNode value = constants.get(node.get("value"));
+                if (value == null || (isDivisor(node) && value.get("value").equals("0"))) return node;
+                return this.replace(node, value.getKind(), value.get("value"));
+            }
+            case "UnaryPreOp", "UnaryPostOp" -> {
+                if (isIncrement(node)) {
+                    // The operand is written, not read
+                    this.killTarget(node.getJmmChild(0), constants);
+                    return node;
+                }
+            }
+            case "BinaryOp" -> {
+                if (isCompoundAssignment(node)) {
+                    this.expression(node.getJmmChild(1), constants);
+                    this.killTarget(node.getJmmChild(0), constants);
+                    return node;
+                }
+            }
+            case "MethodCalls" -> {
+                // The first child is the target of the call, which may be a class name
+                for (JmmNode child : new ArrayList<>(node.getChildren()).subList(1, node.getNumChildren())) {
+                    this.expression(child, constants);
+                }
+                return node;
+            }
+            default -> {
+            }
+        }
+
+        for (JmmNode child : new ArrayList<>(node.getChildren())) {
+            if (!child.getKind().equals("Type") && !child.getKind().equals("ArrayType")) this.expression(child, constants);
+        }
+        return this.fold(node);
+    }
+
+    private JmmNode fold(JmmNode node) {
+        switch (node.getKind()) {
+            case "Scope" -> {
+                JmmNode inner = node.getJmmChild(0);
+                if (isConstant(inner)) return this.replace(node, inner.getKind(), inner.get("value"));
+            }
+            case "UnaryPreOp" -> {
+                JmmNode operand = node.getJmmChild(0);
+                String op = node.get("op");
+                if (op.equals("!") && operand.getKind().equals("Boolean")) {
+                    return this.replace(node, "Boolean", String.valueOf(!operand.get("value").equals("true")));
+                }
+                if (op.equals("+") && operand.getKind().equals("Integer")) {
+                    return this.replace(node, "Integer", operand.get("value"));
+                }
+                if (op.equals("-") && operand.getKind().equals("Integer") && toInt(operand) == 0) {
+                    return this.replace(node, "Integer", "0");
+                }
+            }
+            case "BinaryOp" -> {
+                JmmNode result = this.foldBinary(node, node.get("op"), node.getJmmChild(0), node.getJmmChild(1));
+                if (result != null) return result;
+            }
+            default -> {
+            }
+        }
+        return node;
+    }
+
+    private JmmNode foldBinary(JmmNode node, String op, JmmNode left, JmmNode right) {
+        if (left.getKind().equals("Integer") && right.getKind().equals("Integer")) {
+            Long a = toInt(left), b = toInt(right);
+            if (a == null || b == null) return null;
+
+            Long value = switch (op) {
+                case "+" -> a + b;
+                case "-" -> a - b;
+                case "*" -> a * b;
+                case "/" -> b == 0 ? null : a / b;
+                case "%" -> b == 0 ? null : a % b;
+                case "&" -> a & b;
+                case "|" -> a | b;
+                case "^" -> a ^ b;
+                default -> null;
+            };
+            if (value != null) {
+                return value >= 0 && value <= Integer.MAX_VALUE ? this.replace(node, "Integer", String.valueOf(value)) : null;
+            }
+
+            Boolean comparison = switch (op) {
+                case "<" -> a < b;
+                case "<=" -> a <= b;
+                case ">" -> a > b;
+                case ">=" -> a >= b;
+                case "==" -> a.equals(b);
+                case "!=" -> !a.equals(b);
+                default -> null;
+            };
+            return comparison != null ? this.replace(node, "Boolean", comparison.toString()) : null;
+        }
+
+        if (left.getKind().equals("Boolean")) {
+            boolean a = left.get("value").equals("true");
+            // The right operand is not evaluated when the left one decides the result
+            if (op.equals("&&")) return a ? this.replace(node, right) : this.replace(node, "Boolean", "false");
+            if (op.equals("||")) return a ? this.replace(node, "Boolean", "true") : this.replace(node, right);
+
+            if (right.getKind().equals("Boolean")) {
+                boolean b = right.get("value").equals("true");
+                Boolean value = switch (op) {
+                    case "&" -> a & b;
+                    case "|" -> a | b;
+                    case "^", "!=" -> a ^ b;
+                    case "==" -> a == b;
+                    default -> null;
+                };
+                return value != null ? this.replace(node, "Boolean", value.toString()) : null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Replaces the node by a new literal, keeping its position in the code
+     */
+    private JmmNode replace(JmmNode node, String kind, String value) {
+        JmmNode literal = new JmmNodeImpl(kind);
+        literal.put("value", value);
+        for (String attribute : List.of("lineStart", "colStart", "lineEnd", "colEnd")) {
+            node.getOptional(attribute).ifPresent(position -> literal.put(attribute, position));
+        }
+        return this.replace(node, literal);
+    }
+
+    private JmmNode replace(JmmNode node, JmmNode replacement) {
+        if (replacement.getJmmParent() != null) replacement.getJmmParent().removeJmmChild(replacement);
+        node.replace(replacement);
+        changed = true;
+        return replacement;
+    }
+
+    private static Long toInt(JmmNode literal) {
+        try {
+            return (long) Integer.parseInt(literal.get("value"));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isConstant(JmmNode node) {
+        return node.getKind().equals("Integer") || node.getKind().equals("Boolean");
+    }
+
+    private static boolean sameConstant(JmmNode a, JmmNode b) {
+        return b != null && a.getKind().equals(b.getKind()) && a.get("value").equals(b.get("value"));
+    }
+
+    private static boolean isStatement(JmmNode node) {
+        return switch (node.getKind()) {
+            case "IfElse", "DoWhile", "While", "ForCycle", "Switch", "NestedStatements", "Declaration", "Assignment",
+                    "ArrayAssignment", "Return", "ExprStmt" -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * @return true if the node is the right operand of a division or of a remainder
+     */
+    private static boolean isDivisor(JmmNode node) {
+        JmmNode parent = node.getJmmParent();
+        return parent != null && parent.getKind().equals("BinaryOp") && parent.getJmmChild(1) == node
+                && Set.of("/", "%", "/=", "%=").contains(parent.get("op"));
+    }
+
+    private static boolean isIncrement(JmmNode node) {
+        String op = node.get("op");
+        return op.equals("++") || op.equals("--");
+    }
+
+    private static boolean isCompoundAssignment(JmmNode node) {
+        return Set.of("+=", "-=", "*=", "/=", "%=").contains(node.get("op"));
+    }
+}
@@ -0,0 +1,56 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.Instruction;
+import org.specs.comp.ollir.Method;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Helpers for the CFG of the OLLIR methods
+ */
+public class ControlFlow {
+
+    private ControlFlow() {
+    }
+
+    /**
+     * Builds the CFG of a method again. {@link Method#buildCFG()} only adds edges, so the existing ones are removed
+     * first, otherwise a second call would duplicate them.
+     */
+    public static void rebuild(Method method) {
+        // The first instruction always has the begin node as a predecessor once the CFG is built
+        List<Instruction> instructions = method.getInstructions();
+        if (!instructions.isEmpty() && !instructions.get(0).getPredecessors().isEmpty()) {
+            method.getBeginNode().getSuccessors().clear();
+            method.getEndNode().getPredecessors().clear();
+        }
+        for (Instruction instruction : instructions) {
+            instruction.getSuccessors().clear();
+            instruction.getPredecessors().clear();
+        }
+        method.buildCFG();
+    }
+
+    /**
+     * Removes instructions from a method, moving their labels to the instructions that follow them. The last
+     * instruction of the method cannot be removed. The CFG must be built again afterwards.
+     * @param removed Instructions to remove, compared by identity
+     */
+    public static void remove(Method method, Set<Instruction> removed) {
+        List<Instruction> instructions = method.getInstructions();
+
+        for (Map.Entry<String, Instruction> label : method.getLabels().entrySet()) {
+            Instruction target = label.getValue();
+            if (!removed.contains(target)) continue;
+
+            // The next instruction that is kept, there is always one since the last instruction is never removed
+            int next = instructions.indexOf(target);
+            while (removed.contains(instructions.get(next))) next++;
+            label.setValue(instructions.get(next));
+        }
+
+        instructions.removeIf(removed::contains);
+    }
+}
@@ -0,0 +1,178 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Removes the copies between variables that the OLLIR generation leaves, like the temporaries that hold a value only
+ * to assign it to a variable. It works in two steps:
+ * <ul>
+ *     <li>Coalescing: the two variables of a copy that do not interfere and have the same type become one, so the
+ *     value is computed directly into the destination and the copy disappears.</li>
+ *     <li>Propagation: the variables read where a copy of them is available are replaced by the variables they were
+ *     copied from, which leaves the copy dead for the {@link DeadStoreElimination}.</li>
+ * </ul>
+ * Parameters keep their names, so two parameters are never coalesced.
+ */
+public class CopyPropagation {
+
+    /**
+     * Coalesces and propagates the copies of every method of the class
+     * @return Number of copies coalesced and of variable reads replaced
+     */
+    public int optimize(ClassUnit classUnit) {
+        classUnit.buildVarTables();
+
+        int changes = 0;
+        for (Method method : classUnit.getMethods()) {
+            changes += this.optimize(method);
+        }
+        return changes;
+    }
+
+    /**
+     * Coalesces and propagates the copies of a method, which must have its var table built
+     * @return Number of copies coalesced and of variable reads replaced
+     */
+    public int optimize(Method method) {
+        int coalesced = this.coalesce(method);
+        this.removeSelfCopies(method);
+        if (coalesced > 0) {
+            method.getVarTable().clear();
+            method.buildVarTable();
+        }
+        return coalesced + this.propagate(method);
+    }
+
+    /**
+     * Merges the variables of the copies that do not interfere, renaming them in the whole method
+     * @return Number of copies coalesced
+     */
+    private int coalesce(Method method) {
+        ControlFlow.rebuild(method);
+        List<Instruction> instructions = method.getInstructions();
+        Liveness liveness = new Liveness(method);
+        InterferenceGraph graph = InterferenceGraph.build(liveness, instructions.size());
+        VariableIndex variables = liveness.getVariableIndex();
+        Map<String, Descriptor> varTable = method.getVarTable();
+
+        int[] merged = new int[variables.size()];
+        boolean[] parameter = new boolean[variables.size()];
+        for (int var = 0; var < variables.size(); var++) {
+            merged[var] = var;
+            parameter[var] = varTable.get(variables.getName(var)).getScope() == VarScope.PARAMETER;
+        }
+
+        int coalesced = 0;
+        for (Instruction instruction : instructions) {
+            int dest = variables.indexOf(Operands.getDef(instruction));
+            if (dest < 0 || !(((AssignInstruction) instruction).getRhs() instanceof SingleOpInstruction single)
+                    || single.getSingleOperand() instanceof ArrayOperand) {
+                continue;
+            }
+            int source = variables.indexOf(single.getSingleOperand());
+            if (source < 0) continue;
+
+            int a = find(merged, dest), b = find(merged, source);
+            if (a == b || (parameter[a] && parameter[b]) || interfere(graph, merged, a, b)) continue;
+            if (!varTable.get(variables.getName(a)).getVarType().toString()
+                    .equals(varTable.get(variables.getName(b)).getVarType().toString())) {
+                continue;
+            }
+
+            // The destination keeps its name, unless the source is a parameter
+            int kept = parameter[b] ? b : a;
+            int removed = kept == a ? b : a;
+            merged[removed] = kept;
+            parameter[kept] |= parameter[removed];
+            for (int neighbour : graph.getNeighbours(removed)) {
+                graph.addEdge(kept, neighbour);
+            }
+            coalesced++;
+        }
+        if (coalesced == 0) return 0;
+
+        for (Instruction instruction : instructions) {
+            List<Operand> operands = Operands.getUses(instruction);
+            if (Operands.getDef(instruction) != null) operands.add(Operands.getDef(instruction));
+            for (Operand operand : operands) {
+                int var = variables.indexOf(operand);
+                if (var >= 0 && find(merged, var) != var) operand.setName(variables.getName(find(merged, var)));
+            }
+        }
+
+        return coalesced;
+    }
+
+    /**
+     * Removes the assignments of a variable to itself, which coalescing and the value numbering leave
+     */
+    private void removeSelfCopies(Method method) {
+        List<Instruction> instructions = method.getInstructions();
+        Set<Instruction> selfCopies = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (int i = 0; i + 1 < instructions.size(); i++) {
+            if (isSelfCopy(instructions.get(i))) selfCopies.add(instructions.get(i));
+        }
+        ControlFlow.remove(method, selfCopies);
+    }
+
+    /**
+     * Replaces the variables read where a copy of them is available, following chains of copies
+     * @return Number of variable reads replaced
+     */
+    private int propagate(Method method) {
+        ControlFlow.rebuild(method);
+        List<Instruction> instructions = method.getInstructions();
+        AvailableCopies copies = new AvailableCopies(method);
+        VariableIndex variables = copies.getVariableIndex();
+
+        // Operands shared by several instructions cannot be renamed in only one of them
+        Map<Operand, Integer> occurrences = new IdentityHashMap<>();
+        for (Instruction instruction : instructions) {
+            Operands.getUses(instruction).forEach(operand -> occurrences.merge(operand, 1, Integer::sum));
+            if (Operands.getDef(instruction) != null) occurrences.merge(Operands.getDef(instruction), 1, Integer::sum);
+        }
+
+        int replaced = 0;
+        for (int i = 0; i < instructions.size(); i++) {
+            for (Operand operand : Operands.getUses(instructions.get(i))) {
+                int var = variables.indexOf(operand);
+                if (var < 0 || occurrences.get(operand) > 1) continue;
+
+                // A copy kills the copies of the variables it reads, so the chain cannot loop
+                int original = var;
+                for (int source = copies.getSource(i, var); source >= 0; source = copies.getSource(i, var)) {
+                    var = source;
+                }
+                if (var == original) continue;
+
+                operand.setName(variables.getName(var));
+                replaced++;
+            }
+        }
+        return replaced;
+    }
+
+    private static boolean interfere(InterferenceGraph graph, int[] merged, int a, int b) {
+        for (int neighbour : graph.getNeighbours(a)) {
+            if (find(merged, neighbour) == b) return true;
+        }
+        return false;
+    }
+
+    private static int find(int[] merged, int var) {
+        while (merged[var] != var) {
+            merged[var] = merged[merged[var]];
+            var = merged[var];
+        }
+        return var;
+    }
+
+    private static boolean isSelfCopy(Instruction instruction) {
+        Operand dest = Operands.getDef(instruction);
+        return dest != null && ((AssignInstruction) instruction).getRhs() instanceof SingleOpInstruction single
+                && single.getSingleOperand() instanceof Operand source && !(source instanceof ArrayOperand)
+                && source.getName().equals(dest.getName());
+    }
+}
@@ -0,0 +1,231 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.Method;
+
+import java.util.*;
+import java.util.function.ObjIntConsumer;
+
+/**
+ * Solves a dataflow problem over the basic blocks of a method, where each instruction removes the facts it kills and
+ * then adds the facts it generates. Facts are numbered from 0 and kept in bit sets, one pair per block; the sets of a
+ * single instruction are found by walking its block.
+ * <p>
+ * Subclasses give the gen and kill sets of each instruction and call {@link #solve()} once they are ready. The method
+ * must have its CFG built.
+ */
+public abstract class Dataflow {
+
+    public enum Direction {FORWARD, BACKWARD}
+
+    /**
+     * How the facts of the blocks that flow into the same block are combined: a fact holds if it holds on any path,
+     * or only if it holds on every path
+     */
+    public enum Meet {UNION, INTERSECTION}
+
+    protected final BasicBlocks blocks;
+    private final Direction direction;
+    private final Meet meet;
+
+    private int[][] gen, kill;
+    // Facts at the start and at the end of each block, in the order of the code
+    private BitSet[] blockIn, blockOut;
+    private int visits;
+
+    protected Dataflow(Method method, Direction direction, Meet meet) {
+        this.blocks = new BasicBlocks(method);
+        this.direction = direction;
+        this.meet = meet;
+    }
+
+    /**
+     * @return Number of facts
+     */
+    protected abstract int size();
+
+    /**
+     * @return Facts the instruction adds
+     */
+    protected abstract int[] gen(int instruction);
+
+    /**
+     * @return Facts the instruction removes, before adding the ones it generates
+     */
+    protected abstract int[] kill(int instruction);
+
+    /**
+     * @return Facts at the start of the method for forward problems, or at its end for backward ones
+     */
+    protected BitSet boundary() {
+        return new BitSet();
+    }
+
+    /**
+     * Iterates until no set changes, revisiting the blocks that the changed blocks flow into
+     */
+    protected final void solve() {
+        int instructions = blocks.getInstructions().size();
+        gen = new int[instructions][];
+        kill = new int[instructions][];
+        for (int i = 0; i < instructions; i++) {
+            gen[i] = this.gen(i);
+            kill[i] = this.kill(i);
+        }
+
+        int size = blocks.size();
+        boolean forward = direction == Direction.FORWARD;
+        BitSet[] blockGen = new BitSet[size];
+        BitSet[] blockKill = new BitSet[size];
+        BitSet[] flowIn = new BitSet[size];
+        BitSet[] flowOut = new BitSet[size];
+        BitSet boundary = this.boundary();
+
+        for (int block = 0; block < size; block++) {
+            blockGen[block] = new BitSet();
+            blockKill[block] = new BitSet();
+            for (int i = this.flowStart(block); i != this.flowEnd(block); i += this.step()) {
+                for (int fact : kill[i]) {
+                    blockKill[block].set(fact);
+                    blockGen[block].clear(fact);
+                }
+                for (int fact : gen[i]) blockGen[block].set(fact);
+            }
+            flowIn[block] = new BitSet();
+            flowOut[block] = this.top();
+        }
+
+        Deque<Integer> worklist = new ArrayDeque<>();
+        boolean[] queued = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            int block = forward ? i : size - 1 - i;
+            worklist.add(block);
+            queued[block] = true;
+        }
+
+        visits = 0;
+        while (!worklist.isEmpty()) {
+            int block = worklist.poll();
+            queued[block] = false;
+            visits++;
+
+            boolean boundaryBlock = forward ? blocks.isEntry(block) : blocks.isExit(block);
+            int[] sources = forward ? blocks.getPredecessors(block) : blocks.getSuccessors(block);
+            BitSet in = sources.length == 0 && !boundaryBlock ? this.top() : null;
+            if (boundaryBlock) in = (BitSet) boundary.clone();
+            for (int source : sources) {
+                if (in == null) in = (BitSet) flowOut[source].clone();
+                else if (meet == Meet.UNION) in.or(flowOut[source]);
+                else in.and(flowOut[source]);
+            }
+            flowIn[block] = in;
+
+            BitSet out = (BitSet) in.clone();
+            out.andNot(blockKill[block]);
+            out.or(blockGen[block]);
+            if (out.equals(flowOut[block])) continue;
+
+            flowOut[block] = out;
+            for (int target : forward ? blocks.getSuccessors(block) : blocks.getPredecessors(block)) {
+                if (!queued[target]) {
+                    worklist.add(target);
+                    queued[target] = true;
+                }
+            }
+        }
+
+        blockIn = forward ? flowIn : flowOut;
+        blockOut = forward ? flowOut : flowIn;
+    }
+
+    /**
+     * @return Facts before any are known: none for a union, all of them for an intersection
+     */
+    private BitSet top() {
+        BitSet top = new BitSet();
+        if (meet == Meet.INTERSECTION) top.set(0, this.size());
+        return top;
+    }
+
+    /**
+     * @return Position of the first instruction of the block in the direction of the analysis
+     */
+    private int flowStart(int block) {
+        return direction == Direction.FORWARD ? blocks.getFirst(block) : blocks.getLast(block);
+    }
+
+    /**
+     * @return Position right after the last instruction of the block in the direction of the analysis
+     */
+    private int flowEnd(int block) {
+        return direction == Direction.FORWARD ? blocks.getLast(block) + 1 : blocks.getFirst(block) - 1;
+    }
+
+    private int step() {
+        return direction == Direction.FORWARD ? 1 : -1;
+    }
+
+    private void transfer(BitSet facts, int instruction) {
+        for (int fact : kill[instruction]) facts.clear(fact);
+        for (int fact : gen[instruction]) facts.set(fact);
+    }
+
+    /**
+     * Calls the visitor for every instruction with the facts that flow into it: the facts before it for forward
+     * problems, and after it for backward ones. Each block is walked with a single set, which is only valid during the
+     * call.
+     */
+    public void walk(ObjIntConsumer<BitSet> visitor) {
+        for (int block = 0; block < blocks.size(); block++) {
+            BitSet facts = (BitSet) (direction == Direction.FORWARD ? blockIn[block] : blockOut[block]).clone();
+            for (int i = this.flowStart(block); i != this.flowEnd(block); i += this.step()) {
+                visitor.accept(facts, i);
+                this.transfer(facts, i);
+            }
+        }
+    }
+
+    /**
+     * @return Facts that hold before the instruction
+     */
+    public BitSet getIn(int instruction) {
+        if (direction == Direction.FORWARD) return this.walkTo(instruction);
+
+        BitSet facts = this.walkTo(instruction);
+        this.transfer(facts, instruction);
+        return facts;
+    }
+
+    /**
+     * @return Facts that hold after the instruction
+     */
+    public BitSet getOut(int instruction) {
+        if (direction == Direction.BACKWARD) return this.walkTo(instruction);
+
+        BitSet facts = this.walkTo(instruction);
+        this.transfer(facts, instruction);
+        return facts;
+    }
+
+    /**
+     * @return Facts that flow into the instruction, walking its block from the start of the flow
+     */
+    private BitSet walkTo(int instruction) {
+        int block = blocks.getBlock(instruction);
+        BitSet facts = (BitSet) (direction == Direction.FORWARD ? blockIn[block] : blockOut[block]).clone();
+        for (int i = this.flowStart(block); i != instruction; i += this.step()) {
+            this.transfer(facts, i);
+        }
+        return facts;
+    }
+
+    /**
+     * @return Number of times a block was visited while solving, at least once per block
+     */
+    public int getVisits() {
+        return visits;
+    }
+
+    public BasicBlocks getBlocks() {
+        return blocks;
+    }
+}
@@ -0,0 +1,90 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Removes the assignments to local variables that are never read afterwards, like the temporaries left over by the
+ * OLLIR generation. Removing an assignment can make the ones that computed its operands dead too, so the liveness is
+ * computed again until nothing else is removed.
+ * <p>
+ * Assignments whose value may have side effects are kept: calls, array accesses, which may be out of bounds, and
+ * divisions by anything but a non-zero literal. The var table is built again at the end, so the removed variables no
+ * longer take registers.
+ */
+public class DeadStoreElimination {
+
+    /**
+     * Removes the dead stores of every method of the class
+     * @return Number of instructions removed
+     */
+    public int optimize(ClassUnit classUnit) {
+        classUnit.buildVarTables();
+
+        int removed = 0;
+        for (Method method : classUnit.getMethods()) {
+            removed += this.optimize(method);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes the dead stores of a method, which must have its var table built
+     * @return Number of instructions removed
+     */
+    public int optimize(Method method) {
+        int removed = 0;
+        while (true) {
+            ControlFlow.rebuild(method);
+            Set<Instruction> dead = this.findDeadStores(method);
+            if (dead.isEmpty()) break;
+
+            ControlFlow.remove(method, dead);
+            removed += dead.size();
+        }
+
+        if (removed > 0) {
+            // Locals are numbered again, without the variables that were removed
+            method.getVarTable().clear();
+            method.buildVarTable();
+        }
+        return removed;
+    }
+
+    /**
+     * @return Assignments whose variable is not live after them
+     */
+    private Set<Instruction> findDeadStores(Method method) {
+        Liveness liveness = new Liveness(method);
+        List<Instruction> instructions = method.getInstructions();
+        Set<Instruction> dead = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        liveness.walk((liveOut, i) -> {
+            if (!(instructions.get(i) instanceof AssignInstruction assign)) return;
+            if (assign.getDest() instanceof ArrayOperand || !isRemovable(assign.getRhs())) return;
+
+            int var = liveness.indexOf(((Operand) assign.getDest()).getName());
+            // The last instruction keeps the labels that jump to the end of the method
+            if (var >= 0 && !liveOut.get(var) && i + 1 < instructions.size()) dead.add(assign);
+        });
+        return dead;
+    }
+
+    /**
+     * @return Whether the right side of an assignment has no side effects and cannot throw
+     */
+    static boolean isRemovable(Instruction rhs) {
+        return switch (rhs.getInstType()) {
+            case BINARYOPER -> {
+                BinaryOpInstruction binary = (BinaryOpInstruction) rhs;
+                if (binary.getOperation().getOpType() != OperationType.DIV) yield true;
+                Element divisor = binary.getRightOperand();
+                yield divisor.isLiteral() && !((LiteralElement) divisor).getLiteral().equals("0");
+            }
+            case NOPER -> !(((SingleOpInstruction) rhs).getSingleOperand() instanceof ArrayOperand);
+            case UNARYOPER, GETFIELD -> true;
+            default -> false;
+        };
+    }
+}
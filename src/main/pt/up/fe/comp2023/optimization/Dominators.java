@@ -0,0 +1,125 @@
+package pt.up.fe.comp2023.optimization;
+
+import java.util.*;
+
+/**
+ * Dominator tree of the basic blocks of a method: a block dominates another if every path from the entry to the other
+ * goes through it. The immediate dominators are found with the iterative algorithm of Cooper, Harvey and Kennedy,
+ * which visits the blocks in reverse postorder until nothing changes.
+ * <p>
+ * Blocks that cannot be reached from the entry have no dominator and are not in the tree.
+ */
+public class Dominators {
+
+    private final BasicBlocks blocks;
+    private final int[] idom;
+    // Position of each block in the postorder, or -1 if it cannot be reached
+    private final int[] postorder;
+    private final List<List<Integer>> children = new ArrayList<>();
+
+    public Dominators(BasicBlocks blocks) {
+        this.blocks = blocks;
+        int size = blocks.size();
+        idom = new int[size];
+        postorder = new int[size];
+        Arrays.fill(idom, -1);
+        Arrays.fill(postorder, -1);
+        for (int block = 0; block < size; block++) {
+            children.add(new ArrayList<>());
+        }
+        if (size == 0) return;
+
+        List<Integer> order = this.computePostorder();
+        idom[0] = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = order.size() - 1; i >= 0; i--) {
+                int block = order.get(i);
+                if (block == 0) continue;
+
+                int dominator = -1;
+                for (int predecessor : blocks.getPredecessors(block)) {
+                    if (idom[predecessor] < 0) continue;
+                    dominator = dominator < 0 ? predecessor : this.intersect(predecessor, dominator);
+                }
+                if (dominator != idom[block]) {
+                    idom[block] = dominator;
+                    changed = true;
+                }
+            }
+        }
+
+        for (int block = 1; block < size; block++) {
+            if (idom[block] >= 0) children.get(idom[block]).add(block);
+        }
+        idom[0] = -1;
+    }
+
+    /**
+     * @return Reachable blocks in postorder, found with a depth-first search from the entry
+     */
+    private List<Integer> computePostorder() {
+        List<Integer> order = new ArrayList<>();
+        boolean[] visited = new boolean[blocks.size()];
+        Deque<int[]> stack = new ArrayDeque<>();
+        stack.push(new int[]{0, 0});
+        visited[0] = true;
+
+        while (!stack.isEmpty()) {
+            int[] top = stack.peek();
+            int[] successors = blocks.getSuccessors(top[0]);
+            if (top[1] < successors.length) {
+                int successor = successors[top[1]++];
+                if (!visited[successor]) {
+                    visited[successor] = true;
+                    stack.push(new int[]{successor, 0});
+                }
+            } else {
+                stack.pop();
+                postorder[top[0]] = order.size();
+                order.add(top[0]);
+            }
+        }
+        return order;
+    }
+
+    private int intersect(int a, int b) {
+        while (a != b) {
+            while (postorder[a] < postorder[b]) a = idom[a];
+            while (postorder[b] < postorder[a]) b = idom[b];
+        }
+        return a;
+    }
+
+    /**
+     * @return Immediate dominator of the block, or -1 for the entry and the blocks that cannot be reached
+     */
+    public int getImmediateDominator(int block) {
+        return idom[block];
+    }
+
+    /**
+     * @return Blocks whose immediate dominator is the given one
+     */
+    public List<Integer> getChildren(int block) {
+        return children.get(block);
+    }
+
+    public boolean isReachable(int block) {
+        return postorder[block] >= 0;
+    }
+
+    /**
+     * @return Whether every path from the entry to b goes through a, which includes a being b
+     */
+    public boolean dominates(int a, int b) {
+        if (!this.isReachable(a) || !this.isReachable(b)) return false;
+        while (b > 0 && b != a) b = idom[b];
+        return b == a;
+    }
+
+    public BasicBlocks getBlocks() {
+        return blocks;
+    }
+}
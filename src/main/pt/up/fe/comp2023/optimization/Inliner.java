@@ -0,0 +1,252 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Replaces the calls to small methods of the same class by a copy of their body. The parameters become local variables
+ * assigned from the arguments, the variables and labels of the copy are renamed so they do not collide with the ones
+ * of the caller, and each return assigns the variable of the call and jumps to the instruction after it.
+ * <p>
+ * Only the calls whose method is known are inlined: static calls to the class, and calls on this to private or final
+ * methods, which a subclass cannot override. Methods that may call themselves, through the {@link CallGraph}, and
+ * methods with more instructions than the budget are not inlined, and neither are methods without a return, like a
+ * tail recursive method turned into a loop, since nothing would assign the variable of the call. The callees are
+ * visited before their callers, so a method is inlined with the calls in it already inlined.
+ */
+public class Inliner {
+
+    public static final int DEFAULT_BUDGET = 20;
+
+    // Methods do not grow past this many instructions
+    private static final int MAX_CALLER_SIZE = 1000;
+
+    private final int budget;
+    private int nextSite;
+
+    /**
+     * @param budget Number of instructions of the largest method that is inlined
+     */
+    public Inliner(int budget) {
+        this.budget = budget;
+    }
+
+    /**
+     * Inlines the calls of every method of the class
+     * @return Number of calls inlined
+     */
+    public int optimize(ClassUnit classUnit) {
+        classUnit.buildVarTables();
+        CallGraph callGraph = new CallGraph(classUnit);
+
+        int inlined = 0;
+        for (String name : callGraph.getBottomUp()) {
+            inlined += this.optimize(callGraph, callGraph.getMethod(name));
+        }
+        return inlined;
+    }
+
+    /**
+     * Inlines the calls of a method
+     * @return Number of calls inlined
+     */
+    private int optimize(CallGraph callGraph, Method caller) {
+        List<Instruction> instructions = caller.getInstructions();
+        Set<String> names = new HashSet<>(caller.getVarTable().keySet());
+        int inlined = 0;
+
+        for (int i = 0; i < instructions.size() - 1; i++) {
+            Instruction instruction = instructions.get(i);
+            CallInstruction call = CallGraph.getCall(instruction);
+            String name = call == null ? null : callGraph.getCallee(call);
+            if (name == null || !this.canInline(callGraph, caller, call, callGraph.getMethod(name))) continue;
+
+            List<Instruction> body = this.copyBody(caller, instruction, call, callGraph.getMethod(name), names,
+                    instructions.get(i + 1));
+            this.replace(caller, i, body);
+            i += body.size() - 1;
+            inlined++;
+        }
+
+        if (inlined > 0) {
+            caller.getVarTable().clear();
+            caller.buildVarTable();
+            ControlFlow.rebuild(caller);
+        }
+        return inlined;
+    }
+
+    private boolean canInline(CallGraph callGraph, Method caller, CallInstruction call, Method callee) {
+        if (callee == caller || callee.getInstructions().size() > budget || callGraph.isRecursive(callee.getMethodName())) {
+            return false;
+        }
+        if (caller.getInstructions().size() + callee.getInstructions().size() > MAX_CALLER_SIZE) return false;
+        if (callee.getInstructions().stream().noneMatch(ReturnInstruction.class::isInstance)) return false;
+
+        if (call.getInvocationType() == CallType.invokestatic) return callee.isStaticMethod();
+        // A call on this runs the method of the subclass if it overrides it
+        return call.getFirstArg().getType().getTypeOfElement() == ElementType.THIS && !caller.isStaticMethod()
+                && !callee.isStaticMethod()
+                && (callee.getMethodAccessModifier() == AccessModifiers.PRIVATE || callee.isFinalMethod());
+    }
+
+    /**
+     * @param site Instruction with the call, an assignment if its value is used
+     * @param next Instruction after the call, where the returns jump to
+     * @param names Variables of the caller, the new ones are added to it
+     * @return Instructions that replace the call
+     */
+    private List<Instruction> copyBody(Method caller, Instruction site, CallInstruction call, Method callee,
+                                       Set<String> names, Instruction next) {
+        String suffix = "_" + callee.getMethodName() + nextSite++;
+
+        Map<String, String> variables = new HashMap<>();
+        for (String variable : callee.getVarTable().keySet()) {
+            if (variable.equals("this")) continue;
+            String renamed = variable + suffix;
+            while (!names.add(renamed)) renamed += "_";
+            variables.put(variable, renamed);
+        }
+        // The labels of the callee are read from its map, the one by instruction is not updated once built
+        Map<String, String> labels = new HashMap<>();
+        Map<Instruction, List<String>> labelled = new IdentityHashMap<>();
+        for (Map.Entry<String, Instruction> label : callee.getLabels().entrySet()) {
+            labels.put(label.getKey(), this.newLabel(caller, label.getKey() + suffix));
+            labelled.computeIfAbsent(label.getValue(), instruction -> new ArrayList<>()).add(label.getKey());
+        }
+
+        List<Instruction> body = new ArrayList<>();
+        List<Element> arguments = call.getListOfOperands();
+        for (int i = 0; i < callee.getParams().size(); i++) {
+            Operand param = (Operand) callee.getParams().get(i);
+            Operand local = new Operand(variables.get(param.getName()), param.getType());
+            body.add(new AssignInstruction(local, param.getType(), new SingleOpInstruction(copy(arguments.get(i), Map.of()))));
+        }
+
+        String end = null;
+        List<Instruction> instructions = callee.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            int start = body.size();
+
+            if (instruction instanceof ReturnInstruction ret) {
+                if (ret.hasReturnValue() && site instanceof AssignInstruction assign) {
+                    body.add(new AssignInstruction(copy(assign.getDest(), Map.of()), assign.getTypeOfAssign(),
+                            new SingleOpInstruction(copy(ret.getOperand(), variables))));
+                }
+                if (i < instructions.size() - 1) {
+                    if (end == null) end = this.newLabel(caller, "Return" + suffix);
+                    body.add(new GotoInstruction(end));
+                }
+            } else {
+                body.add(copy(instruction, variables, labels));
+            }
+
+            // The labels of the instruction go to its copy, or to the instruction after it if nothing was copied
+            for (String label : labelled.getOrDefault(instruction, List.of())) {
+                caller.getLabels().put(labels.get(label), start < body.size() ? body.get(start) : null);
+            }
+        }
+        for (Map.Entry<String, Instruction> label : caller.getLabels().entrySet()) {
+            if (label.getValue() == null) label.setValue(next);
+        }
+        if (end != null) caller.getLabels().put(end, next);
+        return body;
+    }
+
+    private String newLabel(Method caller, String label) {
+        while (caller.getLabels().containsKey(label)) label += "_";
+        caller.getLabels().put(label, null);
+        return label;
+    }
+
+    /**
+     * Puts the instructions in place of the call at the given position, and moves the labels of the call to them
+     */
+    private void replace(Method caller, int position, List<Instruction> body) {
+        List<Instruction> instructions = caller.getInstructions();
+        Instruction call = instructions.get(position);
+        Instruction first = body.isEmpty() ? instructions.get(position + 1) : body.get(0);
+        for (Map.Entry<String, Instruction> label : caller.getLabels().entrySet()) {
+            if (label.getValue() == call) label.setValue(first);
+        }
+
+        instructions.remove(position);
+        instructions.addAll(position, body);
+    }
+
+    private static Instruction copy(Instruction instruction, Map<String, String> variables, Map<String, String> labels) {
+        return switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                AssignInstruction assign = (AssignInstruction) instruction;
+                yield new AssignInstruction(copy(assign.getDest(), variables), assign.getTypeOfAssign(),
+                        copy(assign.getRhs(), variables, labels));
+            }
+            case CALL -> {
+                CallInstruction call = (CallInstruction) instruction;
+                Element first = call.getFirstArg() == null ? null : copy(call.getFirstArg(), variables);
+                if (call.getListOfOperands() == null) {
+                    yield new CallInstruction(call.getInvocationType(), first, call.getReturnType());
+                }
+                ArrayList<Element> arguments = new ArrayList<>();
+                call.getListOfOperands().forEach(argument -> arguments.add(copy(argument, variables)));
+                if (call.getSecondArg() == null) {
+                    yield new CallInstruction(call.getInvocationType(), first, arguments, call.getReturnType());
+                }
+                yield new CallInstruction(call.getInvocationType(), first, copy(call.getSecondArg(), variables),
+                        arguments, call.getReturnType());
+            }
+            case GOTO -> new GotoInstruction(labels.get(((GotoInstruction) instruction).getLabel()));
+            case BRANCH -> {
+                CondBranchInstruction branch = (CondBranchInstruction) instruction;
+                Instruction condition = copy(branch.getCondition(), variables, labels);
+                CondBranchInstruction copy = condition instanceof SingleOpInstruction single
+                        ? new SingleOpCondInstruction(single) : new OpCondInstruction((OpInstruction) condition);
+                copy.setLabel(labels.get(branch.getLabel()));
+                yield copy;
+            }
+            case PUTFIELD -> {
+                PutFieldInstruction put = (PutFieldInstruction) instruction;
+                // The field keeps its name, even if a variable has the same one
+                yield new PutFieldInstruction(copy(put.getFirstOperand(), variables), copy(put.getSecondOperand(), Map.of()),
+                        copy(put.getThirdOperand(), variables), put.getFieldType());
+            }
+            case GETFIELD -> {
+                GetFieldInstruction get = (GetFieldInstruction) instruction;
+                yield new GetFieldInstruction(copy(get.getFirstOperand(), variables), copy(get.getSecondOperand(), Map.of()),
+                        get.getFieldType());
+            }
+            case UNARYOPER -> {
+                UnaryOpInstruction unary = (UnaryOpInstruction) instruction;
+                yield new UnaryOpInstruction(copy(unary.getOperation()), copy(unary.getOperand(), variables));
+            }
+            case BINARYOPER -> {
+                BinaryOpInstruction binary = (BinaryOpInstruction) instruction;
+                yield new BinaryOpInstruction(copy(binary.getLeftOperand(), variables), copy(binary.getOperation()),
+                        copy(binary.getRightOperand(), variables));
+            }
+            case NOPER -> new SingleOpInstruction(copy(((SingleOpInstruction) instruction).getSingleOperand(), variables));
+            case RETURN -> throw new IllegalArgumentException("Returns are not copied");
+        };
+    }
+
+    private static Operation copy(Operation operation) {
+        return new Operation(operation.getOpType(), operation.getTypeInfo());
+    }
+
+    /**
+     * @param variables New names of the variables, the other operands keep their name
+     */
+    static Element copy(Element element, Map<String, String> variables) {
+        if (element.isLiteral()) return new LiteralElement(((LiteralElement) element).getLiteral(), element.getType());
+
+        Operand operand = (Operand) element;
+        String name = variables.getOrDefault(operand.getName(), operand.getName());
+        if (operand instanceof ArrayOperand array) {
+            List<Element> indexes = array.getIndexOperands().stream().map(index -> copy(index, variables)).toList();
+            return new ArrayOperand(name, array.getType(), indexes);
+        }
+        return new Operand(name, operand.getType());
+    }
+}
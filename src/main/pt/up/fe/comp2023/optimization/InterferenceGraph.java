@@ -0,0 +1,65 @@
+package pt.up.fe.comp2023.optimization;
+
+import java.util.*;
+
+/**
+ * Undirected graph with an edge between every two variables that are live at the same time, so they cannot share a
+ * register. Variables are identified by their index in the {@link Liveness} analysis.
+ */
+public class InterferenceGraph {
+
+    // Sets of indexes rather than bit sets, since most variables only interfere with a few others
+    private final List<Set<Integer>> neighbours = new ArrayList<>();
+
+    public InterferenceGraph(int variables) {
+        for (int i = 0; i < variables; i++) {
+            neighbours.add(new HashSet<>());
+        }
+    }
+
+    /**
+     * Builds the graph of a method: each variable interferes with the variables that are live after the instructions
+     * that write it. The variables live at the start of the method, like the parameters, interfere with each other.
+     */
+    public static InterferenceGraph build(Liveness liveness, int instructions) {
+        InterferenceGraph graph = new InterferenceGraph(liveness.getVariables().size());
+
+        liveness.walk((liveOut, instruction) -> {
+            for (int def : liveness.getDefs(instruction)) {
+                graph.addEdges(def, liveOut);
+            }
+        });
+
+        if (instructions > 0) {
+            BitSet entry = liveness.getLiveIn(0);
+            for (int var = entry.nextSetBit(0); var >= 0; var = entry.nextSetBit(var + 1)) {
+                graph.addEdges(var, entry);
+            }
+        }
+        return graph;
+    }
+
+    public void addEdge(int a, int b) {
+        if (a == b) return;
+        neighbours.get(a).add(b);
+        neighbours.get(b).add(a);
+    }
+
+    private void addEdges(int a, BitSet others) {
+        for (int b = others.nextSetBit(0); b >= 0; b = others.nextSetBit(b + 1)) {
+            this.addEdge(a, b);
+        }
+    }
+
+    public int size() {
+        return neighbours.size();
+    }
+
+    public Set<Integer> getNeighbours(int variable) {
+        return neighbours.get(variable);
+    }
+
+    public int getDegree(int variable) {
+        return neighbours.get(variable).size();
+    }
+}
@@ -0,0 +1,107 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Liveness analysis of the local variables and parameters of a method: a variable is live after an instruction if its
+ * value may be read later, before it is written again. The facts are the indexes of the {@link VariableIndex} of the
+ * method. {@link #walk} gives the variables live after each instruction.
+ * <p>
+ * The method must have its CFG and its var table built.
+ */
+public class Liveness extends Dataflow {
+
+    private static final int[] NONE = new int[0];
+
+    private final VariableIndex variables;
+    private final int[][] uses, defs;
+
+    public Liveness(Method method) {
+        super(method, Direction.BACKWARD, Meet.UNION);
+        this.variables = new VariableIndex(method);
+
+        List<Instruction> instructions = method.getInstructions();
+        uses = new int[instructions.size()][];
+        defs = new int[instructions.size()][];
+        for (int i = 0; i < instructions.size(); i++) {
+            List<Integer> instructionUses = new ArrayList<>();
+            for (Operand use : Operands.getUses(instructions.get(i))) {
+                int index = variables.indexOf(use);
+                if (index >= 0) instructionUses.add(index);
+            }
+            uses[i] = toArray(instructionUses);
+
+            int def = variables.indexOf(Operands.getDef(instructions.get(i)));
+            defs[i] = def >= 0 ? new int[]{def} : NONE;
+        }
+
+        this.solve();
+    }
+
+    @Override
+    protected int size() {
+        return variables.size();
+    }
+
+    @Override
+    protected int[] gen(int instruction) {
+        return uses[instruction];
+    }
+
+    @Override
+    protected int[] kill(int instruction) {
+        return defs[instruction];
+    }
+
+    private static int[] toArray(List<Integer> indexes) {
+        return indexes.isEmpty() ? NONE : indexes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * @return Names of the variables, by index
+     */
+    public List<String> getVariables() {
+        return variables.getNames();
+    }
+
+    public VariableIndex getVariableIndex() {
+        return variables;
+    }
+
+    /**
+     * @return Index of the variable, or -1 if it is not a local variable or a parameter
+     */
+    public int indexOf(String variable) {
+        return variables.indexOf(variable);
+    }
+
+    /**
+     * @return Indexes of the variables the instruction reads
+     */
+    public int[] getUses(int instruction) {
+        return uses[instruction];
+    }
+
+    /**
+     * @return Indexes of the variables the instruction writes
+     */
+    public int[] getDefs(int instruction) {
+        return defs[instruction];
+    }
+
+    /**
+     * @return Variables live before the instruction
+     */
+    public BitSet getLiveIn(int instruction) {
+        return this.getIn(instruction);
+    }
+
+    /**
+     * @return Variables live after the instruction
+     */
+    public BitSet getLiveOut(int instruction) {
+        return this.getOut(instruction);
+    }
+}
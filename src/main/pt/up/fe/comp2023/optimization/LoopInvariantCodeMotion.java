@@ -0,0 +1,250 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Moves the assignments whose value does not change while a loop runs, like the array length in the condition of a
+ * {@code while}, to a preheader: instructions placed right before the header of the loop, which run once when the loop
+ * is entered. The jumps into the loop from outside are redirected to the preheader, and the back edges still go to the
+ * header. The inner loops are visited first, so their invariants can move out of the loops around them too.
+ * <p>
+ * An assignment is invariant if its operands are not written in the loop, or only by invariant assignments, and its
+ * variable is written nowhere else in the loop, is not read in the loop before it is written, and is not read after
+ * the loop unless the assignment runs before every exit. Array loads and field reads are only invariant in loops that
+ * do not store into arrays or fields, nor call methods. The operations that may throw, array accesses and divisions by
+ * anything but a non-zero literal, are only moved from the start of the header, where they would run anyway.
+ * <p>
+ * Loops whose header is reached by falling through from inside the loop have no place for a preheader and are skipped.
+ */
+public class LoopInvariantCodeMotion {
+
+    private int nextLabel;
+
+    /**
+     * Moves the loop invariants of every method of the class
+     * @return Number of instructions moved
+     */
+    public int optimize(ClassUnit classUnit) {
+        classUnit.buildVarTables();
+
+        int moved = 0;
+        for (Method method : classUnit.getMethods()) {
+            moved += this.optimize(method);
+        }
+        return moved;
+    }
+
+    /**
+     * Moves the loop invariants of a method, which must have its var table built
+     * @return Number of instructions moved
+     */
+    public int optimize(Method method) {
+        nextLabel = 0;
+        // Loops are found again after each move, the headers visited so far are not visited again
+        Set<Instruction> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        int moved = 0;
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            ControlFlow.rebuild(method);
+            BasicBlocks blocks = new BasicBlocks(method);
+            if (blocks.size() == 0) break;
+            Dominators dominators = new Dominators(blocks);
+            Liveness liveness = null;
+
+            for (NaturalLoops.Loop loop : new NaturalLoops(dominators).getLoops()) {
+                int header = blocks.getFirst(loop.header());
+                if (!visited.add(method.getInstructions().get(header)) || !hasPreheader(method, blocks, loop)) continue;
+
+                if (liveness == null) liveness = new Liveness(method);
+                List<Instruction> invariants = this.findInvariants(method, dominators, liveness, loop);
+                if (invariants.isEmpty()) continue;
+
+                this.hoist(method, blocks, loop, invariants);
+                moved += invariants.size();
+                changed = true;
+                break;
+            }
+        }
+
+        ControlFlow.rebuild(method);
+        return moved;
+    }
+
+    /**
+     * @return Whether the instructions can be placed before the header without running in every iteration, that is,
+     * the header is not reached by falling through from inside the loop
+     */
+    private static boolean hasPreheader(Method method, BasicBlocks blocks, NaturalLoops.Loop loop) {
+        int header = blocks.getFirst(loop.header());
+        if (header == 0) return true;
+
+        Instruction previous = method.getInstructions().get(header - 1);
+        return !loop.contains(blocks.getBlock(header - 1))
+                || previous instanceof GotoInstruction || previous instanceof ReturnInstruction;
+    }
+
+    /**
+     * @return Invariant assignments of the loop, each one after the invariants it reads
+     */
+    private List<Instruction> findInvariants(Method method, Dominators dominators, Liveness liveness,
+                                             NaturalLoops.Loop loop) {
+        BasicBlocks blocks = dominators.getBlocks();
+        List<Instruction> instructions = method.getInstructions();
+        List<Integer> positions = new ArrayList<>();
+        for (int block = loop.blocks().nextSetBit(0); block >= 0; block = loop.blocks().nextSetBit(block + 1)) {
+            for (int i = blocks.getFirst(block); i <= blocks.getLast(block); i++) positions.add(i);
+        }
+
+        // Assignments to each variable in the loop, and whether array elements or fields may change
+        Map<String, List<Instruction>> definitions = new HashMap<>();
+        boolean writesMemory = false;
+        for (int i : positions) {
+            Instruction instruction = instructions.get(i);
+            Operand def = Operands.getDef(instruction);
+            if (def != null) definitions.computeIfAbsent(def.getName(), name -> new ArrayList<>()).add(instruction);
+            writesMemory |= ValueNumbering.writesMemory(instruction) || instruction instanceof PutFieldInstruction;
+        }
+
+        // Edges that leave the loop
+        List<int[]> exits = new ArrayList<>();
+        for (int block = loop.blocks().nextSetBit(0); block >= 0; block = loop.blocks().nextSetBit(block + 1)) {
+            for (int successor : blocks.getSuccessors(block)) {
+                if (!loop.contains(successor)) exits.add(new int[]{block, successor});
+            }
+        }
+
+        List<Instruction> invariants = new ArrayList<>();
+        Set<Instruction> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i : positions) {
+                Instruction instruction = instructions.get(i);
+                if (moved.contains(instruction) || i + 1 == instructions.size()) continue;
+                if (!(instruction instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand) continue;
+                if (!this.isInvariant(assign.getRhs(), writesMemory, definitions, moved)) continue;
+                if (!DeadStoreElimination.isRemovable(assign.getRhs())
+                        && !this.runsFirst(method, blocks, loop, i, moved)) continue;
+
+                String dest = ((Operand) assign.getDest()).getName();
+                if (definitions.get(dest).size() != 1) continue;
+                int var = liveness.indexOf(dest);
+                if (var < 0 || liveness.getLiveIn(blocks.getFirst(loop.header())).get(var)) continue;
+                if (!this.isAvailableAtExits(dominators, liveness, exits, blocks.getBlock(i), var)) continue;
+
+                invariants.add(instruction);
+                moved.add(instruction);
+                changed = true;
+            }
+        }
+        return invariants;
+    }
+
+    /**
+     * @return Whether the right side of an assignment computes the same value in every iteration
+     */
+    private boolean isInvariant(Instruction rhs, boolean writesMemory, Map<String, List<Instruction>> definitions,
+                                Set<Instruction> moved) {
+        switch (rhs.getInstType()) {
+            case BINARYOPER, UNARYOPER -> {
+            }
+            case CALL -> {
+                if (((CallInstruction) rhs).getInvocationType() != CallType.arraylength) return false;
+            }
+            case NOPER -> {
+                if (((SingleOpInstruction) rhs).getSingleOperand() instanceof ArrayOperand && writesMemory) return false;
+            }
+            case GETFIELD -> {
+                if (writesMemory) return false;
+            }
+            default -> {
+                return false;
+            }
+        }
+
+        for (Operand use : Operands.getUses(rhs)) {
+            List<Instruction> writes = definitions.get(use.getName());
+            if (writes != null && (writes.size() != 1 || !moved.contains(writes.get(0)))) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Whether an assignment that may throw runs whenever the loop is entered, before anything that may throw or have
+     * side effects, so moving it out of the loop does not change what happens
+     */
+    private boolean runsFirst(Method method, BasicBlocks blocks, NaturalLoops.Loop loop, int position,
+                              Set<Instruction> moved) {
+        if (blocks.getBlock(position) != loop.header()) return false;
+
+        for (int i = blocks.getFirst(loop.header()); i < position; i++) {
+            Instruction previous = method.getInstructions().get(i);
+            if (moved.contains(previous)) continue;
+            if (!(previous instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand
+                    || !DeadStoreElimination.isRemovable(assign.getRhs())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Whether the variable is not read after leaving the loop, or the block that assigns it runs before every
+     * exit where it is
+     */
+    private boolean isAvailableAtExits(Dominators dominators, Liveness liveness, List<int[]> exits, int block, int var) {
+        for (int[] exit : exits) {
+            boolean live = liveness.getLiveIn(dominators.getBlocks().getFirst(exit[1])).get(var);
+            if (live && !dominators.dominates(block, exit[0])) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Moves the invariants right before the header, and redirects the jumps into the loop from outside to them
+     */
+    private void hoist(Method method, BasicBlocks blocks, NaturalLoops.Loop loop, List<Instruction> invariants) {
+        List<Instruction> instructions = method.getInstructions();
+        int header = blocks.getFirst(loop.header());
+        Set<Instruction> moved = Collections.newSetFromMap(new IdentityHashMap<>());
+        moved.addAll(invariants);
+
+        // The instruction the preheader goes before, there is one since the last instruction is never moved
+        int anchor = header;
+        while (moved.contains(instructions.get(anchor))) anchor++;
+        Instruction first = instructions.get(anchor);
+
+        Set<String> headerLabels = new HashSet<>();
+        for (Map.Entry<String, Instruction> label : method.getLabels().entrySet()) {
+            if (label.getValue() == instructions.get(header)) headerLabels.add(label.getKey());
+        }
+        String preheader = null;
+        for (int i = 0; i < instructions.size(); i++) {
+            if (loop.contains(blocks.getBlock(i))) continue;
+
+            Instruction instruction = instructions.get(i);
+            if (instruction instanceof GotoInstruction jump && headerLabels.contains(jump.getLabel())) {
+                if (preheader == null) preheader = this.newLabel(method);
+                jump.setLabel(preheader);
+            } else if (instruction instanceof CondBranchInstruction branch && headerLabels.contains(branch.getLabel())) {
+                if (preheader == null) preheader = this.newLabel(method);
+                branch.setLabel(preheader);
+            }
+        }
+
+        ControlFlow.remove(method, moved);
+        instructions.addAll(instructions.indexOf(first), invariants);
+        if (preheader != null) method.addLabel(preheader, invariants.get(0));
+    }
+
+    private String newLabel(Method method) {
+        String label;
+        do {
+            label = "Preheader_" + nextLabel++;
+        } while (method.getLabels().containsKey(label));
+        return label;
+    }
+}
@@ -0,0 +1,75 @@
+package pt.up.fe.comp2023.optimization;
+
+import java.util.*;
+
+/**
+ * Natural loops of the basic blocks of a method: an edge from a block to one that dominates it is a back edge, and the
+ * loop of a back edge has its target, the header, and every block that reaches the back edge without going through
+ * the header. The back edges to the same header make a single loop.
+ * <p>
+ * The loops are sorted by size, so a loop nested in another comes before it. Loops that can be entered at more than
+ * one block have no back edge and are not found.
+ */
+public class NaturalLoops {
+
+    /**
+     * @param header Block every path into the loop goes through
+     * @param blocks Blocks of the loop, including the header
+     * @param latches Blocks of the loop that jump back to the header
+     */
+    public record Loop(int header, BitSet blocks, List<Integer> latches) {
+
+        public boolean contains(int block) {
+            return blocks.get(block);
+        }
+    }
+
+    private final List<Loop> loops = new ArrayList<>();
+
+    public NaturalLoops(Dominators dominators) {
+        BasicBlocks blocks = dominators.getBlocks();
+        Map<Integer, Loop> byHeader = new LinkedHashMap<>();
+
+        for (int block = 0; block < blocks.size(); block++) {
+            for (int successor : blocks.getSuccessors(block)) {
+                if (!dominators.dominates(successor, block)) continue;
+
+                Loop loop = byHeader.computeIfAbsent(successor, header -> new Loop(header, new BitSet(), new ArrayList<>()));
+                loop.latches().add(block);
+                this.collect(dominators, loop, block);
+            }
+        }
+
+        loops.addAll(byHeader.values());
+        loops.sort(Comparator.comparingInt(loop -> loop.blocks().cardinality()));
+    }
+
+    /**
+     * Adds the blocks that reach the latch without going through the header to the loop, skipping the ones that cannot
+     * be reached from the entry
+     */
+    private void collect(Dominators dominators, Loop loop, int latch) {
+        loop.blocks().set(loop.header());
+        Deque<Integer> pending = new ArrayDeque<>();
+        if (!loop.blocks().get(latch)) {
+            loop.blocks().set(latch);
+            pending.push(latch);
+        }
+
+        while (!pending.isEmpty()) {
+            for (int predecessor : dominators.getBlocks().getPredecessors(pending.pop())) {
+                if (!loop.blocks().get(predecessor) && dominators.isReachable(predecessor)) {
+                    loop.blocks().set(predecessor);
+                    pending.push(predecessor);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Loops of the method, the inner ones first
+     */
+    public List<Loop> getLoops() {
+        return loops;
+    }
+}
@@ -0,0 +1,84 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Helpers to find the operands of the OLLIR instructions that refer to variables. The fields, the called methods and
+ * classes are not included, but {@code this} is, so callers should look the names up in a {@link VariableIndex}.
+ */
+public class Operands {
+
+    private Operands() {
+    }
+
+    /**
+     * @return Operands the instruction reads, including the arrays and the indexes of the array accesses
+     */
+    public static List<Operand> getUses(Instruction instruction) {
+        List<Operand> uses = new ArrayList<>();
+        collectUses(instruction, uses);
+        return uses;
+    }
+
+    /**
+     * @return Variable the instruction writes, or null if it does not assign a variable. Stores into array elements
+     * read the array instead.
+     */
+    public static Operand getDef(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign && !(assign.getDest() instanceof ArrayOperand)
+                && assign.getDest() instanceof Operand dest) {
+            return dest;
+        }
+        return null;
+    }
+
+    private static void collectUses(Instruction instruction, List<Operand> uses) {
+        switch (instruction.getInstType()) {
+            case ASSIGN -> {
+                AssignInstruction assign = (AssignInstruction) instruction;
+                collectUses(assign.getRhs(), uses);
+                if (assign.getDest() instanceof ArrayOperand) use(assign.getDest(), uses);
+            }
+            case CALL -> {
+                CallInstruction call = (CallInstruction) instruction;
+                // The first operand of a static call is the class, and of a new the type of the object
+                if (call.getInvocationType() != CallType.NEW && call.getInvocationType() != CallType.invokestatic) {
+                    use(call.getFirstArg(), uses);
+                }
+                if (call.getListOfOperands() != null) call.getListOfOperands().forEach(arg -> use(arg, uses));
+            }
+            case BRANCH -> ((CondBranchInstruction) instruction).getOperands().forEach(operand -> use(operand, uses));
+            case RETURN -> {
+                ReturnInstruction ret = (ReturnInstruction) instruction;
+                if (ret.hasReturnValue()) use(ret.getOperand(), uses);
+            }
+            case PUTFIELD -> {
+                PutFieldInstruction putField = (PutFieldInstruction) instruction;
+                use(putField.getFirstOperand(), uses);
+                use(putField.getThirdOperand(), uses);
+            }
+            case GETFIELD -> use(((GetFieldInstruction) instruction).getFirstOperand(), uses);
+            case UNARYOPER -> use(((UnaryOpInstruction) instruction).getOperand(), uses);
+            case BINARYOPER -> {
+                BinaryOpInstruction binary = (BinaryOpInstruction) instruction;
+                use(binary.getLeftOperand(), uses);
+                use(binary.getRightOperand(), uses);
+            }
+            case NOPER -> use(((SingleOpInstruction) instruction).getSingleOperand(), uses);
+            case GOTO -> {
+            }
+        }
+    }
+
+    private static void use(Element element, List<Operand> uses) {
+        if (element == null || element.isLiteral() || !(element instanceof Operand operand)) return;
+        uses.add(operand);
+
+        if (operand instanceof ArrayOperand array) {
+            array.getIndexOperands().forEach(index -> use(index, uses));
+        }
+    }
+}
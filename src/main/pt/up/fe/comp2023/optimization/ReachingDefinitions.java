@@ -0,0 +1,111 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Reaching definitions of the local variables and parameters of a method: a definition reaches an instruction if there
+ * is a path from it to the instruction on which the variable is not written again. Definitions are the assignments to a
+ * variable, numbered from 0 in the order of the code. A variable read where none of its definitions reach holds the
+ * value it had at the start of the method.
+ * <p>
+ * The method must have its CFG and its var table built.
+ */
+public class ReachingDefinitions extends Dataflow {
+
+    private static final int[] NONE = new int[0];
+
+    private final VariableIndex variables;
+    // Instruction and variable of each definition
+    private final List<Integer> positions = new ArrayList<>();
+    private final List<Integer> definedVariables = new ArrayList<>();
+    private final int[] definitionAt;
+    // Definitions of each variable, shared by the kill sets of all of them
+    private final int[][] byVariable;
+
+    public ReachingDefinitions(Method method) {
+        super(method, Direction.FORWARD, Meet.UNION);
+        this.variables = new VariableIndex(method);
+        List<List<Integer>> definitions = new ArrayList<>();
+        for (int var = 0; var < variables.size(); var++) {
+            definitions.add(new ArrayList<>());
+        }
+
+        List<Instruction> instructions = method.getInstructions();
+        definitionAt = new int[instructions.size()];
+        for (int i = 0; i < instructions.size(); i++) {
+            definitionAt[i] = -1;
+            if (!(instructions.get(i) instanceof AssignInstruction assign) || assign.getDest() instanceof ArrayOperand) {
+                continue;
+            }
+
+            int var = variables.indexOf(assign.getDest());
+            if (var < 0) continue;
+
+            definitionAt[i] = positions.size();
+            definitions.get(var).add(positions.size());
+            positions.add(i);
+            definedVariables.add(var);
+        }
+
+        byVariable = definitions.stream().map(list -> list.stream().mapToInt(Integer::intValue).toArray()).toArray(int[][]::new);
+        this.solve();
+    }
+
+    @Override
+    protected int size() {
+        return positions.size();
+    }
+
+    @Override
+    protected int[] gen(int instruction) {
+        return definitionAt[instruction] < 0 ? NONE : new int[]{definitionAt[instruction]};
+    }
+
+    @Override
+    protected int[] kill(int instruction) {
+        if (definitionAt[instruction] < 0) return NONE;
+        return byVariable[definedVariables.get(definitionAt[instruction])];
+    }
+
+    /**
+     * @return Positions of the instructions whose definitions of the variable reach the given instruction
+     */
+    public List<Integer> getReaching(int instruction, String variable) {
+        int var = variables.indexOf(variable);
+        if (var < 0) return List.of();
+
+        BitSet reaching = this.getIn(instruction);
+        List<Integer> result = new ArrayList<>();
+        for (int definition : byVariable[var]) {
+            if (reaching.get(definition)) result.add(positions.get(definition));
+        }
+        return result;
+    }
+
+    /**
+     * @return Definition made by the instruction, or -1 if it does not assign a variable
+     */
+    public int getDefinition(int instruction) {
+        return definitionAt[instruction];
+    }
+
+    /**
+     * @return Position of the instruction that makes the definition
+     */
+    public int getPosition(int definition) {
+        return positions.get(definition);
+    }
+
+    /**
+     * @return Index of the variable the definition assigns
+     */
+    public int getVariable(int definition) {
+        return definedVariables.get(definition);
+    }
+
+    public VariableIndex getVariableIndex() {
+        return variables;
+    }
+}
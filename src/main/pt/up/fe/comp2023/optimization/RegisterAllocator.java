@@ -0,0 +1,129 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+
+import java.util.*;
+
+/**
+ * Assigns the local variables of each method to JVM registers by coloring their interference graph, so variables that
+ * are never live at the same time share a register. The var tables of the methods are rewritten with the new
+ * registers, which the backends use.
+ * <p>
+ * {@code this} and the parameters keep their registers, since the JVM passes them there.
+ */
+public class RegisterAllocator {
+
+    private final int maxRegisters;
+
+    /**
+     * @param maxRegisters Maximum number of registers per method, including {@code this} and the parameters, or 0 to
+     *                     use as few registers as possible
+     */
+    public RegisterAllocator(int maxRegisters) {
+        this.maxRegisters = maxRegisters;
+    }
+
+    /**
+     * Allocates the registers of every method of the class
+     * @return Errors for the methods that need more registers than the maximum, whose var tables are not changed
+     */
+    public List<Report> allocate(ClassUnit classUnit) {
+        List<Report> reports = new ArrayList<>();
+        try {
+            classUnit.checkMethodLabels();
+        } catch (OllirErrorException e) {
+            reports.add(new Report(ReportType.ERROR, Stage.OPTIMIZATION, -1, "Invalid OLLIR labels: " + e.getMessage()));
+            return reports;
+        }
+        classUnit.buildVarTables();
+
+        for (Method method : classUnit.getMethods()) {
+            int registers = this.allocate(method);
+            if (maxRegisters > 0 && registers > maxRegisters) {
+                reports.add(new Report(ReportType.ERROR, Stage.OPTIMIZATION, -1, "Method " + method.getMethodName()
+                        + " needs at least " + registers + " registers, but only " + maxRegisters + " are allowed."));
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Colors the local variables of a method, which must have its var table built. The var table is only rewritten if
+     * the maximum number of registers is enough.
+     * @return Number of registers the method needs
+     */
+    public int allocate(Method method) {
+        ControlFlow.rebuild(method);
+        Liveness liveness = new Liveness(method);
+        InterferenceGraph graph = InterferenceGraph.build(liveness, method.getInstructions().size());
+        Map<String, Descriptor> varTable = method.getVarTable();
+
+        // Registers below this one hold this and the parameters
+        int firstLocal = method.isStaticMethod() ? 0 : 1;
+        BitSet locals = new BitSet();
+        for (int var = 0; var < graph.size(); var++) {
+            Descriptor descriptor = varTable.get(liveness.getVariables().get(var));
+            if (descriptor.getScope() == VarScope.PARAMETER) {
+                firstLocal = Math.max(firstLocal, descriptor.getVirtualReg() + 1);
+            } else {
+                locals.set(var);
+            }
+        }
+
+        int[] colors = color(graph, locals);
+        int registers = firstLocal + Arrays.stream(colors).max().orElse(-1) + 1;
+        if (maxRegisters > 0 && registers > maxRegisters) return registers;
+
+        for (int var = locals.nextSetBit(0); var >= 0; var = locals.nextSetBit(var + 1)) {
+            varTable.get(liveness.getVariables().get(var)).setVirtualReg(firstLocal + colors[var]);
+        }
+        return registers;
+    }
+
+    /**
+     * Colors the given nodes, ignoring the others. The node with the fewest neighbours left is removed from the graph
+     * until it is empty, then each node is given the lowest color not used by its neighbours, in the reverse order.
+     * @return Color of each node, or -1 for the nodes that were not colored
+     */
+    private static int[] color(InterferenceGraph graph, BitSet nodes) {
+        int[] degrees = new int[graph.size()];
+        PriorityQueue<int[]> queue = new PriorityQueue<>(Comparator.comparingInt((int[] entry) -> entry[0]));
+        for (int node = nodes.nextSetBit(0); node >= 0; node = nodes.nextSetBit(node + 1)) {
+            degrees[node] = (int) graph.getNeighbours(node).stream().filter(nodes::get).count();
+            queue.add(new int[]{degrees[node], node});
+        }
+
+        // Simplify: entries with an outdated degree are skipped
+        Deque<Integer> stack = new ArrayDeque<>();
+        BitSet removed = new BitSet();
+        while (!queue.isEmpty()) {
+            int[] entry = queue.poll();
+            int node = entry[1];
+            if (removed.get(node) || entry[0] != degrees[node]) continue;
+
+            removed.set(node);
+            stack.push(node);
+            for (int other : graph.getNeighbours(node)) {
+                if (nodes.get(other) && !removed.get(other)) {
+                    queue.add(new int[]{--degrees[other], other});
+                }
+            }
+        }
+
+        // Select
+        int[] colors = new int[graph.size()];
+        Arrays.fill(colors, -1);
+        while (!stack.isEmpty()) {
+            int node = stack.pop();
+            BitSet used = new BitSet();
+            for (int other : graph.getNeighbours(node)) {
+                if (colors[other] >= 0) used.set(colors[other]);
+            }
+            colors[node] = used.nextClearBit(0);
+        }
+        return colors;
+    }
+}
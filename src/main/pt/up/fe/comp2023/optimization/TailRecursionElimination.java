@@ -0,0 +1,162 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Replaces the calls of a method to itself whose result it returns right away by a loop: the arguments are assigned to
+ * the parameters and the method jumps back to its first instruction, so deep recursions no longer take a frame per
+ * call. A call is in tail position when it is followed by the return of its variable, or of nothing, possibly through
+ * gotos, as in {@code r = this.f(n - 1); return r;} at the end of an {@code else}. The instructions after the jump that no
+ * label reaches, like that return, are removed, since they may read the result of the call, which is no longer assigned.
+ * <p>
+ * Only the static calls to the class and the calls on this to private or final methods are replaced, the others may
+ * run a method of a subclass that overrides it.
+ */
+public class TailRecursionElimination {
+
+    private int nextVariable;
+
+    /**
+     * Replaces the tail calls of every method of the class
+     * @return Number of calls replaced
+     */
+    public int optimize(ClassUnit classUnit) {
+        classUnit.buildVarTables();
+        CallGraph callGraph = new CallGraph(classUnit);
+
+        int replaced = 0;
+        for (Method method : classUnit.getMethods()) {
+            if (!method.isConstructMethod()) replaced += this.optimize(callGraph, method);
+        }
+        return replaced;
+    }
+
+    private int optimize(CallGraph callGraph, Method method) {
+        nextVariable = 0;
+        List<Instruction> instructions = method.getInstructions();
+        String entry = null;
+        int replaced = 0;
+
+        for (int i = 0; i < instructions.size(); i++) {
+            Instruction instruction = instructions.get(i);
+            CallInstruction call = CallGraph.getCall(instruction);
+            if (call == null || !isSelfCall(callGraph, method, call) || !isTail(method, i)) continue;
+
+            if (entry == null) entry = this.newLabel(method);
+            List<Instruction> loop = this.reassignParams(method, call);
+            loop.add(new GotoInstruction(entry));
+
+            // The labels of the call go to the first instruction that replaces it
+            for (Map.Entry<String, Instruction> label : method.getLabels().entrySet()) {
+                if (label.getValue() == instruction) label.setValue(loop.get(0));
+            }
+            instructions.remove(i);
+            instructions.addAll(i, loop);
+            i += loop.size() - 1;
+            removeUnreachable(method, i + 1);
+            replaced++;
+        }
+
+        if (replaced > 0) {
+            method.addLabel(entry, instructions.get(0));
+            method.getVarTable().clear();
+            method.buildVarTable();
+            ControlFlow.rebuild(method);
+        }
+        return replaced;
+    }
+
+    /**
+     * Removes the instructions from the given position up to the next one a label points to
+     */
+    private static void removeUnreachable(Method method, int position) {
+        List<Instruction> instructions = method.getInstructions();
+        Set<Instruction> labeled = Collections.newSetFromMap(new IdentityHashMap<>());
+        labeled.addAll(method.getLabels().values());
+
+        while (position < instructions.size() && !labeled.contains(instructions.get(position))) {
+            instructions.remove(position);
+        }
+    }
+
+    private static boolean isSelfCall(CallGraph callGraph, Method method, CallInstruction call) {
+        if (!method.getMethodName().equals(callGraph.getCallee(call))) return false;
+
+        if (call.getInvocationType() == CallType.invokestatic) return method.isStaticMethod();
+        return call.getFirstArg().getType().getTypeOfElement() == ElementType.THIS && !method.isStaticMethod()
+                && (method.getMethodAccessModifier() == AccessModifiers.PRIVATE || method.isFinalMethod());
+    }
+
+    /**
+     * @return Whether the call at the given position is followed, possibly through gotos, by the return of its result
+     */
+    private static boolean isTail(Method method, int position) {
+        List<Instruction> instructions = method.getInstructions();
+        Instruction call = instructions.get(position);
+        Set<Instruction> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+
+        int next = position + 1;
+        while (next < instructions.size() && visited.add(instructions.get(next))) {
+            Instruction instruction = instructions.get(next);
+            if (instruction instanceof GotoInstruction jump) {
+                next = instructions.indexOf(method.getLabels().get(jump.getLabel()));
+                continue;
+            }
+            if (!(instruction instanceof ReturnInstruction ret)) return false;
+
+            if (!(call instanceof AssignInstruction assign)) return !ret.hasReturnValue();
+            return ret.hasReturnValue() && ret.getOperand() instanceof Operand operand
+                    && !(operand instanceof ArrayOperand)
+                    && operand.getName().equals(((Operand) assign.getDest()).getName());
+        }
+        return false;
+    }
+
+    /**
+     * @return Assignments of the arguments of the call to the parameters, through new variables for the arguments that
+     * read a parameter assigned before them
+     */
+    private List<Instruction> reassignParams(Method method, CallInstruction call) {
+        List<Element> params = method.getParams();
+        List<Element> arguments = call.getListOfOperands() == null ? List.of() : call.getListOfOperands();
+        List<Instruction> temporaries = new ArrayList<>();
+        List<Instruction> assignments = new ArrayList<>();
+        Set<String> assigned = new HashSet<>();
+
+        for (int i = 0; i < params.size(); i++) {
+            Operand param = (Operand) params.get(i);
+            Element argument = arguments.get(i);
+            // Passing a parameter to itself does not change it
+            if (argument instanceof Operand operand && operand.getName().equals(param.getName())) continue;
+
+            Element value = Inliner.copy(argument, Map.of());
+            if (argument instanceof Operand operand && assigned.contains(operand.getName())) {
+                Operand temporary = new Operand(this.newVariable(method), argument.getType());
+                temporaries.add(new AssignInstruction(temporary, argument.getType(), new SingleOpInstruction(value)));
+                value = new Operand(temporary.getName(), argument.getType());
+            }
+            assignments.add(new AssignInstruction(new Operand(param.getName(), param.getType()), param.getType(),
+                    new SingleOpInstruction(value)));
+            assigned.add(param.getName());
+        }
+
+        temporaries.addAll(assignments);
+        return temporaries;
+    }
+
+    private String newVariable(Method method) {
+        String name;
+        do {
+            name = "tail" + nextVariable++;
+        } while (method.getVarTable().containsKey(name));
+        return name;
+    }
+
+    private String newLabel(Method method) {
+        String label = "Entry";
+        while (method.getLabels().containsKey(label)) label += "_";
+        return label;
+    }
+}
@@ -0,0 +1,271 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Value numbering over the dominator tree of each method: the blocks are visited from the entry down the tree, and an
+ * operation whose value was already computed in a dominating block, or earlier in the same one, is replaced by a copy
+ * of the variable that holds it. The copies are then removed by the {@link CopyPropagation}.
+ * <p>
+ * The arithmetic, comparison and boolean operations, the array lengths and the array loads are numbered. Since OLLIR
+ * variables can be assigned many times, the numbers of the variables written on some path from the dominator of a
+ * block to the block are discarded when the block is entered, and a value is only reused while the variable that holds
+ * it was not written again. Array loads are only reused while no array element was stored and no method was called,
+ * and a load right after a store to the same element reuses the stored value.
+ */
+public class ValueNumbering {
+
+    private static final Set<OperationType> COMMUTATIVE = EnumSet.of(OperationType.ADD, OperationType.MUL,
+            OperationType.AND, OperationType.OR, OperationType.ANDB, OperationType.ORB, OperationType.XOR,
+            OperationType.EQ, OperationType.NEQ);
+
+    /**
+     * A value number and an element that holds it: a variable, which may have been written since, or a literal
+     */
+    private record Value(int number, Element holder) {
+    }
+
+    private int nextNumber;
+    private final Map<String, Integer> literals = new HashMap<>();
+    // Scoped to the dominator tree: the changes made in a block are undone when leaving it
+    private final Map<String, Integer> variables = new HashMap<>();
+    private final Map<List<Object>, Value> expressions = new HashMap<>();
+    private int memory;
+    private final Deque<Runnable> undo = new ArrayDeque<>();
+
+    /**
+     * Numbers the values of every method of the class
+     * @return Number of operations replaced by copies
+     */
+    public int optimize(ClassUnit classUnit) {
+        int replaced = 0;
+        for (Method method : classUnit.getMethods()) {
+            replaced += this.optimize(method);
+        }
+        return replaced;
+    }
+
+    /**
+     * Numbers the values of a method
+     * @return Number of operations replaced by copies
+     */
+    public int optimize(Method method) {
+        ControlFlow.rebuild(method);
+        BasicBlocks blocks = new BasicBlocks(method);
+        if (blocks.size() == 0) return 0;
+        Dominators dominators = new Dominators(blocks);
+
+        nextNumber = 0;
+        literals.clear();
+        variables.clear();
+        expressions.clear();
+        undo.clear();
+        memory = nextNumber++;
+
+        Map<Instruction, Instruction> replacements = new IdentityHashMap<>();
+        // Blocks to enter, and the undo marks of the blocks to leave as negative numbers
+        Deque<Integer> stack = new ArrayDeque<>();
+        Deque<int[]> marks = new ArrayDeque<>();
+        stack.push(0);
+        while (!stack.isEmpty()) {
+            int block = stack.pop();
+            if (block < 0) {
+                int[] mark = marks.pop();
+                while (undo.size() > mark[0]) undo.pop().run();
+                memory = mark[1];
+                continue;
+            }
+
+            marks.push(new int[]{undo.size(), memory});
+            stack.push(-1);
+            this.enter(method, dominators, block);
+            for (int i = blocks.getFirst(block); i <= blocks.getLast(block); i++) {
+                Instruction replacement = this.number(method.getInstructions().get(i));
+                if (replacement != null) replacements.put(method.getInstructions().get(i), replacement);
+            }
+            dominators.getChildren(block).forEach(stack::push);
+        }
+
+        this.replace(method, replacements);
+        return replacements.size();
+    }
+
+    /**
+     * Discards the numbers of the variables, and of the array elements, that may be written on some path from the
+     * immediate dominator of the block to the block
+     */
+    private void enter(Method method, Dominators dominators, int block) {
+        BasicBlocks blocks = dominators.getBlocks();
+        int dominator = dominators.getImmediateDominator(block);
+        int[] predecessors = blocks.getPredecessors(block);
+        if (dominator < 0 || (predecessors.length == 1 && predecessors[0] == dominator)) return;
+
+        boolean[] visited = new boolean[blocks.size()];
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (int predecessor : predecessors) {
+            if (predecessor != dominator && !visited[predecessor]) {
+                visited[predecessor] = true;
+                pending.add(predecessor);
+            }
+        }
+
+        boolean writesMemory = false;
+        while (!pending.isEmpty()) {
+            int current = pending.poll();
+            for (int i = blocks.getFirst(current); i <= blocks.getLast(current); i++) {
+                Instruction instruction = method.getInstructions().get(i);
+                Operand def = Operands.getDef(instruction);
+                if (def != null) this.setNumber(def.getName(), nextNumber++);
+                writesMemory |= writesMemory(instruction);
+            }
+            for (int predecessor : blocks.getPredecessors(current)) {
+                if (predecessor != dominator && !visited[predecessor]) {
+                    visited[predecessor] = true;
+                    pending.add(predecessor);
+                }
+            }
+        }
+        if (writesMemory) memory = nextNumber++;
+    }
+
+    /**
+     * Numbers the value an instruction computes
+     * @return Copy that replaces the instruction, or null to keep it
+     */
+    private Instruction number(Instruction instruction) {
+        if (writesMemory(instruction)) memory = nextNumber++;
+        if (!(instruction instanceof AssignInstruction assign)) return null;
+
+        if (assign.getDest() instanceof ArrayOperand array) {
+            // The element now holds the stored value
+            if (assign.getRhs() instanceof SingleOpInstruction single && !(single.getSingleOperand() instanceof ArrayOperand)) {
+                Element value = single.getSingleOperand();
+                this.remember(this.loadKey(array), new Value(this.numberOf(value), value));
+            }
+            return null;
+        }
+
+        Operand dest = (Operand) assign.getDest();
+        Instruction rhs = assign.getRhs();
+        if (rhs instanceof SingleOpInstruction single && !(single.getSingleOperand() instanceof ArrayOperand)) {
+            this.setNumber(dest.getName(), this.numberOf(single.getSingleOperand()));
+            return null;
+        }
+
+        List<Object> key = this.keyOf(rhs);
+        Value value = key == null ? null : expressions.get(key);
+        if (value != null && this.holds(value)) {
+            this.setNumber(dest.getName(), value.number());
+            return new AssignInstruction(dest, assign.getTypeOfAssign(), new SingleOpInstruction(copy(value.holder())));
+        }
+
+        int number = nextNumber++;
+        this.setNumber(dest.getName(), number);
+        if (key != null) this.remember(key, new Value(number, dest));
+        return null;
+    }
+
+    /**
+     * @return Key of the value computed by the right side of an assignment, or null if it is not numbered
+     */
+    private List<Object> keyOf(Instruction rhs) {
+        switch (rhs.getInstType()) {
+            case BINARYOPER -> {
+                BinaryOpInstruction binary = (BinaryOpInstruction) rhs;
+                OperationType operation = binary.getOperation().getOpType();
+                int left = this.numberOf(binary.getLeftOperand());
+                int right = this.numberOf(binary.getRightOperand());
+                if (COMMUTATIVE.contains(operation) && right < left) return List.of(operation, right, left);
+                return List.of(operation, left, right);
+            }
+            case UNARYOPER -> {
+                UnaryOpInstruction unary = (UnaryOpInstruction) rhs;
+                return List.of(unary.getOperation().getOpType(), this.numberOf(unary.getOperand()));
+            }
+            case NOPER -> {
+                return this.loadKey((ArrayOperand) ((SingleOpInstruction) rhs).getSingleOperand());
+            }
+            case CALL -> {
+                CallInstruction call = (CallInstruction) rhs;
+                if (call.getInvocationType() != CallType.arraylength) return null;
+                return List.of(CallType.arraylength, this.numberOf(call.getFirstArg()));
+            }
+            default -> {
+                return null;
+            }
+        }
+    }
+
+    private List<Object> loadKey(ArrayOperand array) {
+        return List.of("load", this.numberOf(array.getName()), this.numberOf(array.getIndexOperands().get(0)), memory);
+    }
+
+    /**
+     * Array elements change when they are stored, and when a method that may store into them is called
+     */
+    static boolean writesMemory(Instruction instruction) {
+        if (instruction instanceof AssignInstruction assign) {
+            return assign.getDest() instanceof ArrayOperand || writesMemory(assign.getRhs());
+        }
+        return instruction instanceof CallInstruction call && call.getInvocationType() != CallType.arraylength
+                && call.getInvocationType() != CallType.NEW && call.getInvocationType() != CallType.ldc;
+    }
+
+    /**
+     * @return Whether the holder of the value still has it
+     */
+    private boolean holds(Value value) {
+        if (value.holder().isLiteral()) return true;
+        return variables.getOrDefault(((Operand) value.holder()).getName(), -1) == value.number();
+    }
+
+    private int numberOf(Element element) {
+        if (element.isLiteral()) {
+            String literal = ((LiteralElement) element).getLiteral() + "." + element.getType();
+            return literals.computeIfAbsent(literal, key -> nextNumber++);
+        }
+
+        return this.numberOf(((Operand) element).getName());
+    }
+
+    private int numberOf(String name) {
+        Integer number = variables.get(name);
+        if (number != null) return number;
+
+        // The value the variable had before the blocks visited so far
+        number = nextNumber++;
+        this.setNumber(name, number);
+        return number;
+    }
+
+    private void setNumber(String variable, int number) {
+        Integer old = variables.put(variable, number);
+        undo.push(old == null ? () -> variables.remove(variable) : () -> variables.put(variable, old));
+    }
+
+    private void remember(List<Object> key, Value value) {
+        Value old = expressions.put(key, value);
+        undo.push(old == null ? () -> expressions.remove(key) : () -> expressions.put(key, old));
+    }
+
+    private static Element copy(Element element) {
+        if (element.isLiteral()) return new LiteralElement(((LiteralElement) element).getLiteral(), element.getType());
+        return new Operand(((Operand) element).getName(), element.getType());
+    }
+
+    /**
+     * Puts the copies in place of the instructions they replace, and moves the labels of those instructions to them
+     */
+    private void replace(Method method, Map<Instruction, Instruction> replacements) {
+        if (replacements.isEmpty()) return;
+
+        List<Instruction> instructions = method.getInstructions();
+        instructions.replaceAll(instruction -> replacements.getOrDefault(instruction, instruction));
+        for (Map.Entry<String, Instruction> label : method.getLabels().entrySet()) {
+            label.setValue(replacements.getOrDefault(label.getValue(), label.getValue()));
+        }
+        ControlFlow.rebuild(method);
+    }
+}
@@ -0,0 +1,60 @@
+package pt.up.fe.comp2023.optimization;
+
+import org.specs.comp.ollir.*;
+
+import java.util.*;
+
+/**
+ * Numbers the local variables and parameters of a method from 0, in the order of their registers, so that the
+ * dataflow analyses can keep them in bit sets. {@code this} and the fields are not numbered.
+ */
+public class VariableIndex {
+
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> indexes = new HashMap<>();
+
+    /**
+     * @param method Method with its var table built
+     */
+    public VariableIndex(Method method) {
+        method.getVarTable().entrySet().stream()
+                .filter(entry -> !entry.getKey().equals("this"))
+                .filter(entry -> entry.getValue().getScope() == VarScope.LOCAL || entry.getValue().getScope() == VarScope.PARAMETER)
+                .sorted(Comparator.comparingInt((Map.Entry<String, Descriptor> entry) -> entry.getValue().getVirtualReg())
+                        .thenComparing(Map.Entry::getKey))
+                .forEach(entry -> {
+                    indexes.put(entry.getKey(), names.size());
+                    names.add(entry.getKey());
+                });
+    }
+
+    /**
+     * @return Index of the variable, or -1 if it is not a local variable or a parameter
+     */
+    public int indexOf(String name) {
+        return indexes.getOrDefault(name, -1);
+    }
+
+    /**
+     * @return Index of the variable the element refers to, or -1 for literals and the other elements
+     */
+    public int indexOf(Element element) {
+        if (element == null || element.isLiteral() || !(element instanceof Operand operand)) return -1;
+        return this.indexOf(operand.getName());
+    }
+
+    public String getName(int index) {
+        return names.get(index);
+    }
+
+    /**
+     * @return Names of the variables, by index
+     */
+    public List<String> getNames() {
+        return names;
+    }
+
+    public int size() {
+        return names.size();
+    }
+}
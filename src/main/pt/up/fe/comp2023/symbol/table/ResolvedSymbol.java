@@ -0,0 +1,39 @@
+package pt.up.fe.comp2023.symbol.table;
+
+import pt.up.fe.comp.jmm.analysis.table.Symbol;
+import pt.up.fe.comp.jmm.analysis.table.Type;
+
+/**
+ * A symbol found by a lookup in the {@link Table}, with the kind of variable it is
+ * @param symbol The symbol
+ * @param kind Whether it is a local variable, a parameter or a field
+ * @param paramIndex Position of the parameter in the method's signature, starting at 0, or -1 if it is not a parameter
+ */
+public record ResolvedSymbol(Symbol symbol, Kind kind, int paramIndex) {
+
+    public enum Kind {
+        LOCAL,
+        PARAMETER,
+        FIELD
+    }
+
+    public String getName() {
+        return symbol.getName();
+    }
+
+    public Type getType() {
+        return symbol.getType();
+    }
+
+    public boolean isLocal() {
+        return kind == Kind.LOCAL;
+    }
+
+    public boolean isParameter() {
+        return kind == Kind.PARAMETER;
+    }
+
+    public boolean isField() {
+        return kind == Kind.FIELD;
+    }
+}
@@ -7,6 +7,8 @@ import pt.up.fe.comp.jmm.analysis.table.Type;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 public class Table implements SymbolTable {
 
@@ -18,6 +20,10 @@ public class Table implements SymbolTable {
 
     int b;
 
+    //Indexes by name, built on the first lookup and discarded when the symbols change
+    Map<String, ResolvedSymbol> fieldIndex;
+    HashMap<String, Map<String, ResolvedSymbol>> methodIndex = new HashMap<>();
+
     public Table(){
         this.imports = new ArrayList<>();
         this.methods = new ArrayList<>();
@@ -57,9 +63,13 @@ public class Table implements SymbolTable {
 
     public void setFields(List<Symbol> fields) {
         this.fields = fields;
+        this.fieldIndex = null;
     }
 
-    public void addFields(Symbol field){this.fields.add(field);}
+    public void addFields(Symbol field){
+        this.fields.add(field);
+        this.fieldIndex = null;
+    }
 
     @Override
     public List<Symbol> getFields() {
@@ -88,6 +98,7 @@ public class Table implements SymbolTable {
 
     public void setParameters(String methodSignature, List<Symbol> parameters) {
         this.parameters.put(methodSignature, parameters);
+        this.methodIndex.remove(methodSignature);
     }
 
     @Override
@@ -97,10 +108,69 @@ public class Table implements SymbolTable {
 
     public void setLocalVariables(String methodSignature,List<Symbol> local_var) {
         this.local_var.put(methodSignature, local_var);
+        this.methodIndex.remove(methodSignature);
     }
 
     @Override
     public List<Symbol> getLocalVariables(String methodSignature){
         return local_var.get(methodSignature);
     }
+
+    /**
+     * Looks up a variable visible inside a method. Local variables and parameters hide the fields with the same name.
+     * @param methodSignature Method where the variable is used
+     * @param name Name of the variable
+     * @return The symbol and its kind, or null if there is no such variable
+     */
+    public ResolvedSymbol lookup(String methodSignature, String name) {
+        ResolvedSymbol symbol = this.getMethodIndex(methodSignature).get(name);
+        return symbol != null ? symbol : this.lookupField(name);
+    }
+
+    /**
+     * @return The field with the given name and its kind, or null if there is no such field
+     */
+    public ResolvedSymbol lookupField(String name) {
+        if (fieldIndex == null) {
+            fieldIndex = new HashMap<>();
+            for (Symbol field : fields) {
+                fieldIndex.putIfAbsent(field.getName(), new ResolvedSymbol(field, ResolvedSymbol.Kind.FIELD, -1));
+            }
+        }
+        return fieldIndex.get(name);
+    }
+
+    private Map<String, ResolvedSymbol> getMethodIndex(String methodSignature) {
+        return methodIndex.computeIfAbsent(methodSignature, method -> {
+            Map<String, ResolvedSymbol> index = new HashMap<>();
+            List<Symbol> params = Objects.requireNonNullElse(parameters.get(method), List.of());
+            for (int i = 0; i < params.size(); i++) {
+                index.putIfAbsent(params.get(i).getName(), new ResolvedSymbol(params.get(i), ResolvedSymbol.Kind.PARAMETER, i));
+            }
+            for (Symbol local : Objects.requireNonNullElse(local_var.get(method), List.<Symbol>of())) {
+                index.putIfAbsent(local.getName(), new ResolvedSymbol(local, ResolvedSymbol.Kind.LOCAL, -1));
+            }
+            return index;
+        });
+    }
+
+    /**
+     * @return The table itself, or a copy of any other symbol table, so that its lookup methods can be used
+     */
+    public static Table of(SymbolTable symbolTable) {
+        if (symbolTable instanceof Table table) return table;
+
+        Table table = new Table();
+        symbolTable.getImports().forEach(table::addImports);
+        table.setClassName(symbolTable.getClassName());
+        table.setSuper(symbolTable.getSuper());
+        symbolTable.getFields().forEach(table::addFields);
+        for (String method : symbolTable.getMethods()) {
+            table.addMethods(method);
+            table.addReturnType(method, symbolTable.getReturnType(method));
+            table.setParameters(method, symbolTable.getParameters(method));
+            table.setLocalVariables(method, symbolTable.getLocalVariables(method));
+        }
+        return table;
+    }
 }
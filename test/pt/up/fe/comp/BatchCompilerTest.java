@@ -0,0 +1,91 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp2023.BatchCompiler;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test that compiling several files concurrently gives the same results as compiling them one at a time, and that the
+ * generated files are written.
+ */
+public class BatchCompilerTest {
+
+    private static final String CORPUS = "test/pt/up/fe/comp/cpf";
+
+    private static Map<String, String> getConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        return config;
+    }
+
+    private static List<String> describe(BatchCompiler.FileResult result) {
+        List<String> description = new ArrayList<>();
+        description.add(result.getFile().getPath());
+        description.add(String.valueOf(result.getJasminCode()));
+        for (var report : result.getReports()) {
+            description.add(report.getType() + " " + report.getStage() + " " + report.getLine() + " " + report.getMessage());
+        }
+        Collections.sort(description.subList(2, description.size()));
+        return description;
+    }
+
+    @Test
+    public void collectsFolderRecursively() {
+        List<File> files = BatchCompiler.collectInputs(List.of(CORPUS));
+
+        assertFalse(files.isEmpty());
+        for (File file : files) {
+            assertEquals(true, file.getName().endsWith(".jmm"));
+        }
+    }
+
+    @Test
+    public void parallelMatchesSequential() {
+        List<File> files = BatchCompiler.collectInputs(List.of(CORPUS));
+
+        List<List<String>> expected = new ArrayList<>();
+        for (File file : files) {
+            expected.add(describe(BatchCompiler.compileFile(file, getConfig())));
+        }
+
+        // Repeat to give interleavings a chance to show up
+        for (int run = 0; run < 3; run++) {
+            List<BatchCompiler.FileResult> results = new BatchCompiler(getConfig(), 8).compile(files);
+
+            assertEquals(files.size(), results.size());
+            for (int i = 0; i < files.size(); i++) {
+                assertEquals(expected.get(i), describe(results.get(i)));
+            }
+        }
+    }
+
+    @Test
+    public void writesGeneratedFiles() {
+        List<File> files = BatchCompiler.collectInputs(List.of(CORPUS + "/4_jasmin/arithmetic"));
+        File outputDir = SpecsIo.getTempFolder("jmm-batch");
+        SpecsIo.deleteFolderContents(outputDir);
+
+        for (String backend : new String[]{"jasmin", "classfile"}) {
+            Map<String, String> config = getConfig();
+            config.put("backend", backend);
+            config.put("ollir", "direct");
+            List<BatchCompiler.FileResult> results = new BatchCompiler(config, 4).compile(files);
+            List<File> written = BatchCompiler.writeOutputs(results, outputDir);
+
+            String extension = backend.equals("classfile") ? ".class" : ".j";
+            assertEquals(results.stream().filter(BatchCompiler.FileResult::isSuccess).count(), written.size());
+            assertFalse(written.isEmpty());
+            for (File file : written) {
+                assertTrue(file.getPath(), file.isFile() && file.getName().endsWith(extension));
+                assertEquals(outputDir.getAbsoluteFile(), file.getAbsoluteFile().getParentFile());
+            }
+        }
+    }
+}
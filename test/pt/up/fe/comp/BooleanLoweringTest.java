@@ -0,0 +1,143 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the Jasmin code of boolean values, which are computed with bitwise operations where possible, and of conditions
+ * stored in a variable that only a branch reads, which are branched on directly.
+ */
+public class BooleanLoweringTest {
+
+    private static final String BOOLS = """
+            import io;
+            Bools {
+                .construct Bools().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public static inRange(x.i32, lo.i32, hi.i32).bool {
+                    a.bool :=.bool lo.i32 <=.bool x.i32;
+                    b.bool :=.bool x.i32 <.bool hi.i32;
+                    r.bool :=.bool a.bool &&.bool b.bool;
+                    ret.bool r.bool;
+                }
+                .method public static differ(a.bool, b.bool).bool {
+                    r.bool :=.bool a.bool !=.bool b.bool;
+                    ret.bool r.bool;
+                }
+                .method public static negative(x.i32).bool {
+                    r.bool :=.bool x.i32 <.bool 0.i32;
+                    ret.bool r.bool;
+                }
+                .method public static not(a.bool).bool {
+                    r.bool :=.bool !.bool a.bool;
+                    ret.bool r.bool;
+                }
+                .method public static count(n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    Loop:
+                    c.bool :=.bool i.i32 <.bool n.i32;
+                    if (!.bool c.bool) goto End;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 i.i32;
+                }
+                .method public static main(args.array.String).V {
+                    a.bool :=.bool invokestatic(Bools, "inRange", 5.i32, 0.i32, 10.i32).bool;
+                    invokestatic(io, "println", a.bool).V;
+                    b.bool :=.bool invokestatic(Bools, "inRange", 10.i32, 0.i32, 10.i32).bool;
+                    invokestatic(io, "println", b.bool).V;
+                    c.bool :=.bool invokestatic(Bools, "differ", 1.bool, 0.bool).bool;
+                    invokestatic(io, "println", c.bool).V;
+                    d.bool :=.bool invokestatic(Bools, "negative", -3.i32).bool;
+                    invokestatic(io, "println", d.bool).V;
+                    e.bool :=.bool invokestatic(Bools, "not", 1.bool).bool;
+                    invokestatic(io, "println", e.bool).V;
+                    f.i32 :=.i32 invokestatic(Bools, "count", 4.i32).i32;
+                    invokestatic(io, "println", f.i32).V;
+                    ret.V;
+                }
+            }
+            """;
+
+    private static JasminResult generate(String ollirCode) {
+        return new JasminGenerator().toJasmin(new OllirResult(ollirCode, new HashMap<>()));
+    }
+
+    private static String getMethod(String jasminCode, String header) {
+        int start = jasminCode.indexOf(header);
+        assertTrue(jasminCode, start >= 0);
+        return jasminCode.substring(start, jasminCode.indexOf(".end method", start));
+    }
+
+    @Test
+    public void bitwiseAnd() {
+        String inRange = getMethod(generate(BOOLS).getJasminCode(), ".method public static inRange");
+
+        assertTrue(inRange, inRange.contains("\tiand\n"));
+        assertFalse(inRange, inRange.contains("\tifeq"));
+    }
+
+    @Test
+    public void bitwiseComparisons() {
+        String jasminCode = generate(BOOLS).getJasminCode();
+        String differ = getMethod(jasminCode, ".method public static differ");
+        String negative = getMethod(jasminCode, ".method public static negative");
+        String not = getMethod(jasminCode, ".method public static not");
+
+        assertTrue(differ, differ.contains("\tixor\n"));
+        assertFalse(differ, differ.contains("goto"));
+        assertTrue(negative, negative.contains("\tbipush 31\n\tiushr\n"));
+        assertFalse(negative, negative.contains("goto"));
+        assertTrue(not, not.contains("\ticonst_1\n\tixor\n"));
+        assertFalse(not, not.contains("goto"));
+    }
+
+    @Test
+    public void branchesOnCondition() {
+        String count = getMethod(generate(BOOLS).getJasminCode(), ".method public static count");
+
+        // c is only read by the branch, so it is never computed
+        assertTrue(count, count.contains("\tif_icmpge End\n"));
+        assertFalse(count, count.contains("istore_2"));
+        assertFalse(count, count.contains("ixor"));
+    }
+
+    @Test
+    public void foldsBitwiseLiterals() {
+        String code = """
+                import io;
+                Masks {
+                    .construct Masks().V {
+                        invokespecial(this, "<init>").V;
+                    }
+                    .method public static main(args.array.String).V {
+                        a.bool :=.bool 1.bool &.bool 0.bool;
+                        invokestatic(io, "println", a.bool).V;
+                        b.bool :=.bool 0.bool |.bool 1.bool;
+                        invokestatic(io, "println", b.bool).V;
+                        c.bool :=.bool 1.bool ^.bool 1.bool;
+                        invokestatic(io, "println", c.bool).V;
+                        ret.V;
+                    }
+                }
+                """;
+        JasminResult result = generate(code);
+        String main = getMethod(result.getJasminCode(), ".method public static main");
+
+        assertFalse(main, main.contains("iand") || main.contains("ior") || main.contains("ixor"));
+        assertEquals("false\ntrue\nfalse", result.run().trim().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void sameOutput() {
+        assertEquals("true\nfalse\ntrue\ntrue\nfalse\n4", generate(BOOLS).run().trim().replace("\r\n", "\n"));
+    }
+}
@@ -0,0 +1,189 @@
+package pt.up.fe.comp;
+
+import org.junit.Before;
+import org.junit.Test;
+import pt.up.fe.comp.jmm.jasmin.JasminBackend;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp.jmm.report.ReportType;
+import pt.up.fe.comp.jmm.report.Stage;
+import pt.up.fe.comp2023.BatchCompiler;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.cache.BuildCache;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.comp2023.ollir.Ollir;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the on-disk build cache.
+ */
+public class BuildCacheTest {
+
+    private static final File INPUT = new File("test/pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayInit.jmm");
+
+    private File cacheDir;
+
+    @Before
+    public void clearCache() {
+        cacheDir = SpecsIo.getTempFolder("jmm-cache-test");
+        SpecsIo.deleteFolderContents(cacheDir);
+    }
+
+    private static Map<String, String> getConfig(String optimize) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", optimize);
+        config.put("registerAllocation", "-1");
+        return config;
+    }
+
+    @Test
+    public void secondRunHitsJasmin() {
+        BuildCache cache = new BuildCache(cacheDir, BuildCache.DEFAULT_MAX_BYTES, BuildCache.DEFAULT_MAX_AGE_SECONDS);
+
+        var first = BatchCompiler.compileFile(INPUT, getConfig("false"), cache);
+        assertTrue(first.isSuccess());
+        assertEquals(0, cache.getHits(BuildCache.Kind.JASMIN));
+        assertEquals(1, cache.getMisses(BuildCache.Kind.AST));
+
+        var second = BatchCompiler.compileFile(INPUT, getConfig("false"), cache);
+        assertTrue(second.isSuccess());
+        assertEquals(1, cache.getHits(BuildCache.Kind.JASMIN));
+        assertEquals(first.getJasminCode(), second.getJasminCode());
+        assertEquals(first.getClassName(), second.getClassName());
+        assertTrue(cache.getMetrics().contains("jmm_cache_hits_total{stage=\"jasmin\"} 1"));
+    }
+
+    @Test
+    public void jasminHitKeepsOllirCode() {
+        BuildCache cache = new BuildCache(cacheDir, BuildCache.DEFAULT_MAX_BYTES, BuildCache.DEFAULT_MAX_AGE_SECONDS);
+        Map<String, String> config = getConfig("false");
+        config.put("ollir", "direct");
+        String code = SpecsIo.read(INPUT);
+
+        Pipeline.PipelineResult[] results = new Pipeline.PipelineResult[2];
+        for (int i = 0; i < 2; i++) {
+            Pipeline pipeline = Pipeline.createDefault(config);
+            pipeline.setCache(cache);
+            results[i] = pipeline.run(code, config);
+            assertTrue(results[i].getReports().toString(), results[i].isSuccess());
+        }
+
+        // Only the Jasmin code is read, the OLLIR code is not counted as a hit
+        assertNull(results[1].getOllirResult());
+        assertEquals(results[0].getOllirCode(), results[1].getOllirCode());
+        assertEquals(1, cache.getHits(BuildCache.Kind.JASMIN));
+        assertEquals(0, cache.getHits(BuildCache.Kind.OLLIR));
+    }
+
+    @Test
+    public void configIsPartOfKey() {
+        BuildCache cache = new BuildCache(cacheDir, BuildCache.DEFAULT_MAX_BYTES, BuildCache.DEFAULT_MAX_AGE_SECONDS);
+        String code = SpecsIo.read(INPUT);
+
+        assertEquals(cache.key(code, getConfig("false")), cache.key(code, getConfig("false")));
+        assertNotEquals(cache.key(code, getConfig("false")), cache.key(code, getConfig("true")));
+        assertNotEquals(cache.key(code, getConfig("false")), cache.key(code + " ", getConfig("false")));
+
+        // The limit changes the reports stored with the entries
+        Map<String, String> limited = getConfig("false");
+        limited.put("maxErrors", "1");
+        assertNotEquals(cache.key(code, getConfig("false")), cache.key(code, limited));
+    }
+
+    @Test
+    public void missingStagesAreRebuilt() {
+        BuildCache cache = new BuildCache(cacheDir, BuildCache.DEFAULT_MAX_BYTES, BuildCache.DEFAULT_MAX_AGE_SECONDS);
+        var first = BatchCompiler.compileFile(INPUT, getConfig("false"), cache);
+
+        // Only the AST and the OLLIR are left, Jasmin is generated from the cached OLLIR
+        String key = cache.key(SpecsIo.read(INPUT), getConfig("false"));
+        assertTrue(new File(new File(cacheDir, key), "code.j").delete());
+
+        var second = BatchCompiler.compileFile(INPUT, getConfig("false"), cache);
+        assertEquals(first.getJasminCode(), second.getJasminCode());
+        assertEquals(1, cache.getHits(BuildCache.Kind.OLLIR));
+        assertEquals(0, cache.getHits(BuildCache.Kind.AST));
+    }
+
+    @Test
+    public void cachedAstIsParsed() {
+        BuildCache cache = new BuildCache(cacheDir, BuildCache.DEFAULT_MAX_BYTES, BuildCache.DEFAULT_MAX_AGE_SECONDS);
+        var first = BatchCompiler.compileFile(INPUT, getConfig("false"), cache);
+
+        // Only the AST is left, every other stage runs on the AST read from the cache
+        String key = cache.key(SpecsIo.read(INPUT), getConfig("false"));
+        assertTrue(new File(new File(cacheDir, key), "code.j").delete());
+        assertTrue(new File(new File(cacheDir, key), "code.ollir").delete());
+
+        var second = BatchCompiler.compileFile(INPUT, getConfig("false"), cache);
+        assertTrue(second.isSuccess());
+        assertEquals(first.getJasminCode(), second.getJasminCode());
+        assertEquals(1, cache.getHits(BuildCache.Kind.AST));
+    }
+
+    @Test
+    public void evictsBySize() {
+        BuildCache cache = new BuildCache(cacheDir, 1, BuildCache.DEFAULT_MAX_AGE_SECONDS);
+
+        cache.put("a", BuildCache.Kind.OLLIR, "some code");
+        cache.put("b", BuildCache.Kind.OLLIR, "other code");
+
+        assertEquals(0, cache.getSize());
+        assertEquals(2, cache.getEvictions());
+    }
+
+    @Test
+    public void evictsByAge() {
+        BuildCache cache = new BuildCache(cacheDir, BuildCache.DEFAULT_MAX_BYTES, 3600);
+
+        cache.put("old", BuildCache.Kind.OLLIR, "some code");
+        assertTrue(new File(cacheDir, "old").setLastModified(System.currentTimeMillis() - 7200 * 1000));
+        cache.evict();
+
+        assertFalse(cache.get("old", BuildCache.Kind.OLLIR).isPresent());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void compilerIsPartOfKey() {
+        String hash = BuildCache.getCompilerHash();
+
+        assertTrue(hash, hash.matches("[0-9a-f]{64}"));
+        assertEquals(hash, BuildCache.getCompilerHash());
+    }
+
+    @Test
+    public void reportsAreKept() {
+        BuildCache cache = new BuildCache(cacheDir, BuildCache.DEFAULT_MAX_BYTES, BuildCache.DEFAULT_MAX_AGE_SECONDS);
+        JasminBackend backend = ollirResult -> {
+            JasminResult result = new JasminGenerator().toJasmin(ollirResult);
+            List<Report> reports = new ArrayList<>(result.getReports());
+            reports.add(new Report(ReportType.WARNING, Stage.GENERATION, 3, 5, "Some warning"));
+            return new JasminResult(result.getClassName(), result.getJasminCode(), reports, result.getConfig());
+        };
+        Pipeline pipeline = new Pipeline(new SimpleParser(), new Analysis(), new Ollir(), backend);
+        pipeline.setCache(cache);
+
+        pipeline.run(SpecsIo.read(INPUT), getConfig("false"));
+        var second = pipeline.run(SpecsIo.read(INPUT), getConfig("false"));
+
+        assertEquals(1, cache.getHits(BuildCache.Kind.JASMIN));
+        assertEquals(1, second.getReports().size());
+        Report report = second.getReports().get(0);
+        assertEquals(ReportType.WARNING, report.getType());
+        assertEquals(Stage.GENERATION, report.getStage());
+        assertEquals(3, report.getLine());
+        assertEquals(5, report.getColumn());
+        assertEquals("Some warning", report.getMessage());
+    }
+}
@@ -0,0 +1,97 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.ClassFileGenerator;
+import pt.up.fe.comp2023.jasmin.ClassFileResult;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the backend that writes class files directly, with the OLLIR inputs of the Jasmin checkpoint.
+ */
+public class ClassFileGeneratorTest {
+
+    private static JasminResult getResult(String filename) {
+        var ollirResult = new OllirResult(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/" + filename), Collections.emptyMap());
+        return new ClassFileGenerator().toJasmin(ollirResult);
+    }
+
+    @Test
+    public void writesClassFile() {
+        var result = getResult("arithmetic/Arithmetic_and.ollir");
+
+        assertTrue(result instanceof ClassFileResult);
+        byte[] classFile = ((ClassFileResult) result).getClassFile();
+        assertEquals((byte) 0xCA, classFile[0]);
+        assertEquals((byte) 0xFE, classFile[1]);
+        assertEquals((byte) 0xBA, classFile[2]);
+        assertEquals((byte) 0xBE, classFile[3]);
+        assertTrue(result.compile().getName().endsWith(".class"));
+    }
+
+    @Test
+    public void arithmeticAnd() {
+        CpUtils.runJasmin(getResult("arithmetic/Arithmetic_and.ollir"), "0");
+    }
+
+    @Test
+    public void arithmeticLess() {
+        CpUtils.runJasmin(getResult("arithmetic/Arithmetic_less.ollir"), "1");
+    }
+
+    @Test
+    public void ifSimple() {
+        CpUtils.runJasmin(getResult("control_flow/SimpleIfElseStat.ollir"), "Result: 5\nResult: 8");
+    }
+
+    @Test
+    public void ifNotSimple() {
+        CpUtils.runJasmin(getResult("control_flow/SimpleIfElseNot.ollir"), "10\n200");
+    }
+
+    @Test
+    public void whileSimple() {
+        CpUtils.runJasmin(getResult("control_flow/SimpleWhileStat.ollir"), "Result: 0\nResult: 1\nResult: 2");
+    }
+
+    @Test
+    public void mixedSwitch() {
+        CpUtils.runJasmin(getResult("control_flow/SwitchStat.ollir"),
+                "Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5\nResult: 6\nResult: 7");
+    }
+
+    @Test
+    public void mixedNested() {
+        CpUtils.runJasmin(getResult("control_flow/IfWhileNested.ollir"), "Result: 1\nResult: 2\nResult: 1");
+    }
+
+    @Test
+    public void conditionArgs() {
+        CpUtils.runJasmin(getResult("calls/ConditionArgsFuncCall.ollir"), "Result: 10");
+    }
+
+    @Test
+    public void arrayInit() {
+        CpUtils.runJasmin(getResult("arrays/ArrayInit.ollir"), "Result: 5");
+    }
+
+    @Test
+    public void arrayStore() {
+        CpUtils.runJasmin(getResult("arrays/ArrayAccess.ollir"), "Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5");
+    }
+
+    @Test
+    public void complexArrayAccess() {
+        CpUtils.runJasmin(getResult("arrays/ComplexArrayAccess.ollir"), "Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5");
+    }
+
+    @Test
+    public void arrayAsArg() {
+        CpUtils.runJasmin(getResult("arrays/ArrayAsArg.ollir"), "Result: 2");
+    }
+}
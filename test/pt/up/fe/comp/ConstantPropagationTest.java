@@ -0,0 +1,161 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.optimization.ConstantPropagation;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the constant propagation and folding on the AST, with the -o option.
+ */
+public class ConstantPropagationTest {
+
+    private static Map<String, String> getConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("ollir", "direct");
+        config.put("backend", "jasmin");
+        return config;
+    }
+
+    /**
+     * @return The statements of the method "foo" after the propagation
+     */
+    private static List<JmmNode> propagate(String body) {
+        String code = "class Test {\n public int foo(int p) {\n" + body + "\n }\n public static void main(String[] args) {\n }\n}";
+        JmmNode root = new SimpleParser().parse(code, getConfig()).getRootNode();
+        new ConstantPropagation().optimize(root);
+
+        JmmNode method = root.getJmmChild(1).getJmmChild(0);
+        return method.getChildren().stream().filter(child -> child.getKind().equals("MethodBody")).findFirst()
+                .orElseThrow().getChildren();
+    }
+
+    private static JmmNode getReturned(List<JmmNode> statements) {
+        return statements.get(statements.size() - 1).getJmmChild(0);
+    }
+
+    @Test
+    public void propagatesToReturn() {
+        var result = Pipeline.createDefault(getConfig())
+                .run(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/const_prop/PropSimple.jmm"), getConfig());
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        CpUtils.matches(result.getJasminResult(), "(bipush|sipush|ldc) 10\\s+ireturn");
+    }
+
+    @Test
+    public void propagatesAcrossLoopThatDoesNotAssign() {
+        var result = Pipeline.createDefault(getConfig())
+                .run(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/const_prop/PropWithLoop.jmm"), getConfig());
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        CpUtils.matches(result.getJasminResult(), "(bipush|sipush|ldc) 10\\s+imul");
+    }
+
+    @Test
+    public void foldsUntilNothingChanges() {
+        var statements = propagate("int a; int b; a = 2 * 3 + 4; b = (a - 4) * a; return b / 3;");
+
+        JmmNode returned = getReturned(statements);
+        assertEquals("Integer", returned.getKind());
+        assertEquals("20", returned.get("value"));
+    }
+
+    @Test
+    public void foldsComparisonsAndBooleans() {
+        var statements = propagate("boolean a; a = !(1 < 2) || 3 < 4 && true; return p;");
+
+        JmmNode assigned = statements.get(1).getJmmChild(0);
+        assertEquals("Boolean", assigned.getKind());
+        assertEquals("true", assigned.get("value"));
+    }
+
+    @Test
+    public void keepsValuesAssignedInLoop() {
+        var statements = propagate("int i; int n; i = 0; n = 3; while (i < n) { i = i + 1; } return i;");
+
+        JmmNode condition = statements.get(4).getJmmChild(0);
+        assertEquals("Identifier", condition.getJmmChild(0).getKind());
+        assertEquals("Integer", condition.getJmmChild(1).getKind());
+        assertEquals("Identifier", getReturned(statements).getKind());
+    }
+
+    @Test
+    public void keepsOnlyValuesBranchesAgreeOn() {
+        var statements = propagate("int a; int b; if (p < 1) { a = 1; b = 2; } else { a = 1; b = 3; } return a + b;");
+
+        JmmNode sum = getReturned(statements);
+        assertEquals("Integer", sum.getJmmChild(0).getKind());
+        assertEquals("Identifier", sum.getJmmChild(1).getKind());
+    }
+
+    @Test
+    public void doesNotFoldNegativeResultsOrDivisionByZero() {
+        var statements = propagate("int a; a = 2 - 5; return 1 / 0;");
+
+        assertEquals("BinaryOp", statements.get(1).getJmmChild(0).getKind());
+        assertEquals("BinaryOp", getReturned(statements).getKind());
+    }
+
+    @Test
+    public void doesNotPropagateZeroIntoDivisor() {
+        var statements = propagate("int n; int x; n = 0; x = 10 / n; x = 10 % n; return n * 2;");
+
+        assertEquals("Identifier", statements.get(3).getJmmChild(0).getJmmChild(1).getKind());
+        assertEquals("Identifier", statements.get(4).getJmmChild(0).getJmmChild(1).getKind());
+        assertEquals("0", getReturned(statements).get("value"));
+    }
+
+    @Test
+    public void compilesDivisionByZeroThatNeverRuns() {
+        String code = """
+                import io;
+                class Divide {
+                    public int run(int p) {
+                        int n;
+                        int x;
+                        int i;
+                        n = 0;
+                        x = 1;
+                        i = 0;
+                        while (i < p) {
+                            x = 10 / n;
+                            i = i + 1;
+                        }
+                        return x;
+                    }
+
+                    public static void main(String[] args) {
+                        Divide d;
+                        d = new Divide();
+                        io.println(d.run(0));
+                    }
+                }
+                """;
+        var result = Pipeline.createDefault(getConfig()).run(code, getConfig());
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        assertTrue(result.getJasminResult().getJasminCode().contains("idiv"));
+        assertEquals("1", result.getJasminResult().run().trim());
+    }
+
+    @Test
+    public void keepsOutput() {
+        var result = Pipeline.createDefault(getConfig())
+                .run(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleWhileStat.jmm"), getConfig());
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        CpUtils.runJasmin(result.getJasminResult(), "Result: 0\nResult: 1\nResult: 2");
+    }
+}
@@ -0,0 +1,154 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.optimization.CopyPropagation;
+import pt.up.fe.comp2023.optimization.DeadStoreElimination;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the copy propagation and coalescing on OLLIR, with the -o option.
+ */
+public class CopyPropagationTest {
+
+    private static final String COPIES = """
+            Copies {
+                .construct Copies().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public temp(a.i32, b.i32).i32 {
+                    t.i32 :=.i32 a.i32 +.i32 b.i32;
+                    x.i32 :=.i32 t.i32;
+                    ret.i32 x.i32;
+                }
+                .method public overwritten(a.i32).i32 {
+                    x.i32 :=.i32 a.i32;
+                    a.i32 :=.i32 2.i32;
+                    y.i32 :=.i32 x.i32 +.i32 a.i32;
+                    ret.i32 y.i32;
+                }
+                .method public parameters(a.i32, b.i32).i32 {
+                    a.i32 :=.i32 b.i32;
+                    ret.i32 a.i32;
+                }
+                .method public branches(a.i32).i32 {
+                    x.i32 :=.i32 a.i32;
+                    if (a.i32 <.bool 0.i32) goto Negative;
+                    y.i32 :=.i32 x.i32 +.i32 1.i32;
+                    ret.i32 y.i32;
+                    Negative:
+                    ret.i32 x.i32;
+                }
+                .method public loop(n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 i.i32;
+                    Loop:
+                    if (i.i32 >=.bool n.i32) goto End;
+                    t.i32 :=.i32 i.i32 +.i32 1.i32;
+                    i.i32 :=.i32 t.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 s.i32;
+                }
+            }
+            """;
+
+    private static Map<String, String> getConfig(String optimize) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", optimize);
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("ollir", "direct");
+        config.put("backend", "jasmin");
+        return config;
+    }
+
+    private static Method optimize(String name) {
+        ClassUnit classUnit = new OllirResult(COPIES, new HashMap<>()).getOllirClass();
+        new CopyPropagation().optimize(classUnit);
+        new DeadStoreElimination().optimize(classUnit);
+        return classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private static String getReturned(Method method, int position) {
+        ReturnInstruction ret = (ReturnInstruction) method.getInstructions().get(position);
+        return ((Operand) ret.getOperand()).getName();
+    }
+
+    @Test
+    public void computesIntoDestination() {
+        Method method = optimize("temp");
+
+        assertEquals(2, method.getInstructions().size());
+        AssignInstruction assign = (AssignInstruction) method.getInstructions().get(0);
+        assertEquals("x", ((Operand) assign.getDest()).getName());
+        assertEquals(InstructionType.BINARYOPER, assign.getRhs().getInstType());
+        assertFalse(method.getVarTable().containsKey("t"));
+    }
+
+    @Test
+    public void keepsCopyOfOverwrittenVariable() {
+        Method method = optimize("overwritten");
+
+        // x still holds the old value of a when a is written
+        assertEquals(4, method.getInstructions().size());
+        BinaryOpInstruction sum = (BinaryOpInstruction) ((AssignInstruction) method.getInstructions().get(2)).getRhs();
+        assertEquals("x", ((Operand) sum.getLeftOperand()).getName());
+        assertEquals("a", ((Operand) sum.getRightOperand()).getName());
+    }
+
+    @Test
+    public void propagatesBetweenParameters() {
+        Method method = optimize("parameters");
+
+        assertEquals(1, method.getInstructions().size());
+        assertEquals("b", getReturned(method, 0));
+    }
+
+    @Test
+    public void propagatesToEveryBranch() {
+        Method method = optimize("branches");
+
+        assertFalse(method.getVarTable().containsKey("x"));
+        assertEquals("a", getReturned(method, method.getInstructions().size() - 1));
+    }
+
+    @Test
+    public void doesNotPropagateCopyChangedInLoop() {
+        Method method = optimize("loop");
+
+        // s keeps the value i had before the loop, the increment is computed into i
+        assertEquals("s", getReturned(method, method.getInstructions().size() - 1));
+        assertTrue(method.getVarTable().containsKey("s"));
+        assertFalse(method.getVarTable().containsKey("t"));
+    }
+
+    @Test
+    public void optimizedProgramsBehaveTheSame() {
+        for (String path : new String[]{"arrays/ArrayAccess.jmm", "control_flow/SimpleIfElseStat.jmm",
+                "control_flow/SimpleWhileStat.jmm", "limits/LocalLimits.jmm"}) {
+            String code = SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/" + path);
+            for (String ollir : new String[]{"direct", "text"}) {
+                Map<String, String> config = getConfig("false");
+                config.put("ollir", ollir);
+                Map<String, String> optimized = getConfig("true");
+                optimized.put("ollir", ollir);
+
+                var expected = Pipeline.createDefault(config).run(code, config);
+                var result = Pipeline.createDefault(optimized).run(code, optimized);
+                if (!expected.isSuccess()) continue;
+
+                assertTrue(result.getReports().toString(), result.isSuccess());
+                assertEquals(path, expected.getJasminResult().run(), result.getJasminResult().run());
+            }
+        }
+    }
+}
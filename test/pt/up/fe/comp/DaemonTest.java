@@ -0,0 +1,92 @@
+package pt.up.fe.comp;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import pt.up.fe.comp2023.daemon.CompileDaemon;
+import pt.up.fe.comp2023.daemon.DaemonClient;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the compile daemon through its client.
+ */
+public class DaemonTest {
+
+    private CompileDaemon daemon;
+    private DaemonClient client;
+
+    @Before
+    public void startDaemon() throws Exception {
+        daemon = new CompileDaemon(new HashMap<>(), 0, 2);
+        daemon.start();
+        new Thread(daemon::serve).start();
+        client = new DaemonClient(daemon.getPort());
+    }
+
+    @After
+    public void stopDaemon() throws Exception {
+        client.shutdown();
+    }
+
+    @Test
+    public void ping() {
+        assertTrue(client.ping());
+    }
+
+    @Test
+    public void compileWritesJasmin() throws Exception {
+        File outputDir = SpecsIo.getTempFolder("jmm-daemon-test");
+        File input = new File("test/pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayInit.jmm");
+
+        List<String> response = client.compile(List.of(input), outputDir);
+
+        assertEquals(0, DaemonClient.getNumFailed(response));
+        assertTrue(response.get(0).startsWith("RESULT OK"));
+        File jasmin = new File(response.get(0).substring(response.get(0).lastIndexOf(' ') + 1));
+        assertTrue(jasmin.isFile());
+        assertTrue(SpecsIo.read(jasmin).contains(".class"));
+    }
+
+    @Test
+    public void compileReportsErrors() throws Exception {
+        File input = new File(SpecsIo.getTempFolder("jmm-daemon-test"), "SyntaxError.jmm");
+        SpecsIo.write(input, "class SyntaxError { int ; }");
+
+        List<String> response = client.compile(List.of(input), SpecsIo.getTempFolder("jmm-daemon-test"));
+
+        assertEquals(1, DaemonClient.getNumFailed(response));
+        assertTrue(response.get(0).startsWith("RESULT FAILED"));
+    }
+
+    @Test
+    public void rejectsRequestsWithoutToken() throws Exception {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), daemon.getPort());
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8))) {
+            out.println("SHUTDOWN");
+            out.flush();
+
+            assertEquals("ERROR Unauthorized", in.readLine());
+        }
+        assertTrue(client.ping());
+    }
+
+    @Test
+    public void tokenIsOwnerOnly() throws Exception {
+        File tokenFile = CompileDaemon.getTokenFile(daemon.getPort());
+
+        assertTrue(tokenFile.isFile());
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+    }
+}
@@ -0,0 +1,200 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.ollir.Ollir;
+import pt.up.fe.comp2023.optimization.ControlFlow;
+import pt.up.fe.comp2023.optimization.Liveness;
+import pt.up.fe.comp2023.optimization.ReachingDefinitions;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the dataflow analyses against a simple fixpoint over the instructions, with the OLLIR checkpoint inputs.
+ */
+public class DataflowTest {
+
+    private static final String LOOP = """
+            Loop {
+                .construct Loop().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public count(n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                    Loop:
+                    if (i.i32 >=.bool n.i32) goto End;
+                    s.i32 :=.i32 s.i32 +.i32 i.i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 s.i32;
+                }
+            }
+            """;
+
+    private static List<Method> getMethods(String jmmCode) {
+        Map<String, String> config = new HashMap<>();
+        config.put("ollir", "direct");
+
+        var parserResult = new SimpleParser().parse(jmmCode, config);
+        var symbolTable = new Analysis().semanticAnalysis(parserResult).getSymbolTable();
+        ClassUnit classUnit = new Ollir().toOllir(new JmmSemanticsResult(parserResult, symbolTable, Collections.emptyList()))
+                .getOllirClass();
+        return prepare(classUnit);
+    }
+
+    private static List<Method> prepare(ClassUnit classUnit) {
+        classUnit.buildVarTables();
+        for (Method method : classUnit.getMethods()) {
+            ControlFlow.rebuild(method);
+        }
+        return classUnit.getMethods();
+    }
+
+    private static Method getMethod(String ollirCode, String name) {
+        return prepare(new OllirResult(ollirCode, new HashMap<>()).getOllirClass()).stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private static List<Integer> positions(Method method, List<Node> nodes) {
+        List<Integer> positions = new ArrayList<>();
+        for (Node node : nodes) {
+            int position = method.getInstructions().indexOf(node);
+            if (position >= 0) positions.add(position);
+        }
+        return positions;
+    }
+
+    /**
+     * Live-in sets found by updating every instruction until nothing changes
+     */
+    private static BitSet[] naiveLiveness(Method method, Liveness liveness) {
+        int size = method.getInstructions().size();
+        BitSet[] in = new BitSet[size];
+        for (int i = 0; i < size; i++) in[i] = new BitSet();
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = size - 1; i >= 0; i--) {
+                BitSet out = new BitSet();
+                for (int successor : positions(method, method.getInstructions().get(i).getSuccessors())) {
+                    out.or(in[successor]);
+                }
+                for (int def : liveness.getDefs(i)) out.clear(def);
+                for (int use : liveness.getUses(i)) out.set(use);
+                if (!out.equals(in[i])) {
+                    in[i] = out;
+                    changed = true;
+                }
+            }
+        }
+        return in;
+    }
+
+    /**
+     * Reaching definitions before each instruction, found by updating every instruction until nothing changes
+     */
+    private static BitSet[] naiveReaching(Method method, ReachingDefinitions reaching) {
+        int size = method.getInstructions().size();
+        BitSet[] out = new BitSet[size];
+        BitSet[] in = new BitSet[size];
+        for (int i = 0; i < size; i++) out[i] = new BitSet();
+
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int i = 0; i < size; i++) {
+                in[i] = new BitSet();
+                for (int predecessor : positions(method, method.getInstructions().get(i).getPredecessors())) {
+                    in[i].or(out[predecessor]);
+                }
+
+                BitSet result = (BitSet) in[i].clone();
+                int definition = reaching.getDefinition(i);
+                if (definition >= 0) {
+                    for (int other = result.nextSetBit(0); other >= 0; other = result.nextSetBit(other + 1)) {
+                        if (reaching.getVariable(other) == reaching.getVariable(definition)) result.clear(other);
+                    }
+                    result.set(definition);
+                }
+                if (!result.equals(out[i])) {
+                    out[i] = result;
+                    changed = true;
+                }
+            }
+        }
+        return in;
+    }
+
+    @Test
+    public void matchesFixpointOnOllirInputs() {
+        List<File> inputs = SpecsIo.getFilesRecursive(new File("test/pt/up/fe/comp/cpf/3_ollir"), "jmm");
+        int checked = 0;
+
+        for (File input : inputs) {
+            List<Method> methods;
+            try {
+                methods = getMethods(SpecsIo.read(input));
+            } catch (RuntimeException e) {
+                // Statements the OLLIR builder does not support, like switches
+                continue;
+            }
+
+            for (Method method : methods) {
+                String name = input.getName() + ": " + method.getMethodName();
+                Liveness liveness = new Liveness(method);
+                ReachingDefinitions reaching = new ReachingDefinitions(method);
+                BitSet[] liveIn = naiveLiveness(method, liveness);
+                BitSet[] reachingIn = naiveReaching(method, reaching);
+
+                for (int i = 0; i < method.getInstructions().size(); i++) {
+                    assertEquals(name + " live in " + i, liveIn[i], liveness.getLiveIn(i));
+                    assertEquals(name + " reaching " + i, reachingIn[i], reaching.getIn(i));
+                }
+                liveness.walk((liveOut, i) -> assertEquals(name + " live out " + i, liveness.getLiveOut(i), liveOut));
+                checked++;
+            }
+        }
+        assertTrue("Expected methods to check, got " + checked, checked > 10);
+    }
+
+    @Test
+    public void loopValuesAreLiveAroundBackEdge() {
+        Method method = getMethod(LOOP, "count");
+        Liveness liveness = new Liveness(method);
+
+        // Before the goto that closes the loop, i, s and n are read again
+        int jump = method.getInstructions().size() - 2;
+        BitSet expected = new BitSet();
+        for (String var : List.of("n", "i", "s")) expected.set(liveness.indexOf(var));
+        assertEquals(expected, liveness.getLiveOut(jump));
+
+        // The return only needs s
+        BitSet returned = new BitSet();
+        returned.set(liveness.indexOf("s"));
+        assertEquals(returned, liveness.getLiveIn(method.getInstructions().size() - 1));
+    }
+
+    @Test
+    public void definitionsReachThroughLoop() {
+        Method method = getMethod(LOOP, "count");
+        ReachingDefinitions reaching = new ReachingDefinitions(method);
+
+        // The condition sees i from before the loop and from its body
+        assertEquals(List.of(0, 4), reaching.getReaching(2, "i"));
+        // Nothing assigns the parameter
+        assertEquals(List.of(), reaching.getReaching(2, "n"));
+        // After the loop, s was either never added to or assigned in the body
+        assertEquals(List.of(1, 3), reaching.getReaching(6, "s"));
+    }
+}
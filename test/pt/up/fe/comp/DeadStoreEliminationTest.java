@@ -0,0 +1,140 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.optimization.DeadStoreElimination;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the dead store elimination on OLLIR, with the -o option.
+ */
+public class DeadStoreEliminationTest {
+
+    private static final String DEAD = """
+            Dead {
+                .construct Dead().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public chain(arg.i32).i32 {
+                    t1.i32 :=.i32 arg.i32 +.i32 1.i32;
+                    t2.i32 :=.i32 t1.i32 *.i32 2.i32;
+                    unused.i32 :=.i32 t2.i32;
+                    ret.i32 arg.i32;
+                }
+                .method public calls(arg.i32).i32 {
+                    t1.i32 :=.i32 invokevirtual(this, "chain", arg.i32).i32;
+                    t2.i32 :=.i32 arg.i32 /.i32 arg.i32;
+                    t3.i32 :=.i32 arg.i32 /.i32 2.i32;
+                    ret.i32 arg.i32;
+                }
+                .method public overwritten(arg.i32).i32 {
+                    a.i32 :=.i32 1.i32;
+                    if (arg.i32 <.bool 0.i32) goto Else;
+                    a.i32 :=.i32 2.i32;
+                    goto End;
+                    Else:
+                    b.i32 :=.i32 3.i32;
+                    a.i32 :=.i32 arg.i32;
+                    End:
+                    c.i32 :=.i32 4.i32;
+                    ret.i32 a.i32;
+                }
+            }
+            """;
+
+    private static Map<String, String> getConfig(String optimize) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", optimize);
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("ollir", "direct");
+        config.put("backend", "jasmin");
+        return config;
+    }
+
+    private static Method optimize(String name) {
+        ClassUnit classUnit = new OllirResult(DEAD, new HashMap<>()).getOllirClass();
+        new DeadStoreElimination().optimize(classUnit);
+        return classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    @Test
+    public void removesChainsOfDeadTemporaries() {
+        Method method = optimize("chain");
+
+        assertEquals(1, method.getInstructions().size());
+        assertEquals(InstructionType.RETURN, method.getInstructions().get(0).getInstType());
+        // Only this and the parameter are left
+        assertEquals(1, method.getVarTable().size());
+    }
+
+    @Test
+    public void keepsValuesWithSideEffects() {
+        Method method = optimize("calls");
+
+        // The call and the division by a variable stay, the division by a literal goes
+        assertEquals(3, method.getInstructions().size());
+        assertTrue(method.getVarTable().containsKey("t1"));
+        assertTrue(method.getVarTable().containsKey("t2"));
+        assertFalse(method.getVarTable().containsKey("t3"));
+    }
+
+    @Test
+    public void movesLabelsOfRemovedInstructions() {
+        Method method = optimize("overwritten");
+
+        // a = 1, b = 3 and c = 4 are never read
+        assertEquals(5, method.getInstructions().size());
+        Instruction elseTarget = method.getLabels().get("Else");
+        Instruction endTarget = method.getLabels().get("End");
+        assertEquals(InstructionType.ASSIGN, elseTarget.getInstType());
+        assertEquals("arg", ((Operand) ((SingleOpInstruction) ((AssignInstruction) elseTarget).getRhs()).getSingleOperand()).getName());
+        assertEquals(InstructionType.RETURN, endTarget.getInstType());
+    }
+
+    @Test
+    public void optimizedProgramsBehaveTheSame() {
+        for (String path : new String[]{"arrays/ComplexArrayAccess.jmm", "basic/BasicMethodsArray.jmm",
+                "control_flow/SimpleIfElseStat.jmm", "control_flow/SimpleWhileStat.jmm"}) {
+            String code = SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/" + path);
+            var expected = Pipeline.createDefault(getConfig("false")).run(code, getConfig("false"));
+            var optimized = Pipeline.createDefault(getConfig("true")).run(code, getConfig("true"));
+
+            assertTrue(optimized.getReports().toString(), optimized.isSuccess());
+            assertEquals(path, expected.getJasminResult().run(), optimized.getJasminResult().run());
+        }
+    }
+
+    @Test
+    public void lowersLocalsLimit() {
+        String code = """
+                class Locals {
+                    public int foo(int p) {
+                        int a;
+                        int b;
+                        a = p + 1;
+                        b = a * 2;
+                        a = p;
+                        return p;
+                    }
+
+                    public static void main(String[] args) {
+                    }
+                }
+                """;
+        var expected = Pipeline.createDefault(getConfig("false")).run(code, getConfig("false"));
+        var optimized = Pipeline.createDefault(getConfig("true")).run(code, getConfig("true"));
+
+        assertTrue(optimized.getReports().toString(), optimized.isSuccess());
+        assertTrue(CpUtils.getJasminMethod(expected.getJasminResult(), "foo").contains(".limit locals 4"));
+        assertTrue(CpUtils.getJasminMethod(optimized.getJasminResult(), "foo").contains(".limit locals 2"));
+    }
+}
@@ -0,0 +1,92 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.report.Report;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test that the semantic analysis reports each error once, stops at the error limit and reports one error per level of
+ * nesting.
+ */
+public class DiagnosticsTest {
+
+    /**
+     * Generates a method with if and while statements nested to the given depth, with one error at each level
+     */
+    private static String nestedCode(int depth) {
+        StringBuilder code = new StringBuilder("class Deep {\n public static void main(String[] args) {\n int a;\n boolean b;\n b = true;\n");
+        for (int level = 0; level < depth; level++) {
+            code.append(level % 2 == 0 ? "if (b) {\n" : "while (b) {\n");
+            code.append("a = true;\n");
+        }
+        code.append("}\n".repeat(depth));
+        code.append(" }\n}\n");
+        return code.toString();
+    }
+
+    private static List<Report> analyse(String code, Map<String, String> config) {
+        return new Analysis().semanticAnalysis(new SimpleParser().parse(code, config)).getReports();
+    }
+
+    @Test
+    public void reportsEachErrorOnce() {
+        List<Report> reports = analyse(nestedCode(3), new HashMap<>());
+
+        assertEquals(reports.toString(), 3, reports.size());
+        assertEquals(7, reports.get(0).getLine());
+    }
+
+    @Test
+    public void stopsAtErrorLimit() {
+        Map<String, String> config = new HashMap<>();
+        config.put("maxErrors", "2");
+
+        assertEquals(2, analyse(nestedCode(10), config).size());
+    }
+
+    @Test
+    public void limitKeepsFirstError() {
+        String code = """
+                class Wrong {
+                    public static void main(String[] args) {
+                        int a;
+                        a = true;
+                    }
+                }
+                """;
+        for (String maxErrors : new String[]{"0", "1"}) {
+            Map<String, String> config = new HashMap<>();
+            config.put("maxErrors", maxErrors);
+            config.put("optimize", "false");
+            config.put("registerAllocation", "-1");
+
+            // A limit of 0 means no limit, it does not drop the errors
+            List<Report> reports = analyse(nestedCode(3), config);
+            assertEquals(maxErrors.equals("0") ? 3 : 1, reports.size());
+            assertEquals(7, reports.get(0).getLine());
+
+            Pipeline.PipelineResult result = Pipeline.createDefault(config).run(code, config);
+            assertFalse(result.isSuccess());
+            assertEquals(Pipeline.Step.ANALYSIS, result.getFailedStep());
+        }
+    }
+
+    /**
+     * Analyses depths 1 to 50. Each level adds one report; before the reports were shared, each level doubled them, so
+     * the count alone shows the analysis no longer grows exponentially with the depth.
+     */
+    @Test
+    public void scalesWithNestingDepth() {
+        for (int depth = 1; depth <= 50; depth++) {
+            assertEquals(depth, analyse(nestedCode(depth), new HashMap<>()).size());
+        }
+    }
+}
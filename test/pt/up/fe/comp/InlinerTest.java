@@ -0,0 +1,248 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.optimization.CallGraph;
+import pt.up.fe.comp2023.optimization.Inliner;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the call graph and the inlining of the small methods of a class on OLLIR, with the -o option.
+ */
+public class InlinerTest {
+
+    private static final String CALLS = """
+            Calls {
+                .field public total.i32;
+                .construct Calls().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method private square(x.i32).i32 {
+                    t.i32 :=.i32 x.i32 *.i32 x.i32;
+                    ret.i32 t.i32;
+                }
+                .method public static max(a.i32, b.i32).i32 {
+                    if (a.i32 <.bool b.i32) goto Less;
+                    ret.i32 a.i32;
+                    Less:
+                    ret.i32 b.i32;
+                }
+                .method private add(x.i32).V {
+                    t.i32 :=.i32 getfield(this, total.i32).i32;
+                    t.i32 :=.i32 t.i32 +.i32 x.i32;
+                    putfield(this, total.i32, t.i32).V;
+                    ret.V;
+                }
+                .method public visible(x.i32).i32 {
+                    ret.i32 x.i32;
+                }
+                .method private even(n.i32).bool {
+                    if (n.i32 ==.bool 0.i32) goto Zero;
+                    m.i32 :=.i32 n.i32 -.i32 1.i32;
+                    r.bool :=.bool invokevirtual(this, "odd", m.i32).bool;
+                    ret.bool r.bool;
+                    Zero:
+                    ret.bool 1.bool;
+                }
+                .method private odd(n.i32).bool {
+                    if (n.i32 ==.bool 0.i32) goto Zero;
+                    m.i32 :=.i32 n.i32 -.i32 1.i32;
+                    r.bool :=.bool invokevirtual(this, "even", m.i32).bool;
+                    ret.bool r.bool;
+                    Zero:
+                    ret.bool 0.bool;
+                }
+                .method public run(n.i32).i32 {
+                    t.i32 :=.i32 invokevirtual(this, "square", n.i32).i32;
+                    Again:
+                    s.i32 :=.i32 invokestatic(Calls, "max", t.i32, 3.i32).i32;
+                    invokevirtual(this, "add", s.i32).V;
+                    v.i32 :=.i32 invokevirtual(this, "visible", s.i32).i32;
+                    b.bool :=.bool invokevirtual(this, "even", n.i32).bool;
+                    ret.i32 s.i32;
+                }
+            }
+            """;
+
+    private static ClassUnit getClassUnit() {
+        ClassUnit classUnit = new OllirResult(CALLS, new HashMap<>()).getOllirClass();
+        classUnit.buildVarTables();
+        return classUnit;
+    }
+
+    private static Method getMethod(ClassUnit classUnit, String name) {
+        return classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    /**
+     * @return Names of the methods the method still calls
+     */
+    private static List<String> getCalls(Method method) {
+        return method.getInstructions().stream().map(CallGraph::getCall).filter(call -> call != null)
+                .map(call -> ((LiteralElement) call.getSecondArg()).getLiteral().replace("\"", "")).toList();
+    }
+
+    @Test
+    public void buildsCallGraph() {
+        CallGraph callGraph = new CallGraph(getClassUnit());
+
+        assertEquals(List.of("square", "max", "add", "visible", "even"), List.copyOf(callGraph.getCallees("run")));
+        assertTrue(callGraph.isRecursive("even"));
+        assertTrue(callGraph.isRecursive("odd"));
+        assertFalse(callGraph.isRecursive("run"));
+
+        List<String> order = callGraph.getBottomUp();
+        assertTrue(order.indexOf("square") < order.indexOf("run"));
+        assertTrue(order.indexOf("max") < order.indexOf("run"));
+    }
+
+    @Test
+    public void inlinesPrivateAndStaticMethods() {
+        ClassUnit classUnit = getClassUnit();
+        assertEquals(3, new Inliner(Inliner.DEFAULT_BUDGET).optimize(classUnit));
+
+        // A public method may be overridden, and the recursive ones would never stop growing
+        Method run = getMethod(classUnit, "run");
+        assertEquals(List.of("visible", "even"), getCalls(run));
+        assertTrue(run.getVarTable().containsKey("x_square0"));
+        assertTrue(run.getVarTable().containsKey("t_square0"));
+        assertTrue(run.getVarTable().containsKey("t"));
+    }
+
+    @Test
+    public void wiresReturnsToTheNextInstruction() {
+        ClassUnit classUnit = getClassUnit();
+        new Inliner(Inliner.DEFAULT_BUDGET).optimize(classUnit);
+        Method run = getMethod(classUnit, "run");
+        List<Instruction> instructions = run.getInstructions();
+
+        // The label of the call moves to the first instruction that replaces it, the parameter a
+        Instruction again = run.getLabels().get("Again");
+        assertTrue(again instanceof AssignInstruction assign && ((Operand) assign.getDest()).getName().startsWith("a_max"));
+
+        // Both returns of max assign s, and the first one jumps over the second to the inlined add
+        GotoInstruction jump = (GotoInstruction) instructions.stream()
+                .filter(GotoInstruction.class::isInstance).findFirst().orElseThrow();
+        Instruction target = run.getLabels().get(jump.getLabel());
+        assertSame(instructions.get(instructions.indexOf(jump) + 2), target);
+        CondBranchInstruction branch = (CondBranchInstruction) instructions.stream()
+                .filter(CondBranchInstruction.class::isInstance).findFirst().orElseThrow();
+        assertNotEquals("Less", branch.getLabel());
+        assertSame(instructions.get(instructions.indexOf(jump) + 1), run.getLabels().get(branch.getLabel()));
+    }
+
+    @Test
+    public void respectsBudget() {
+        ClassUnit classUnit = getClassUnit();
+        // Only square has at most two instructions
+        assertEquals(1, new Inliner(2).optimize(classUnit));
+        assertEquals(List.of("max", "add", "visible", "even"), getCalls(getMethod(classUnit, "run")));
+    }
+
+    @Test
+    public void skipsMethodsWithoutReturn() {
+        String code = """
+                Spin {
+                    .construct Spin().V {
+                        invokespecial(this, "<init>").V;
+                    }
+                    .method private spin(n.i32).i32 {
+                        Entry:
+                        n.i32 :=.i32 n.i32 +.i32 1.i32;
+                        goto Entry;
+                    }
+                    .method public run(n.i32).i32 {
+                        r.i32 :=.i32 invokevirtual(this, "spin", n.i32).i32;
+                        ret.i32 r.i32;
+                    }
+                }
+                """;
+        ClassUnit classUnit = new OllirResult(code, new HashMap<>()).getOllirClass();
+
+        // The variable of the call would never be assigned
+        assertEquals(0, new Inliner(Inliner.DEFAULT_BUDGET).optimize(classUnit));
+        assertEquals(List.of("spin"), getCalls(getMethod(classUnit, "run")));
+    }
+
+    @Test
+    public void inlinedProgramsBehaveTheSame() {
+        String code = """
+                import io;
+                class Inline {
+                    int total;
+
+                    private int square(int x) {
+                        return x * x;
+                    }
+
+                    public static int max(int a, int b) {
+                        int m;
+                        if (a < b) {
+                            m = b;
+                        } else {
+                            m = a;
+                        }
+                        return m;
+                    }
+
+                    private int add(int x) {
+                        total = total + x;
+                        return total;
+                    }
+
+                    private int twice(int x) {
+                        int y;
+                        y = this.square(x);
+                        y = Inline.max(y, x);
+                        y = y + y;
+                        return y;
+                    }
+
+                    public int run(int n) {
+                        int i;
+                        int s;
+                        int t;
+                        s = 0;
+                        i = 0;
+                        while (i < n) {
+                            t = this.twice(i);
+                            s = s + t;
+                            s = Inline.max(s, 3);
+                            t = this.add(i);
+                            i = i + 1;
+                        }
+                        s = s + total;
+                        return s;
+                    }
+
+                    public static void main(String[] args) {
+                        Inline l;
+                        l = new Inline();
+                        io.println(l.run(10));
+                    }
+                }
+                """;
+        String[] outputs = new String[2];
+        for (int i = 0; i < 2; i++) {
+            Map<String, String> config = new HashMap<>();
+            config.put("optimize", String.valueOf(i == 1));
+            config.put("registerAllocation", "-1");
+            config.put("debug", "false");
+            config.put("ollir", "direct");
+            config.put("backend", "jasmin");
+            var result = Pipeline.createDefault(config).run(code, config);
+            assertTrue(result.getReports().toString(), result.isSuccess());
+            outputs[i] = result.getJasminResult().run();
+        }
+        assertEquals("618", outputs[0].trim());
+        assertEquals(outputs[0], outputs[1]);
+    }
+}
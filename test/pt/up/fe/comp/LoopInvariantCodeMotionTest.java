@@ -0,0 +1,258 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.optimization.BasicBlocks;
+import pt.up.fe.comp2023.optimization.ControlFlow;
+import pt.up.fe.comp2023.optimization.Dominators;
+import pt.up.fe.comp2023.optimization.LoopInvariantCodeMotion;
+import pt.up.fe.comp2023.optimization.NaturalLoops;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the natural loops and the loop invariant code motion on OLLIR, with the -o option.
+ */
+public class LoopInvariantCodeMotionTest {
+
+    private static final String LOOPS = """
+            Loops {
+                .field public f.i32;
+                .construct Loops().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public length(a.array.i32, n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                    Loop:
+                    t1.i32 :=.i32 arraylength(a.array.i32).i32;
+                    if (i.i32 >=.bool t1.i32) goto End;
+                    t2.i32 :=.i32 t1.i32 *.i32 n.i32;
+                    x.i32 :=.i32 n.i32 +.i32 1.i32;
+                    s.i32 :=.i32 s.i32 +.i32 t2.i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 x.i32;
+                }
+                .method public memory(a.array.i32, n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    Loop:
+                    t1.i32 :=.i32 a[n.i32].i32;
+                    if (i.i32 >=.bool t1.i32) goto End;
+                    t2.i32 :=.i32 getfield(this, f.i32).i32;
+                    t3.i32 :=.i32 n.i32 /.i32 t2.i32;
+                    a[i.i32].i32 :=.i32 t3.i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 i.i32;
+                }
+                .method public reads(a.array.i32, n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                    Loop:
+                    t1.i32 :=.i32 a[n.i32].i32;
+                    if (i.i32 >=.bool t1.i32) goto End;
+                    t2.i32 :=.i32 getfield(this, f.i32).i32;
+                    s.i32 :=.i32 s.i32 +.i32 t2.i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 s.i32;
+                }
+                .method public nested(a.array.i32, n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                    Outer:
+                    if (i.i32 >=.bool n.i32) goto EndOuter;
+                    j.i32 :=.i32 0.i32;
+                    Inner:
+                    t1.i32 :=.i32 arraylength(a.array.i32).i32;
+                    if (j.i32 >=.bool t1.i32) goto EndInner;
+                    t2.i32 :=.i32 n.i32 *.i32 n.i32;
+                    t3.i32 :=.i32 i.i32 *.i32 n.i32;
+                    s.i32 :=.i32 s.i32 +.i32 t2.i32;
+                    s.i32 :=.i32 s.i32 +.i32 t3.i32;
+                    j.i32 :=.i32 j.i32 +.i32 1.i32;
+                    goto Inner;
+                    EndInner:
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Outer;
+                    EndOuter:
+                    ret.i32 s.i32;
+                }
+                .method public entered(a.array.i32, n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    if (n.i32 >.bool 0.i32) goto Loop;
+                    ret.i32 i.i32;
+                    Loop:
+                    t1.i32 :=.i32 arraylength(a.array.i32).i32;
+                    if (i.i32 >=.bool t1.i32) goto End;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 i.i32;
+                }
+            }
+            """;
+
+    private static Method getMethod(String name) {
+        ClassUnit classUnit = new OllirResult(LOOPS, new HashMap<>()).getOllirClass();
+        classUnit.buildVarTables();
+        return classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    /**
+     * @return Position of the assignment to the given variable
+     */
+    private static int indexOf(Method method, String dest) {
+        List<Instruction> instructions = method.getInstructions();
+        for (int i = 0; i < instructions.size(); i++) {
+            if (instructions.get(i) instanceof AssignInstruction assign && assign.getDest() instanceof Operand operand
+                    && !(operand instanceof ArrayOperand) && operand.getName().equals(dest)) {
+                return i;
+            }
+        }
+        throw new AssertionError("No assignment to " + dest);
+    }
+
+    private static boolean isBefore(Method method, String dest, String label) {
+        return indexOf(method, dest) < method.getInstructions().indexOf(method.getLabels().get(label));
+    }
+
+    @Test
+    public void findsNestedLoops() {
+        Method method = getMethod("nested");
+        ControlFlow.rebuild(method);
+        BasicBlocks blocks = new BasicBlocks(method);
+        List<NaturalLoops.Loop> loops = new NaturalLoops(new Dominators(blocks)).getLoops();
+
+        assertEquals(2, loops.size());
+        int outer = blocks.getBlock(method.getInstructions().indexOf(method.getLabels().get("Outer")));
+        int inner = blocks.getBlock(method.getInstructions().indexOf(method.getLabels().get("Inner")));
+        assertEquals(inner, loops.get(0).header());
+        assertEquals(outer, loops.get(1).header());
+        assertTrue(loops.get(1).contains(inner));
+        assertFalse(loops.get(0).contains(outer));
+    }
+
+    @Test
+    public void hoistsArrayLengthAndItsUses() {
+        Method method = getMethod("length");
+        new LoopInvariantCodeMotion().optimize(method);
+
+        assertTrue(isBefore(method, "t1", "Loop"));
+        assertTrue(isBefore(method, "t2", "Loop"));
+        // Read after the loop, which may end before assigning it
+        assertFalse(isBefore(method, "x", "Loop"));
+    }
+
+    @Test
+    public void keepsReadsOfChangedMemoryAndDivisions() {
+        Method method = getMethod("memory");
+        new LoopInvariantCodeMotion().optimize(method);
+
+        // The loop stores into an array, which may be a, and the division may be by zero
+        assertFalse(isBefore(method, "t1", "Loop"));
+        assertFalse(isBefore(method, "t2", "Loop"));
+        assertFalse(isBefore(method, "t3", "Loop"));
+
+        method = getMethod("reads");
+        new LoopInvariantCodeMotion().optimize(method);
+        assertTrue(isBefore(method, "t1", "Loop"));
+        assertTrue(isBefore(method, "t2", "Loop"));
+    }
+
+    @Test
+    public void hoistsOutOfNestedLoops() {
+        Method method = getMethod("nested");
+        new LoopInvariantCodeMotion().optimize(method);
+
+        assertTrue(isBefore(method, "t2", "Outer"));
+        // The outer loop may not run the inner one, whose array length may throw, and i changes in the outer loop
+        assertFalse(isBefore(method, "t1", "Outer"));
+        assertTrue(isBefore(method, "t1", "Inner"));
+        assertFalse(isBefore(method, "t3", "Outer"));
+        assertTrue(isBefore(method, "t3", "Inner"));
+    }
+
+    @Test
+    public void redirectsJumpsIntoLoop() {
+        Method method = getMethod("entered");
+        new LoopInvariantCodeMotion().optimize(method);
+
+        List<Instruction> instructions = method.getInstructions();
+        int length = indexOf(method, "t1");
+        CondBranchInstruction entry = (CondBranchInstruction) instructions.get(1);
+        assertSame(instructions.get(length), method.getLabels().get(entry.getLabel()));
+        assertSame(instructions.get(length + 1), method.getLabels().get("Loop"));
+    }
+
+    @Test
+    public void optimizedKernelsBehaveTheSame() {
+        String code = """
+                class Kernel {
+                    int scale;
+
+                    public int run(int[] a, int w) {
+                        int i;
+                        int j;
+                        int s;
+                        scale = 3;
+                        s = 0;
+                        i = 0;
+                        while (i < a.length / w) {
+                            j = 0;
+                            while (j < w) {
+                                a[i * w + j] = a[i * w + j] + scale * w + a.length;
+                                j = j + 1;
+                            }
+                            j = 0;
+                            while (j < a.length) {
+                                s = s + a[j] * scale + i * w;
+                                j = j + 1;
+                            }
+                            i = i + 1;
+                        }
+                        return s;
+                    }
+
+                    public static void main(String[] args) {
+                        Kernel k;
+                        int[] a;
+                        int i;
+                        k = new Kernel();
+                        a = new int[12];
+                        i = 0;
+                        while (i < a.length) {
+                            a[i] = i;
+                            i = i + 1;
+                        }
+                        io.println(k.run(a, 4));
+                        io.println(k.run(a, 20));
+                    }
+                }
+                """;
+        String[] outputs = new String[2];
+        for (int i = 0; i < 2; i++) {
+            Map<String, String> config = new HashMap<>();
+            config.put("optimize", String.valueOf(i == 1));
+            config.put("registerAllocation", "-1");
+            config.put("debug", "false");
+            config.put("ollir", "direct");
+            config.put("backend", "jasmin");
+            var result = Pipeline.createDefault(config).run("import io;\n" + code, config);
+            assertTrue(result.getReports().toString(), result.isSuccess());
+            outputs[i] = result.getJasminResult().run();
+        }
+        assertEquals(outputs[0], outputs[1]);
+    }
+}
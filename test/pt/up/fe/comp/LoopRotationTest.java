@@ -0,0 +1,150 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp2023.Pipeline;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the lowering of while, do-while and for loops with the test at the bottom of the body.
+ */
+public class LoopRotationTest {
+
+    private static final String LOOPS = """
+            import io;
+            class Loops {
+                public int count(int n) {
+                    int i;
+                    i = 0;
+                    while (i < n) {
+                        i = i + 1;
+                    }
+                    return i;
+                }
+
+                public int nested(int n) {
+                    int s;
+                    int j;
+                    s = 0;
+                    for (int i = 0; i < n; i++) {
+                        j = 0;
+                        do {
+                            s += i * j;
+                            j++;
+                        } while (j < i);
+                    }
+                    return s;
+                }
+
+                public int first(int[] a, int x) {
+                    int i;
+                    i = 0;
+                    while (i < a.length && !(a[i] == x)) {
+                        i = i + 1;
+                    }
+                    while (i < a.length) {
+                        return i;
+                    }
+                    return 0 - 1;
+                }
+
+                public static void main(String[] args) {
+                    Loops l;
+                    int[] a;
+                    l = new Loops();
+                    a = new int[4];
+                    a[2] = 7;
+                    io.println(l.count(0));
+                    io.println(l.count(5));
+                    io.println(l.nested(0));
+                    io.println(l.nested(6));
+                    io.println(l.first(a, 7));
+                    io.println(l.first(a, 3));
+                }
+            }
+            """;
+
+    private static Map<String, String> getConfig(boolean optimize, String ollir) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", String.valueOf(optimize));
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("ollir", ollir);
+        config.put("backend", "jasmin");
+        return config;
+    }
+
+    private static Pipeline.PipelineResult run(String code, boolean optimize, String ollir) {
+        Map<String, String> config = getConfig(optimize, ollir);
+        var result = Pipeline.createDefault(config).run(code, config);
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        return result;
+    }
+
+    private static Method getMethod(Pipeline.PipelineResult result, String name) {
+        return result.getOllirResult().getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private static long count(Method method, Class<? extends Instruction> kind) {
+        return method.getInstructions().stream().filter(kind::isInstance).count();
+    }
+
+    @Test
+    public void rotatedLoopsBranchOncePerIteration() {
+        Method method = getMethod(run(LOOPS, true, "direct"), "count");
+
+        // The guard before the loop and the test at the bottom, which jumps back to the body
+        assertEquals(0, count(method, GotoInstruction.class));
+        assertEquals(2, count(method, CondBranchInstruction.class));
+        List<Instruction> instructions = method.getInstructions();
+        CondBranchInstruction test = (CondBranchInstruction) instructions.get(instructions.size() - 2);
+        assertTrue(instructions.indexOf(method.getLabels().get(test.getLabel())) < instructions.size() - 2);
+
+        method = getMethod(run(LOOPS, false, "direct"), "count");
+        assertEquals(1, count(method, GotoInstruction.class));
+    }
+
+    @Test
+    public void loopsBehaveTheSame() {
+        String expected = run(LOOPS, false, "direct").getJasminResult().run();
+        assertEquals("0\n5\n0\n85\n2\n-1", expected.trim().replace("\r\n", "\n"));
+        assertEquals(expected, run(LOOPS, true, "direct").getJasminResult().run());
+    }
+
+    @Test
+    public void textLoopsHaveTheirOwnLabels() {
+        String code = """
+                class Text {
+                    public int run(int n) {
+                        int i;
+                        int j;
+                        i = 0;
+                        while (i < n) {
+                            j = 0;
+                            do {
+                                j = j + 1;
+                            } while (j < i);
+                            i = i + 1;
+                        }
+                        return i;
+                    }
+
+                    public static void main(String[] args) {
+                    }
+                }
+                """;
+        String ollirCode = run(code, false, "text").getOllirResult().getOllirCode();
+
+        assertTrue(ollirCode, ollirCode.contains("goto END_LOOP_0;"));
+        assertTrue(ollirCode, ollirCode.contains("goto BODY_0;"));
+        assertTrue(ollirCode, ollirCode.contains("goto BODY_1;"));
+        // A do-while loop is not guarded
+        assertFalse(ollirCode, ollirCode.contains("END_LOOP_1"));
+    }
+}
@@ -0,0 +1,203 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.jasmin.ClassFileGenerator;
+import pt.up.fe.comp2023.ollir.DirectOllirResult;
+import pt.up.fe.comp2023.ollir.Ollir;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test building the OLLIR classes directly from the AST, with the Java-- inputs of the Jasmin checkpoint.
+ */
+public class OllirBuilderTest {
+
+    private static Map<String, String> getConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("ollir", "direct");
+        config.put("backend", "classfile");
+        return config;
+    }
+
+    /**
+     * Builds the OLLIR class. Some of the inputs are rejected by the semantic analysis, so only its symbol table is used.
+     */
+    private static OllirResult build(String code) {
+        var parserResult = new SimpleParser().parse(code, getConfig());
+        var symbolTable = new Analysis().semanticAnalysis(parserResult).getSymbolTable();
+        var semanticsResult = new JmmSemanticsResult(parserResult, symbolTable, Collections.emptyList());
+
+        var ollirResult = new Ollir().toOllir(semanticsResult);
+        assertTrue(ollirResult instanceof DirectOllirResult);
+        return ollirResult;
+    }
+
+    private static JasminResult compile(String code) {
+        return new ClassFileGenerator().toJasmin(build(code));
+    }
+
+    private static JasminResult getResult(String filename) {
+        return compile(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/" + filename));
+    }
+
+    @Test
+    public void runsInPipeline() {
+        var result = Pipeline.createDefault(getConfig())
+                .run(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayInit.jmm"), getConfig());
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        assertTrue(result.getOllirResult() instanceof DirectOllirResult);
+        CpUtils.runJasmin(result.getJasminResult(), "Result: 5");
+    }
+
+    @Test
+    public void printedOllirCanBeParsed() {
+        var ollirCode = build(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/IfWhileNested.jmm"))
+                .getOllirCode();
+
+        var parsed = new OllirResult(ollirCode, getConfig());
+        assertEquals("IfWhileNested", parsed.getOllirClass().getClassName());
+        CpUtils.runJasmin(new ClassFileGenerator().toJasmin(parsed), "Result: 1\nResult: 2\nResult: 1");
+    }
+
+    @Test
+    public void inheritedAccessorsReturnDirectClass() throws Exception {
+        var parserResult = new SimpleParser().parse(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayInit.jmm"), getConfig());
+        var semanticsResult = new Analysis().semanticAnalysis(parserResult);
+        OllirResult ollirResult = new Ollir().toOllir(semanticsResult);
+
+        // The superclass holds an empty class, none of its methods may be used
+        for (Method method : OllirResult.class.getDeclaredMethods()) {
+            if (Modifier.isPublic(method.getModifiers()) && !Modifier.isStatic(method.getModifiers())) {
+                assertEquals(method.toString(), DirectOllirResult.class,
+                        DirectOllirResult.class.getMethod(method.getName(), method.getParameterTypes()).getDeclaringClass());
+            }
+        }
+
+        assertEquals("ArrayInit", ollirResult.getOllirClass().getClassName());
+        assertTrue(ollirResult.getOllirCode(), ollirResult.getOllirCode().contains("ArrayInit {"));
+        assertSame(semanticsResult.getSymbolTable(), ollirResult.getSymbolTable());
+        assertSame(semanticsResult.getConfig(), ollirResult.getConfig());
+        assertEquals(new ArrayList<>(semanticsResult.getReports()), ollirResult.getReports());
+    }
+
+    @Test
+    public void arithmeticAnd() {
+        CpUtils.runJasmin(getResult("arithmetic/Arithmetic_and.jmm"), "0");
+    }
+
+    @Test
+    public void arithmeticLess() {
+        CpUtils.runJasmin(getResult("arithmetic/Arithmetic_less.jmm"), "1");
+    }
+
+    @Test
+    public void ifSimple() {
+        CpUtils.runJasmin(getResult("control_flow/SimpleIfElseStat.jmm"), "Result: 5\nResult: 8");
+    }
+
+    @Test
+    public void controlFlow() {
+        CpUtils.runJasmin(getResult("control_flow/SimpleControlFlow.jmm"), "Result: 3");
+    }
+
+    @Test
+    public void ifNotSimple() {
+        CpUtils.runJasmin(getResult("control_flow/SimpleIfElseNot.jmm"), "10\n200");
+    }
+
+    @Test
+    public void whileSimple() {
+        CpUtils.runJasmin(getResult("control_flow/SimpleWhileStat.jmm"), "Result: 0\nResult: 1\nResult: 2");
+    }
+
+    @Test
+    public void mixedSwitch() {
+        CpUtils.runJasmin(getResult("control_flow/SwitchStat.jmm"),
+                "Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5\nResult: 6\nResult: 7");
+    }
+
+    @Test
+    public void mixedNested() {
+        CpUtils.runJasmin(getResult("control_flow/IfWhileNested.jmm"), "Result: 1\nResult: 2\nResult: 1");
+    }
+
+    @Test
+    public void conditionArgs() {
+        CpUtils.runJasmin(getResult("calls/ConditionArgsFuncCall.jmm"), "Result: 10");
+    }
+
+    @Test
+    public void arrayInit() {
+        CpUtils.runJasmin(getResult("arrays/ArrayInit.jmm"), "Result: 5");
+    }
+
+    @Test
+    public void arrayStore() {
+        CpUtils.runJasmin(getResult("arrays/ArrayAccess.jmm"), "Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5");
+    }
+
+    @Test
+    public void complexArrayAccess() {
+        CpUtils.runJasmin(getResult("arrays/ComplexArrayAccess.jmm"), "Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5");
+    }
+
+    @Test
+    public void arrayAsArg() {
+        CpUtils.runJasmin(getResult("arrays/ArrayAsArg.jmm"), "Result: 2");
+    }
+
+    @Test
+    public void fieldsLoopsAndShortCircuit() {
+        String code = """
+                import ioPlus;
+                class Counter {
+                    int total;
+
+                    public boolean add(int value) {
+                        total += value;
+                        return true;
+                    }
+
+                    public static void main(String[] args) {
+                        Counter c;
+                        int i;
+                        c = new Counter();
+                        for (i = 0; i < 4; i++) {
+                            if (i < 2 || (c.add(i))) {
+                                ioPlus.printResult(i);
+                            }
+                        }
+                        i = 10;
+                        do {
+                            i--;
+                        } while (5 < i && (c.add(1)));
+                        ioPlus.printResult(c.getTotal());
+                    }
+
+                    public int getTotal() {
+                        return total;
+                    }
+                }
+                """;
+
+        CpUtils.runJasmin(compile(code), "Result: 0\nResult: 1\nResult: 2\nResult: 3\nResult: 9");
+    }
+}
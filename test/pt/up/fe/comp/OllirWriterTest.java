@@ -0,0 +1,115 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.ollir.OllirVisitor;
+import pt.up.fe.comp2023.ollir.OllirWriter;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.StringWriter;
+import java.util.HashMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the writer used to generate OLLIR code.
+ */
+public class OllirWriterTest {
+
+    private static JmmSemanticsResult analyse(String code) {
+        return new Analysis().semanticAnalysis(new SimpleParser().parse(code, new HashMap<>()));
+    }
+
+    private static String generate(JmmSemanticsResult semanticsResult, OllirWriter writer) {
+        OllirVisitor visitor = new OllirVisitor(writer, semanticsResult.getSymbolTable());
+        visitor.visit(semanticsResult.getRootNode());
+        return visitor.getOllirCode();
+    }
+
+    @Test
+    public void indentsLines() {
+        OllirWriter writer = new OllirWriter();
+        writer.append("A {\n").indent().append(".method m().V {\n").indent().line("ret.V;").dedent().line("}").dedent().line("}");
+
+        assertEquals("A {\n\t.method m().V {\n\t\tret.V;\n\t}\n}\n", writer.toString());
+    }
+
+    @Test
+    public void readsLastLine() {
+        OllirWriter writer = new OllirWriter();
+        assertEquals("", writer.lastLine());
+
+        writer.line("A {").indent().line("a.i32 :=.i32 1.i32;").append("ret");
+        assertEquals("a.i32 :=.i32 1.i32;", writer.lastLine());
+    }
+
+    @Test
+    public void assignsBinaryOperations() {
+        var semanticsResult = analyse(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/const_prop/PropWithLoop.jmm"));
+        String code = generate(semanticsResult, new OllirWriter());
+
+        // The result of each operation is stored in the variable of the assignment
+        assertTrue(code, code.contains("temp_0.i32 :=.i32 i.i32 +.i32 1.i32;\n\t\ti.i32 :=.i32 temp_0.i32;\n"));
+        assertTrue(code, code.contains("res.i32 :=.i32 temp_1.i32;\n"));
+    }
+
+    @Test
+    public void streamsFinishedMethods() {
+        StringWriter sink = new StringWriter();
+        OllirWriter writer = new OllirWriter(sink);
+
+        writer.line("A {");
+        writer.beginMethod();
+        writer.line(".method m().V {");
+        assertEquals("A {\n", sink.toString());
+        assertEquals(".method m().V {\n", writer.toString());
+
+        writer.line("}");
+        writer.endMethod();
+        assertEquals("A {\n.method m().V {\n}\n", sink.toString());
+        assertEquals("", writer.toString());
+    }
+
+    @Test
+    public void streamedCodeIsTheSameAsBuffered() {
+        var semanticsResult = analyse(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleWhileStat.jmm"));
+
+        StringWriter sink = new StringWriter();
+        generate(semanticsResult, new OllirWriter(sink));
+
+        assertEquals(generate(semanticsResult, new OllirWriter()), sink.toString());
+    }
+
+    /**
+     * Generates a method with 10k statements, each one a line of OLLIR. The time it takes for 1k to 100k statements is
+     * measured by {@link pt.up.fe.comp.benchmarks.OllirWriterBenchmark}.
+     */
+    @Test
+    public void generatesEveryStatement() {
+        String code = generate(bigMethod(10_000), new OllirWriter());
+
+        assertEquals(10_000, code.split("a\\.i32 :=\\.i32 ", -1).length - 1);
+    }
+
+    /**
+     * @return A method with the given number of assignments, added to the tree directly instead of parsed
+     */
+    private static JmmSemanticsResult bigMethod(int statements) {
+        var semanticsResult = analyse("class Big {\n public static void main(String[] args) {\n int a;\n a = 0;\n }\n}\n");
+
+        JmmNode body = semanticsResult.getRootNode().getJmmChild(1).getJmmChild(0).getJmmChild(4);
+        for (int i = 1; i < statements; i++) {
+            JmmNode value = new JmmNodeImpl("Integer");
+            value.put("value", String.valueOf(i % 100));
+            JmmNode assignment = new JmmNodeImpl("Assignment");
+            assignment.put("var", "a");
+            assignment.add(value);
+            body.add(assignment);
+        }
+        return semanticsResult;
+    }
+}
@@ -0,0 +1,129 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the rewrites of the Jasmin code of each method by the peephole optimizer, with the -o option.
+ */
+public class PeepholeOptimizerTest {
+
+    private static final String LOOPS = """
+            import io;
+            Loops {
+                .construct Loops().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public static max(a.i32, b.i32).i32 {
+                    if (a.i32 >=.bool b.i32) goto Else;
+                    goto EndIf;
+                    Else:
+                    b.i32 :=.i32 a.i32;
+                    EndIf:
+                    ret.i32 b.i32;
+                }
+                .method public static sum(n.i32).i32 {
+                    s.i32 :=.i32 0.i32;
+                    i.i32 :=.i32 0.i32;
+                    Loop:
+                    if (i.i32 >=.bool n.i32) goto End;
+                    t.i32 :=.i32 i.i32 *.i32 i.i32;
+                    s.i32 :=.i32 s.i32 +.i32 t.i32;
+                    u.i32 :=.i32 i.i32 +.i32 1.i32;
+                    i.i32 :=.i32 u.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 s.i32;
+                }
+                .method public static twice(n.i32).i32 {
+                    t.i32 :=.i32 n.i32 +.i32 1.i32;
+                    r.i32 :=.i32 t.i32 *.i32 t.i32;
+                    ret.i32 r.i32;
+                }
+                .method public static main(args.array.String).V {
+                    m.i32 :=.i32 invokestatic(Loops, "max", 3.i32, 7.i32).i32;
+                    invokestatic(io, "println", m.i32).V;
+                    s.i32 :=.i32 invokestatic(Loops, "sum", 10.i32).i32;
+                    invokestatic(io, "println", s.i32).V;
+                    t.i32 :=.i32 invokestatic(Loops, "twice", 4.i32).i32;
+                    invokestatic(io, "println", t.i32).V;
+                    ret.V;
+                }
+            }
+            """;
+
+    private static JasminResult generate(String ollirCode, boolean optimize) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", String.valueOf(optimize));
+        return new JasminGenerator().toJasmin(new OllirResult(ollirCode, config));
+    }
+
+    private static String getMethod(String jasminCode, String header) {
+        int start = jasminCode.indexOf(header);
+        assertTrue(jasminCode, start >= 0);
+        return jasminCode.substring(start, jasminCode.indexOf(".end method", start));
+    }
+
+    private static long countInstructions(String jasminCode) {
+        return jasminCode.lines().filter(line -> line.startsWith("\t") && !line.startsWith("\t.")).count();
+    }
+
+    @Test
+    public void negatesBranchOverGoto() {
+        String max = getMethod(generate(LOOPS, true).getJasminCode(), ".method public static max");
+
+        assertTrue(max, max.contains("\tif_icmplt EndIf\n"));
+        assertFalse(max, max.contains("goto"));
+    }
+
+    @Test
+    public void keepsValuesOnTheStack() {
+        String sum = getMethod(generate(LOOPS, true).getJasminCode(), ".method public static sum");
+
+        // t is only read by the addition, which takes it from the stack, and u is only copied to i
+        assertTrue(sum, sum.contains("\timul\n\tiload_1\n\tiadd\n\tistore_1\n"));
+        assertTrue(sum, sum.contains("\ticonst_1\n\tiadd\n\tistore_2\n\tgoto Loop\n"));
+    }
+
+    @Test
+    public void keepsRegistersReadTwice() {
+        String twice = getMethod(generate(LOOPS, true).getJasminCode(), ".method public static twice");
+
+        assertTrue(twice, twice.contains("\tistore_1\n\tiload_1\n\tiload_1\n\timul\n"));
+    }
+
+    @Test
+    public void onlyWithOptimizations() {
+        assertEquals(generate(LOOPS, false).getJasminCode(), new JasminGenerator()
+                .toJasmin(new OllirResult(LOOPS, new HashMap<>())).getJasminCode());
+        assertTrue(generate(LOOPS, false).getJasminCode().contains("\tgoto EndIf\n"));
+    }
+
+    @Test
+    public void sameOutput() {
+        String expected = generate(LOOPS, false).run();
+
+        assertEquals("7\n285\n25", expected.trim().replace("\r\n", "\n"));
+        assertEquals(expected, generate(LOOPS, true).run());
+    }
+
+    @Test
+    public void checkpointsStillVerify() {
+        for (String file : StackLimitTest.CORPUS) {
+            String ollirCode = SpecsIo.getResource("pt/up/fe/comp/" + file);
+            JasminResult optimized = generate(ollirCode, true);
+
+            assertTrue(file, StackLimitTest.verifies(optimized.getClassName(), optimized.getJasminCode()));
+            assertTrue(file, countInstructions(optimized.getJasminCode())
+                    <= countInstructions(generate(ollirCode, false).getJasminCode()));
+        }
+    }
+}
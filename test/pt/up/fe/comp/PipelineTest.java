@@ -0,0 +1,119 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.comp2023.ollir.Ollir;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the single-pass compilation pipeline.
+ */
+public class PipelineTest {
+
+    private static final String INPUT = "pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayInit.jmm";
+
+    private static Map<String, String> getConfig() {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "false");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        return config;
+    }
+
+    /**
+     * Stages that count how many times they are called
+     */
+    private static class CountingParser extends SimpleParser {
+        int calls;
+
+        @Override
+        public JmmParserResult parse(String code, Map<String, String> config) {
+            calls++;
+            return super.parse(code, config);
+        }
+    }
+
+    private static class CountingAnalysis extends Analysis {
+        int calls;
+
+        @Override
+        public JmmSemanticsResult semanticAnalysis(JmmParserResult parserResult) {
+            calls++;
+            return super.semanticAnalysis(parserResult);
+        }
+    }
+
+    private static class CountingOllir extends Ollir {
+        int calls;
+
+        @Override
+        public OllirResult toOllir(JmmSemanticsResult semanticsResult) {
+            calls++;
+            return super.toOllir(semanticsResult);
+        }
+    }
+
+    private static class CountingBackend extends JasminGenerator {
+        int calls;
+
+        @Override
+        public JasminResult toJasmin(OllirResult ollirResult) {
+            calls++;
+            return super.toJasmin(ollirResult);
+        }
+    }
+
+    @Test
+    public void runsEachStageOnce() {
+        var parser = new CountingParser();
+        var analysis = new CountingAnalysis();
+        var ollir = new CountingOllir();
+        var backend = new CountingBackend();
+
+        var result = new Pipeline(parser, analysis, ollir, backend).run(SpecsIo.getResource(INPUT), getConfig());
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        assertEquals(1, parser.calls);
+        assertEquals(1, analysis.calls);
+        assertEquals(1, ollir.calls);
+        assertEquals(1, backend.calls);
+        assertEquals(Pipeline.Step.values().length, result.getMetrics().size());
+        assertTrue(result.getMetrics().stream().allMatch(metrics -> metrics.nanos() >= 0));
+    }
+
+    @Test
+    public void stopsAfterParseErrors() {
+        var analysis = new CountingAnalysis();
+        var ollir = new CountingOllir();
+
+        var result = new Pipeline(new SimpleParser(), analysis, ollir, new JasminGenerator())
+                .run("class Broken { int a = ; }", getConfig());
+
+        assertFalse(result.isSuccess());
+        assertEquals(Pipeline.Step.PARSE, result.getFailedStep());
+        assertEquals(0, analysis.calls);
+        assertEquals(0, ollir.calls);
+        assertEquals(1, result.getMetrics().size());
+        assertNull(result.getSemanticsResult());
+    }
+
+    @Test
+    public void loadsStagesFromConfigFile() {
+        var result = Pipeline.fromConfigFile("config.properties").run(SpecsIo.getResource(INPUT), getConfig());
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        assertEquals("ArrayInit", result.getJasminResult().getClassName());
+    }
+}
@@ -0,0 +1,142 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.Descriptor;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.optimization.RegisterAllocator;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the register allocation, with the -r option.
+ */
+public class RegisterAllocatorTest {
+
+    private static final String CHAIN = """
+            Chain {
+                .construct Chain().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public soManyRegisters(arg.i32).i32 {
+                    a.i32 :=.i32 0.i32;
+                    b.i32 :=.i32 a.i32;
+                    c.i32 :=.i32 b.i32;
+                    d.i32 :=.i32 c.i32;
+                    ret.i32 d.i32;
+                }
+                .method public sum(arg.i32).i32 {
+                    a.i32 :=.i32 1.i32;
+                    b.i32 :=.i32 2.i32;
+                    c.i32 :=.i32 a.i32 +.i32 b.i32;
+                    ret.i32 c.i32;
+                }
+            }
+            """;
+
+    private static final String CHAIN_JMM = """
+            class Chain {
+                public int soManyRegisters(int arg) {
+                    int a;
+                    int b;
+                    a = 0;
+                    b = a;
+                    return b;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    private static Map<String, String> getConfig(int registers) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "false");
+        config.put("registerAllocation", String.valueOf(registers));
+        config.put("debug", "false");
+        config.put("ollir", "direct");
+        config.put("backend", "classfile");
+        return config;
+    }
+
+    private static Method getMethod(OllirResult ollirResult, String name) {
+        return ollirResult.getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    @Test
+    public void variablesThatAreNeverLiveTogetherShareARegister() {
+        OllirResult ollirResult = new OllirResult(CHAIN, new HashMap<>());
+        ollirResult.getOllirClass().buildVarTables();
+        Method method = getMethod(ollirResult, "soManyRegisters");
+
+        // this, arg and one register for a, b, c and d
+        assertEquals(3, new RegisterAllocator(0).allocate(method));
+
+        Map<String, Descriptor> vars = method.getVarTable();
+        assertEquals(1, vars.get("arg").getVirtualReg());
+        for (String var : new String[]{"a", "b", "c", "d"}) {
+            assertEquals(var, 2, vars.get(var).getVirtualReg());
+        }
+    }
+
+    @Test
+    public void variablesLiveTogetherGetDifferentRegisters() {
+        OllirResult ollirResult = new OllirResult(CHAIN, new HashMap<>());
+        ollirResult.getOllirClass().buildVarTables();
+        Method method = getMethod(ollirResult, "sum");
+
+        // a and b are both live when c is computed, c can reuse one of them
+        assertEquals(4, new RegisterAllocator(0).allocate(method));
+
+        Map<String, Descriptor> vars = method.getVarTable();
+        assertNotEquals(vars.get("a").getVirtualReg(), vars.get("b").getVirtualReg());
+    }
+
+    @Test
+    public void limitsLocalsOfRegAllocInput() {
+        Map<String, String> config = getConfig(3);
+        config.put("ollir", "text");
+        config.put("backend", "jasmin");
+
+        var result = Pipeline.createDefault(config)
+                .run(SpecsIo.getResource("pt/up/fe/comp/cpf/5_optimizations/reg_alloc/regalloc.jmm"), config);
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        String method = CpUtils.getJasminMethod(result.getJasminResult(), "soManyRegisters");
+        assertTrue(method, method.contains(".limit locals 3"));
+    }
+
+    @Test
+    public void reportsTooFewRegisters() {
+        Map<String, String> config = getConfig(2);
+        var result = Pipeline.createDefault(config).run(CHAIN_JMM, config);
+
+        assertFalse(result.isSuccess());
+        assertTrue(result.getReports().toString(),
+                result.getReports().stream().anyMatch(report -> report.getMessage().contains("needs at least 3 registers")));
+    }
+
+    @Test
+    public void keepsLoopValuesApart() {
+        var result = Pipeline.createDefault(getConfig(0))
+                .run(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/control_flow/SimpleWhileStat.jmm"), getConfig(0));
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        CpUtils.runJasmin(result.getJasminResult(), "Result: 0\nResult: 1\nResult: 2");
+    }
+
+    @Test
+    public void keepsArrayValuesApart() {
+        var result = Pipeline.createDefault(getConfig(0))
+                .run(SpecsIo.getResource("pt/up/fe/comp/cpf/4_jasmin/arrays/ComplexArrayAccess.jmm"), getConfig(0));
+
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        CpUtils.runJasmin(result.getJasminResult(), "Result: 1\nResult: 2\nResult: 3\nResult: 4\nResult: 5");
+    }
+}
@@ -0,0 +1,152 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test that the {@code .limit stack} of each method generated by the Jasmin backend is the smallest one the JVM
+ * verifier accepts, with the OLLIR inputs of the Jasmin checkpoints.
+ */
+public class StackLimitTest {
+
+    // The inputs that extend a class that is not there are left out
+    static final List<String> CORPUS = List.of(
+            "cpf/4_jasmin/arithmetic/Arithmetic_and.ollir",
+            "cpf/4_jasmin/arithmetic/Arithmetic_less.ollir",
+            "cpf/4_jasmin/arithmetic/ByteCodeIndexes1.ollir",
+            "cpf/4_jasmin/arithmetic/ByteCodeIndexes2.ollir",
+            "cpf/4_jasmin/arrays/ArrayAccess.ollir",
+            "cpf/4_jasmin/arrays/ArrayAsArg.ollir",
+            "cpf/4_jasmin/arrays/ArrayAsArgCode.ollir",
+            "cpf/4_jasmin/arrays/ArrayInit.ollir",
+            "cpf/4_jasmin/arrays/ComplexArrayAccess.ollir",
+            "cpf/4_jasmin/calls/ConditionArgsFuncCall.ollir",
+            "cpf/4_jasmin/control_flow/IfWhileNested.ollir",
+            "cpf/4_jasmin/control_flow/SimpleControlFlow.ollir",
+            "cpf/4_jasmin/control_flow/SimpleIfElseNot.ollir",
+            "cpf/4_jasmin/control_flow/SimpleIfElseStat.ollir",
+            "cpf/4_jasmin/control_flow/SimpleWhileStat.ollir",
+            "cpf/4_jasmin/control_flow/SwitchStat.ollir",
+            "cpf/4_jasmin/limits/LocalLimits.ollir",
+            "cp2/jasmin/OllirToJasminArithmetics.ollir",
+            "cp2/jasmin/OllirToJasminFields.ollir",
+            "cp2/jasmin/OllirToJasminInvoke.ollir");
+
+    private static final Pattern STACK_LIMIT = Pattern.compile("\\.limit stack (\\d+)");
+
+    private static JasminResult generate(String ollirCode) {
+        return new JasminGenerator().toJasmin(new OllirResult(ollirCode, Collections.emptyMap()));
+    }
+
+    /**
+     * @return Whether the class assembles and the JVM verifier accepts it
+     */
+    static boolean verifies(String className, String jasminCode) {
+        File outputDir = SpecsIo.mkdir(new File(SpecsIo.getTempFolder("jmm-stack-limit"), String.valueOf(System.nanoTime())));
+        new JasminResult(className, jasminCode, new ArrayList<>()).compile(outputDir);
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()}, null)) {
+            // Linking the class verifies all its methods
+            Class.forName(className, true, loader);
+            return true;
+        } catch (VerifyError e) {
+            return false;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return The limits of the code, each one replaced in turn by one less
+     */
+    private static List<String> getSmallerLimits(String jasminCode) {
+        List<String> smaller = new ArrayList<>();
+        Matcher matcher = STACK_LIMIT.matcher(jasminCode);
+        while (matcher.find()) {
+            int limit = Integer.parseInt(matcher.group(1));
+            if (limit == 0) continue;
+            smaller.add(jasminCode.substring(0, matcher.start()) + ".limit stack " + (limit - 1)
+                    + jasminCode.substring(matcher.end()));
+        }
+        return smaller;
+    }
+
+    private static void assertMinimal(String ollirCode) {
+        JasminResult result = generate(ollirCode);
+        String className = result.getClassName();
+
+        assertTrue(result.getJasminCode(), verifies(className, result.getJasminCode()));
+        for (String smaller : getSmallerLimits(result.getJasminCode())) {
+            assertFalse(smaller, verifies(className, smaller));
+        }
+    }
+
+    @Test
+    public void limitsOfCheckpointsAreMinimal() {
+        for (String file : CORPUS) {
+            assertMinimal(SpecsIo.getResource("pt/up/fe/comp/" + file));
+        }
+    }
+
+    @Test
+    public void countsEveryArgumentOfCalls() {
+        String ollirCode = """
+                Calls {
+                    .construct Calls().V {
+                        invokespecial(this, "<init>").V;
+                    }
+                    .method public sum(a.i32, b.i32, c.i32, d.i32).i32 {
+                        t.i32 :=.i32 a.i32 +.i32 b.i32;
+                        ret.i32 t.i32;
+                    }
+                    .method public run(a.array.i32).i32 {
+                        a[1.i32].i32 :=.i32 2.i32;
+                        x.i32 :=.i32 invokevirtual(this, "sum", 1.i32, 2.i32, 3.i32, 4.i32).i32;
+                        invokevirtual(this, "sum", x.i32, x.i32, x.i32, x.i32).i32;
+                        ret.i32 x.i32;
+                    }
+                }
+                """;
+        String jasminCode = generate(ollirCode).getJasminCode();
+
+        // The receiver and the four arguments
+        assertTrue(jasminCode, jasminCode.contains(".method public run([I)I\n\t.limit stack 5\n"));
+        assertTrue(jasminCode, jasminCode.contains(".method public sum(IIII)I\n\t.limit stack 2\n"));
+        assertMinimal(ollirCode);
+    }
+
+    @Test
+    public void followsEveryBranch() {
+        String ollirCode = """
+                Branches {
+                    .construct Branches().V {
+                        invokespecial(this, "<init>").V;
+                    }
+                    .method public run(a.i32, b.i32, f.bool).bool {
+                        if (a.i32 <.bool b.i32) goto Less;
+                        c.bool :=.bool !.bool f.bool;
+                        ret.bool c.bool;
+                        Less:
+                        ret.bool 0.bool;
+                    }
+                }
+                """;
+        String jasminCode = generate(ollirCode).getJasminCode();
+
+        assertTrue(jasminCode, jasminCode.contains(".limit stack 2\n"));
+        assertMinimal(ollirCode);
+    }
+}
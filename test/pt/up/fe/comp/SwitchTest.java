@@ -0,0 +1,203 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the lowering of switch statements to chains of comparisons, and of those chains to a tableswitch or a
+ * lookupswitch by the Jasmin backend.
+ */
+public class SwitchTest {
+
+    private static final String SWITCH = """
+            import io;
+            class Switch {
+                public int f(int a) {
+                    int r;
+                    r = 0;
+                    switch (a) {
+                        case 1: r = 10; break;
+                        case 2:
+                        case 3: r = 30;
+                        case 4: r = r + 1; break;
+                        default: r = 99;
+                    }
+                    return r;
+                }
+
+                public static void main(String[] args) {
+                    Switch s;
+                    s = new Switch();
+                    io.println(s.f(1));
+                    io.println(s.f(2));
+                    io.println(s.f(3));
+                    io.println(s.f(4));
+                    io.println(s.f(7));
+                }
+            }
+            """;
+
+    private static final String SPARSE = """
+            import io;
+            Sparse {
+                .construct Sparse().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public static code(n.i32).i32 {
+                    if (n.i32 ==.bool 1.i32) goto One;
+                    if (n.i32 ==.bool 100.i32) goto Hundred;
+                    if (n.i32 ==.bool -10000.i32) goto Minus;
+                    ret.i32 0.i32;
+                    One:
+                    ret.i32 1.i32;
+                    Hundred:
+                    ret.i32 2.i32;
+                    Minus:
+                    ret.i32 3.i32;
+                }
+                .method public static pair(n.i32).i32 {
+                    if (n.i32 ==.bool 1.i32) goto One;
+                    if (n.i32 ==.bool 2.i32) goto Two;
+                    ret.i32 0.i32;
+                    One:
+                    ret.i32 1.i32;
+                    Two:
+                    ret.i32 2.i32;
+                }
+                .method public static main(args.array.String).V {
+                    a.i32 :=.i32 invokestatic(Sparse, "code", 100.i32).i32;
+                    invokestatic(io, "println", a.i32).V;
+                    b.i32 :=.i32 invokestatic(Sparse, "code", -10000.i32).i32;
+                    invokestatic(io, "println", b.i32).V;
+                    c.i32 :=.i32 invokestatic(Sparse, "code", 5.i32).i32;
+                    invokestatic(io, "println", c.i32).V;
+                    d.i32 :=.i32 invokestatic(Sparse, "pair", 2.i32).i32;
+                    invokestatic(io, "println", d.i32).V;
+                    ret.V;
+                }
+            }
+            """;
+
+    private static Map<String, String> getConfig(boolean optimize, String ollir) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", String.valueOf(optimize));
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("ollir", ollir);
+        config.put("backend", "jasmin");
+        return config;
+    }
+
+    private static Pipeline.PipelineResult run(String code, boolean optimize, String ollir) {
+        Map<String, String> config = getConfig(optimize, ollir);
+        return Pipeline.createDefault(config).run(code, config);
+    }
+
+    private static String getMethod(String jasminCode, String header) {
+        int start = jasminCode.indexOf(header);
+        assertTrue(jasminCode, start >= 0);
+        return jasminCode.substring(start, jasminCode.indexOf(".end method", start));
+    }
+
+    @Test
+    public void switchesBecomeChains() {
+        var result = run(SWITCH, false, "direct");
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        Method f = result.getOllirResult().getOllirClass().getMethods().stream()
+                .filter(method -> method.getMethodName().equals("f")).findFirst().orElseThrow();
+
+        // A comparison for each case and a jump to the default case
+        assertEquals(4, f.getInstructions().stream().filter(CondBranchInstruction.class::isInstance).count());
+        assertTrue(f.getInstructions().get(5) instanceof GotoInstruction);
+    }
+
+    @Test
+    public void casesFallThrough() {
+        for (boolean optimize : new boolean[]{false, true}) {
+            var result = run(SWITCH, optimize, "direct");
+            assertTrue(result.getReports().toString(), result.isSuccess());
+            String f = getMethod(result.getJasminResult().getJasminCode(), ".method public f");
+
+            assertTrue(f, f.contains("\ttableswitch 1 4\n"));
+            assertFalse(f, f.contains("if_icmpeq"));
+            assertEquals("10\n31\n31\n1\n99", result.getJasminResult().run().trim().replace("\r\n", "\n"));
+        }
+    }
+
+    @Test
+    public void sparseCasesUseLookupswitch() {
+        JasminResult result = new JasminGenerator().toJasmin(new OllirResult(SPARSE, new HashMap<>()));
+        String code = getMethod(result.getJasminCode(), ".method public static code");
+        String pair = getMethod(result.getJasminCode(), ".method public static pair");
+
+        assertTrue(code, code.contains("\tlookupswitch\n\t\t-10000 : Minus\n\t\t1 : One\n\t\t100 : Hundred\n"));
+        // Two comparisons are cheaper than a switch
+        assertFalse(pair, pair.contains("switch"));
+        assertEquals("2\n3\n0\n2", result.run().trim().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void textSwitchesHaveTheirOwnLabels() {
+        String code = """
+                class Text {
+                    public int run(int n) {
+                        int r;
+                        r = 0;
+                        switch (n) {
+                            case 0: r = 1; break;
+                            case 1: r = 2;
+                            default: r = 3;
+                        }
+                        return r;
+                    }
+
+                    public static void main(String[] args) {
+                    }
+                }
+                """;
+        var result = run(code, false, "text");
+        assertTrue(result.getReports().toString(), result.isSuccess());
+        String ollirCode = result.getOllirResult().getOllirCode();
+
+        assertTrue(ollirCode, ollirCode.contains("if (n.i32 ==.bool 1.i32) goto CASE_0_1;"));
+        assertTrue(ollirCode, ollirCode.contains("goto DEFAULT_0;"));
+        assertTrue(ollirCode, ollirCode.contains("goto END_SWITCH_0;"));
+    }
+
+    @Test
+    public void invalidSwitches() {
+        String code = """
+                class Invalid {
+                    public int run(int n, boolean b) {
+                        switch (b) {
+                            default: n = 0;
+                        }
+                        switch (n) {
+                            case 1: n = 2; break;
+                            case 1: n = 3; break;
+                            default: n = 4;
+                        }
+                        return n;
+                    }
+
+                    public static void main(String[] args) {
+                    }
+                }
+                """;
+        var result = run(code, false, "direct");
+        assertFalse(result.isSuccess());
+        String reports = result.getReports().toString();
+
+        assertTrue(reports, reports.contains("Expected an 'int' inside Switch but received a 'boolean'."));
+        assertTrue(reports, reports.contains("Duplicate case label '1'."));
+    }
+}
@@ -2,10 +2,14 @@ package pt.up.fe.comp;
 
 import org.junit.Test;
 import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp2023.symbol.table.ResolvedSymbol;
+import pt.up.fe.comp2023.symbol.table.Table;
 import pt.up.fe.specs.util.SpecsIo;
 
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test variable lookup.
@@ -124,4 +128,25 @@ public class SymbolTableTest {
     	assertEquals("Parameter 3", "Parameters", parameters.get(2).getType().getName());
     }
 
+    @Test
+    public void Lookup() {
+    	var semantics = test("symboltable/MethodsAndFields.jmm",false);
+    	var st = Table.of(semantics.getSymbolTable());
+
+    	var param = st.lookup("all", "b");
+    	assertEquals(ResolvedSymbol.Kind.PARAMETER, param.kind());
+    	assertEquals(1, param.paramIndex());
+    	assertEquals("boolean", param.getType().getName());
+
+    	var local = st.lookup("all", "c");
+    	assertEquals(ResolvedSymbol.Kind.LOCAL, local.kind());
+    	assertTrue(local.getType().isArray());
+
+    	var field = st.lookup("all", "field3");
+    	assertEquals(ResolvedSymbol.Kind.FIELD, field.kind());
+    	assertEquals(-1, field.paramIndex());
+
+    	assertNull(st.lookup("getField1", "a"));
+    }
+
 }
@@ -0,0 +1,226 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.ollir.Ollir;
+import pt.up.fe.comp2023.optimization.CallGraph;
+import pt.up.fe.comp2023.optimization.TailRecursionElimination;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the replacement of the tail calls of a method to itself by a jump to its start, with the -o option.
+ */
+public class TailRecursionEliminationTest {
+
+    private static final String CALLS = """
+            Calls {
+                .construct Calls().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method private sum(n.i32, acc.i32).i32 {
+                    if (n.i32 >=.bool 1.i32) goto Else;
+                    r.i32 :=.i32 acc.i32;
+                    goto EndIf;
+                    Else:
+                    m.i32 :=.i32 n.i32 -.i32 1.i32;
+                    t.i32 :=.i32 acc.i32 +.i32 n.i32;
+                    r.i32 :=.i32 invokevirtual(this, "sum", m.i32, t.i32).i32;
+                    EndIf:
+                    ret.i32 r.i32;
+                }
+                .method public static swap(a.i32, b.i32, n.i32).i32 {
+                    if (n.i32 <.bool 1.i32) goto Done;
+                    m.i32 :=.i32 n.i32 -.i32 1.i32;
+                    r.i32 :=.i32 invokestatic(Calls, "swap", b.i32, a.i32, m.i32).i32;
+                    ret.i32 r.i32;
+                    Done:
+                    ret.i32 a.i32;
+                }
+                .method private fac(n.i32).i32 {
+                    if (n.i32 >=.bool 1.i32) goto Else;
+                    r.i32 :=.i32 1.i32;
+                    goto EndIf;
+                    Else:
+                    m.i32 :=.i32 n.i32 -.i32 1.i32;
+                    t.i32 :=.i32 invokevirtual(this, "fac", m.i32).i32;
+                    r.i32 :=.i32 n.i32 *.i32 t.i32;
+                    EndIf:
+                    ret.i32 r.i32;
+                }
+                .method public visible(n.i32).i32 {
+                    r.i32 :=.i32 invokevirtual(this, "visible", n.i32).i32;
+                    ret.i32 r.i32;
+                }
+            }
+            """;
+
+    private static ClassUnit optimize() {
+        ClassUnit classUnit = new OllirResult(CALLS, new HashMap<>()).getOllirClass();
+        assertEquals(2, new TailRecursionElimination().optimize(classUnit));
+        return classUnit;
+    }
+
+    private static Method getMethod(ClassUnit classUnit, String name) {
+        return classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private static boolean hasCalls(Method method) {
+        return method.getInstructions().stream().anyMatch(instruction -> CallGraph.getCall(instruction) != null);
+    }
+
+    @Test
+    public void replacesTailCallsByJumps() {
+        Method method = getMethod(optimize(), "sum");
+        List<Instruction> instructions = method.getInstructions();
+
+        assertFalse(hasCalls(method));
+        // The arguments are assigned to the parameters, and the jump goes back to the first instruction
+        GotoInstruction jump = (GotoInstruction) instructions.get(instructions.size() - 2);
+        assertSame(instructions.get(0), method.getLabels().get(jump.getLabel()));
+        AssignInstruction n = (AssignInstruction) instructions.get(instructions.size() - 4);
+        AssignInstruction acc = (AssignInstruction) instructions.get(instructions.size() - 3);
+        assertEquals("n", ((Operand) n.getDest()).getName());
+        assertEquals("acc", ((Operand) acc.getDest()).getName());
+    }
+
+    @Test
+    public void swapsParamsThroughTemporaries() {
+        Method method = getMethod(optimize(), "swap");
+
+        assertFalse(hasCalls(method));
+        // a is assigned b before b is assigned the old a
+        List<Instruction> instructions = method.getInstructions();
+        AssignInstruction temporary = (AssignInstruction) instructions.get(2);
+        assertEquals("a", ((Operand) ((SingleOpInstruction) temporary.getRhs()).getSingleOperand()).getName());
+        assertEquals("a", ((Operand) ((AssignInstruction) instructions.get(3)).getDest()).getName());
+        assertEquals("b", ((Operand) ((AssignInstruction) instructions.get(4)).getDest()).getName());
+        assertTrue(method.getVarTable().containsKey(((Operand) temporary.getDest()).getName()));
+    }
+
+    @Test
+    public void removesReturnAfterJump() {
+        Method method = getMethod(optimize(), "swap");
+        List<Instruction> instructions = method.getInstructions();
+
+        // The return of the result of the call can no longer be reached, and its variable is gone
+        int jump = instructions.size() - 2;
+        assertTrue(instructions.get(jump) instanceof GotoInstruction);
+        assertSame(method.getLabels().get("Done"), instructions.get(jump + 1));
+        assertFalse(method.getVarTable().containsKey("r"));
+    }
+
+    @Test
+    public void keepsOtherCalls() {
+        ClassUnit classUnit = optimize();
+
+        // The result of fac is multiplied before it is returned, and visible may be overridden
+        assertTrue(hasCalls(getMethod(classUnit, "fac")));
+        assertTrue(hasCalls(getMethod(classUnit, "visible")));
+    }
+
+    @Test
+    public void deepRecursionDoesNotOverflow() {
+        String code = """
+                import io;
+                class Deep {
+                    public static int count(int n, int acc) {
+                        int r;
+                        if (n < 1) {
+                            r = acc;
+                        } else {
+                            r = Deep.count(n - 1, acc + 1);
+                        }
+                        return r;
+                    }
+
+                    private int swap(int a, int b, int n) {
+                        int r;
+                        if (n < 1) {
+                            r = a - b;
+                        } else {
+                            r = this.swap(b, a, n - 1);
+                        }
+                        return r;
+                    }
+
+                    public int run(int n) {
+                        int r;
+                        r = this.swap(1, 2, n);
+                        return r;
+                    }
+
+                    public static void main(String[] args) {
+                        int r;
+                        Deep d;
+                        r = Deep.count(1000000, 0);
+                        io.println(r);
+                        d = new Deep();
+                        io.println(d.run(1000001));
+                    }
+                }
+                """;
+        var result = run(code, "jasmin");
+        assertTrue(result.getReports().toString(), result.isSuccess());
+
+        assertEquals("1000000\n1", result.getJasminResult().run().trim().replace("\r\n", "\n"));
+    }
+
+    @Test
+    public void directReturnOfCall() {
+        String code = """
+                import io;
+                class Tre {
+                    public static int count(int n, int acc) {
+                        if (n < 1) {
+                            acc = acc + 0;
+                        } else {
+                            return Tre.count(n - 1, acc + 1);
+                        }
+                        return acc;
+                    }
+
+                    public static void main(String[] args) {
+                        io.println(Tre.count(1000000, 0));
+                    }
+                }
+                """;
+        for (String backend : new String[]{"jasmin", "classfile"}) {
+            var result = run(code, backend);
+            assertTrue(result.getReports().toString(), result.isSuccess());
+            Method count = getMethod(result.getOllirResult().getOllirClass(), "count");
+            assertFalse(hasCalls(count));
+
+            assertEquals("1000000", result.getJasminResult().run().trim());
+        }
+    }
+
+    @Test
+    public void canBeDisabled() {
+        for (String disabled : new String[]{"", "INLINING, TAIL_RECURSION"}) {
+            Map<String, String> config = new HashMap<>();
+            config.put("optimize", "true");
+            config.put("disabledPasses", disabled);
+            OllirResult ollirResult = new Ollir().optimize(new OllirResult(CALLS, config));
+
+            assertEquals(!disabled.isEmpty(), hasCalls(getMethod(ollirResult.getOllirClass(), "sum")));
+        }
+    }
+
+    private static Pipeline.PipelineResult run(String code, String backend) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", "true");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("ollir", "direct");
+        config.put("backend", backend);
+        return Pipeline.createDefault(config).run(code, config);
+    }
+}
@@ -0,0 +1,246 @@
+package pt.up.fe.comp;
+
+import org.junit.Test;
+import org.specs.comp.ollir.*;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.optimization.BasicBlocks;
+import pt.up.fe.comp2023.optimization.ControlFlow;
+import pt.up.fe.comp2023.optimization.Dominators;
+import pt.up.fe.comp2023.optimization.ValueNumbering;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test the dominator tree and the value numbering on OLLIR, with the -o option.
+ */
+public class ValueNumberingTest {
+
+    private static final String VALUES = """
+            Values {
+                .construct Values().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public repeated(a.i32, b.i32).i32 {
+                    t1.i32 :=.i32 a.i32 *.i32 b.i32;
+                    t2.i32 :=.i32 b.i32 *.i32 a.i32;
+                    t3.i32 :=.i32 a.i32 -.i32 b.i32;
+                    t4.i32 :=.i32 b.i32 -.i32 a.i32;
+                    ret.i32 t4.i32;
+                }
+                .method public written(a.i32, b.i32).i32 {
+                    t1.i32 :=.i32 a.i32 +.i32 b.i32;
+                    t2.i32 :=.i32 t1.i32;
+                    t1.i32 :=.i32 0.i32;
+                    t3.i32 :=.i32 a.i32 +.i32 b.i32;
+                    a.i32 :=.i32 1.i32;
+                    t4.i32 :=.i32 a.i32 +.i32 b.i32;
+                    ret.i32 t4.i32;
+                }
+                .method public branches(a.i32, b.i32).i32 {
+                    t1.i32 :=.i32 a.i32 *.i32 b.i32;
+                    if (a.i32 <.bool 0.i32) goto Else;
+                    t2.i32 :=.i32 a.i32 *.i32 b.i32;
+                    t3.i32 :=.i32 a.i32 +.i32 1.i32;
+                    goto End;
+                    Else:
+                    b.i32 :=.i32 2.i32;
+                    End:
+                    t4.i32 :=.i32 a.i32 *.i32 b.i32;
+                    t5.i32 :=.i32 a.i32 +.i32 1.i32;
+                    ret.i32 t5.i32;
+                }
+                .method public loop(a.i32, n.i32).i32 {
+                    t1.i32 :=.i32 a.i32 *.i32 n.i32;
+                    Loop:
+                    t2.i32 :=.i32 a.i32 *.i32 n.i32;
+                    if (a.i32 >=.bool n.i32) goto End;
+                    a.i32 :=.i32 a.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 t2.i32;
+                }
+                .method public arrays(x.array.i32, y.array.i32, i.i32).i32 {
+                    t1.i32 :=.i32 x[i.i32].i32;
+                    t2.i32 :=.i32 x[i.i32].i32;
+                    y[i.i32].i32 :=.i32 5.i32;
+                    t3.i32 :=.i32 x[i.i32].i32;
+                    t4.i32 :=.i32 y[i.i32].i32;
+                    invokevirtual(this, "arrays", x.array.i32, y.array.i32, i.i32).i32;
+                    t5.i32 :=.i32 x[i.i32].i32;
+                    t6.i32 :=.i32 arraylength(x.array.i32).i32;
+                    t7.i32 :=.i32 arraylength(x.array.i32).i32;
+                    ret.i32 t7.i32;
+                }
+            }
+            """;
+
+    private static Method getMethod(String name) {
+        ClassUnit classUnit = new OllirResult(VALUES, new HashMap<>()).getOllirClass();
+        return classUnit.getMethods().stream()
+                .filter(method -> method.getMethodName().equals(name)).findFirst().orElseThrow();
+    }
+
+    private static Method optimize(String name) {
+        Method method = getMethod(name);
+        new ValueNumbering().optimize(method);
+        return method;
+    }
+
+    /**
+     * @return Variable copied by the assignment to the given variable, or null if the assignment computes something
+     */
+    private static String getCopied(Method method, String dest) {
+        for (Instruction instruction : method.getInstructions()) {
+            if (instruction instanceof AssignInstruction assign && assign.getDest() instanceof Operand operand
+                    && !(operand instanceof ArrayOperand) && operand.getName().equals(dest)) {
+                if (assign.getRhs() instanceof SingleOpInstruction single && !(single.getSingleOperand() instanceof ArrayOperand)) {
+                    Element copied = single.getSingleOperand();
+                    return copied.isLiteral() ? ((LiteralElement) copied).getLiteral() : ((Operand) copied).getName();
+                }
+                return null;
+            }
+        }
+        throw new AssertionError("No assignment to " + dest);
+    }
+
+    @Test
+    public void dominatorsOfBranchesAndLoops() {
+        Method method = getMethod("branches");
+        ControlFlow.rebuild(method);
+        BasicBlocks blocks = new BasicBlocks(method);
+        Dominators dominators = new Dominators(blocks);
+
+        int entry = blocks.getBlock(0);
+        int then = blocks.getBlock(2);
+        int otherwise = blocks.getBlock(method.getInstructions().indexOf(method.getLabels().get("Else")));
+        int end = blocks.getBlock(method.getInstructions().indexOf(method.getLabels().get("End")));
+
+        assertEquals(-1, dominators.getImmediateDominator(entry));
+        assertEquals(entry, dominators.getImmediateDominator(then));
+        assertEquals(entry, dominators.getImmediateDominator(otherwise));
+        assertEquals(entry, dominators.getImmediateDominator(end));
+        assertFalse(dominators.dominates(then, end));
+        assertTrue(dominators.dominates(entry, end));
+
+        method = getMethod("loop");
+        ControlFlow.rebuild(method);
+        blocks = new BasicBlocks(method);
+        dominators = new Dominators(blocks);
+        int header = blocks.getBlock(1);
+        int body = blocks.getBlock(3);
+        assertEquals(header, dominators.getImmediateDominator(body));
+        assertEquals(List.of(body, blocks.getBlock(method.getInstructions().size() - 1)).stream().sorted().toList(),
+                dominators.getChildren(header).stream().sorted().toList());
+    }
+
+    @Test
+    public void reusesRepeatedOperations() {
+        Method method = optimize("repeated");
+
+        // Multiplication commutes, subtraction does not
+        assertEquals("t1", getCopied(method, "t2"));
+        assertNull(getCopied(method, "t4"));
+    }
+
+    @Test
+    public void doesNotReuseWrittenValues() {
+        Method method = optimize("written");
+
+        // t1 no longer holds a + b, and a changes before t4
+        assertEquals("t1", getCopied(method, "t2"));
+        assertNull(getCopied(method, "t3"));
+        assertNull(getCopied(method, "t4"));
+    }
+
+    @Test
+    public void reusesValuesOfDominatingBlocks() {
+        Method method = optimize("branches");
+
+        assertEquals("t1", getCopied(method, "t2"));
+        // b may change in the else branch, and a + 1 is only computed in the other one
+        assertNull(getCopied(method, "t4"));
+        assertNull(getCopied(method, "t5"));
+    }
+
+    @Test
+    public void doesNotReuseValuesChangedInLoop() {
+        Method method = optimize("loop");
+
+        assertNull(getCopied(method, "t2"));
+    }
+
+    @Test
+    public void reusesArrayLoadsUntilStoresAndCalls() {
+        Method method = optimize("arrays");
+
+        assertEquals("t1", getCopied(method, "t2"));
+        // y may be the same array as x
+        assertNull(getCopied(method, "t3"));
+        assertEquals("5", getCopied(method, "t4"));
+        assertNull(getCopied(method, "t5"));
+        assertEquals("t6", getCopied(method, "t7"));
+    }
+
+    @Test
+    public void optimizedKernelsBehaveTheSame() {
+        String code = """
+                class Kernel {
+                    public int run(int[] a, int w) {
+                        int i;
+                        int j;
+                        int s;
+                        s = 0;
+                        i = 0;
+                        while (i < w) {
+                            j = 0;
+                            while (j < w) {
+                                a[i * w + j] = a[i * w + j] + a[i * w + j] + i;
+                                s = s + a[i * w + j] * (i * w + j);
+                                if (s < 500) {
+                                    s = s + i * w + j;
+                                } else {
+                                    s = s - (i * w + j);
+                                }
+                                s = s + a[j] + i * w + j;
+                                j = j + 1;
+                            }
+                            i = i + 1;
+                        }
+                        return s;
+                    }
+
+                    public static void main(String[] args) {
+                        Kernel k;
+                        int[] a;
+                        int i;
+                        k = new Kernel();
+                        a = new int[9];
+                        i = 0;
+                        while (i < a.length) {
+                            a[i] = i;
+                            i = i + 1;
+                        }
+                        io.println(k.run(a, 3));
+                    }
+                }
+                """;
+        String[] outputs = new String[2];
+        for (int i = 0; i < 2; i++) {
+            Map<String, String> config = new HashMap<>();
+            config.put("optimize", String.valueOf(i == 1));
+            config.put("registerAllocation", "-1");
+            config.put("debug", "false");
+            config.put("ollir", "direct");
+            config.put("backend", "jasmin");
+            var result = Pipeline.createDefault(config).run("import io;\n" + code, config);
+            assertTrue(result.getReports().toString(), result.isSuccess());
+            outputs[i] = result.getJasminResult().run();
+        }
+        assertEquals(outputs[0], outputs[1]);
+    }
+}
@@ -0,0 +1,60 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+
+import java.util.*;
+
+/**
+ * Measures the semantic analysis of a method with many local variables and statements, where every statement looks
+ * up its variables. Only the analysis is measured, the code is parsed once.
+ * <p>
+ * Usage: AnalysisBenchmark [locals] [statements] [repetitions]
+ */
+public class AnalysisBenchmark {
+
+    public static void main(String[] args) {
+        int locals = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int statements = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int repetitions = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+
+        JmmParserResult parserResult = new SimpleParser().parse(generate(locals, statements), new HashMap<>());
+
+        List<Long> samples = new ArrayList<>();
+        for (int i = 0; i < repetitions + 1; i++) {
+            long start = System.nanoTime();
+            int reports = new Analysis().semanticAnalysis(parserResult).getReports().size();
+            if (reports > 0) throw new IllegalStateException("Expected no reports, got " + reports);
+            // The first run warms up the JVM
+            if (i > 0) samples.add(System.nanoTime() - start);
+        }
+
+        System.out.println(locals + " locals, " + statements + " statements, " + repetitions + " repetitions");
+        print("analysis", samples);
+    }
+
+    /**
+     * Generates a method that declares the locals and assigns to each of them the sum of two others
+     */
+    private static String generate(int locals, int statements) {
+        StringBuilder code = new StringBuilder("class Locals {\n public static void main(String[] args) {\n");
+        for (int i = 0; i < locals; i++) {
+            code.append("int v").append(i).append(";\n");
+        }
+        for (int i = 0; i < statements; i++) {
+            code.append("v").append(i % locals).append(" = v").append((i * 7) % locals)
+                    .append(" + v").append((i * 13) % locals).append(";\n");
+        }
+        code.append(" }\n}\n");
+        return code.toString();
+    }
+
+    private static void print(String name, List<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        double mean = sorted.stream().mapToLong(Long::longValue).average().orElse(0) / 1e6;
+        double median = sorted.get(sorted.size() / 2) / 1e6;
+        System.out.printf("%s: median %8.2f ms, mean %8.2f ms, min %8.2f ms%n", name, median, mean, sorted.get(0) / 1e6);
+    }
+}
@@ -0,0 +1,89 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp.jmm.jasmin.JasminBackend;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.ClassFileGenerator;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Compares the Jasmin backend (generate Jasmin code, then assemble it with Jasmin) against the backend that writes
+ * class files directly, from OLLIR to a .class file on disk. Only the files that both backends compile are measured.
+ * <p>
+ * Usage: BackendBenchmark [folder with .ollir files] [repetitions]
+ */
+public class BackendBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    private record Sample(long nanos, long allocatedBytes) {
+    }
+
+    public static void main(String[] args) {
+        File folder = new File(args.length > 0 ? args[0] : "test/pt/up/fe/comp/cpf/4_jasmin");
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        File outputDir = SpecsIo.getTempFolder("jmm-backend-benchmark");
+
+        List<File> inputs = SpecsIo.getFilesRecursive(folder, "ollir");
+        inputs.sort(Comparator.comparing(File::getPath));
+
+        List<Sample> text = new ArrayList<>();
+        List<Sample> direct = new ArrayList<>();
+        int skipped = 0;
+
+        for (File input : inputs) {
+            String ollirCode = SpecsIo.read(input);
+
+            // Warm up both paths and skip the files that one of them cannot compile
+            if (run(ollirCode, JasminGenerator::new, outputDir) == null || run(ollirCode, ClassFileGenerator::new, outputDir) == null) {
+                skipped++;
+                continue;
+            }
+
+            for (int i = 0; i < repetitions; i++) {
+                text.add(run(ollirCode, JasminGenerator::new, outputDir));
+                direct.add(run(ollirCode, ClassFileGenerator::new, outputDir));
+            }
+        }
+
+        System.out.println("Folder: " + folder + ", " + (inputs.size() - skipped) + " file(s) (" + skipped
+                + " skipped), " + repetitions + " repetitions");
+        print("jasmin text ", text);
+        print("class file  ", direct);
+    }
+
+    /**
+     * Runs a backend and writes the class file. The OLLIR is parsed before measuring, since the backends change it.
+     * @return The measurement, or null if the backend failed
+     */
+    private static Sample run(String ollirCode, Supplier<JasminBackend> backend, File outputDir) {
+        OllirResult ollirResult = new OllirResult(ollirCode, Collections.emptyMap());
+        long thread = Thread.currentThread().getId();
+
+        long allocated = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        try {
+            JasminResult result = backend.get().toJasmin(ollirResult);
+            if (result == null) return null;
+            result.compile(outputDir);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        return new Sample(System.nanoTime() - start, THREADS.getThreadAllocatedBytes(thread) - allocated);
+    }
+
+    private static void print(String name, List<Sample> samples) {
+        long[] times = samples.stream().mapToLong(Sample::nanos).sorted().toArray();
+        double median = times[times.length / 2] / 1e3;
+        double mean = Arrays.stream(times).average().orElse(0) / 1e3;
+        double allocated = samples.stream().mapToLong(Sample::allocatedBytes).average().orElse(0) / 1024;
+        System.out.printf("%s: median %8.1f us, mean %8.1f us, %8.1f KiB allocated per class%n", name, median, mean, allocated);
+    }
+}
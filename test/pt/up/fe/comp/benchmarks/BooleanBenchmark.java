@@ -0,0 +1,175 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Compares the time of loops over boolean values compiled by the Jasmin backend, with the booleans computed with
+ * bitwise operations and the conditions branched on directly, against the same loops with the booleans computed with
+ * branches and stored before being tested, which is the code the backend generated before. Run it with -Xint to see the
+ * difference in the bytecode alone.
+ * <p>
+ * Usage: BooleanBenchmark [iterations] [repetitions]
+ */
+public class BooleanBenchmark {
+
+    private static final String KERNELS = """
+            Kernels {
+                .construct Kernels().V {
+                    invokespecial(this, "<init>").V;
+                }
+                .method public static classifyBitwise(n.i32).bool {
+                    i.i32 :=.i32 0.i32;
+                    x.i32 :=.i32 1.i32;
+                    acc.bool :=.bool 0.bool;
+                    Loop:
+                    if (i.i32 >=.bool n.i32) goto End;
+                    x.i32 :=.i32 x.i32 *.i32 1103515245.i32;
+                    x.i32 :=.i32 x.i32 +.i32 12345.i32;
+                    a.bool :=.bool x.i32 <.bool 0.i32;
+                    y.i32 :=.i32 x.i32 *.i32 69069.i32;
+                    b.bool :=.bool y.i32 <.bool 0.i32;
+                    p.bool :=.bool a.bool &&.bool b.bool;
+                    q.bool :=.bool !.bool p.bool;
+                    acc.bool :=.bool acc.bool !=.bool q.bool;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.bool acc.bool;
+                }
+                .method public static classifyBranching(n.i32).bool {
+                    i.i32 :=.i32 0.i32;
+                    x.i32 :=.i32 1.i32;
+                    acc.bool :=.bool 0.bool;
+                    Loop:
+                    if (i.i32 >=.bool n.i32) goto End;
+                    x.i32 :=.i32 x.i32 *.i32 1103515245.i32;
+                    x.i32 :=.i32 x.i32 +.i32 12345.i32;
+                    if (x.i32 <.bool 0.i32) goto A1;
+                    a.bool :=.bool 0.bool;
+                    goto A2;
+                    A1:
+                    a.bool :=.bool 1.bool;
+                    A2:
+                    y.i32 :=.i32 x.i32 *.i32 69069.i32;
+                    if (y.i32 <.bool 0.i32) goto B1;
+                    b.bool :=.bool 0.bool;
+                    goto B2;
+                    B1:
+                    b.bool :=.bool 1.bool;
+                    B2:
+                    if (!.bool a.bool) goto P0;
+                    if (!.bool b.bool) goto P0;
+                    p.bool :=.bool 1.bool;
+                    goto P1;
+                    P0:
+                    p.bool :=.bool 0.bool;
+                    P1:
+                    if (p.bool) goto Q0;
+                    q.bool :=.bool 1.bool;
+                    goto Q1;
+                    Q0:
+                    q.bool :=.bool 0.bool;
+                    Q1:
+                    if (acc.bool !=.bool q.bool) goto C1;
+                    acc.bool :=.bool 0.bool;
+                    goto C2;
+                    C1:
+                    acc.bool :=.bool 1.bool;
+                    C2:
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.bool acc.bool;
+                }
+                .method public static sumFused(n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                    Loop:
+                    c.bool :=.bool i.i32 <.bool n.i32;
+                    if (!.bool c.bool) goto End;
+                    s.i32 :=.i32 s.i32 +.i32 i.i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 s.i32;
+                }
+                .method public static sumStored(n.i32).i32 {
+                    i.i32 :=.i32 0.i32;
+                    s.i32 :=.i32 0.i32;
+                    Loop:
+                    if (i.i32 <.bool n.i32) goto T;
+                    c.bool :=.bool 0.bool;
+                    goto E;
+                    T:
+                    c.bool :=.bool 1.bool;
+                    E:
+                    if (!.bool c.bool) goto End;
+                    s.i32 :=.i32 s.i32 +.i32 i.i32;
+                    i.i32 :=.i32 i.i32 +.i32 1.i32;
+                    goto Loop;
+                    End:
+                    ret.i32 s.i32;
+                }
+            }
+            """;
+
+    private record Kernel(String name, String before, String after) {
+    }
+
+    private static final List<Kernel> BENCHMARKS = List.of(
+            new Kernel("classify", "classifyBranching", "classifyBitwise"),
+            new Kernel("sum", "sumStored", "sumFused"));
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        JasminResult result = new JasminGenerator().toJasmin(new OllirResult(KERNELS, new HashMap<>()));
+        File outputDir = SpecsIo.getTempFolder("jmm-booleans");
+        SpecsIo.deleteFolderContents(outputDir);
+        result.compile(outputDir);
+        ClassLoader loader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()},
+                BooleanBenchmark.class.getClassLoader());
+        Class<?> kernels = Class.forName(result.getClassName(), true, loader);
+
+        System.out.printf("%-10s %16s %16s %8s%n", "kernel", "before ns", "after ns", "speedup");
+        for (Kernel kernel : BENCHMARKS) {
+            Method before = kernels.getMethod(kernel.before(), int.class);
+            Method after = kernels.getMethod(kernel.after(), int.class);
+            // The generated class is not public
+            before.setAccessible(true);
+            after.setAccessible(true);
+            if (!before.invoke(null, iterations).equals(after.invoke(null, iterations))) {
+                throw new IllegalStateException("The versions of " + kernel.name() + " disagree");
+            }
+
+            long beforeTime = time(before, iterations, repetitions);
+            long afterTime = time(after, iterations, repetitions);
+            System.out.printf("%-10s %16d %16d %7.2fx%n", kernel.name(), beforeTime, afterTime,
+                    (double) beforeTime / afterTime);
+        }
+    }
+
+    /**
+     * @return Smallest time of a call of the method
+     */
+    private static long time(Method kernel, int iterations, int repetitions) throws ReflectiveOperationException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            long start = System.nanoTime();
+            kernel.invoke(null, iterations);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,138 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Counts the OLLIR instructions and the JVM loads and stores of Java-- programs compiled without and with -o, which
+ * propagates and coalesces the copies and removes the dead stores. It runs on a quicksort, written like the one in
+ * libs-jmm, and on the .jmm files of a folder, with both ways of generating OLLIR.
+ * <p>
+ * Usage: CopyPropagationBenchmark [folder with .jmm files]
+ */
+public class CopyPropagationBenchmark {
+
+    private static final String QUICKSORT = """
+            import io;
+            class Quicksort {
+                public static void main(String[] a) {
+                    Quicksort q;
+                    q = new Quicksort();
+                    q.run(10);
+                }
+
+                public boolean run(int n) {
+                    int[] values;
+                    int i;
+                    values = new int[n];
+                    i = 0;
+                    while (i < values.length) {
+                        values[i] = values.length - i;
+                        i = i + 1;
+                    }
+                    this.sort(values, 0, values.length - 1);
+                    return this.print(values);
+                }
+
+                public boolean print(int[] values) {
+                    int i;
+                    i = 0;
+                    while (i < values.length) {
+                        io.println(values[i]);
+                        i = i + 1;
+                    }
+                    return true;
+                }
+
+                public boolean sort(int[] values, int lo, int hi) {
+                    int p;
+                    if (lo < hi) {
+                        p = this.partition(values, lo, hi);
+                        this.sort(values, lo, p - 1);
+                        this.sort(values, p + 1, hi);
+                    } else {
+                    }
+                    return true;
+                }
+
+                public int partition(int[] values, int lo, int hi) {
+                    int p;
+                    int i;
+                    int j;
+                    int tmp;
+                    p = values[hi];
+                    i = lo;
+                    j = lo;
+                    while (j < hi) {
+                        if (values[j] < p) {
+                            tmp = values[i];
+                            values[i] = values[j];
+                            values[j] = tmp;
+                            i = i + 1;
+                        } else {
+                        }
+                        j = j + 1;
+                    }
+                    tmp = values[i];
+                    values[i] = values[hi];
+                    values[hi] = tmp;
+                    return i;
+                }
+            }
+            """;
+
+    public static void main(String[] args) {
+        Map<String, String> inputs = new LinkedHashMap<>();
+        inputs.put("Quicksort", QUICKSORT);
+        if (args.length > 0) {
+            List<File> files = SpecsIo.getFilesRecursive(new File(args[0]), "jmm");
+            files.sort(Comparator.comparing(File::getPath));
+            files.forEach(file -> inputs.put(file.getName(), SpecsIo.read(file)));
+        }
+
+        System.out.printf("%-40s %8s %8s %8s %8s %8s %8s%n", "program", "ollir", "-o", "loads", "-o", "stores", "-o");
+        for (Map.Entry<String, String> input : inputs.entrySet()) {
+            for (String ollir : new String[]{"direct", "text"}) {
+                int[] before = measure(input.getValue(), ollir, "false");
+                int[] after = measure(input.getValue(), ollir, "true");
+                if (before == null || after == null) continue;
+
+                System.out.printf("%-40s %8d %8d %8d %8d %8d %8d%n", input.getKey() + " (" + ollir + ")",
+                        before[0], after[0], before[1], after[1], before[2], after[2]);
+            }
+        }
+    }
+
+    /**
+     * @return Number of OLLIR instructions, of loads and of stores, or null if the program does not compile
+     */
+    private static int[] measure(String code, String ollir, String optimize) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", optimize);
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("ollir", ollir);
+        config.put("backend", "jasmin");
+
+        Pipeline.PipelineResult result;
+        try {
+            result = Pipeline.createDefault(config).run(code, config);
+        } catch (RuntimeException e) {
+            return null;
+        }
+        if (!result.isSuccess() || result.getOllirResult() == null || result.getJasminResult() == null) return null;
+
+        int instructions = result.getOllirResult().getOllirClass().getMethods().stream()
+                .mapToInt(method -> method.getInstructions().size()).sum();
+        int loads = 0, stores = 0;
+        for (String line : result.getJasminResult().getJasminCode().split("\n")) {
+            String instruction = line.trim();
+            if (instruction.matches("[ia]load(_\\d)?\\b.*")) loads++;
+            if (instruction.matches("[ia]store(_\\d)?\\b.*")) stores++;
+        }
+        return new int[]{instructions, loads, stores};
+    }
+}
@@ -0,0 +1,62 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp2023.daemon.CompileDaemon;
+import pt.up.fe.comp2023.daemon.DaemonClient;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Compares the latency of compiling one file with a fresh JVM per request (cold) against sending the same request to
+ * an already running daemon (warm).
+ * <p>
+ * Usage: DaemonBenchmark [file.jmm] [repetitions]
+ */
+public class DaemonBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        File input = new File(args.length > 0 ? args[0] : "test/pt/up/fe/comp/cpf/4_jasmin/arrays/ArrayInit.jmm");
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        File outputDir = SpecsIo.getTempFolder("jmm-daemon-benchmark");
+
+        // Cold: a new JVM per request, as the jmm script does
+        List<Long> cold = new ArrayList<>();
+        for (int i = 0; i < repetitions; i++) {
+            ProcessBuilder builder = new ProcessBuilder("java", "-cp", System.getProperty("java.class.path"),
+                    "pt.up.fe.comp2023.Launcher", input.getPath());
+            builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+            builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+            long start = System.nanoTime();
+            builder.start().waitFor();
+            cold.add(System.nanoTime() - start);
+        }
+
+        // Warm: the same request sent to a daemon that is already running
+        CompileDaemon daemon = new CompileDaemon(new HashMap<>(), 0, 1);
+        daemon.start();
+        new Thread(daemon::serve).start();
+        DaemonClient client = new DaemonClient(daemon.getPort());
+
+        List<Long> warm = new ArrayList<>();
+        for (int i = 0; i < repetitions; i++) {
+            long start = System.nanoTime();
+            client.compile(List.of(input), outputDir);
+            warm.add(System.nanoTime() - start);
+        }
+        client.shutdown();
+
+        System.out.println("File: " + input + ", " + repetitions + " requests");
+        print("cold (new JVM)", cold);
+        print("warm (daemon) ", warm);
+    }
+
+    private static void print(String name, List<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        double mean = sorted.stream().mapToLong(Long::longValue).average().orElse(0) / 1e6;
+        double median = sorted.get(sorted.size() / 2) / 1e6;
+        System.out.printf("%s: median %8.2f ms, mean %8.2f ms, min %8.2f ms%n", name, median, mean, sorted.get(0) / 1e6);
+    }
+}
@@ -0,0 +1,100 @@
+package pt.up.fe.comp.benchmarks;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.ollir.Ollir;
+import pt.up.fe.comp2023.optimization.ControlFlow;
+import pt.up.fe.comp2023.optimization.Dataflow;
+import pt.up.fe.comp2023.optimization.Liveness;
+import pt.up.fe.comp2023.optimization.ReachingDefinitions;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Measures the liveness and reaching definitions analyses on generated methods with thousands of OLLIR instructions,
+ * with straight-line code and with many nested loops. The OLLIR classes are built directly from the AST, once.
+ * <p>
+ * Usage: DataflowBenchmark [statements] [repetitions]
+ */
+public class DataflowBenchmark {
+
+    public static void main(String[] args) {
+        int statements = args.length > 0 ? Integer.parseInt(args[0]) : 2_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        for (boolean loops : new boolean[]{false, true}) {
+            Method method = build(generate(statements, loops));
+            System.out.println((loops ? "loops" : "straight-line") + ": " + method.getInstructions().size()
+                    + " instructions, " + repetitions + " repetitions");
+            run("liveness", method, Liveness::new, repetitions);
+            run("reaching definitions", method, ReachingDefinitions::new, repetitions);
+        }
+    }
+
+    private static void run(String name, Method method, Function<Method, Dataflow> analysis, int repetitions) {
+        List<Long> samples = new ArrayList<>();
+        int visits = 0;
+        for (int i = 0; i < repetitions + 1; i++) {
+            long start = System.nanoTime();
+            Dataflow dataflow = analysis.apply(method);
+            long elapsed = System.nanoTime() - start;
+            visits = dataflow.getVisits();
+            // The first run warms up the JVM
+            if (i > 0) samples.add(elapsed);
+        }
+        print(name + " (" + visits + " block visits)", samples);
+    }
+
+    private static Method build(String code) {
+        Map<String, String> config = new HashMap<>();
+        config.put("ollir", "direct");
+
+        JmmParserResult parserResult = new SimpleParser().parse(code, config);
+        var symbolTable = new Analysis().semanticAnalysis(parserResult).getSymbolTable();
+        ClassUnit classUnit = new Ollir().toOllir(new JmmSemanticsResult(parserResult, symbolTable, new ArrayList<>()))
+                .getOllirClass();
+        classUnit.buildVarTables();
+
+        Method method = classUnit.getMethods().stream().filter(m -> m.getMethodName().equals("run")).findFirst().orElseThrow();
+        ControlFlow.rebuild(method);
+        return method;
+    }
+
+    /**
+     * Generates a method whose statements update a few variables, optionally wrapping every ten of them in a loop
+     * nested in the previous ones
+     */
+    private static String generate(int statements, boolean loops) {
+        StringBuilder code = new StringBuilder("class Generated {\n public int run(int n) {\n int a;\n int b;\n int c;\n int i;\n");
+        code.append("a = n;\nb = 1;\nc = 0;\ni = 0;\n");
+        int open = 0;
+        for (int s = 0; s < statements; s++) {
+            if (loops && s % 10 == 0) {
+                code.append("while (i < n) {\n");
+                open++;
+            }
+            code.append("c = (a + b) * (c - ").append(s % 100).append(") + a * ").append(s % 7).append(";\n");
+            if (loops && s % 10 == 9) code.append("i = i + 1;\n");
+            // Close some loops so that they are nested, but not all in a single chain
+            if (loops && s % 30 == 29) {
+                for (; open > 0; open--) code.append("}\n");
+            }
+        }
+        for (; open > 0; open--) code.append("}\n");
+        code.append("return c;\n }\n public static void main(String[] args) {\n }\n}\n");
+        return code.toString();
+    }
+
+    private static void print(String name, List<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        double mean = sorted.stream().mapToLong(Long::longValue).average().orElse(0) / 1e6;
+        double median = sorted.get(sorted.size() / 2) / 1e6;
+        System.out.printf("%s: median %8.2f ms, mean %8.2f ms, min %8.2f ms%n", name, median, mean, sorted.get(0) / 1e6);
+    }
+}
@@ -0,0 +1,104 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp2023.ollir.Ollir;
+
+import static pt.up.fe.comp.benchmarks.OptimizerFixture.*;
+
+/**
+ * Measures the throughput of the bytecode of Java-- loops that call small private and static methods of their class in
+ * every iteration, compiled with and without the inlining of those methods. Every other OLLIR optimization is applied
+ * to both. Run it with -Xint to see the difference in the bytecode alone.
+ * <p>
+ * Usage: InlinerBenchmark [iterations] [repetitions]
+ */
+public class InlinerBenchmark {
+
+    private static final String KERNELS = """
+            class Calls {
+                int total;
+
+                private int square(int x) {
+                    return x * x;
+                }
+
+                public static int clamp(int x, int lo, int hi) {
+                    int r;
+                    r = x;
+                    if (x < lo) {
+                        r = lo;
+                    } else {
+                        if (hi < x) {
+                            r = hi;
+                        } else {
+                        }
+                    }
+                    return r;
+                }
+
+                private void add(int x) {
+                    total = total + x;
+                }
+
+                public int squares(int n) {
+                    int i;
+                    int s;
+                    int t;
+                    s = 0;
+                    i = 0;
+                    while (i < n) {
+                        t = this.square(i);
+                        s = s + t;
+                        i = i + 1;
+                    }
+                    return s;
+                }
+
+                public int clamped(int n) {
+                    int i;
+                    int s;
+                    int t;
+                    s = 0;
+                    i = 0;
+                    while (i < n) {
+                        t = Calls.clamp(i - n / 2, 0 - 100, 100);
+                        s = s + t;
+                        i = i + 1;
+                    }
+                    return s;
+                }
+
+                public int accumulate(int n) {
+                    int i;
+                    total = 0;
+                    i = 0;
+                    while (i < n) {
+                        this.add(i);
+                        i = i + 1;
+                    }
+                    return total;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Class<?> called = load(KERNELS, "called", Ollir.Pass.INLINING);
+        Class<?> inlined = load(KERNELS, "inlined");
+
+        System.out.println("n = " + n + ", " + repetitions + " repetitions");
+        for (String kernel : new String[]{"squares", "clamped", "accumulate"}) {
+            Object[] arguments = {n};
+            Object expected = run(called, kernel, arguments, 1).result();
+            Object actual = run(inlined, kernel, arguments, 1).result();
+            if (!expected.equals(actual)) throw new IllegalStateException(kernel + ": " + expected + " != " + actual);
+
+            print(kernel + " called ", run(called, kernel, arguments, repetitions).samples(), n);
+            print(kernel + " inlined", run(inlined, kernel, arguments, repetitions).samples(), n);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp2023.ollir.Ollir;
+
+import java.util.*;
+
+import static pt.up.fe.comp.benchmarks.OptimizerFixture.*;
+
+/**
+ * Measures the running time of the bytecode of nested Java-- loops with {@code a.length} in their conditions, compiled
+ * with every OLLIR optimization with and without the loop invariant code motion. Run it with -Xint to see the
+ * difference in the bytecode alone, since the JIT also moves invariants out of loops.
+ * <p>
+ * Usage: LoopInvariantCodeMotionBenchmark [array size] [repetitions]
+ */
+public class LoopInvariantCodeMotionBenchmark {
+
+    private static final String KERNELS = """
+            class Kernels {
+                int scale;
+
+                public int passes(int[] a, int passes) {
+                    int p;
+                    int i;
+                    int s;
+                    scale = 3;
+                    s = 0;
+                    p = 0;
+                    while (p < passes) {
+                        i = 0;
+                        while (i < a.length) {
+                            s = s + a[i] * scale + a.length * passes;
+                            i = i + 1;
+                        }
+                        p = p + 1;
+                    }
+                    return s;
+                }
+
+                public int rows(int[] a, int w) {
+                    int i;
+                    int j;
+                    i = 0;
+                    while (i < a.length / w) {
+                        j = 0;
+                        while (j < w) {
+                            a[i * w + j] = a[i * w + j] + a.length / w;
+                            j = j + 1;
+                        }
+                        i = i + 1;
+                    }
+                    return a[0];
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Class<?> without = load(KERNELS, "without code motion", Ollir.Pass.CODE_MOTION);
+        Class<?> with = load(KERNELS, "with code motion");
+
+        int[] a = new int[n];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i % 17;
+        }
+
+        System.out.println("n = " + n + ", " + repetitions + " repetitions");
+        for (String kernel : new String[]{"passes", "rows"}) {
+            Object[] arguments = kernel.equals("passes") ? new Object[]{a, 16} : new Object[]{a, 64};
+            // rows changes the array, so both versions start from a copy of it
+            Object expected = run(without, kernel, copy(arguments), 1).result();
+            Object actual = run(with, kernel, copy(arguments), 1).result();
+            if (!expected.equals(actual)) throw new IllegalStateException(kernel + ": " + expected + " != " + actual);
+
+            print(kernel + " without code motion", run(without, kernel, arguments, repetitions).samples());
+            print(kernel + " with code motion   ", run(with, kernel, arguments, repetitions).samples());
+        }
+    }
+
+    private static Object[] copy(Object[] arguments) {
+        return Arrays.stream(arguments).map(argument -> argument instanceof int[] array ? array.clone() : argument)
+                .toArray();
+    }
+}
@@ -0,0 +1,77 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp2023.ollir.Ollir;
+
+import static pt.up.fe.comp.benchmarks.OptimizerFixture.*;
+
+/**
+ * Measures the iteration throughput of the bytecode of tight Java-- counting loops, with the loops tested at the top,
+ * which takes a conditional branch and a goto per iteration, and rotated, with a guard before the loop and a single
+ * conditional branch at the bottom. Every other OLLIR optimization is applied to both. Run it with -Xint to see the
+ * difference in the bytecode alone.
+ * <p>
+ * Usage: LoopRotationBenchmark [iterations] [repetitions]
+ */
+public class LoopRotationBenchmark {
+
+    private static final String KERNELS = """
+            class Counting {
+                public int count(int n) {
+                    int i;
+                    i = 0;
+                    while (i < n) {
+                        i = i + 1;
+                    }
+                    return i;
+                }
+
+                public int sum(int n) {
+                    int s;
+                    s = 0;
+                    for (int i = 0; i < n; i++) {
+                        s += i;
+                    }
+                    return s;
+                }
+
+                public int nested(int n) {
+                    int i;
+                    int j;
+                    int c;
+                    c = 0;
+                    i = 0;
+                    while (i < n / 100) {
+                        j = 0;
+                        do {
+                            c = c + j;
+                            j = j + 1;
+                        } while (j < 100);
+                        i = i + 1;
+                    }
+                    return c;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Class<?> topTested = load(KERNELS, "tested at the top", Ollir.Pass.LOOP_ROTATION);
+        Class<?> rotated = load(KERNELS, "rotated");
+
+        System.out.println("n = " + n + ", " + repetitions + " repetitions");
+        for (String kernel : new String[]{"count", "sum", "nested"}) {
+            Object[] arguments = {n};
+            Object expected = run(topTested, kernel, arguments, 1).result();
+            Object actual = run(rotated, kernel, arguments, 1).result();
+            if (!expected.equals(actual)) throw new IllegalStateException(kernel + ": " + expected + " != " + actual);
+
+            print(kernel + " tested at the top", run(topTested, kernel, arguments, repetitions).samples(), n);
+            print(kernel + " rotated          ", run(rotated, kernel, arguments, repetitions).samples(), n);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.ast.JmmNode;
+import pt.up.fe.comp.jmm.ast.JmmNodeImpl;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.ollir.OllirVisitor;
+import pt.up.fe.comp2023.ollir.OllirWriter;
+
+import java.util.HashMap;
+
+/**
+ * Measures the OLLIR generation of methods with 1k, 10k and 100k statements. With linear generation the time grows
+ * ten times from one size to the next, while quadratic generation would grow a hundred times. Only the generation is
+ * measured, the statements are added to the tree directly.
+ * <p>
+ * Usage: OllirWriterBenchmark [repetitions]
+ */
+public class OllirWriterBenchmark {
+
+    public static void main(String[] args) {
+        int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+
+        long previous = -1;
+        System.out.printf("%-12s %12s %8s%n", "statements", "best ms", "growth");
+        for (int statements = 1_000; statements <= 100_000; statements *= 10) {
+            long best = bestTime(statements, repetitions);
+            String growth = previous < 0 ? "" : String.format("%7.1fx", (double) best / previous);
+            System.out.printf("%-12d %12.2f %8s%n", statements, best / 1e6, growth);
+            previous = best;
+        }
+    }
+
+    private static long bestTime(int statements, int repetitions) {
+        JmmSemanticsResult semanticsResult = new Analysis().semanticAnalysis(new SimpleParser().parse(
+                "class Big {\n public static void main(String[] args) {\n int a;\n a = 0;\n }\n}\n", new HashMap<>()));
+
+        JmmNode body = semanticsResult.getRootNode().getJmmChild(1).getJmmChild(0).getJmmChild(4);
+        for (int i = 1; i < statements; i++) {
+            JmmNode value = new JmmNodeImpl("Integer");
+            value.put("value", String.valueOf(i % 100));
+            JmmNode assignment = new JmmNodeImpl("Assignment");
+            assignment.put("var", "a");
+            assignment.add(value);
+            body.add(assignment);
+        }
+
+        long best = Long.MAX_VALUE;
+        for (int run = 0; run < repetitions; run++) {
+            long start = System.nanoTime();
+            OllirVisitor visitor = new OllirVisitor(new OllirWriter(), semanticsResult.getSymbolTable());
+            visitor.visit(semanticsResult.getRootNode());
+            visitor.getOllirCode();
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
@@ -0,0 +1,89 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp2023.Pipeline;
+import pt.up.fe.comp2023.ollir.Ollir;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles the kernels of the optimizer benchmarks through the {@link Pipeline} with the -o option, so they run every
+ * pass of {@link Ollir#optimize} in its real order except the ones turned off, and times their methods.
+ */
+public class OptimizerFixture {
+
+    public record Run(Object result, List<Long> samples) {
+    }
+
+    /**
+     * Compiles the code with the OLLIR built directly and every optimization except the given ones, and loads its class
+     * @param label Name printed with the number of OLLIR instructions, also used for the output folder
+     */
+    public static Class<?> load(String code, String label, Ollir.Pass... disabled) throws Exception {
+        Map<String, String> config = new HashMap<>();
+        config.put("ollir", "direct");
+        config.put("optimize", "true");
+        config.put("registerAllocation", "-1");
+        config.put("debug", "false");
+        config.put("backend", "jasmin");
+        config.put("disabledPasses", Arrays.stream(disabled).map(Ollir.Pass::name).collect(Collectors.joining(",")));
+
+        Pipeline.PipelineResult result = Pipeline.createDefault(config).run(code, config);
+        if (!result.isSuccess()) throw new IllegalStateException(label + ": " + result.getReports());
+
+        int instructions = result.getOllirResult().getOllirClass().getMethods().stream()
+                .mapToInt(method -> method.getInstructions().size()).sum();
+        System.out.println(label + ": " + instructions + " OLLIR instructions");
+
+        JasminResult jasminResult = result.getJasminResult();
+        File outputDir = SpecsIo.getTempFolder("jmm-" + label.replace(' ', '-'));
+        SpecsIo.deleteFolderContents(outputDir);
+        jasminResult.compile(outputDir);
+        ClassLoader loader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()}, OptimizerFixture.class.getClassLoader());
+        return loader.loadClass(jasminResult.getClassName());
+    }
+
+    public static Run run(Class<?> kernels, String name, Object[] arguments, int repetitions) throws Exception {
+        // The generated classes are not public
+        var constructor = kernels.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        Object instance = constructor.newInstance();
+        java.lang.reflect.Method method = Arrays.stream(kernels.getMethods())
+                .filter(m -> m.getName().equals(name)).findFirst().orElseThrow();
+        method.setAccessible(true);
+
+        List<Long> samples = new ArrayList<>();
+        Object result = null;
+        for (int i = 0; i < repetitions; i++) {
+            long start = System.nanoTime();
+            result = method.invoke(instance, arguments);
+            samples.add(System.nanoTime() - start);
+        }
+        return new Run(result, samples);
+    }
+
+    public static void print(String name, List<Long> samples) {
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        double median = sorted.get(sorted.size() / 2) / 1e6;
+        double min = sorted.get(0) / 1e6;
+        System.out.printf("%s: median %8.2f ms, min %8.2f ms%n", name, median, min);
+    }
+
+    /**
+     * Same as {@link #print(String, List)}, also printing the best time of each of the given iterations
+     */
+    public static void print(String name, List<Long> samples, int iterations) {
+        List<Long> sorted = new ArrayList<>(samples);
+        Collections.sort(sorted);
+        double median = sorted.get(sorted.size() / 2) / 1e6;
+        double min = sorted.get(0) / 1e6;
+        System.out.printf("%s: median %8.2f ms, min %8.2f ms, %6.2f ns per iteration%n", name, median, min,
+                sorted.get(0) / (double) iterations);
+    }
+}
@@ -0,0 +1,135 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp.TestUtils;
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+
+/**
+ * Compares the Jasmin code generated from the OLLIR files of the checkpoints with and without the peephole optimizer:
+ * number of instructions, size of the class files and, for the classes with a main method, the time it takes with its
+ * output discarded. Run it with -Xint to see the difference in the bytecode alone.
+ * <p>
+ * Usage: PeepholeBenchmark [repetitions] [folders with .ollir files...]
+ */
+public class PeepholeBenchmark {
+
+    private record Size(long instructions, long bytes) {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        List<String> folders = args.length > 1 ? Arrays.asList(args).subList(1, args.length)
+                : List.of("test/pt/up/fe/comp/cpf/4_jasmin", "test/pt/up/fe/comp/cp2/apps");
+
+        List<File> inputs = new ArrayList<>();
+        for (String folder : folders) inputs.addAll(SpecsIo.getFilesRecursive(new File(folder), "ollir"));
+        inputs.sort(Comparator.comparing(File::getPath));
+
+        long[] totals = new long[4];
+        System.out.printf("%-28s %12s %14s %22s%n", "file", "instructions", "class bytes", "main ns (plain/peep)");
+        for (File input : inputs) {
+            String ollirCode = SpecsIo.read(input);
+            String name = input.getName().replace(".ollir", "");
+            Size plain;
+            Size peephole;
+            Class<?> plainClass;
+            Class<?> peepholeClass;
+            try {
+                JasminResult plainResult = generate(ollirCode, false);
+                JasminResult peepholeResult = generate(ollirCode, true);
+                plain = measure(plainResult, name + "-plain");
+                peephole = measure(peepholeResult, name + "-peephole");
+                plainClass = load(plainResult, name + "-plain");
+                peepholeClass = load(peepholeResult, name + "-peephole");
+            } catch (RuntimeException | LinkageError e) {
+                System.out.printf("%-28s skipped: %s%n", name, e.getClass().getSimpleName());
+                continue;
+            }
+
+            totals[0] += plain.instructions();
+            totals[1] += peephole.instructions();
+            totals[2] += plain.bytes();
+            totals[3] += peephole.bytes();
+
+            String times = "-";
+            java.lang.reflect.Method plainMain = getMain(plainClass);
+            java.lang.reflect.Method peepholeMain = getMain(peepholeClass);
+            if (plainMain != null && peepholeMain != null) {
+                try {
+                    times = time(plainMain, repetitions) + " / " + time(peepholeMain, repetitions);
+                } catch (ReflectiveOperationException e) {
+                    // Like the programs that read their input
+                    times = "failed";
+                }
+            }
+            System.out.printf("%-28s %5d -> %-5d %6d -> %-6d %22s%n", name, plain.instructions(),
+                    peephole.instructions(), plain.bytes(), peephole.bytes(), times);
+        }
+        System.out.printf("%-28s %5d -> %-5d %6d -> %-6d%n", "total", totals[0], totals[1], totals[2], totals[3]);
+    }
+
+    private static JasminResult generate(String ollirCode, boolean optimize) {
+        Map<String, String> config = new HashMap<>();
+        config.put("optimize", String.valueOf(optimize));
+        return new JasminGenerator().toJasmin(new OllirResult(ollirCode, config));
+    }
+
+    private static File getOutputDir(String name) {
+        return SpecsIo.getTempFolder("jmm-peephole-" + name);
+    }
+
+    private static Size measure(JasminResult result, String name) {
+        long instructions = result.getJasminCode().lines()
+                .filter(line -> line.startsWith("\t") && !line.startsWith("\t.")).count();
+        File outputDir = getOutputDir(name);
+        SpecsIo.deleteFolderContents(outputDir);
+        result.compile(outputDir);
+        long bytes = SpecsIo.getFilesRecursive(outputDir, "class").stream().mapToLong(File::length).sum();
+        return new Size(instructions, bytes);
+    }
+
+    private static Class<?> load(JasminResult result, String name) throws Exception {
+        // The io and ioPlus classes the programs call are in the libraries of the tests
+        URL[] urls = {getOutputDir(name).toURI().toURL(), new File(TestUtils.getLibsClasspath()).toURI().toURL()};
+        ClassLoader loader = new URLClassLoader(urls, PeepholeBenchmark.class.getClassLoader());
+        return Class.forName(result.getClassName(), true, loader);
+    }
+
+    private static java.lang.reflect.Method getMain(Class<?> loaded) {
+        try {
+            java.lang.reflect.Method main = loaded.getMethod("main", String[].class);
+            main.setAccessible(true);
+            return main;
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return Smallest time of a run of the method, with its output discarded
+     */
+    private static long time(java.lang.reflect.Method main, int repetitions) throws ReflectiveOperationException {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        long best = Long.MAX_VALUE;
+        try {
+            for (int i = 0; i < repetitions; i++) {
+                long start = System.nanoTime();
+                main.invoke(null, (Object) new String[0]);
+                best = Math.min(best, System.nanoTime() - start);
+            }
+        } finally {
+            System.setOut(out);
+        }
+        return best;
+    }
+}
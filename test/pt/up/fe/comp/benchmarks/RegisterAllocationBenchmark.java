@@ -0,0 +1,84 @@
+package pt.up.fe.comp.benchmarks;
+
+import org.specs.comp.ollir.ClassUnit;
+import org.specs.comp.ollir.Descriptor;
+import org.specs.comp.ollir.Method;
+import pt.up.fe.comp.jmm.analysis.JmmSemanticsResult;
+import pt.up.fe.comp.jmm.parser.JmmParserResult;
+import pt.up.fe.comp2023.SimpleParser;
+import pt.up.fe.comp2023.analysis.Analysis;
+import pt.up.fe.comp2023.ollir.Ollir;
+import pt.up.fe.comp2023.optimization.RegisterAllocator;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * Shows the number of JVM locals of each method before and after register allocation, for the Java-- files of a
+ * folder and for generated methods whose expressions need many temporary variables. The OLLIR classes are built
+ * directly from the AST.
+ * <p>
+ * Usage: RegisterAllocationBenchmark [folder with .jmm files]
+ */
+public class RegisterAllocationBenchmark {
+
+    public static void main(String[] args) {
+        File folder = new File(args.length > 0 ? args[0] : "test/pt/up/fe/comp/cpf/5_optimizations/reg_alloc");
+
+        List<File> inputs = SpecsIo.getFilesRecursive(folder, "jmm");
+        inputs.sort(Comparator.comparing(File::getPath));
+
+        System.out.printf("%-40s %10s %10s %10s%n", "method", "locals", "allocated", "time (ms)");
+        for (File input : inputs) {
+            run(input.getName(), SpecsIo.read(input));
+        }
+        for (int statements : new int[]{100, 1_000, 10_000}) {
+            run("generated (" + statements + " statements)", generate(statements));
+        }
+    }
+
+    private static void run(String name, String code) {
+        Map<String, String> config = new HashMap<>();
+        config.put("ollir", "direct");
+
+        JmmParserResult parserResult = new SimpleParser().parse(code, config);
+        var symbolTable = new Analysis().semanticAnalysis(parserResult).getSymbolTable();
+        ClassUnit classUnit = new Ollir().toOllir(new JmmSemanticsResult(parserResult, symbolTable, new ArrayList<>()))
+                .getOllirClass();
+        classUnit.buildVarTables();
+
+        RegisterAllocator allocator = new RegisterAllocator(0);
+        for (Method method : classUnit.getMethods()) {
+            if (method.isConstructMethod()) continue;
+
+            int before = getLocals(method);
+            long start = System.nanoTime();
+            int after = allocator.allocate(method);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.printf("%-40s %10d %10d %10.2f%n", name + ": " + method.getMethodName(), before, after, elapsed / 1e6);
+        }
+    }
+
+    private static int getLocals(Method method) {
+        int locals = method.getParams().size() + (method.isStaticMethod() ? 0 : 1);
+        for (Descriptor var : method.getVarTable().values()) {
+            locals = Math.max(locals, var.getVirtualReg() + 1);
+        }
+        return locals;
+    }
+
+    /**
+     * Generates a method where each statement is an expression that is lowered to several temporary variables
+     */
+    private static String generate(int statements) {
+        StringBuilder code = new StringBuilder("class Generated {\n public int run(int n) {\n int a;\n int b;\n int c;\n");
+        code.append("a = n;\nb = 1;\nc = 0;\n");
+        for (int i = 0; i < statements; i++) {
+            code.append("c = (a + b) * (c - ").append(i % 100).append(") + a * ").append(i % 7).append(";\n");
+        }
+        code.append("return c;\n }\n public static void main(String[] args) {\n }\n}\n");
+        return code.toString();
+    }
+}
@@ -0,0 +1,112 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp.jmm.jasmin.JasminResult;
+import pt.up.fe.comp.jmm.ollir.OllirResult;
+import pt.up.fe.comp2023.jasmin.JasminGenerator;
+import pt.up.fe.specs.util.SpecsIo;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashMap;
+
+/**
+ * Compares the time of loops that dispatch on 64 cases, with the chain of comparisons of each case turned into a
+ * tableswitch (values 0 to 63) or a lookupswitch (multiples of 37) by the Jasmin backend, against the same chains with
+ * the constant on the left of each comparison, which the backend keeps as one if_icmpeq per case. Run it with -Xint to
+ * see the difference in the bytecode alone.
+ * <p>
+ * Usage: SwitchBenchmark [iterations] [repetitions]
+ */
+public class SwitchBenchmark {
+
+    private static final int CASES = 64;
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        StringBuilder ollirCode = new StringBuilder("Dispatch {\n")
+                .append(".construct Dispatch().V {\ninvokespecial(this, \"<init>\").V;\n}\n");
+        for (int stride : new int[]{1, 37}) {
+            String name = stride == 1 ? "dense" : "sparse";
+            ollirCode.append(getKernel(name + "Switch", stride, false));
+            ollirCode.append(getKernel(name + "Chain", stride, true));
+        }
+        ollirCode.append("}\n");
+
+        JasminResult result = new JasminGenerator().toJasmin(new OllirResult(ollirCode.toString(), new HashMap<>()));
+        File outputDir = SpecsIo.getTempFolder("jmm-switch");
+        SpecsIo.deleteFolderContents(outputDir);
+        result.compile(outputDir);
+        ClassLoader loader = new URLClassLoader(new URL[]{outputDir.toURI().toURL()},
+                SwitchBenchmark.class.getClassLoader());
+        Class<?> dispatch = Class.forName(result.getClassName(), true, loader);
+
+        System.out.printf("%-8s %16s %16s %8s%n", "cases", "chain ns", "switch ns", "speedup");
+        for (String name : new String[]{"dense", "sparse"}) {
+            Method chain = dispatch.getMethod(name + "Chain", int.class);
+            Method table = dispatch.getMethod(name + "Switch", int.class);
+            // The generated class is not public
+            chain.setAccessible(true);
+            table.setAccessible(true);
+            if (!chain.invoke(null, iterations).equals(table.invoke(null, iterations))) {
+                throw new IllegalStateException("The versions of " + name + " disagree");
+            }
+
+            long chainTime = time(chain, iterations, repetitions);
+            long switchTime = time(table, iterations, repetitions);
+            System.out.printf("%-8s %16d %16d %7.2fx%n", name, chainTime, switchTime, (double) chainTime / switchTime);
+        }
+    }
+
+    /**
+     * @param chain Whether the constant goes on the left of the comparisons, so they are not turned into a switch
+     * @return OLLIR method that adds, for each i below n, a different value for each of the 64 values that
+     * i % 64 * stride can take
+     */
+    private static String getKernel(String name, int stride, boolean chain) {
+        StringBuilder kernel = new StringBuilder(".method public static " + name + "(n.i32).i32 {\n")
+                .append("i.i32 :=.i32 0.i32;\n")
+                .append("s.i32 :=.i32 0.i32;\n")
+                .append("Loop:\n")
+                .append("if (i.i32 >=.bool n.i32) goto End;\n")
+                .append("q.i32 :=.i32 i.i32 /.i32 ").append(CASES).append(".i32;\n")
+                .append("q.i32 :=.i32 q.i32 *.i32 ").append(CASES).append(".i32;\n")
+                .append("k.i32 :=.i32 i.i32 -.i32 q.i32;\n")
+                .append("k.i32 :=.i32 k.i32 *.i32 ").append(stride).append(".i32;\n");
+        for (int i = 0; i < CASES; i++) {
+            String value = i * stride + ".i32";
+            String comparison = chain ? value + " ==.bool k.i32" : "k.i32 ==.bool " + value;
+            kernel.append("if (").append(comparison).append(") goto Case").append(i).append(";\n");
+        }
+        kernel.append("s.i32 :=.i32 s.i32 -.i32 1.i32;\n")
+                .append("goto Next;\n");
+        for (int i = 0; i < CASES; i++) {
+            kernel.append("Case").append(i).append(":\n")
+                    .append("s.i32 :=.i32 s.i32 +.i32 ").append(3 * i + 1).append(".i32;\n")
+                    .append("goto Next;\n");
+        }
+        return kernel.append("Next:\n")
+                .append("i.i32 :=.i32 i.i32 +.i32 1.i32;\n")
+                .append("goto Loop;\n")
+                .append("End:\n")
+                .append("ret.i32 s.i32;\n")
+                .append("}\n")
+                .toString();
+    }
+
+    /**
+     * @return Smallest time of a call of the method
+     */
+    private static long time(Method kernel, int iterations, int repetitions) throws ReflectiveOperationException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < repetitions; i++) {
+            long start = System.nanoTime();
+            kernel.invoke(null, iterations);
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
+}
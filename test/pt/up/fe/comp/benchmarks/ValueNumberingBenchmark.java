@@ -0,0 +1,87 @@
+package pt.up.fe.comp.benchmarks;
+
+import pt.up.fe.comp2023.ollir.Ollir;
+
+import static pt.up.fe.comp.benchmarks.OptimizerFixture.*;
+
+/**
+ * Measures the running time of the bytecode of matrix-style Java-- loops, compiled with every OLLIR optimization with
+ * and without the value numbering. The loops repeat array loads and index expressions like {@code i * n + j}. The JIT
+ * also removes common subexpressions, so run it with -Xint to see the difference in the bytecode alone.
+ * <p>
+ * Usage: ValueNumberingBenchmark [matrix size] [repetitions]
+ */
+public class ValueNumberingBenchmark {
+
+    private static final String KERNELS = """
+            class Kernels {
+                public int multiply(int[] a, int[] b, int[] c, int n) {
+                    int i;
+                    int j;
+                    int k;
+                    i = 0;
+                    while (i < n) {
+                        j = 0;
+                        while (j < n) {
+                            c[i * n + j] = 0;
+                            k = 0;
+                            while (k < n) {
+                                c[i * n + j] = c[i * n + j] + a[i * n + k] * b[k * n + j];
+                                k = k + 1;
+                            }
+                            j = j + 1;
+                        }
+                        i = i + 1;
+                    }
+                    return c[0];
+                }
+
+                public int stencil(int[] a, int[] b, int n) {
+                    int i;
+                    int j;
+                    int s;
+                    s = 0;
+                    i = 1;
+                    while (i < n - 1) {
+                        j = 1;
+                        while (j < n - 1) {
+                            b[i * n + j] = a[i * n + j] + a[i * n + j] + a[i * n + j - 1] + a[i * n + j + 1]
+                                    + a[(i - 1) * n + j] + a[(i + 1) * n + j];
+                            s = s + a[i * n + j] * a[i * n + j];
+                            j = j + 1;
+                        }
+                        i = i + 1;
+                    }
+                    return s;
+                }
+
+                public static void main(String[] args) {
+                }
+            }
+            """;
+
+    public static void main(String[] args) throws Exception {
+        int n = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int repetitions = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        Class<?> without = load(KERNELS, "without value numbering", Ollir.Pass.VALUE_NUMBERING);
+        Class<?> with = load(KERNELS, "with value numbering");
+
+        int[] a = new int[n * n], b = new int[n * n], c = new int[n * n];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = i % 17;
+            b[i] = i % 13;
+        }
+
+        System.out.println("n = " + n + ", " + repetitions + " repetitions");
+        for (String kernel : new String[]{"multiply", "stencil"}) {
+            Object[] arguments = kernel.equals("multiply") ? new Object[]{a, b, c, n} : new Object[]{a, b, n};
+            Object expected = run(without, kernel, arguments, 1).result();
+            Object actual = run(with, kernel, arguments, 1).result();
+            if (!expected.equals(actual)) throw new IllegalStateException(kernel + ": " + expected + " != " + actual);
+
+            print(kernel + " without value numbering", run(without, kernel, arguments, repetitions).samples());
+            print(kernel + " with value numbering   ", run(with, kernel, arguments, repetitions).samples());
+        }
+    }
+}